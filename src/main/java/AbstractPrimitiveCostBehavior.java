@@ -0,0 +1,15 @@
+package com.gracefulcode.ai;
+
+/**
+ * A convenient base class for {@link PrimitiveCostBehavior}s. You implement
+ * {@link #cost}, and getCost is provided in terms of it.
+ *
+ * @version 0.1
+ * @since 0.1
+ */
+public abstract class AbstractPrimitiveCostBehavior<WS extends WorldState> implements PrimitiveCostBehavior<WS> {
+	@Override
+	public Float getCost(WS worldState) {
+		return this.cost(worldState);
+	}
+}
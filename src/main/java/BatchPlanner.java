@@ -0,0 +1,193 @@
+package com.gracefulcode.ai;
+
+import com.gracefulcode.ai.internal.IllegalCloneException;
+import com.gracefulcode.ai.internal.IllegalCostException;
+import com.gracefulcode.ai.internal.IllegalPlanException;
+import com.gracefulcode.ai.internal.State;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Plans for lots of agents at once, spread over every core. Requests are split
+ * up on a work-stealing ForkJoinPool, so a few expensive plans don't leave
+ * the other cores idle, and the plans come back in the same order as the
+ * requests.
+ * <p>
+ * Behavior providers, behaviors and goals may be shared between requests and
+ * will be used from several threads at the same time. The planner only ever
+ * reads them, so that is safe as long as your isRunnable, modifyState,
+ * getCost and goal methods don't modify shared state either, and your
+ * behavior provider can be iterated from several threads at once (an
+ * ArrayList that nobody is modifying is fine). Initial world states must not
+ * be shared between requests.
+ *
+ * @version 0.1
+ * @since 0.1
+ */
+public class BatchPlanner<
+	WS extends WorldState,
+	G extends Goal<WS>,
+	B extends Behavior<WS>,
+	BP extends Iterable<B>
+> {
+	private ForkJoinPool pool;
+	private boolean ownsPool;
+
+	/**
+	 * Planning scratch for each worker thread. Planners are cheap, but this
+	 * way each worker has its own to reuse for every request it runs.
+	 */
+	private ThreadLocal<Planner<WS, G, B, BP>> planners;
+
+	/**
+	 * The State each worker thread planned with last, so that the next
+	 * request it runs can reuse it rather than allocate a new one. Each one
+	 * holds on to its last plan's world states until the next plan.
+	 */
+	private ThreadLocal<State<WS, G, B, BP>> states;
+
+	/**
+	 * Creates a batch planner with its own pool, one thread per core. Call
+	 * shutdown when you are done with it.
+	 */
+	public BatchPlanner() {
+		this(new ForkJoinPool(), true);
+	}
+
+	/**
+	 * Creates a batch planner that runs on a pool you provide. shutdown will
+	 * leave your pool alone.
+	 *
+	 * @param pool The pool to plan on.
+	 */
+	public BatchPlanner(ForkJoinPool pool) {
+		this(pool, false);
+	}
+
+	private BatchPlanner(ForkJoinPool pool, boolean ownsPool) {
+		this.pool = pool;
+		this.ownsPool = ownsPool;
+		this.planners = new ThreadLocal<Planner<WS, G, B, BP>>() {
+			@Override
+			protected Planner<WS, G, B, BP> initialValue() {
+				return new Planner<WS, G, B, BP>();
+			}
+		};
+		this.states = new ThreadLocal<State<WS, G, B, BP>>();
+	}
+
+	/**
+	 * Plans every request and waits for all of them to finish.
+	 *
+	 * @throws IllegalCostException if any behavior returns a cost &lt;= 0
+	 * @throws IllegalCloneException if any world state clone returns itself
+	 *
+	 * @param requests The plans to make.
+	 *
+	 * @return One plan per request, in request order. Plans are in the same
+	 *         reverse order that Planner.getPlan returns. An entry is null if
+	 *         planning finished without finding any plan for that request. If
+	 *         a request's budget ran out first, its entry is the best plan so
+	 *         far, and its suboptimality bound is infinite unless it reaches
+	 *         the goal.
+	 */
+	public ArrayList<Plan<B>> planAll(List<PlanRequest<WS, G, B, BP>> requests) throws IllegalCostException, IllegalCloneException {
+		int count = requests.size();
+		ArrayList<Plan<B>> plans = new ArrayList<Plan<B>>(count);
+		for (int i = 0; i < count; i++) {
+			plans.add(null);
+		}
+		Exception[] failures = new Exception[count];
+
+		this.pool.invoke(new PlanRange(requests, plans, failures, 0, count));
+
+		for (Exception e: failures) {
+			if (e == null) continue;
+			if (e instanceof IllegalCostException) throw (IllegalCostException)e;
+			if (e instanceof IllegalCloneException) throw (IllegalCloneException)e;
+			throw new RuntimeException(e);
+		}
+		return plans;
+	}
+
+	/**
+	 * Shuts down the pool, if we created it.
+	 */
+	public void shutdown() {
+		if (this.ownsPool) {
+			this.pool.shutdown();
+		}
+	}
+
+	/**
+	 * Runs a single request to completion on the calling thread.
+	 */
+	private Plan<B> plan(PlanRequest<WS, G, B, BP> request) throws IllegalCostException, IllegalCloneException {
+		Planner<WS, G, B, BP> planner = this.planners.get();
+		State<WS, G, B, BP> state = planner.startPlanning(
+			this.states.get(),
+			request.getInitialState(),
+			request.getGoal(),
+			request.getBehaviorProvider()
+		);
+		this.states.set(state);
+		planner.stepStateWithBudget(state, request.getBudget());
+
+		try {
+			return planner.getPlan(state);
+		} catch (IllegalPlanException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * Plans a contiguous range of requests, splitting in half until there's a
+	 * single request left so that idle workers always have something to
+	 * steal.
+	 */
+	private class PlanRange extends RecursiveAction {
+		private List<PlanRequest<WS, G, B, BP>> requests;
+		private ArrayList<Plan<B>> plans;
+		private Exception[] failures;
+		private int from;
+		private int to;
+
+		public PlanRange(List<PlanRequest<WS, G, B, BP>> requests, ArrayList<Plan<B>> plans, Exception[] failures, int from, int to) {
+			this.requests = requests;
+			this.plans = plans;
+			this.failures = failures;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected void compute() {
+			if (this.to - this.from <= 1) {
+				if (this.to > this.from) {
+					this.computeOne(this.from);
+				}
+				return;
+			}
+
+			int middle = (this.from + this.to) >>> 1;
+			RecursiveAction.invokeAll(
+				new PlanRange(this.requests, this.plans, this.failures, this.from, middle),
+				new PlanRange(this.requests, this.plans, this.failures, middle, this.to)
+			);
+		}
+
+		private void computeOne(int i) {
+			try {
+				Plan<B> plan = BatchPlanner.this.plan(this.requests.get(i));
+				// Each slot is written by exactly one task, and invoke() waits
+				// for all of them, so this is safely published.
+				this.plans.set(i, plan);
+			} catch (Exception e) {
+				this.failures[i] = e;
+			}
+		}
+	}
+}
@@ -0,0 +1,43 @@
+package com.gracefulcode.ai;
+
+/**
+ * A WorldState that can make cheap copy-on-write children of itself. The
+ * planner makes a copy of the current world state for every runnable
+ * behavior, and throws most of them away again because they are duplicates
+ * or too expensive. If your world state implements this interface, the
+ * planner calls {@link #derive} instead of clone, and only calls
+ * {@link #materialize} on the children that it decides to keep.
+ * <p>
+ * A derived world state can point back at the state it was derived from and
+ * only record what has changed since. That means the original must not be
+ * modified while any of its derived children are still around.
+ * <p>
+ * The planner does change world states that it has kept, but only for a
+ * moment: a {@link ReversibleBehavior} is applied to the world state being
+ * expanded and undone again straight away, which puts it back exactly as it
+ * was. That never happens while a derived child of it is still in use,
+ * since every child made for an earlier behavior has either been
+ * materialized or thrown away by then. So this is only something to worry
+ * about if you call derive yourself.
+ *
+ * @version 0.1
+ * @since 0.1
+ */
+public interface DeltaWorldState<WS extends WorldState> extends WorldState {
+	/**
+	 * Makes a child of this world state. It must be equal to this world
+	 * state, but not the same object, and modifying it must not modify this
+	 * one. It should be much cheaper than clone.
+	 *
+	 * @return The child world state.
+	 */
+	public WS derive();
+
+	/**
+	 * Makes this world state stand on its own, no longer depending on the
+	 * world state it was derived from. This must not change equals or
+	 * hashCode. Calling it on a world state that already stands on its own
+	 * does nothing.
+	 */
+	public void materialize();
+}
@@ -0,0 +1,142 @@
+package com.gracefulcode.ai;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+
+/**
+ * A FactSchema describes the shape of a {@link FactWorldState}. You declare
+ * every fact that your world states will hold up front, and the schema hands
+ * you back a slot number for each one. Behaviors and goals should look up
+ * their slots once and hold on to them, rather than asking by name every
+ * time.
+ * <p>
+ * There are two kinds of facts. Flags are booleans such as "has an axe" and
+ * are packed 64 to a long. Numbers are ints such as "amount of wood."
+ * <p>
+ * Add all of your facts before you create any world states. Once a world
+ * state exists, the schema is locked and adding facts will throw.
+ *
+ * @version 0.1
+ * @since 0.1
+ */
+public class FactSchema {
+	private ArrayList<String> flagNames;
+	private ArrayList<String> numberNames;
+	private HashMap<String, Integer> flagSlots;
+	private HashMap<String, Integer> numberSlots;
+	private boolean locked;
+
+	public FactSchema() {
+		this.flagNames = new ArrayList<String>();
+		this.numberNames = new ArrayList<String>();
+		this.flagSlots = new HashMap<String, Integer>();
+		this.numberSlots = new HashMap<String, Integer>();
+		this.locked = false;
+	}
+
+	/**
+	 * Declares a new boolean fact.
+	 *
+	 * @throws IllegalStateException if a world state already uses this
+	 *         schema, or the name is already taken.
+	 *
+	 * @param name A human-readable name, used for debugging and lookups.
+	 * @return The slot for this flag.
+	 */
+	public int addFlag(String name) {
+		this.checkCanAdd(name);
+
+		int slot = this.flagNames.size();
+		this.flagNames.add(name);
+		this.flagSlots.put(name, slot);
+		return slot;
+	}
+
+	/**
+	 * Declares a new integer fact.
+	 *
+	 * @throws IllegalStateException if a world state already uses this
+	 *         schema, or the name is already taken.
+	 *
+	 * @param name A human-readable name, used for debugging and lookups.
+	 * @return The slot for this number.
+	 */
+	public int addNumber(String name) {
+		this.checkCanAdd(name);
+
+		int slot = this.numberNames.size();
+		this.numberNames.add(name);
+		this.numberSlots.put(name, slot);
+		return slot;
+	}
+
+	private void checkCanAdd(String name) {
+		if (this.locked) {
+			throw new IllegalStateException("Cannot add facts to a FactSchema after creating world states from it.");
+		}
+		if (this.flagSlots.containsKey(name) || this.numberSlots.containsKey(name)) {
+			throw new IllegalStateException("A fact named " + name + " already exists.");
+		}
+	}
+
+	/**
+	 * Looks up a flag slot by name.
+	 *
+	 * @param name The name the flag was added with.
+	 * @return The slot, or -1 if there is no such flag.
+	 */
+	public int getFlagSlot(String name) {
+		Integer slot = this.flagSlots.get(name);
+		if (slot == null) return -1;
+		return slot;
+	}
+
+	/**
+	 * Looks up a number slot by name.
+	 *
+	 * @param name The name the number was added with.
+	 * @return The slot, or -1 if there is no such number.
+	 */
+	public int getNumberSlot(String name) {
+		Integer slot = this.numberSlots.get(name);
+		if (slot == null) return -1;
+		return slot;
+	}
+
+	public String getFlagName(int slot) {
+		return this.flagNames.get(slot);
+	}
+
+	public String getNumberName(int slot) {
+		return this.numberNames.get(slot);
+	}
+
+	public int getFlagCount() {
+		return this.flagNames.size();
+	}
+
+	public int getNumberCount() {
+		return this.numberNames.size();
+	}
+
+	/**
+	 * @return How many longs it takes to hold every flag.
+	 */
+	public int getFlagWordCount() {
+		return (this.flagNames.size() + 63) >>> 6;
+	}
+
+	/**
+	 * Creates a world state where every flag is false and every number is 0.
+	 * This locks the schema.
+	 *
+	 * @return A new, blank world state.
+	 */
+	public FactWorldState newWorldState() {
+		return new FactWorldState(this);
+	}
+
+	void lock() {
+		this.locked = true;
+	}
+}
@@ -0,0 +1,17 @@
+package com.gracefulcode.ai;
+
+/**
+ * A world state that can answer yes-or-no questions about numbered facts.
+ * This is what lets the planner check {@link PreconditionBehavior}s without
+ * calling into them. {@link FactWorldState} implements this with its flags.
+ *
+ * @version 0.1
+ * @since 0.1
+ */
+public interface FactSource {
+	/**
+	 * @param fact The fact number, such as a FactSchema flag slot.
+	 * @return True if the fact holds in this world state.
+	 */
+	public boolean hasFact(int fact);
+}
@@ -0,0 +1,348 @@
+package com.gracefulcode.ai;
+
+import java.util.Arrays;
+
+/**
+ * A ready-made {@link WorldState} that stores boolean flags packed into a
+ * long[] and numbers in an int[], with slots assigned by a
+ * {@link FactSchema}. Writing your own WorldState is still fine, but this one
+ * is hard to beat for speed:
+ * <p>
+ * a) clone is two array copies.
+ * <p>
+ * b) equals compares the cached hashes and then the two arrays wholesale,
+ * which modern JVMs turn into vectorized compares.
+ * <p>
+ * c) hashCode is cached, and is kept up to date on every set rather than
+ * recomputed. Each fact value gets its own well-mixed 64-bit key and the
+ * hash is the XOR of the keys of every fact that is not at its default. That
+ * makes a set O(1) no matter how big the state is, and keeps collisions in
+ * the planner's hash maps rare.
+ * <p>
+ * d) derive is cheaper still. A derived world state only points at its
+ * parent's arrays and records the words and numbers that it changes. Since
+ * the hash is kept up to date incrementally, the planner can look a derived
+ * state up in its hash maps without ever copying the arrays, and only
+ * materializes the states that it keeps.
+ *
+ * @version 0.1
+ * @since 0.1
+ */
+public class FactWorldState implements DeltaWorldState<FactWorldState>, FactSource {
+	private FactSchema schema;
+
+	/**
+	 * Our own storage. Null while we are derived and not yet materialized.
+	 */
+	private long[] flags;
+	private int[] numbers;
+	private long hash;
+
+	/**
+	 * The materialized world state we were derived from, or null if we have
+	 * our own storage.
+	 */
+	private FactWorldState base;
+
+	/**
+	 * While derived, the flag words and number slots that differ from base.
+	 * These are tiny and scanned linearly.
+	 */
+	private int[] flagDiffWords;
+	private long[] flagDiffValues;
+	private int flagDiffCount;
+	private int[] numberDiffSlots;
+	private int[] numberDiffValues;
+	private int numberDiffCount;
+
+	public FactWorldState(FactSchema schema) {
+		schema.lock();
+		this.schema = schema;
+		this.flags = new long[schema.getFlagWordCount()];
+		this.numbers = new int[schema.getNumberCount()];
+		// Every fact is at its default, and defaults contribute nothing.
+		this.hash = 0;
+	}
+
+	private FactWorldState(FactWorldState other) {
+		this.schema = other.schema;
+		this.hash = other.hash;
+		if (other.base == null) {
+			this.flags = other.flags.clone();
+			this.numbers = other.numbers.clone();
+		} else {
+			this.flags = other.materializedFlags();
+			this.numbers = other.materializedNumbers();
+		}
+	}
+
+	public FactSchema getSchema() {
+		return this.schema;
+	}
+
+	public boolean getFlag(int slot) {
+		return (this.getFlagWord(slot >>> 6) & (1L << slot)) != 0;
+	}
+
+	public void setFlag(int slot, boolean value) {
+		int word = slot >>> 6;
+		long mask = 1L << slot;
+		long old = this.getFlagWord(word);
+		long updated = value ? (old | mask) : (old & ~mask);
+		if (updated == old) return;
+
+		this.setFlagWord(word, updated);
+		this.hash ^= FactWorldState.flagKey(slot);
+	}
+
+	/**
+	 * Facts are our flags, so behaviors can declare flag slots as their
+	 * required facts.
+	 */
+	@Override
+	public boolean hasFact(int fact) {
+		return this.getFlag(fact);
+	}
+
+	public int getNumber(int slot) {
+		if (this.base == null) return this.numbers[slot];
+
+		for (int i = 0; i < this.numberDiffCount; i++) {
+			if (this.numberDiffSlots[i] == slot) return this.numberDiffValues[i];
+		}
+		return this.base.numbers[slot];
+	}
+
+	public void setNumber(int slot, int value) {
+		int old = this.getNumber(slot);
+		if (old == value) return;
+
+		if (this.base == null) {
+			this.numbers[slot] = value;
+		} else {
+			this.setNumberDiff(slot, value);
+		}
+		this.hash ^= FactWorldState.numberKey(slot, old) ^ FactWorldState.numberKey(slot, value);
+	}
+
+	/**
+	 * Convenience for the very common "add to a number" case.
+	 *
+	 * @param slot The number slot to change.
+	 * @param delta How much to add. May be negative.
+	 */
+	public void addNumber(int slot, int delta) {
+		this.setNumber(slot, this.getNumber(slot) + delta);
+	}
+
+	/**
+	 * The full 64-bit hash. hashCode folds this down to 32 bits.
+	 *
+	 * @return The 64-bit hash of this world state.
+	 */
+	public long longHashCode() {
+		return this.hash;
+	}
+
+	/**
+	 * @return True if this world state is derived and still depends on the
+	 *         world state it was derived from.
+	 */
+	public boolean isDerived() {
+		return this.base != null;
+	}
+
+	@Override
+	public Object clone() {
+		return new FactWorldState(this);
+	}
+
+	@Override
+	public FactWorldState derive() {
+		FactWorldState child = new FactWorldState();
+		child.schema = this.schema;
+		child.hash = this.hash;
+		if (this.base == null) {
+			child.base = this;
+		} else {
+			// Never chain more than one level deep, share our base instead.
+			child.base = this.base;
+			if (this.flagDiffCount > 0) {
+				child.flagDiffWords = Arrays.copyOf(this.flagDiffWords, this.flagDiffWords.length);
+				child.flagDiffValues = Arrays.copyOf(this.flagDiffValues, this.flagDiffValues.length);
+				child.flagDiffCount = this.flagDiffCount;
+			}
+			if (this.numberDiffCount > 0) {
+				child.numberDiffSlots = Arrays.copyOf(this.numberDiffSlots, this.numberDiffSlots.length);
+				child.numberDiffValues = Arrays.copyOf(this.numberDiffValues, this.numberDiffValues.length);
+				child.numberDiffCount = this.numberDiffCount;
+			}
+		}
+		return child;
+	}
+
+	@Override
+	public void materialize() {
+		if (this.base == null) return;
+
+		this.flags = this.materializedFlags();
+		this.numbers = this.materializedNumbers();
+		this.base = null;
+		this.flagDiffWords = null;
+		this.flagDiffValues = null;
+		this.flagDiffCount = 0;
+		this.numberDiffSlots = null;
+		this.numberDiffValues = null;
+		this.numberDiffCount = 0;
+	}
+
+	@Override
+	public boolean equals(Object o) {
+		if (o == this) return true;
+		if (!(o instanceof FactWorldState)) return false;
+
+		FactWorldState other = (FactWorldState)o;
+		if (this.hash != other.hash) return false;
+		if (this.schema != other.schema) return false;
+
+		if (this.base == null && other.base == null) {
+			return Arrays.equals(this.flags, other.flags) && Arrays.equals(this.numbers, other.numbers);
+		}
+
+		int wordCount = this.schema.getFlagWordCount();
+		for (int i = 0; i < wordCount; i++) {
+			if (this.getFlagWord(i) != other.getFlagWord(i)) return false;
+		}
+		int numberCount = this.schema.getNumberCount();
+		for (int i = 0; i < numberCount; i++) {
+			if (this.getNumber(i) != other.getNumber(i)) return false;
+		}
+		return true;
+	}
+
+	@Override
+	public int hashCode() {
+		return (int)(this.hash ^ (this.hash >>> 32));
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder sb = new StringBuilder("FactWorldState[");
+		boolean first = true;
+		for (int i = 0; i < this.schema.getFlagCount(); i++) {
+			if (!this.getFlag(i)) continue;
+			if (!first) sb.append(", ");
+			sb.append(this.schema.getFlagName(i));
+			first = false;
+		}
+		for (int i = 0; i < this.schema.getNumberCount(); i++) {
+			if (!first) sb.append(", ");
+			sb.append(this.schema.getNumberName(i)).append(": ").append(this.getNumber(i));
+			first = false;
+		}
+		return sb.append("]").toString();
+	}
+
+	/**
+	 * Only used by derive, which fills everything in itself.
+	 */
+	private FactWorldState() {
+	}
+
+	private long getFlagWord(int word) {
+		if (this.base == null) return this.flags[word];
+
+		for (int i = 0; i < this.flagDiffCount; i++) {
+			if (this.flagDiffWords[i] == word) return this.flagDiffValues[i];
+		}
+		return this.base.flags[word];
+	}
+
+	private void setFlagWord(int word, long value) {
+		if (this.base == null) {
+			this.flags[word] = value;
+			return;
+		}
+
+		for (int i = 0; i < this.flagDiffCount; i++) {
+			if (this.flagDiffWords[i] == word) {
+				this.flagDiffValues[i] = value;
+				return;
+			}
+		}
+
+		if (this.flagDiffWords == null) {
+			this.flagDiffWords = new int[4];
+			this.flagDiffValues = new long[4];
+		} else if (this.flagDiffCount == this.flagDiffWords.length) {
+			this.flagDiffWords = Arrays.copyOf(this.flagDiffWords, this.flagDiffCount * 2);
+			this.flagDiffValues = Arrays.copyOf(this.flagDiffValues, this.flagDiffCount * 2);
+		}
+		this.flagDiffWords[this.flagDiffCount] = word;
+		this.flagDiffValues[this.flagDiffCount] = value;
+		this.flagDiffCount++;
+	}
+
+	private void setNumberDiff(int slot, int value) {
+		for (int i = 0; i < this.numberDiffCount; i++) {
+			if (this.numberDiffSlots[i] == slot) {
+				this.numberDiffValues[i] = value;
+				return;
+			}
+		}
+
+		if (this.numberDiffSlots == null) {
+			this.numberDiffSlots = new int[4];
+			this.numberDiffValues = new int[4];
+		} else if (this.numberDiffCount == this.numberDiffSlots.length) {
+			this.numberDiffSlots = Arrays.copyOf(this.numberDiffSlots, this.numberDiffCount * 2);
+			this.numberDiffValues = Arrays.copyOf(this.numberDiffValues, this.numberDiffCount * 2);
+		}
+		this.numberDiffSlots[this.numberDiffCount] = slot;
+		this.numberDiffValues[this.numberDiffCount] = value;
+		this.numberDiffCount++;
+	}
+
+	private long[] materializedFlags() {
+		long[] result = this.base.flags.clone();
+		for (int i = 0; i < this.flagDiffCount; i++) {
+			result[this.flagDiffWords[i]] = this.flagDiffValues[i];
+		}
+		return result;
+	}
+
+	private int[] materializedNumbers() {
+		int[] result = this.base.numbers.clone();
+		for (int i = 0; i < this.numberDiffCount; i++) {
+			result[this.numberDiffSlots[i]] = this.numberDiffValues[i];
+		}
+		return result;
+	}
+
+	/**
+	 * The hash key of a flag slot being set.
+	 */
+	static long flagKey(int slot) {
+		return FactWorldState.mix(0x9E3779B97F4A7C15L * (slot + 1));
+	}
+
+	/**
+	 * The hash key of a number slot holding a value. A value of 0 always has
+	 * a key of 0 so that blank world states do not need any hashing work.
+	 */
+	static long numberKey(int slot, int value) {
+		if (value == 0) return 0;
+		long seed = 0xC2B2AE3D27D4EB4FL * (slot + 1);
+		return FactWorldState.mix(seed + value) ^ FactWorldState.mix(seed);
+	}
+
+	/**
+	 * The SplitMix64 finalizer. Small changes in the input flip about half of
+	 * the output bits.
+	 */
+	private static long mix(long z) {
+		z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+		z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+		return z ^ (z >>> 31);
+	}
+}
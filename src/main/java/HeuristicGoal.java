@@ -0,0 +1,31 @@
+package com.gracefulcode.ai;
+
+/**
+ * A Goal that can also estimate how much it will cost to get from a world
+ * state to somewhere that satisfies it. With an estimate, the planner runs a
+ * proper A* search: it always expands the world state with the lowest cost so
+ * far plus estimated cost to go, and it can stop as soon as nothing left
+ * could beat the best plan it has found.
+ * <p>
+ * For the plans to be the cheapest possible, the estimate must never be more
+ * than the real cost (it must be "admissible"). An estimate of 0 is always
+ * admissible, but doesn't help. The closer you can get to the real cost
+ * without going over, the fewer world states the planner has to look at.
+ * <p>
+ * The Comparator part of the goal is still used, but only to break ties
+ * between world states that look equally good.
+ *
+ * @version 0.1
+ * @since 0.1
+ */
+public interface HeuristicGoal<WS extends WorldState> extends Goal<WS> {
+	/**
+	 * Estimates the cost of the cheapest chain of behaviors that gets from
+	 * this world state to one that satisfies this goal. Should be 0 for world
+	 * states that already satisfy it, and never negative.
+	 *
+	 * @param worldState The world state to estimate from.
+	 * @return The estimated remaining cost.
+	 */
+	public float estimateCost(WS worldState);
+}
@@ -0,0 +1,309 @@
+package com.gracefulcode.ai;
+
+import com.gracefulcode.ai.internal.IllegalCloneException;
+import com.gracefulcode.ai.internal.IllegalCostException;
+import com.gracefulcode.ai.internal.IllegalPlanException;
+import com.gracefulcode.ai.internal.NodeStore;
+import com.gracefulcode.ai.internal.ParallelSearch;
+import com.gracefulcode.ai.internal.PreconditionIndex;
+import com.gracefulcode.ai.internal.SearchShard;
+import com.gracefulcode.ai.internal.ShardNodeStore;
+
+import java.util.ArrayList;
+
+/**
+ * Plans one big plan on several cores at once, HDA* style. Where
+ * BatchPlanner helps when there are lots of agents, this helps when there is
+ * one search too big for a single core.
+ * <p>
+ * Every world state belongs to one worker thread, picked by its hash. Each
+ * worker keeps the nodes, lookup table and open set for its own world states
+ * and expands them best first. Successors that belong to another worker are
+ * handed over through a lock-free queue. Workers never wait on each other,
+ * and the search ends once no worker has any node left that could beat the
+ * cheapest plan found so far and nothing is still being handed over.
+ * <p>
+ * Plans are always the cheapest, as long as a HeuristicGoal's estimates never
+ * overshoot. Without a HeuristicGoal the search simply goes cheapest first.
+ * Unlike Planner, the goal's comparator is only used to break ties.
+ * <p>
+ * World states, behaviors, goals and the behavior provider are all used from
+ * several threads at the same time, with the same rules as for BatchPlanner.
+ * On top of that, a world state is handed from the worker that made it to
+ * the worker that owns it, so its equals and hashCode must not depend on
+ * anything the first worker might still change. DeltaWorldStates are made to
+ * stand on their own before they are handed over. There is no PlannerDebugger
+ * support, and no partial plans: plan runs to the end.
+ *
+ * @version 0.1
+ * @since 0.1
+ */
+public class ParallelPlanner<
+	WS extends WorldState,
+	G extends Goal<WS>,
+	B extends Behavior<WS>,
+	BP extends Iterable<B>
+> {
+	private int threads;
+
+	/**
+	 * A planner that uses every core.
+	 */
+	public ParallelPlanner() {
+		this(Runtime.getRuntime().availableProcessors());
+	}
+
+	/**
+	 * @param threads How many worker threads to search with. One of them is
+	 *        the thread that calls plan.
+	 */
+	public ParallelPlanner(int threads) {
+		if (threads < 1) {
+			throw new IllegalArgumentException("Need at least one thread, not " + threads);
+		}
+		this.threads = threads;
+	}
+
+	public int getThreads() {
+		return this.threads;
+	}
+
+	/**
+	 * Finds the cheapest plan from initialState to the goal, and waits for it.
+	 *
+	 * @throws IllegalCostException if a behavior returns a cost that is &lt;= 0
+	 * @throws IllegalCloneException if a world state clone returns itself
+	 * @throws IllegalPlanException if no plan reaches the goal
+	 * @throws InterruptedException if the calling thread is interrupted. The
+	 *         other workers are stopped before this is thrown.
+	 *
+	 * @param initialState The world state that this AI system begins at.
+	 * @param goal The goal that we are ultimately trying to achieve.
+	 * @param behaviorProvider The behaviors that we are allowed to use in our
+	 *        plan.
+	 *
+	 * @return The plan, in the same reverse order that Planner.getPlan
+	 *         returns.
+	 */
+	public Plan<B> plan(WS initialState, G goal, BP behaviorProvider) throws IllegalCostException, IllegalCloneException, IllegalPlanException, InterruptedException {
+		Plan<B> plan = new Plan<B>();
+		if (goal.isSatisfied(initialState)) {
+			plan.setSuboptimalityBound(1.0f);
+			return plan;
+		}
+
+		ArrayList<B> behaviors = new ArrayList<B>();
+		for (B b: behaviorProvider) {
+			behaviors.add(b);
+		}
+
+		ParallelSearch<WS, B> search = new ParallelSearch<WS, B>(this.threads, goal, behaviors);
+		for (SearchShard<WS, B> shard: search.shards) {
+			shard.preconditionIndex = PreconditionIndex.build(initialState, behaviors);
+		}
+
+		SearchShard<WS, B> rootShard = search.shards[search.shardFor(initialState)];
+		int root = rootShard.nodes.addRoot(initialState);
+		rootShard.nodes.setHeuristic(root, search.estimateCost(initialState));
+		rootShard.stateToNode.put(initialState, root);
+		rootShard.openSet.add(root);
+		search.pending.incrementAndGet();
+
+		// Starting a thread publishes everything we've done so far to it.
+		Thread[] workers = new Thread[this.threads - 1];
+		for (int i = 0; i < workers.length; i++) {
+			workers[i] = new Thread(new Worker(search, search.shards[i + 1]), "ParallelPlanner-" + (i + 1));
+			workers[i].setDaemon(true);
+			workers[i].start();
+		}
+		new Worker(search, search.shards[0]).run();
+
+		try {
+			for (Thread worker: workers) {
+				worker.join();
+			}
+		} catch (InterruptedException e) {
+			search.done = true;
+			throw e;
+		}
+
+		// Every worker is joined, so everything they wrote is visible.
+		Throwable failure = search.failure;
+		if (failure != null) {
+			if (failure instanceof IllegalCostException) throw (IllegalCostException)failure;
+			if (failure instanceof IllegalCloneException) throw (IllegalCloneException)failure;
+			if (failure instanceof RuntimeException) throw (RuntimeException)failure;
+			if (failure instanceof Error) throw (Error)failure;
+			throw new RuntimeException(failure);
+		}
+
+		int shard = search.getBestShard();
+		int node = search.getBestNode();
+		if (node == NodeStore.NONE) {
+			throw new IllegalPlanException(null);
+		}
+		while (true) {
+			ShardNodeStore<WS, B> nodes = search.shards[shard].nodes;
+			int parent = nodes.getParent(node);
+			if (parent == NodeStore.NONE) break;
+
+			plan.add(nodes.getBehavior(node));
+			shard = nodes.getParentShard(node);
+			node = parent;
+		}
+		plan.setSuboptimalityBound(1.0f);
+		return plan;
+	}
+
+	/**
+	 * The loop that each worker runs: deal with everything in our inbox, then
+	 * expand our most promising node, until the search is over.
+	 */
+	private class Worker implements Runnable {
+		private ParallelSearch<WS, B> search;
+		private SearchShard<WS, B> shard;
+
+		public Worker(ParallelSearch<WS, B> search, SearchShard<WS, B> shard) {
+			this.search = search;
+			this.shard = shard;
+		}
+
+		@Override
+		public void run() {
+			try {
+				this.search();
+			} catch (Throwable t) {
+				this.search.fail(t);
+			}
+		}
+
+		private void search() throws IllegalCostException, IllegalCloneException {
+			ParallelSearch<WS, B> search = this.search;
+			SearchShard<WS, B> shard = this.shard;
+
+			while (!search.done) {
+				SearchShard.Message<WS, B> message = shard.inbox.poll();
+				if (message != null) {
+					// Counted out only after anything it made is counted in.
+					ParallelPlanner.this.receive(search, shard, message.worldState, message.behavior, message.parentShard, message.parent, message.cost, message.heuristic);
+					search.pending.decrementAndGet();
+					continue;
+				}
+
+				if (shard.openSet.size() > 0) {
+					int node = shard.openSet.peek();
+					if (shard.nodes.getEstimatedTotalCost(node) < search.getBestCost()) {
+						shard.openSet.poll();
+						ParallelPlanner.this.expand(search, shard, node);
+						search.pending.decrementAndGet();
+						continue;
+					}
+
+					// Nothing here can beat what we have, and what we have
+					// only gets cheaper.
+					search.pending.addAndGet(-shard.openSet.size());
+					shard.openSet.clear();
+				}
+
+				if (search.pending.get() == 0) {
+					search.done = true;
+					return;
+				}
+				Thread.yield();
+			}
+		}
+	}
+
+	/**
+	 * Expands one of our nodes, keeping successors that we own and handing
+	 * the rest to their owners.
+	 */
+	private void expand(ParallelSearch<WS, B> search, SearchShard<WS, B> shard, int node) throws IllegalCostException, IllegalCloneException {
+		ShardNodeStore<WS, B> nodes = shard.nodes;
+		nodes.close(node);
+		shard.expansions++;
+
+		WS worldState = nodes.getWorldState(node);
+		float cost = nodes.getCost(node);
+
+		PreconditionIndex<WS, B> index = shard.preconditionIndex;
+		int count = index == null ? search.behaviors.size() : index.findCandidates((FactSource)worldState);
+		for (int i = 0; i < count; i++) {
+			B behavior = index == null ? search.behaviors.get(i) : index.getCandidate(i);
+			if (!behavior.isRunnable(worldState)) continue;
+
+			float newCost = cost + NodeStore.getStepCost(behavior, worldState);
+			if (newCost >= search.getBestCost()) continue;
+
+			WS newWorldState = this.copyWorldState(worldState);
+			behavior.modifyState(newWorldState);
+			if (newWorldState instanceof DeltaWorldState) {
+				((DeltaWorldState<?>)newWorldState).materialize();
+			}
+
+			float heuristic = search.estimateCost(newWorldState);
+			if (newCost + heuristic >= search.getBestCost()) continue;
+
+			int owner = search.shardFor(newWorldState);
+			if (owner == shard.id) {
+				this.receive(search, shard, newWorldState, behavior, shard.id, node, newCost, heuristic);
+			} else {
+				search.pending.incrementAndGet();
+				search.shards[owner].inbox.offer(new SearchShard.Message<WS, B>(newWorldState, behavior, shard.id, node, newCost, heuristic));
+			}
+		}
+	}
+
+	/**
+	 * Takes in a world state that belongs to this shard: a new node, a
+	 * cheaper way to one we already have, or nothing new at all.
+	 */
+	private void receive(ParallelSearch<WS, B> search, SearchShard<WS, B> shard, WS worldState, B behavior, int parentShard, int parent, float cost, float heuristic) {
+		ShardNodeStore<WS, B> nodes = shard.nodes;
+
+		int existing = shard.stateToNode.get(worldState);
+		if (existing != NodeStore.NONE) {
+			if (cost >= nodes.getCost(existing)) return;
+
+			nodes.improve(existing, behavior, parentShard, parent, cost);
+			if (search.goal.isSatisfied(worldState)) {
+				search.offerSolution(shard.id, existing, cost);
+			} else if (shard.openSet.contains(existing)) {
+				shard.openSet.update(existing);
+			} else {
+				nodes.reopen(existing);
+				shard.openSet.add(existing);
+				search.pending.incrementAndGet();
+			}
+			return;
+		}
+
+		int node = nodes.add(worldState, behavior, parentShard, parent, cost);
+		nodes.setHeuristic(node, heuristic);
+		shard.stateToNode.putAfterMiss(worldState, node);
+
+		// Nodes that satisfy the goal are never expanded.
+		if (search.goal.isSatisfied(worldState)) {
+			nodes.close(node);
+			search.offerSolution(shard.id, node, cost);
+		} else {
+			shard.openSet.add(node);
+			search.pending.incrementAndGet();
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	private WS copyWorldState(WS worldState) throws IllegalCloneException {
+		WS copy;
+		if (worldState instanceof DeltaWorldState) {
+			copy = ((DeltaWorldState<WS>)worldState).derive();
+		} else {
+			copy = (WS)worldState.clone();
+		}
+
+		if (copy == worldState) {
+			throw new IllegalCloneException(worldState);
+		}
+		return copy;
+	}
+}
@@ -0,0 +1,31 @@
+package com.gracefulcode.ai;
+
+import java.util.ArrayList;
+
+/**
+ * The behaviors that the planner came up with, along with how close to the
+ * cheapest plan they are known to be. It is an ArrayList, so anything that
+ * only wants the behaviors can treat it as one.
+ *
+ * @version 0.1
+ * @since 0.1
+ */
+public class Plan<B> extends ArrayList<B> {
+	private static final long serialVersionUID = 1L;
+
+	private float suboptimalityBound = Float.POSITIVE_INFINITY;
+
+	/**
+	 * @return How many times more than the cheapest plan this one might
+	 *         cost. 1 means that it is the cheapest. Infinite if the plan
+	 *         doesn't reach the goal, such as when planning was stopped early,
+	 *         or if the planner can't tell, as with greedy planning.
+	 */
+	public float getSuboptimalityBound() {
+		return this.suboptimalityBound;
+	}
+
+	public void setSuboptimalityBound(float suboptimalityBound) {
+		this.suboptimalityBound = suboptimalityBound;
+	}
+}
@@ -0,0 +1,255 @@
+package com.gracefulcode.ai;
+
+import com.gracefulcode.ai.internal.IllegalCloneException;
+import com.gracefulcode.ai.internal.IllegalCostException;
+import com.gracefulcode.ai.internal.IllegalPlanException;
+import com.gracefulcode.ai.internal.State;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Remembers finished plans by initial world state and goal, so that agents
+ * asking the same question in quick succession don't each run a full search.
+ * When the cache is full, the plan that was used least recently is evicted.
+ * <p>
+ * A cache assumes that every plan in it was made with the same behaviors. If
+ * your behaviors change (or their costs do), call {@link #invalidateAll}.
+ * Keep one cache per set of behaviors if you have several.
+ * <p>
+ * Keys use your world state's equals and hashCode, and your goal's. Goals
+ * that don't override equals only match themselves, which is fine if you
+ * reuse goal objects. World states are cloned when they are stored, so it is
+ * safe to keep modifying the world state you planned from.
+ * <p>
+ * This is safe to use from many threads at once. Planning happens outside of
+ * the lock, so two threads that miss on the same key at the same moment will
+ * both plan.
+ *
+ * @version 0.1
+ * @since 0.1
+ */
+public class PlanCache<
+	WS extends WorldState,
+	G extends Goal<WS>,
+	B extends Behavior<WS>,
+	BP extends Iterable<B>
+> {
+	private int capacity;
+	private LinkedHashMap<PlanKey<WS, G>, Plan<B>> plans;
+
+	/**
+	 * Bumped on every invalidation, single plans included, so that plans that
+	 * were being made while we invalidated don't sneak back in. Invalidating
+	 * one plan also keeps any other plan in flight at the time from being
+	 * remembered, which only costs a replan.
+	 */
+	private long generation;
+
+	private long hits;
+	private long misses;
+	private long evictions;
+
+	/**
+	 * @param capacity The most plans to remember at once.
+	 */
+	public PlanCache(int capacity) {
+		this.capacity = capacity;
+		this.plans = new LinkedHashMap<PlanKey<WS, G>, Plan<B>>(16, 0.75f, true) {
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<PlanKey<WS, G>, Plan<B>> eldest) {
+				if (this.size() > PlanCache.this.capacity) {
+					PlanCache.this.evictions++;
+					return true;
+				}
+				return false;
+			}
+		};
+	}
+
+	/**
+	 * Gets a plan from the cache, or makes one with the given planner and
+	 * remembers it. Plans that ran out of budget before finishing are
+	 * returned but not remembered.
+	 *
+	 * @throws IllegalCostException if a behavior returns a cost &lt;= 0
+	 * @throws IllegalCloneException if your world state clone returns itself
+	 * @throws IllegalPlanException if no plan could be found
+	 *
+	 * @param planner The planner to plan with on a miss.
+	 * @param request What to plan.
+	 *
+	 * @return The plan, in the same reverse order that Planner.getPlan
+	 *         returns, along with its suboptimality bound. This is your own
+	 *         copy to do with as you please.
+	 */
+	public Plan<B> getPlan(Planner<WS, G, B, BP> planner, PlanRequest<WS, G, B, BP> request) throws IllegalCostException, IllegalCloneException, IllegalPlanException {
+		Plan<B> cached = this.get(request.getInitialState(), request.getGoal());
+		if (cached != null) return cached;
+
+		long startGeneration;
+		synchronized (this) {
+			startGeneration = this.generation;
+		}
+
+		// Snapshot the key before planning, in case the caller's world state
+		// changes underneath us.
+		@SuppressWarnings("unchecked")
+		WS key = (WS)request.getInitialState().clone();
+
+		State<WS, G, B, BP> state = planner.startPlanning(
+			request.getInitialState(),
+			request.getGoal(),
+			request.getBehaviorProvider()
+		);
+		StepResult result = planner.stepStateWithBudget(state, request.getBudget());
+		Plan<B> plan = planner.getPlan(state);
+
+		if (result == StepResult.FINISHED) {
+			synchronized (this) {
+				if (this.generation == startGeneration) {
+					this.plans.put(new PlanKey<WS, G>(key, request.getGoal()), plan);
+				}
+			}
+		}
+		return PlanCache.copy(plan);
+	}
+
+	/**
+	 * Convenience for getPlan with an unlimited budget.
+	 *
+	 * @throws IllegalCostException if a behavior returns a cost &lt;= 0
+	 * @throws IllegalCloneException if your world state clone returns itself
+	 * @throws IllegalPlanException if no plan could be found
+	 *
+	 * @param planner The planner to plan with on a miss.
+	 * @param initialState The world state that this AI system begins at.
+	 * @param goal The goal that we are ultimately trying to achieve.
+	 * @param behaviorProvider The behaviors that we are allowed to use.
+	 *
+	 * @return The plan, in reverse order.
+	 */
+	public Plan<B> getPlan(Planner<WS, G, B, BP> planner, WS initialState, G goal, BP behaviorProvider) throws IllegalCostException, IllegalCloneException, IllegalPlanException {
+		return this.getPlan(planner, new PlanRequest<WS, G, B, BP>(initialState, goal, behaviorProvider));
+	}
+
+	/**
+	 * Looks up a plan without making one. Counts as a hit or a miss.
+	 *
+	 * @param initialState The world state the plan starts at.
+	 * @param goal The goal of the plan.
+	 *
+	 * @return A copy of the cached plan, or null if there isn't one.
+	 */
+	public synchronized Plan<B> get(WS initialState, G goal) {
+		Plan<B> plan = this.plans.get(new PlanKey<WS, G>(initialState, goal));
+		if (plan == null) {
+			this.misses++;
+			return null;
+		}
+		this.hits++;
+		return PlanCache.copy(plan);
+	}
+
+	/**
+	 * Remembers a plan that you made yourself.
+	 *
+	 * @param initialState The world state the plan starts at. This is cloned.
+	 * @param goal The goal of the plan.
+	 * @param plan The plan, in the same reverse order that Planner.getPlan
+	 *        returns. This is copied. If it is a Plan its suboptimality bound
+	 *        is kept, otherwise the bound is unknown, which is infinite.
+	 */
+	public void put(WS initialState, G goal, ArrayList<B> plan) {
+		@SuppressWarnings("unchecked")
+		WS key = (WS)initialState.clone();
+		Plan<B> copy = new Plan<B>();
+		copy.addAll(plan);
+		if (plan instanceof Plan) {
+			copy.setSuboptimalityBound(((Plan<B>)plan).getSuboptimalityBound());
+		}
+
+		synchronized (this) {
+			this.plans.put(new PlanKey<WS, G>(key, goal), copy);
+		}
+	}
+
+	/**
+	 * Forgets a single plan. If it is being made while this is called, it
+	 * will not be remembered.
+	 *
+	 * @param initialState The world state the plan starts at.
+	 * @param goal The goal of the plan.
+	 */
+	public synchronized void invalidate(WS initialState, G goal) {
+		this.plans.remove(new PlanKey<WS, G>(initialState, goal));
+		this.generation++;
+	}
+
+	/**
+	 * Forgets every plan. Call this whenever your behaviors change. Plans
+	 * that are being made while this is called will not be remembered.
+	 */
+	public synchronized void invalidateAll() {
+		this.plans.clear();
+		this.generation++;
+	}
+
+	public synchronized int size() {
+		return this.plans.size();
+	}
+
+	public int getCapacity() {
+		return this.capacity;
+	}
+
+	public synchronized long getHits() {
+		return this.hits;
+	}
+
+	public synchronized long getMisses() {
+		return this.misses;
+	}
+
+	public synchronized long getEvictions() {
+		return this.evictions;
+	}
+
+	private static <B> Plan<B> copy(Plan<B> plan) {
+		Plan<B> copy = new Plan<B>();
+		copy.addAll(plan);
+		copy.setSuboptimalityBound(plan.getSuboptimalityBound());
+		return copy;
+	}
+
+	/**
+	 * Initial world state and goal, together.
+	 */
+	private static class PlanKey<WS extends WorldState, G> {
+		private WS initialState;
+		private G goal;
+		private int hash;
+
+		public PlanKey(WS initialState, G goal) {
+			this.initialState = initialState;
+			this.goal = goal;
+			this.hash = initialState.hashCode() * 31 + goal.hashCode();
+		}
+
+		@Override
+		public int hashCode() {
+			return this.hash;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (!(o instanceof PlanKey)) return false;
+
+			PlanKey<?, ?> other = (PlanKey<?, ?>)o;
+			return this.hash == other.hash
+				&& this.goal.equals(other.goal)
+				&& this.initialState.equals(other.initialState);
+		}
+	}
+}
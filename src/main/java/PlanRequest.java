@@ -0,0 +1,63 @@
+package com.gracefulcode.ai;
+
+/**
+ * Everything the planner needs to come up with one plan: where we start, what
+ * we want, what we're allowed to do, and how much work we may spend on it.
+ * Used when handing lots of planning work over at once, such as to a
+ * {@link BatchPlanner}.
+ *
+ * @version 0.1
+ * @since 0.1
+ */
+public class PlanRequest<
+	WS extends WorldState,
+	G extends Goal<WS>,
+	B extends Behavior<WS>,
+	BP extends Iterable<B>
+> {
+	private WS initialState;
+	private G goal;
+	private BP behaviorProvider;
+	private StepBudget budget;
+
+	/**
+	 * A request with no limit on how much work the planner may do.
+	 *
+	 * @param initialState The world state that this AI system begins at.
+	 * @param goal The goal that we are ultimately trying to achieve.
+	 * @param behaviorProvider The behaviors that we are allowed to use.
+	 */
+	public PlanRequest(WS initialState, G goal, BP behaviorProvider) {
+		this(initialState, goal, behaviorProvider, StepBudget.unlimited());
+	}
+
+	/**
+	 * @param initialState The world state that this AI system begins at.
+	 * @param goal The goal that we are ultimately trying to achieve.
+	 * @param behaviorProvider The behaviors that we are allowed to use.
+	 * @param budget How much work the planner may spend on this plan in
+	 *        total. When the budget runs out, the best plan so far is used.
+	 */
+	public PlanRequest(WS initialState, G goal, BP behaviorProvider, StepBudget budget) {
+		this.initialState = initialState;
+		this.goal = goal;
+		this.behaviorProvider = behaviorProvider;
+		this.budget = budget;
+	}
+
+	public WS getInitialState() {
+		return this.initialState;
+	}
+
+	public G getGoal() {
+		return this.goal;
+	}
+
+	public BP getBehaviorProvider() {
+		return this.behaviorProvider;
+	}
+
+	public StepBudget getBudget() {
+		return this.budget;
+	}
+}
@@ -4,10 +4,20 @@ import com.gracefulcode.ai.internal.GlobalState;
 import com.gracefulcode.ai.internal.IllegalCloneException;
 import com.gracefulcode.ai.internal.IllegalCostException;
 import com.gracefulcode.ai.internal.IllegalPlanException;
-import com.gracefulcode.ai.internal.Node;
+import com.gracefulcode.ai.internal.IterativeDeepeningState;
+import com.gracefulcode.ai.internal.NodeStore;
+import com.gracefulcode.ai.internal.OffHeapNodeStore;
+import com.gracefulcode.ai.internal.PreconditionIndex;
 import com.gracefulcode.ai.internal.State;
+import com.gracefulcode.ai.internal.Successors;
 
 import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.RecursiveAction;
 
 /**
  * Planner is the real meat and potatoes of this operation. Here's where all
@@ -23,163 +33,1260 @@ public class Planner<
 	B extends Behavior<WS>,
 	BP extends Iterable<B>
 > {
+	/**
+	 * Where behaviors are evaluated in parallel, or null to evaluate them one
+	 * at a time on the calling thread.
+	 */
+	private ForkJoinPool evaluationPool;
+
 	public Planner() {
 
 	}
 
 	/**
-	 * startPlanning consructs the initial state representing where the AI
-	 * system begins. You must call stepState to step this state forward in
-	 * planning.
+	 * Creates a planner that evaluates the behaviors for each expansion in
+	 * parallel on the given pool. This only pays off when behaviors do real
+	 * work in isRunnable, modifyState or getCost, since every expansion
+	 * then waits on the pool.
+	 * <p>
+	 * Plans come out exactly as they would otherwise. Each behavior is
+	 * checked, costed and run on a copy of the world state in parallel, and
+	 * the results are then taken in behavior order on the calling thread, so
+	 * the PlannerDebugger hears about the same events in the same order. It
+	 * just hears about them after the work has been done. Exceptions are
+	 * thrown for the same behavior that would have thrown them otherwise.
+	 * <p>
+	 * Behaviors are used from several threads at once, with the same rules
+	 * as for BatchPlanner. The world state being expanded is only ever
+	 * copied, so ReversibleBehaviors are not run in place. States made with
+	 * startIterativeDeepeningPlanning still evaluate one behavior at a time.
+	 *
+	 * @param evaluationPool The pool to evaluate behaviors on.
+	 */
+	public Planner(ForkJoinPool evaluationPool) {
+		this.evaluationPool = evaluationPool;
+	}
+
+	/**
+	 * startPlanning consructs the initial state representing where the AI
+	 * system begins. You must call stepState to step this state forward in
+	 * planning.
+	 *
+	 * @param initialState The world state that this AI system begins at.
+	 * @param goal The goal that we are ultimately trying to achieve.
+	 * @param behaviorProvider The behaviors that we are allowed to use in our
+	 *        plan.
+	 *
+	 * @return The initial State.
+	 */
+	public State<WS, G, B, BP> startPlanning(
+		WS initialState,
+		G goal,
+		BP behaviorProvider
+	) {
+		return new State<WS, G, B, BP>(
+			initialState,
+			initialState,
+			goal,
+			behaviorProvider
+		);
+	}
+
+	/**
+	 * Like startPlanning, but nodes and world states are kept in direct memory
+	 * rather than on the Java heap, so that a search over millions of world
+	 * states doesn't leave the garbage collector with millions of objects to
+	 * trace. World states are written with the given codec when they are
+	 * found and read back each time they are expanded, which costs some
+	 * speed.
+	 * <p>
+	 * Call close on the returned State when you're done with it to free its
+	 * memory right away. It can be reused with startPlanning(reuse, ...)
+	 * until then.
+	 *
+	 * @param initialState The world state that this AI system begins at.
+	 * @param goal The goal that we are ultimately trying to achieve.
+	 * @param behaviorProvider The behaviors that we are allowed to use in our
+	 *        plan.
+	 * @param codec Writes and reads world states.
+	 *
+	 * @return The initial State.
+	 */
+	public State<WS, G, B, BP> startOffHeapPlanning(
+		WS initialState,
+		G goal,
+		BP behaviorProvider,
+		WorldStateCodec<WS> codec
+	) {
+		return new State<WS, G, B, BP>(
+			initialState,
+			initialState,
+			goal,
+			behaviorProvider,
+			new OffHeapNodeStore<WS, B>(16, codec)
+		);
+	}
+
+	/**
+	 * Like startPlanning, but reuses a State from an earlier plan instead of
+	 * making a new one. Its collections keep their capacity and its nodes are
+	 * recycled, so an agent that plans over and over with the same State
+	 * allocates very little beyond its own world states.
+	 * <p>
+	 * Get everything you need out of the old plan first: the reused State
+	 * forgets it.
+	 *
+	 * @param reuse The State to reuse. May be null, in which case this is the
+	 *        same as startPlanning.
+	 * @param initialState The world state that this AI system begins at.
+	 * @param goal The goal that we are ultimately trying to achieve.
+	 * @param behaviorProvider The behaviors that we are allowed to use in our
+	 *        plan.
+	 *
+	 * @return The initial State, which is reuse if it was given.
+	 */
+	public State<WS, G, B, BP> startPlanning(
+		State<WS, G, B, BP> reuse,
+		WS initialState,
+		G goal,
+		BP behaviorProvider
+	) {
+		if (reuse == null) {
+			return this.startPlanning(initialState, goal, behaviorProvider);
+		}
+
+		reuse.reset(initialState, goal, behaviorProvider);
+		return reuse;
+	}
+
+	/**
+	 * Like startPlanning, but the returned State remembers what every
+	 * expansion found so that it can be replanned cheaply with replan. This
+	 * costs some memory per expanded world state.
+	 *
+	 * @param initialState The world state that this AI system begins at.
+	 * @param goal The goal that we are ultimately trying to achieve.
+	 * @param behaviorProvider The behaviors that we are allowed to use in our
+	 *        plan.
+	 *
+	 * @return The initial State.
+	 */
+	public State<WS, G, B, BP> startIncrementalPlanning(
+		WS initialState,
+		G goal,
+		BP behaviorProvider
+	) {
+		State<WS, G, B, BP> state = this.startPlanning(initialState, goal, behaviorProvider);
+		state.getGlobalState().incremental = true;
+		state.getGlobalState().nodes.setTrackChildren(true);
+		return state;
+	}
+
+	/**
+	 * Like startPlanning, but the returned State never keeps much more than
+	 * maxNodes world states around, no matter how big the search gets. When
+	 * it has too many, the least promising world states it hasn't expanded
+	 * yet are forgotten. With a HeuristicGoal, what they were worth is
+	 * remembered by the world state they came from, which is expanded again
+	 * if they turn out to be needed after all. This finds the same plans as
+	 * long as maxNodes is big enough to hold one, at the cost of expanding
+	 * some world states more than once.
+	 * <p>
+	 * Without a HeuristicGoal, forgotten world states are gone for good, and
+	 * the plan found may not be the cheapest.
+	 * <p>
+	 * If maxNodes is too small to hold a plan, the search stops as soon as it
+	 * notices. getPlan still works then, or if the search is stopped early.
+	 * It gives the best plan found so far, or the path to the most promising
+	 * world state if there isn't one.
+	 *
+	 * @param initialState The world state that this AI system begins at.
+	 * @param goal The goal that we are ultimately trying to achieve.
+	 * @param behaviorProvider The behaviors that we are allowed to use in our
+	 *        plan.
+	 * @param maxNodes The most world states to keep at once.
+	 *
+	 * @return The initial State.
+	 */
+	public State<WS, G, B, BP> startBoundedPlanning(
+		WS initialState,
+		G goal,
+		BP behaviorProvider,
+		int maxNodes
+	) {
+		if (maxNodes < 2) {
+			throw new IllegalArgumentException("maxNodes must be at least 2, not " + maxNodes);
+		}
+
+		State<WS, G, B, BP> state = this.startPlanning(initialState, goal, behaviorProvider);
+		state.getGlobalState().maxNodes = maxNodes;
+		state.getGlobalState().nodes.setTrackChildren(true);
+		return state;
+	}
+
+	/**
+	 * Like startPlanning, but for when any plan at all will do. World states
+	 * are looked at purely in the order that the goal's comparator ranks
+	 * them, and planning stops at the first one that satisfies the goal.
+	 * Costs are still added up, but a cheaper way to reach a world state
+	 * that we already have is ignored, and estimates are never asked for.
+	 * <p>
+	 * This usually finds a plan after looking at very few world states, but
+	 * only as few as the comparator is good at telling which world states
+	 * are closer to the goal. Nothing is known about how the plan compares
+	 * to the cheapest, so its suboptimality bound is infinite.
+	 *
+	 * @param initialState The world state that this AI system begins at.
+	 * @param goal The goal that we are ultimately trying to achieve.
+	 * @param behaviorProvider The behaviors that we are allowed to use in our
+	 *        plan.
+	 *
+	 * @return The initial State.
+	 */
+	public State<WS, G, B, BP> startGreedyPlanning(
+		WS initialState,
+		G goal,
+		BP behaviorProvider
+	) {
+		State<WS, G, B, BP> state = this.startPlanning(initialState, goal, behaviorProvider);
+		state.getGlobalState().greedy = true;
+		return state;
+	}
+
+	/**
+	 * Like startPlanning, but trades plan quality for speed. The estimate from
+	 * the goal is inflated by weight, which pulls the search towards the goal
+	 * and usually finds a plan after looking at far fewer world states. The
+	 * plan is guaranteed to cost at most weight times as much as the
+	 * cheapest, and getPlan reports the bound it actually managed, which is
+	 * often better than that.
+	 *
+	 * @throws IllegalArgumentException if goal isn't a HeuristicGoal, or
+	 *         weight is less than 1.
+	 *
+	 * @param initialState The world state that this AI system begins at.
+	 * @param goal The goal that we are ultimately trying to achieve. It must
+	 *        be a HeuristicGoal whose estimates never overshoot.
+	 * @param behaviorProvider The behaviors that we are allowed to use in our
+	 *        plan.
+	 * @param weight How much to inflate estimates by. 1 is plain A*, 1.5 is
+	 *        happy with plans up to half again as expensive as the cheapest.
+	 *
+	 * @return The initial State.
+	 */
+	public State<WS, G, B, BP> startWeightedPlanning(
+		WS initialState,
+		G goal,
+		BP behaviorProvider,
+		float weight
+	) {
+		if (!(goal instanceof HeuristicGoal)) {
+			throw new IllegalArgumentException("Weighted planning needs a HeuristicGoal.");
+		}
+		if (!(weight >= 1.0f)) {
+			throw new IllegalArgumentException("Weight must be at least 1, not " + weight);
+		}
+
+		State<WS, G, B, BP> state = this.startPlanning(initialState, goal, behaviorProvider);
+		state.getGlobalState().weight = weight;
+		return state;
+	}
+
+	/**
+	 * Like startPlanning, but gets a plan out fast and then keeps improving
+	 * it, ARA* style. The estimate from the goal starts out inflated by
+	 * initialWeight, which heads straight for the goal and finds a plan
+	 * quickly. Every time the plan is proven to be within the current weight
+	 * of the cheapest, the weight is lowered by weightStep and the search
+	 * carries on from where it was, keeping everything it has found. Once the
+	 * weight gets to 1 the search is plain A*, and it ends with the cheapest
+	 * plan.
+	 * <p>
+	 * Step it with a StepBudget so that it returns on time. getPlan gives the
+	 * best plan so far whenever getSuboptimalityBound isn't infinite, and
+	 * that bound says how far from the cheapest it might be.
+	 *
+	 * @throws IllegalArgumentException if goal isn't a HeuristicGoal, or the
+	 *         weights don't make sense.
+	 *
+	 * @param initialState The world state that this AI system begins at.
+	 * @param goal The goal that we are ultimately trying to achieve. It must
+	 *        be a HeuristicGoal whose estimates never overshoot.
+	 * @param behaviorProvider The behaviors that we are allowed to use in our
+	 *        plan.
+	 * @param initialWeight How much to inflate estimates at first. At least 1.
+	 * @param weightStep How much to lower the weight by each time. More than
+	 *        0.
+	 *
+	 * @return The initial State.
+	 */
+	public State<WS, G, B, BP> startAnytimePlanning(
+		WS initialState,
+		G goal,
+		BP behaviorProvider,
+		float initialWeight,
+		float weightStep
+	) {
+		if (!(weightStep > 0.0f)) {
+			throw new IllegalArgumentException("Weight must go down by more than 0, not " + weightStep);
+		}
+
+		State<WS, G, B, BP> state = this.startWeightedPlanning(initialState, goal, behaviorProvider, initialWeight);
+		state.getGlobalState().weightStep = weightStep;
+		return state;
+	}
+
+	/**
+	 * How far the plan getPlan would give right now might be from the
+	 * cheapest plan, as a factor. A plan with a bound of 1.5 costs at most
+	 * 1.5 times as much as the cheapest. This is mostly for anytime planning,
+	 * but works for any State.
+	 *
+	 * @param state The State to ask about.
+	 *
+	 * @return 1 for the cheapest plan, more if it might not be, and infinity
+	 *         if there's no plan that reaches the goal yet.
+	 */
+	public float getSuboptimalityBound(State<WS, G, B, BP> state) {
+		IterativeDeepeningState<WS, B, BP, G> iterative = state.getIterativeDeepeningState();
+		if (iterative != null) {
+			return iterative.solved ? 1.0f : Float.POSITIVE_INFINITY;
+		}
+		return state.getGlobalState().getSuboptimalityBound();
+	}
+
+	/**
+	 * Like startPlanning, but plans with IDA* instead of A*. The returned
+	 * State only remembers the path it is currently looking at, so it needs
+	 * memory for about as many world states as the plan is long, instead of
+	 * for every world state it runs into. Use this when you have lots of
+	 * agents that plan rarely, or very little memory to spare.
+	 * <p>
+	 * The price is time: every iteration starts over from the initial world
+	 * state, and a world state that can be reached several ways is expanded
+	 * once for each. With a HeuristicGoal that never overestimates, plans are
+	 * still the cheapest. Without one, each iteration simply allows a little
+	 * more cost than the last.
+	 * <p>
+	 * Everything else works as usual. Each stepState either goes one world
+	 * state deeper or finishes off the deepest one, and the PlannerDebugger
+	 * hears about every behavior evaluated and every world state visited. If
+	 * you stop early, getPlan gives the path currently being looked at. The
+	 * State can be reused with startPlanning(reuse, ...), and it doesn't have
+	 * a GlobalState.
+	 *
+	 * @param initialState The world state that this AI system begins at.
+	 * @param goal The goal that we are ultimately trying to achieve.
+	 * @param behaviorProvider The behaviors that we are allowed to use in our
+	 *        plan.
+	 *
+	 * @return The initial State.
+	 */
+	public State<WS, G, B, BP> startIterativeDeepeningPlanning(
+		WS initialState,
+		G goal,
+		BP behaviorProvider
+	) {
+		return new State<WS, G, B, BP>(
+			new IterativeDeepeningState<WS, B, BP, G>(initialState, behaviorProvider, goal)
+		);
+	}
+
+	/**
+	 * Plans in the background on the given executor, with no limit on how
+	 * long it may take. See planAsync with a StepBudget.
+	 *
+	 * @param initialState The world state that this AI system begins at.
+	 * @param goal The goal that we are ultimately trying to achieve.
+	 * @param behaviorProvider The behaviors that we are allowed to use in our
+	 *        plan.
+	 * @param executor Where to run the planning.
+	 *
+	 * @return The plan, once there is one.
+	 */
+	public CompletableFuture<Plan<B>> planAsync(
+		WS initialState,
+		G goal,
+		BP behaviorProvider,
+		Executor executor
+	) {
+		return this.planAsync(initialState, goal, behaviorProvider, executor, StepBudget.unlimited());
+	}
+
+	/**
+	 * Plans in the background on the given executor. Planning is done in
+	 * short slices: each one steps for a little while and then hands its
+	 * thread back, submitting the next slice to the executor. Nothing ever
+	 * blocks, so lots of plans can be in flight on a few threads, and this
+	 * works just as well with an executor that runs every task on a virtual
+	 * thread.
+	 * <p>
+	 * Cancelling the future, or completing it yourself, stops planning before
+	 * the next expansion. When the budget runs out, the future completes with
+	 * the best plan so far, the same as getPlan would give. Its
+	 * suboptimality bound is infinite if it doesn't reach the goal yet. The
+	 * budget's time limit is a deadline counted from when planAsync is
+	 * called, and its expansion limit covers the whole plan rather than one
+	 * slice.
+	 * <p>
+	 * The future fails with IllegalPlanException if there is no plan at all,
+	 * or with whatever planning threw. The initial world state, goal and
+	 * behaviors are used from the executor's threads, with the same rules as
+	 * for BatchPlanner.
+	 *
+	 * @param initialState The world state that this AI system begins at.
+	 * @param goal The goal that we are ultimately trying to achieve.
+	 * @param behaviorProvider The behaviors that we are allowed to use in our
+	 *        plan.
+	 * @param executor Where to run the planning.
+	 * @param budget How much work planning may do in total.
+	 *
+	 * @return The plan, once there is one.
+	 */
+	public CompletableFuture<Plan<B>> planAsync(
+		WS initialState,
+		G goal,
+		BP behaviorProvider,
+		Executor executor,
+		StepBudget budget
+	) {
+		PlanTask task = new PlanTask(initialState, goal, behaviorProvider, executor, budget);
+		task.submit();
+		return task.future;
+	}
+
+	/**
+	 * One plan being made by planAsync. Each run is a slice of planning,
+	 * after which it submits itself to run again.
+	 */
+	private class PlanTask implements Runnable {
+		/**
+		 * How long a slice may run before handing its thread back.
+		 */
+		private static final long SLICE_NANOS = 1000L * 1000L;
+
+		public final CompletableFuture<Plan<B>> future = new CompletableFuture<Plan<B>>();
+
+		private WS initialState;
+		private G goal;
+		private BP behaviorProvider;
+		private Executor executor;
+		private StepBudget budget;
+		private long deadline;
+		private State<WS, G, B, BP> state;
+
+		public PlanTask(WS initialState, G goal, BP behaviorProvider, Executor executor, StepBudget budget) {
+			this.initialState = initialState;
+			this.goal = goal;
+			this.behaviorProvider = behaviorProvider;
+			this.executor = executor;
+			this.budget = budget;
+			this.deadline = System.nanoTime() + budget.getMaxNanos();
+		}
+
+		public void submit() {
+			try {
+				this.executor.execute(this);
+			} catch (RuntimeException e) {
+				this.future.completeExceptionally(e);
+			}
+		}
+
+		@Override
+		public void run() {
+			try {
+				// Cancelled, most likely.
+				if (this.future.isDone()) return;
+
+				if (this.state == null) {
+					this.state = Planner.this.startPlanning(this.initialState, this.goal, this.behaviorProvider);
+				}
+
+				StepBudget slice = this.nextSlice();
+				if (slice == null) {
+					this.future.complete(Planner.this.getPlan(this.state));
+					return;
+				}
+
+				StepResult result = Planner.this.stepStateWithBudget(this.state, slice, null, this.future);
+				if (this.future.isDone()) return;
+
+				if (result == StepResult.FINISHED || result == StepResult.OUT_OF_NODES) {
+					this.future.complete(Planner.this.getPlan(this.state));
+					return;
+				}
+
+				// Out of time or expansions, but maybe only for this slice.
+				this.submit();
+			} catch (Throwable t) {
+				this.future.completeExceptionally(t);
+			}
+		}
+
+		/**
+		 * @return A budget for one slice that doesn't go past what's left of
+		 *         the whole budget, or null if nothing is left.
+		 */
+		private StepBudget nextSlice() {
+			StepBudget budget = this.budget;
+
+			long nanos = PlanTask.SLICE_NANOS;
+			if (budget.getMaxNanos() > 0) {
+				long left = this.deadline - System.nanoTime();
+				if (left <= 0) return null;
+				nanos = Math.min(nanos, left);
+			}
+
+			int expansions = 0;
+			if (budget.getMaxExpansions() > 0) {
+				expansions = budget.getMaxExpansions() - this.state.getExpansions();
+				if (expansions <= 0) return null;
+			}
+
+			return new StepBudget(nanos, expansions, budget.getMaxNodes());
+		}
+	}
+
+	/**
+	 * Plans again from a new initial world state, usually because the agent
+	 * has moved on or the world changed underneath it. The goal and
+	 * behaviors stay the same. Call stepState as usual afterwards.
+	 * <p>
+	 * Everything the previous search learned is kept. World states that were
+	 * expanded before are walked using what that expansion found, without
+	 * calling isRunnable, getCost or modifyState again, so a replan that stays
+	 * in known territory only costs the search itself. The new initial world
+	 * state doesn't have to be one we've seen before.
+	 * <p>
+	 * This works on any State, but it only saves behavior calls for States
+	 * made with startIncrementalPlanning. Nothing is ever forgotten, so if the
+	 * world has moved on somewhere new for good, startPlanning over is
+	 * cheaper on memory.
+	 *
+	 * @param state The State to replan.
+	 * @param initialState The world state to plan from now.
+	 */
+	public void replan(State<WS, G, B, BP> state, WS initialState) {
+		state.restartFrom(initialState);
+	}
+
+	/**
+	 * Like replan, but some behaviors now cost something different than they
+	 * did. Their costs are asked for again everywhere we used them. This is
+	 * only for costs: if a behavior can now run in different places or does
+	 * something different, start planning over.
+	 *
+	 * @throws IllegalCostException if a behavior returns a cost that is &lt;= 0
+	 *
+	 * @param state The State to replan.
+	 * @param initialState The world state to plan from now.
+	 * @param changedBehaviors The behaviors whose costs changed.
+	 */
+	public void replan(State<WS, G, B, BP> state, WS initialState, Iterable<? extends B> changedBehaviors) throws IllegalCostException {
+		// IDA* doesn't remember anything that could be out of date.
+		if (state.getIterativeDeepeningState() != null) {
+			state.restartFrom(initialState);
+			return;
+		}
+
+		HashSet<B> changed = new HashSet<B>();
+		for (B b: changedBehaviors) {
+			changed.add(b);
+		}
+
+		NodeStore<WS, B> nodes = state.getGlobalState().nodes;
+		for (int node = 0; node < nodes.size(); node++) {
+			Successors<WS, B> successors = nodes.getSuccessors(node);
+			if (successors == null) continue;
+
+			for (int i = 0; i < successors.size(); i++) {
+				B b = successors.getBehavior(i);
+				if (changed.contains(b)) {
+					successors.setCost(i, NodeStore.getStepCost(b, nodes.getWorldState(node)));
+				}
+			}
+		}
+
+		state.restartFrom(initialState);
+	}
+
+	/**
+	 * Gets a Plan of the behaviors that the AI system has come up with.
+	 * <p>
+	 * Note that these are in the reverse order that you may expect.
+	 * <p>
+	 * The plan also carries the same bound that getSuboptimalityBound gives,
+	 * so you know how good it is without asking separately.
+	 *
+	 * @throws IllegalPlanException if the end state was not found within the
+	 *         global state.
+	 * @throws IllegalCostException if a behavior returns a cost that is &lt;= 0
+	 *
+	 * @param endState The State on which you want to end.
+	 *
+	 * @return A Plan of behaviors to follow to get from the start to the
+	 *         provided end State, in reverse order.
+	 */
+	public Plan<B> getPlan(State<WS, G, B, BP> endState) throws IllegalCostException, IllegalPlanException {
+		Plan<B> tmp = new Plan<B>();
+		tmp.setSuboptimalityBound(this.getSuboptimalityBound(endState));
+
+		IterativeDeepeningState<WS, B, BP, G> iterative = endState.getIterativeDeepeningState();
+		if (iterative != null) {
+			if (iterative.done && !iterative.solved) {
+				throw new IllegalPlanException(null);
+			}
+			for (int i = iterative.depth - 1; i > 0; i--) {
+				tmp.add(iterative.getBehavior(i));
+			}
+			return tmp;
+		}
+
+		GlobalState<WS, B, BP, G> globalState = endState.getGlobalState();
+
+		NodeStore<WS, B> nodes = globalState.nodes;
+
+		int n = globalState.bestSolution;
+		if (n == NodeStore.NONE) {
+			n = endState.getCurrentNode();
+		}
+		if (n == NodeStore.NONE && globalState.maxNodes > 0) {
+			// A bounded search can run out of room before it finds anything,
+			// so give back the best we saw.
+			n = globalState.getMostPromisingNode();
+		}
+		if (n == NodeStore.NONE) {
+			throw new IllegalPlanException(globalState);
+		}
+		while (nodes.getParent(n) != NodeStore.NONE) {
+			tmp.add(nodes.getBehavior(n));
+			n = nodes.getParent(n);
+		}
+		return tmp;
+	}
+
+	/**
+	 * Stepping a state is a complicated thing. For sanity, we pulled the meat
+	 * into this function that operates on a single behavior at a time.
+	 * Modifies the State input variable.
+	 *
+	 * @throws IllegalCostException if a behavior returns a cost that is &lt;= 0
+	 * @throws IllegalCloneException if you world state clone operation returns
+	 *         the same world state
+	 *
+	 * @param state Our current planne State. Note that this is not the
+	 *              WorldState, it is something internal that allows partial
+	 *              execution.
+	 * @param previousNodeInstance The node for the current world state.
+	 * @param behavior The behavior that we are currently evaluating.
+	 * @param debugger The debugger, if the user provided one.
+	 */
+	private void stepStateWithBehavior(
+		State<WS, G, B, BP> state,
+		int previousNodeInstance,
+		B behavior,
+		PlannerDebugger<WS, B> debugger
+	) throws IllegalCostException, IllegalCloneException {
+		WS priorWorldState = state.getWorldState();
+
+		// If we cannot run this behavior, we don't have to do anything.
+		if (!behavior.isRunnable(priorWorldState)) return;
+
+		GlobalState<WS, B, BP, G> globalState = state.getGlobalState();
+
+		// The cost of reaching the new world state through the current node.
+		// Costs are based on the world state that we run the behavior from,
+		// so we know this before we've built anything.
+		float stepCost = NodeStore.getStepCost(behavior, priorWorldState);
+		float newCost = globalState.nodes.getCost(previousNodeInstance) + stepCost;
+
+		// Too expensive to ever beat what we already have, so don't bother
+		// building it at all. If we find a cheaper way there later, it will be
+		// treated as a brand new state.
+		if (globalState.bestSolution != NodeStore.NONE && newCost > globalState.nodes.getCost(globalState.bestSolution)) {
+			this.recordPruned(globalState, previousNodeInstance);
+			return;
+		}
+
+		// Reversible behaviors get tried out on the current world state
+		// itself. Most successors are states that we already know about, and
+		// for those we can do all of our bookkeeping against the world state
+		// stored in the existing node and never make a copy.
+		//
+		// If the lookup finds the node we're expanding, either the behavior
+		// did nothing or the modified state collided with its own entry. We
+		// can't tell those apart in place, so we fall back to copying.
+		boolean knownToBeNew = false;
+		if (behavior instanceof ReversibleBehavior) {
+			@SuppressWarnings("unchecked")
+			ReversibleBehavior<WS> reversibleBehavior = (ReversibleBehavior<WS>)behavior;
+
+			int existingNode;
+			reversibleBehavior.apply(priorWorldState);
+			try {
+				existingNode = globalState.stateToNode.get(priorWorldState);
+			} finally {
+				reversibleBehavior.undo(priorWorldState);
+			}
+
+			if (existingNode == NodeStore.NONE) {
+				knownToBeNew = true;
+			} else if (existingNode != previousNodeInstance) {
+				this.addSuccessor(globalState, previousNodeInstance, behavior, stepCost, globalState.nodes.getWorldState(existingNode), existingNode, debugger);
+				return;
+			}
+		}
+
+		// We need a world state of our own, either because the behavior can't
+		// be undone or because this is a state we've never seen before. In the
+		// second case the lookup we just did is as good as one on the copy,
+		// since they're equal, so we don't look again.
+		WS worldStateAfterBehavior = this.copyWorldState(priorWorldState);
+		behavior.modifyState(worldStateAfterBehavior);
+
+		int existingNode = NodeStore.NONE;
+		if (!knownToBeNew) {
+			existingNode = globalState.stateToNode.get(worldStateAfterBehavior);
+		}
+
+		this.addSuccessor(globalState, previousNodeInstance, behavior, stepCost, worldStateAfterBehavior, existingNode, debugger);
+	}
+
+	/**
+	 * Records a successor that made it past the cost bound: updates the best
+	 * solution if it satisfies our goal, re-parents it if we already know
+	 * about it, and otherwise adds it as a brand new open node.
+	 *
+	 * @param globalState The global state we are planning in.
+	 * @param previousNodeInstance The node that we expanded.
+	 * @param behavior The behavior that produced the successor.
+	 * @param stepCost The cost of behavior from previousNodeInstance.
+	 * @param worldStateAfterBehavior The successor world state. If
+	 *        existingNode is not NONE this may be its world state.
+	 * @param existingNode The node we already have for this world state, or
+	 *        NodeStore.NONE if it is new.
+	 * @param debugger The debugger, if the user provided one.
+	 */
+	private void addSuccessor(
+		GlobalState<WS, B, BP, G> globalState,
+		int previousNodeInstance,
+		B behavior,
+		float stepCost,
+		WS worldStateAfterBehavior,
+		int existingNode,
+		PlannerDebugger<WS, B> debugger
+	) {
+		NodeStore<WS, B> nodes = globalState.nodes;
+		float newCost = nodes.getCost(previousNodeInstance) + stepCost;
+
+		if (globalState.goal.isSatisfied(worldStateAfterBehavior)) {
+			if (globalState.bestSolution == NodeStore.NONE || newCost < nodes.getCost(globalState.bestSolution)) {
+				globalState.bestSolution = this.keepNode(globalState, existingNode, worldStateAfterBehavior, behavior, previousNodeInstance, stepCost, 0.0f, null);
+				nodes.close(globalState.bestSolution);
+				this.recordSuccessor(globalState, previousNodeInstance, behavior, stepCost, globalState.bestSolution);
+				return;
+			}
+		}
+
+		if (existingNode != NodeStore.NONE) {
+			this.recordSuccessor(globalState, previousNodeInstance, behavior, stepCost, existingNode);
+
+			// Greedy planning doesn't care what anything costs, and everything
+			// we've seen has been queued up already.
+			if (globalState.greedy) return;
+
+			boolean cheaper = newCost < nodes.getCost(existingNode);
+			if (cheaper) {
+				nodes.changeParent(existingNode, previousNodeInstance, behavior, stepCost, globalState.openSet);
+			}
+
+			if (globalState.openSet.contains(existingNode)) {
+				return;
+			}
+
+			if (nodes.isClosed(existingNode)) {
+				// Without child links the cheaper cost stopped here, so we
+				// expand this node again to pass it on.
+				if (!cheaper || nodes.isTrackingChildren()) {
+					return;
+				}
+				nodes.reopen(existingNode);
+			}
+
+			globalState.openSet.add(existingNode);
+			return;
+		}
+
+		// We haven't evaluated this before. If our goal can estimate how far
+		// we have left to go, we may already know that this can't lead
+		// anywhere better than what we have.
+		float heuristic = globalState.greedy ? 0.0f : globalState.estimateCost(worldStateAfterBehavior, previousNodeInstance, newCost);
+		if (globalState.heuristicGoal != null && globalState.bestSolution != NodeStore.NONE) {
+			if (newCost + heuristic >= nodes.getCost(globalState.bestSolution)) {
+				this.recordPruned(globalState, previousNodeInstance);
+				return;
+			}
+		}
+
+		// Make a new node.
+		int newNode = this.keepNode(globalState, NodeStore.NONE, worldStateAfterBehavior, behavior, previousNodeInstance, stepCost, heuristic, debugger);
+		this.recordSuccessor(globalState, previousNodeInstance, behavior, stepCost, newNode);
+		globalState.openSet.add(newNode);
+	}
+
+	/**
+	 * If we're recording what parent's expansion finds, remember this.
 	 *
-	 * @param initialState The world state that this AI system begins at.
-	 * @param goal The goal that we are ultimately trying to achieve.
-	 * @param behaviorProvider The behaviors that we are allowed to use in our
-	 *        plan.
+	 * @param globalState The global state we are planning in.
+	 * @param parent The node being expanded.
+	 * @param behavior The behavior that was run.
+	 * @param stepCost What it cost.
+	 * @param node The node it led to.
+	 */
+	private void recordSuccessor(GlobalState<WS, B, BP, G> globalState, int parent, B behavior, float stepCost, int node) {
+		Successors<WS, B> successors = globalState.nodes.getSuccessors(parent);
+		if (successors != null && successors.isRecording()) {
+			successors.add(behavior, stepCost, node);
+		}
+	}
+
+	/**
+	 * If we're recording what parent's expansion finds, note that something
+	 * was thrown away, so the recording can't stand in for an expansion.
 	 *
-	 * @return The initial State.
+	 * @param globalState The global state we are planning in.
+	 * @param parent The node being expanded.
 	 */
-	public State<WS, G, B, BP> startPlanning(
-		WS initialState,
-		G goal,
-		BP behaviorProvider
+	private void recordPruned(GlobalState<WS, B, BP, G> globalState, int parent) {
+		Successors<WS, B> successors = globalState.nodes.getSuccessors(parent);
+		if (successors != null && successors.isRecording()) {
+			successors.markIncomplete();
+		}
+	}
+
+	/**
+	 * Expands a node using what an earlier expansion of it found, rather
+	 * than running its behaviors again. The debugger does not hear about
+	 * individual behaviors, since none are evaluated.
+	 *
+	 * @param globalState The global state we are planning in.
+	 * @param currentNode The node being expanded.
+	 * @param successors What it was found to lead to last time.
+	 * @param debugger The debugger, if the user provided one.
+	 */
+	private void replaySuccessors(
+		GlobalState<WS, B, BP, G> globalState,
+		int currentNode,
+		Successors<WS, B> successors,
+		PlannerDebugger<WS, B> debugger
 	) {
-		// TODO: Pool this?
-		return new State<WS, G, B, BP>(
-			initialState,
-			initialState,
-			goal,
-			behaviorProvider
-		);
+		NodeStore<WS, B> nodes = globalState.nodes;
+		for (int i = 0; i < successors.size(); i++) {
+			float stepCost = successors.getCost(i);
+			if (globalState.bestSolution != NodeStore.NONE && nodes.getCost(currentNode) + stepCost > nodes.getCost(globalState.bestSolution)) {
+				continue;
+			}
+
+			int node = successors.getNode(i);
+			this.addSuccessor(globalState, currentNode, successors.getBehavior(i), stepCost, nodes.getWorldState(node), node, debugger);
+		}
 	}
 
 	/**
-	 * Gets an ArrayList of the behaviors that the AI system has come up with.
-	 * <p>
-	 * Note that these are in the reverse order that you may expect.
+	 * One step of IDA*. We try behaviors from the world state on top of the
+	 * stack until one gives us a world state worth going into, and push it.
+	 * If none do, that world state is finished and we pop it. Finishing the
+	 * initial world state ends the iteration, and we start over with a
+	 * higher threshold.
 	 *
-	 * @throws IllegalPlanException if the end state was not found within the
-	 *         global state.
 	 * @throws IllegalCostException if a behavior returns a cost that is &lt;= 0
+	 * @throws IllegalCloneException if the world state clone is the same object.
 	 *
-	 * @param endState The State on which you want to end.
+	 * @param iterative The search.
+	 * @param debugger The debugger, if the user provided one.
 	 *
-	 * @return An ArrayList of behaviors to follow to get from the start to the
-	 *         provided end State, in reverse order.
+	 * @return True if there is more work to do.
 	 */
-	public ArrayList<B> getPlan(State<WS, G, B, BP> endState) throws IllegalCostException, IllegalPlanException {
-		ArrayList<B> tmp = new ArrayList<B>();
-		GlobalState<WS, B, BP, G> globalState = endState.getGlobalState();
+	private boolean stepIterativeDeepening(
+		IterativeDeepeningState<WS, B, BP, G> iterative,
+		PlannerDebugger<WS, B> debugger
+	) throws IllegalCostException, IllegalCloneException {
+		if (iterative.done) return false;
 
-		Node<WS, B> n = globalState.stateToNode.get(endState.getBestWorldState());
-		if (n == null) {
-			throw new IllegalPlanException(globalState);
+		if (debugger != null) {
+			debugger.didStartStep();
 		}
-		while (n.getParent() != null) {
-			tmp.add(n.getBehavior());
-			n = n.getParent();
+
+		int top = iterative.depth - 1;
+		WS worldState = iterative.getWorldState(top);
+		int count = iterative.getCandidateCount(top);
+		if (iterative.nextBehavior[top] == 0 && iterative.preconditionIndex != null && debugger instanceof PreconditionDebugger) {
+			((PreconditionDebugger<WS, B>)debugger).didSkipBehaviors(iterative.preconditionIndex.size() - count);
 		}
-		return tmp;
+
+		boolean pushed = false;
+		while (!pushed && iterative.nextBehavior[top] < count) {
+			B behavior = iterative.getCandidate(top, iterative.nextBehavior[top]++);
+			if (debugger != null) {
+				debugger.startEvaluateBehavior(behavior);
+			}
+			pushed = this.tryIterativeDeepeningBehavior(iterative, top, worldState, behavior, debugger);
+			if (debugger != null) {
+				debugger.endEvaluateBehavior(behavior);
+			}
+		}
+
+		if (!pushed) {
+			iterative.expansions++;
+			if (top > 0) {
+				iterative.pop();
+			} else if (iterative.nextThreshold == Float.POSITIVE_INFINITY) {
+				// Nothing was cut off, so there's nothing left to find.
+				iterative.done = true;
+			} else {
+				iterative.restartIteration();
+			}
+		}
+
+		if (debugger != null) {
+			debugger.didEndStep(!iterative.done);
+		}
+		return !iterative.done;
 	}
 
 	/**
-	 * Stepping a state is a complicated thing. For sanity, we pulled the meat
-	 * into this function that operates on a single behavior at a time.
-	 * Modifies the State input variable.
-	 *
-	 * @throws IllegalCostException if a behavior returns a cost that is &lt;= 0
-	 * @throws IllegalCloneException if you world state clone operation returns
-	 *         the same world state
+	 * Runs one behavior from the world state on top of the stack, and pushes
+	 * the result if it is within the threshold and not already on our path.
+	 * Reversible behaviors are tried out in place first, so nothing is copied
+	 * for results we throw away.
 	 *
-	 * @param state Our current planne State. Note that this is not the
-	 *              WorldState, it is something internal that allows partial
-	 *              execution.
-	 * @param behavior The behavior that we are currently evaluating.
-	 * @param debugger The debugger, if the user provided one.
+	 * @return True if we pushed a world state.
 	 */
-	private void stepStateWithBehavior(
-		State<WS, G, B, BP> state,
+	private boolean tryIterativeDeepeningBehavior(
+		IterativeDeepeningState<WS, B, BP, G> iterative,
+		int top,
+		WS worldState,
 		B behavior,
 		PlannerDebugger<WS, B> debugger
 	) throws IllegalCostException, IllegalCloneException {
-		WS priorWorldState = state.getWorldState();
+		if (!behavior.isRunnable(worldState)) return false;
 
-		// If we cannot run this behavior, we don't have to do anything.
-		if (!behavior.isRunnable(priorWorldState)) return;
+		float cost = iterative.costs[top] + NodeStore.getStepCost(behavior, worldState);
 
-		GlobalState<WS, B, BP, G> globalState = state.getGlobalState();
+		WS child;
+		if (behavior instanceof ReversibleBehavior) {
+			@SuppressWarnings("unchecked")
+			ReversibleBehavior<WS> reversibleBehavior = (ReversibleBehavior<WS>)behavior;
 
-		Node<WS, B> previousNodeInstance = globalState.stateToNode.get(priorWorldState);
+			boolean keep;
+			reversibleBehavior.apply(worldState);
+			try {
+				keep = this.isWithinThreshold(iterative, worldState, cost);
+			} finally {
+				reversibleBehavior.undo(worldState);
+			}
+			if (!keep) return false;
+
+			// The top of the path was skipped, since it was the one being
+			// modified, so check it now.
+			child = this.copyWorldState(worldState);
+			behavior.modifyState(child);
+			if (child.equals(worldState)) return false;
+		} else {
+			child = this.copyWorldState(worldState);
+			behavior.modifyState(child);
+			if (!this.isWithinThreshold(iterative, child, cost)) return false;
+		}
+
+		iterative.push(child, behavior, cost);
+		if (debugger != null) {
+			debugger.didAddState(child);
+		}
+
+		if (iterative.goal.isSatisfied(child)) {
+			iterative.solved = true;
+			iterative.done = true;
+		}
+		return true;
+	}
+
+	private boolean isWithinThreshold(IterativeDeepeningState<WS, B, BP, G> iterative, WS worldState, float cost) {
+		float f = cost + iterative.estimateCost(worldState);
+		if (f > iterative.threshold) {
+			iterative.nextThreshold = Math.min(iterative.nextThreshold, f);
+			return false;
+		}
+		return !iterative.isOnPath(worldState);
+	}
 
-		@SuppressWarnings("unchecked")
-		WS worldStateAfterBehavior = (WS)priorWorldState.clone();
+	/**
+	 * Makes a copy of a world state for a behavior to modify. World states
+	 * that know how to derive cheap copy-on-write children do so, everything
+	 * else is cloned.
+	 *
+	 * @throws IllegalCloneException if the copy is the same object.
+	 *
+	 * @param priorWorldState The world state to copy.
+	 *
+	 * @return A world state that can be modified freely.
+	 */
+	@SuppressWarnings("unchecked")
+	private WS copyWorldState(WS priorWorldState) throws IllegalCloneException {
+		WS copy;
+		if (priorWorldState instanceof DeltaWorldState) {
+			copy = ((DeltaWorldState<WS>)priorWorldState).derive();
+		} else {
+			copy = (WS)priorWorldState.clone();
+		}
 
-		if (worldStateAfterBehavior == priorWorldState) {
+		if (copy == priorWorldState) {
 			throw new IllegalCloneException(priorWorldState);
 		}
-		behavior.modifyState(worldStateAfterBehavior);
+		return copy;
+	}
+
+	/**
+	 * We've decided that a successor is worth remembering. If we already know
+	 * about its world state, that node is re-parented when this way is
+	 * cheaper. Otherwise the world state is materialized and a new node is
+	 * added to stateToNode.
+	 * <p>
+	 * New world states must have just missed in a stateToNode lookup, so
+	 * that they can be added in the slot that lookup found.
+	 *
+	 * @param globalState The global state we are planning in.
+	 * @param existingNode The node we already have for this world state, or
+	 *        NodeStore.NONE if it is new.
+	 * @param worldState The successor world state.
+	 * @param behavior The behavior that produced it.
+	 * @param parent The node that we expanded.
+	 * @param stepCost The cost of behavior from parent's world state.
+	 * @param heuristic The estimated remaining cost from worldState. Only used
+	 *        for new nodes.
+	 * @param debugger The debugger, if the user provided one.
+	 *
+	 * @return The node that now represents this world state.
+	 */
+	private int keepNode(
+		GlobalState<WS, B, BP, G> globalState,
+		int existingNode,
+		WS worldState,
+		B behavior,
+		int parent,
+		float stepCost,
+		float heuristic,
+		PlannerDebugger<WS, B> debugger
+	) {
+		NodeStore<WS, B> nodes = globalState.nodes;
+		if (existingNode != NodeStore.NONE) {
+			if (nodes.getCost(parent) + stepCost < nodes.getCost(existingNode)) {
+				nodes.changeParent(existingNode, parent, behavior, stepCost, globalState.openSet);
+			}
+			return existingNode;
+		}
 
-		Node<WS, B> newNode = new Node<WS, B>(worldStateAfterBehavior, behavior, previousNodeInstance);
+		if (worldState instanceof DeltaWorldState) {
+			((DeltaWorldState<?>)worldState).materialize();
+		}
 
-		if (globalState.bestSolution == null) {
-			if (globalState.goal.isSatisfied(worldStateAfterBehavior)) {
-				globalState.bestSolution = newNode;
-				globalState.closedSet.add(worldStateAfterBehavior);
-				if (!globalState.stateToNode.containsKey(worldStateAfterBehavior)) {
-					globalState.stateToNode.put(worldStateAfterBehavior, newNode);
-				}
-				globalState.stateToNode.put(worldStateAfterBehavior, newNode);
-				return;
+		int newNode = nodes.add(worldState, behavior, parent, stepCost);
+		nodes.setHeuristic(newNode, heuristic);
+		globalState.stateToNode.putAfterMiss(worldState, newNode);
+
+		if (debugger != null) {
+			debugger.didAddState(worldState);
+		}
+		return newNode;
+	}
+
+	/**
+	 * Evaluates a single behavior against the current state, wrapped in the
+	 * debugger calls that go with it.
+	 *
+	 * @throws IllegalCostException if a behavior returns a cost that is &lt;= 0
+	 * @throws IllegalCloneException if the world state clone is the same object.
+	 *
+	 * @param state The current state of this AI system.
+	 * @param currentNode The node for the current world state.
+	 * @param behavior The behavior to evaluate.
+	 * @param debugger The debugger, if the user provided one.
+	 */
+	private void evaluateBehavior(
+		State<WS, G, B, BP> state,
+		int currentNode,
+		B behavior,
+		PlannerDebugger<WS, B> debugger
+	) throws IllegalCostException, IllegalCloneException {
+		if (debugger != null) {
+			debugger.startEvaluateBehavior(behavior);
+		}
+		this.stepStateWithBehavior(state, currentNode, behavior, debugger);
+		if (debugger != null) {
+			debugger.endEvaluateBehavior(behavior);
+		}
+	}
+
+	/**
+	 * Evaluates every behavior for the current node on the evaluation pool,
+	 * then takes the results in behavior order. See Planner(ForkJoinPool).
+	 *
+	 * @throws IllegalCostException if a behavior returns a cost that is &lt;= 0
+	 * @throws IllegalCloneException if the world state clone is the same object.
+	 *
+	 * @param state The current state of this AI system.
+	 * @param currentNode The node for the current world state.
+	 * @param index The precondition index, if there is one.
+	 * @param debugger The debugger, if the user provided one.
+	 */
+	private void evaluateBehaviorsInParallel(
+		State<WS, G, B, BP> state,
+		int currentNode,
+		PreconditionIndex<WS, B> index,
+		PlannerDebugger<WS, B> debugger
+	) throws IllegalCostException, IllegalCloneException {
+		GlobalState<WS, B, BP, G> globalState = state.getGlobalState();
+
+		ArrayList<B> candidates = new ArrayList<B>();
+		if (index == null) {
+			for (B b: globalState.behaviorProvider) {
+				candidates.add(b);
 			}
 		} else {
-			if (newNode.getCost() > globalState.bestSolution.getCost()) {
-				if (!globalState.stateToNode.containsKey(worldStateAfterBehavior)) {
-					globalState.stateToNode.put(worldStateAfterBehavior, newNode);
-				}
-				return;
+			int count = index.findCandidates((FactSource)state.getWorldState());
+			for (int i = 0; i < count; i++) {
+				candidates.add(index.getCandidate(i));
 			}
+		}
 
-			if (globalState.goal.isSatisfied(worldStateAfterBehavior)) {
-				if (newNode.getCost() < globalState.bestSolution.getCost()) {
-					globalState.bestSolution = newNode;
-					globalState.closedSet.add(worldStateAfterBehavior);
-					if (!globalState.stateToNode.containsKey(worldStateAfterBehavior)) {
-						globalState.stateToNode.put(worldStateAfterBehavior, newNode);
-						return;
-					}
-				}
-			}
+		EvaluateRange evaluation = new EvaluateRange(state.getWorldState(), candidates, 0, candidates.size());
+		if (candidates.size() > 1) {
+			this.evaluationPool.invoke(evaluation);
+		} else {
+			evaluation.compute();
 		}
 
-		if (globalState.stateToNode.containsKey(worldStateAfterBehavior)) {
-			Node<WS, B> previousBestNodeInstance = globalState.stateToNode.get(worldStateAfterBehavior);
-			float previousBestNodeCost = previousBestNodeInstance.getCost();
+		for (int i = 0; i < candidates.size(); i++) {
+			B behavior = candidates.get(i);
+			if (debugger != null) {
+				debugger.startEvaluateBehavior(behavior);
+			}
 
-			float previousNodeCost = previousNodeInstance.getCost() + behavior.getCost(priorWorldState);
-			if (previousNodeCost < previousBestNodeCost) {
-				previousBestNodeInstance.changeParent(previousNodeInstance, behavior);
+			Throwable failure = evaluation.failures[i];
+			if (failure != null) {
+				if (failure instanceof IllegalCostException) throw (IllegalCostException)failure;
+				if (failure instanceof IllegalCloneException) throw (IllegalCloneException)failure;
+				if (failure instanceof RuntimeException) throw (RuntimeException)failure;
+				if (failure instanceof Error) throw (Error)failure;
+				throw new RuntimeException(failure);
 			}
 
-			if (globalState.openSet.contains(worldStateAfterBehavior)) {
-				return;
+			@SuppressWarnings("unchecked")
+			WS worldStateAfterBehavior = (WS)evaluation.worldStates[i];
+			if (worldStateAfterBehavior != null) {
+				this.addEvaluatedSuccessor(globalState, currentNode, behavior, evaluation.costs[i], worldStateAfterBehavior, debugger);
 			}
 
-			if (globalState.closedSet.contains(worldStateAfterBehavior)) {
-				return;
+			if (debugger != null) {
+				debugger.endEvaluateBehavior(behavior);
 			}
+		}
+
+		if (index != null && debugger instanceof PreconditionDebugger) {
+			((PreconditionDebugger<WS, B>)debugger).didSkipBehaviors(index.size() - candidates.size());
+		}
+	}
 
-			globalState.openSet.add(worldStateAfterBehavior);
+	/**
+	 * The part of stepStateWithBehavior that comes after the behavior has
+	 * been run, for a behavior that was run on the evaluation pool.
+	 */
+	private void addEvaluatedSuccessor(
+		GlobalState<WS, B, BP, G> globalState,
+		int currentNode,
+		B behavior,
+		float stepCost,
+		WS worldStateAfterBehavior,
+		PlannerDebugger<WS, B> debugger
+	) {
+		// Something earlier in this expansion may have found a plan that
+		// this can't beat.
+		float newCost = globalState.nodes.getCost(currentNode) + stepCost;
+		if (globalState.bestSolution != NodeStore.NONE && newCost > globalState.nodes.getCost(globalState.bestSolution)) {
+			this.recordPruned(globalState, currentNode);
 			return;
 		}
 
-		// We haven't evaluated this before, make a new node.
-		globalState.stateToNode.put(worldStateAfterBehavior, newNode);
+		int existingNode = globalState.stateToNode.get(worldStateAfterBehavior);
+		this.addSuccessor(globalState, currentNode, behavior, stepCost, worldStateAfterBehavior, existingNode, debugger);
+	}
+
+	/**
+	 * Runs a range of behaviors against the world state being expanded,
+	 * splitting in half until there's a single behavior left. Each one's
+	 * result goes in its own slot: its cost and modified copy of the world
+	 * state if it could run, or whatever it threw.
+	 */
+	private class EvaluateRange extends RecursiveAction {
+		private WS worldState;
+		private ArrayList<B> behaviors;
+		private int from;
+		private int to;
+
+		public float[] costs;
+		public Object[] worldStates;
+		public Throwable[] failures;
+
+		public EvaluateRange(WS worldState, ArrayList<B> behaviors, int from, int to) {
+			this.worldState = worldState;
+			this.behaviors = behaviors;
+			this.from = from;
+			this.to = to;
+			this.costs = new float[behaviors.size()];
+			this.worldStates = new Object[behaviors.size()];
+			this.failures = new Throwable[behaviors.size()];
+		}
+
+		private EvaluateRange(EvaluateRange parent, int from, int to) {
+			this.worldState = parent.worldState;
+			this.behaviors = parent.behaviors;
+			this.from = from;
+			this.to = to;
+			this.costs = parent.costs;
+			this.worldStates = parent.worldStates;
+			this.failures = parent.failures;
+		}
+
+		@Override
+		protected void compute() {
+			if (this.to - this.from <= 1) {
+				if (this.to > this.from) {
+					this.computeOne(this.from);
+				}
+				return;
+			}
 
-		if (debugger != null) {
-			debugger.didAddState(worldStateAfterBehavior);
+			int middle = (this.from + this.to) >>> 1;
+			RecursiveAction.invokeAll(
+				new EvaluateRange(this, this.from, middle),
+				new EvaluateRange(this, middle, this.to)
+			);
 		}
 
-		globalState.openSet.add(worldStateAfterBehavior);
+		private void computeOne(int i) {
+			// Each slot is written by exactly one task, and invoke() waits
+			// for all of them, so this is safely published.
+			try {
+				B behavior = this.behaviors.get(i);
+				if (!behavior.isRunnable(this.worldState)) return;
+
+				this.costs[i] = NodeStore.getStepCost(behavior, this.worldState);
+				WS copy = Planner.this.copyWorldState(this.worldState);
+				behavior.modifyState(copy);
+				this.worldStates[i] = copy;
+			} catch (Throwable t) {
+				this.failures[i] = t;
+			}
+		}
 	}
 
 	/**
@@ -220,44 +1327,176 @@ public class Planner<
 	 * @return True if the AI system cannot proceed any more, otherwise False.
 	 */
 	public boolean stepState(State<WS, G, B, BP> state, PlannerDebugger<WS, B> debugger) throws IllegalCostException, IllegalCloneException {
+		if (state.getIterativeDeepeningState() != null) {
+			return this.stepIterativeDeepening(state.getIterativeDeepeningState(), debugger);
+		}
+
 		GlobalState<WS, B, BP, G> globalState = state.getGlobalState();
 
 		if (debugger != null) {
 			debugger.didStartStep();
 		}
 
+		NodeStore<WS, B> nodes = globalState.nodes;
+		int currentNode = state.getCurrentNode();
+
 		// TODO: Check that we aren't being called with an already-closed
 		// state.
-		for (B b: globalState.behaviorProvider) {
-			if (debugger != null) {
-				debugger.startEvaluateBehavior(b);
+		Successors<WS, B> successors = nodes.getSuccessors(currentNode);
+		if (successors != null && successors.isUsable()) {
+			this.replaySuccessors(globalState, currentNode, successors, debugger);
+		} else {
+			if (globalState.incremental) {
+				successors = nodes.getOrCreateSuccessors(currentNode);
+				successors.startRecording();
 			}
-			this.stepStateWithBehavior(state, b, debugger);
-			if (debugger != null) {
-				debugger.endEvaluateBehavior(b);
+
+			PreconditionIndex<WS, B> index = globalState.preconditionIndex;
+			if (this.evaluationPool != null) {
+				this.evaluateBehaviorsInParallel(state, currentNode, index, debugger);
+			} else if (index == null) {
+				for (B b: globalState.behaviorProvider) {
+					this.evaluateBehavior(state, currentNode, b, debugger);
+				}
+			} else {
+				// Only visit the behaviors whose declared facts hold.
+				int count = index.findCandidates((FactSource)state.getWorldState());
+				for (int i = 0; i < count; i++) {
+					this.evaluateBehavior(state, currentNode, index.getCandidate(i), debugger);
+				}
+
+				if (debugger instanceof PreconditionDebugger) {
+					((PreconditionDebugger<WS, B>)debugger).didSkipBehaviors(index.size() - count);
+				}
+			}
+
+			if (successors != null) {
+				successors.stopRecording();
 			}
 		}
 
-		globalState.openSet.remove(state.getWorldState());
-		globalState.closedSet.add(state.getWorldState());
+		globalState.openSet.remove(currentNode);
+		nodes.close(currentNode);
+		globalState.settle(currentNode);
+		globalState.prune(currentNode);
 
-		if (globalState.openSet.size() == 0) {
-			if (debugger != null) {
-				debugger.didEndStep(false);
+		// Greedy planning takes the first plan it finds.
+		if (globalState.greedy && globalState.bestSolution != NodeStore.NONE) {
+			globalState.openSet.clear();
+		}
+
+		// Nothing left in the open set can beat what we have, at least not by
+		// more than our weight. An anytime search goes on with a smaller
+		// weight. Otherwise there's no point in looking at any of it.
+		while (globalState.isBestSolutionProven()) {
+			globalState.provenWeight = Math.min(globalState.provenWeight, globalState.weight);
+			if (!globalState.lowerWeight()) {
+				// Remember how good the plan is before throwing away what
+				// tells us.
+				globalState.provenWeight = globalState.getSuboptimalityBound();
+				globalState.openSet.clear();
+				break;
 			}
-			state.setCurrentState(null);
-			return false;
 		}
 
-		WS newState = globalState.openSet.poll();
-		if (newState == null) {
+		if (globalState.openSet.size() == 0 || globalState.outOfNodes) {
+			if (debugger != null) {
+				debugger.didEndStep(false);
+			}
+			state.setCurrentNode(NodeStore.NONE);
 			return false;
 		}
 
-		state.setCurrentState(newState);
+		int newNode = globalState.openSet.poll();
+		state.setCurrentNode(newNode);
 		if (debugger != null) {
 			debugger.didEndStep(true);
 		}
 		return true;
 	}
-}
\ No newline at end of file
+
+	/**
+	 * Steps the provided State forward as many times as the budget allows.
+	 * This is the easiest way to give an agent a fixed slice of every frame:
+	 * call it once per frame with a time budget, and get the plan once it
+	 * returns FINISHED.
+	 * <p>
+	 * At least one expansion happens on every call unless the planner is
+	 * already done or already over its node limit, so even a tiny time
+	 * budget always makes progress.
+	 *
+	 * @throws IllegalCostException if a behavior returns a cost that is &lt;= 0
+	 * @throws IllegalCloneException if your WorldState.clone() operation returns the same object
+	 *
+	 * @param state The current state of this AI system.
+	 * @param budget How much work we may do.
+	 *
+	 * @return Why we stopped.
+	 */
+	public StepResult stepStateWithBudget(State<WS, G, B, BP> state, StepBudget budget) throws IllegalCostException, IllegalCloneException {
+		return this.stepStateWithBudget(state, budget, null);
+	}
+
+	/**
+	 * Steps the provided State forward as many times as the budget allows,
+	 * while also providing a debugger.
+	 *
+	 * @throws IllegalCostException if a behavior returns a cost that is &lt;= 0
+	 * @throws IllegalCloneException if your WorldState.clone() operation returns the same object
+	 *
+	 * @param state The current state of this AI system.
+	 * @param budget How much work we may do.
+	 * @param debugger The debugger you want to use in order to debug the AI
+	 *        system.
+	 *
+	 * @return Why we stopped.
+	 */
+	public StepResult stepStateWithBudget(State<WS, G, B, BP> state, StepBudget budget, PlannerDebugger<WS, B> debugger) throws IllegalCostException, IllegalCloneException {
+		return this.stepStateWithBudget(state, budget, debugger, null);
+	}
+
+	/**
+	 * stepStateWithBudget, but it also stops before the next expansion once
+	 * the given future is done. It then says OUT_OF_TIME, so check the
+	 * future afterwards.
+	 *
+	 * @param until A future to watch, or null to run out the budget.
+	 */
+	private StepResult stepStateWithBudget(State<WS, G, B, BP> state, StepBudget budget, PlannerDebugger<WS, B> debugger, Future<?> until) throws IllegalCostException, IllegalCloneException {
+		GlobalState<WS, B, BP, G> globalState = state.getGlobalState();
+
+		boolean timed = budget.getMaxNanos() > 0;
+		long deadline = timed ? System.nanoTime() + budget.getMaxNanos() : 0;
+		int expansions = 0;
+
+		while (true) {
+			if (state.getWorldState() == null) {
+				return StepResult.FINISHED;
+			}
+
+			int liveNodes = (globalState == null) ? state.getIterativeDeepeningState().depth : globalState.nodes.getLiveCount();
+			if (budget.getMaxNodes() > 0 && liveNodes >= budget.getMaxNodes()) {
+				return StepResult.OUT_OF_NODES;
+			}
+
+			if (until != null && until.isDone()) {
+				return StepResult.OUT_OF_TIME;
+			}
+
+			boolean hasMoreWork = this.stepState(state, debugger);
+			expansions++;
+			state.countExpansion();
+			if (!hasMoreWork) {
+				return StepResult.FINISHED;
+			}
+
+			if (budget.getMaxExpansions() > 0 && expansions >= budget.getMaxExpansions()) {
+				return StepResult.OUT_OF_EXPANSIONS;
+			}
+
+			if (timed && System.nanoTime() - deadline >= 0) {
+				return StepResult.OUT_OF_TIME;
+			}
+		}
+	}
+}
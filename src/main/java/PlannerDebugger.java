@@ -18,7 +18,8 @@ public interface PlannerDebugger<WS extends WorldState, B extends Behavior<WS>>
 	/**
 	 * Called when we start evaluating whether this behavior is viable. This is
 	 * called before any sanity checking, so every single behavior will go
-	 * through this.
+	 * through this, except for behaviors whose declared preconditions let us
+	 * skip them entirely. See {@link PreconditionDebugger}.
 	 *
 	 * @param behavior The behavior that is being evaluated.
 	 */
@@ -26,8 +27,8 @@ public interface PlannerDebugger<WS extends WorldState, B extends Behavior<WS>>
 
 	/**
 	 * Called after we are done evaluating this behavior. This is called for
-	 * every single behavior, regardless of isRunnable, or any other sanity
-	 * checks.
+	 * every behavior that startEvaluateBehavior was called for, regardless of
+	 * isRunnable, or any other sanity checks.
 	 *
 	 * @param behavior The behavior that was being evaluated.
 	 */
@@ -0,0 +1,26 @@
+package com.gracefulcode.ai;
+
+/**
+ * A Behavior that declares some of its preconditions as facts. When your
+ * world state is a {@link FactSource}, the planner indexes behaviors by the
+ * facts that they require, and for each world state it only visits the
+ * behaviors whose required facts all hold. With hundreds of behaviors, most
+ * of which can't run most of the time, that skips most isRunnable calls.
+ * <p>
+ * isRunnable is still called for the behaviors that pass, so it can check
+ * anything that isn't a simple fact. It does not need to re-check the
+ * required facts.
+ * <p>
+ * The planner reads the required facts once, when planning starts, so the
+ * answer must not change while planning.
+ *
+ * @version 0.1
+ * @since 0.1
+ */
+public interface PreconditionBehavior<WS extends WorldState> extends Behavior<WS> {
+	/**
+	 * @return The facts that must all hold for this behavior to be runnable.
+	 *         An empty array means that there are no fact preconditions.
+	 */
+	public int[] getRequiredFacts();
+}
@@ -0,0 +1,21 @@
+package com.gracefulcode.ai;
+
+/**
+ * A PlannerDebugger that also wants to hear about the behaviors that the
+ * precondition index let us skip. Skipped behaviors do not get
+ * startEvaluateBehavior or endEvaluateBehavior calls, since calling out for
+ * every one of them would defeat the point of skipping them.
+ *
+ * @version 0.1
+ * @since 0.1
+ */
+public interface PreconditionDebugger<WS extends WorldState, B extends Behavior<WS>> extends PlannerDebugger<WS, B> {
+	/**
+	 * Called once per step, after the behaviors that were evaluated, with
+	 * how many behaviors were skipped because their required facts did not
+	 * hold. This is not called if the precondition index is not in use.
+	 *
+	 * @param skipped The number of behaviors skipped in this step.
+	 */
+	public void didSkipBehaviors(int skipped);
+}
@@ -0,0 +1,24 @@
+package com.gracefulcode.ai;
+
+/**
+ * A Behavior whose cost can be asked for as a primitive float. The planner
+ * asks for costs a lot, and every Float returned from
+ * {@link Behavior#getCost} is an allocation. If your behaviors implement this
+ * interface, the planner will call {@link #cost} instead and never box.
+ * <p>
+ * You still need a getCost implementation for anyone else that wants it.
+ * {@link AbstractPrimitiveCostBehavior} provides one for you.
+ *
+ * @version 0.1
+ * @since 0.1
+ */
+public interface PrimitiveCostBehavior<WS extends WorldState> extends Behavior<WS> {
+	/**
+	 * Exactly the same as {@link Behavior#getCost}, but without the box. The
+	 * two must always agree.
+	 *
+	 * @param worldState The current world state.
+	 * @return What this behavior would cost to run in the given world state.
+	 */
+	public float cost(WS worldState);
+}
@@ -0,0 +1,39 @@
+package com.gracefulcode.ai;
+
+/**
+ * A Behavior that can be run and then un-run on the same world state. The
+ * planner uses this to try a behavior out on the world state it is expanding
+ * without making a copy. If the result is a world state that it has already
+ * seen, which is the usual case, it is done and no copy is ever made. Only
+ * brand new world states get copied, and for those modifyState is used on
+ * the copy as usual.
+ * <p>
+ * apply must make exactly the same change that modifyState would, and undo
+ * must put the world state back exactly the way it was, down to equals and
+ * hashCode. Only implement this for behaviors where that is easy to
+ * guarantee. For example, a behavior that sets a flag that might already have
+ * been set can't know whether undo should clear it, unless isRunnable
+ * requires that the flag was clear to begin with.
+ * <p>
+ * The planner calls isRunnable and getCost before apply, and nothing else
+ * touches the world state between apply and undo.
+ *
+ * @version 0.1
+ * @since 0.1
+ */
+public interface ReversibleBehavior<WS extends WorldState> extends Behavior<WS> {
+	/**
+	 * Runs this behavior on a world state in place. This must do the same
+	 * thing as modifyState.
+	 *
+	 * @param worldState The world state to modify. This is NOT a copy.
+	 */
+	public void apply(WS worldState);
+
+	/**
+	 * Reverses a previous call to apply on the same world state.
+	 *
+	 * @param worldState The world state that apply was just called on.
+	 */
+	public void undo(WS worldState);
+}
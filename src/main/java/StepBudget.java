@@ -0,0 +1,78 @@
+package com.gracefulcode.ai;
+
+/**
+ * How much work {@link Planner#stepStateWithBudget(com.gracefulcode.ai.internal.State, StepBudget)}
+ * is allowed to do in a single call. Any combination of limits can be set; the
+ * planner stops at whichever one it hits first. A limit of 0 or less means
+ * that there is no limit of that kind.
+ * <p>
+ * A typical game would give every agent a small time budget each frame:
+ * <pre>
+ * StepBudget budget = StepBudget.nanos(50000);
+ * </pre>
+ * Budgets are immutable and can be shared between agents and threads.
+ *
+ * @version 0.1
+ * @since 0.1
+ */
+public class StepBudget {
+	private final long maxNanos;
+	private final int maxExpansions;
+	private final int maxNodes;
+
+	/**
+	 * @param maxNanos The longest we may keep expanding, in nanoseconds.
+	 * @param maxExpansions The most world states we may expand.
+	 * @param maxNodes The most world states the planner may know about in
+	 *        total. Unlike the others this isn't reset between calls, since it
+	 *        is really a memory limit.
+	 */
+	public StepBudget(long maxNanos, int maxExpansions, int maxNodes) {
+		this.maxNanos = maxNanos;
+		this.maxExpansions = maxExpansions;
+		this.maxNodes = maxNodes;
+	}
+
+	/**
+	 * @param maxNanos The longest we may keep expanding, in nanoseconds.
+	 * @return A budget with only a time limit.
+	 */
+	public static StepBudget nanos(long maxNanos) {
+		return new StepBudget(maxNanos, 0, 0);
+	}
+
+	/**
+	 * @param maxExpansions The most world states we may expand.
+	 * @return A budget with only an expansion limit.
+	 */
+	public static StepBudget expansions(int maxExpansions) {
+		return new StepBudget(0, maxExpansions, 0);
+	}
+
+	/**
+	 * @param maxNodes The most world states the planner may know about.
+	 * @return A budget with only a node limit.
+	 */
+	public static StepBudget nodes(int maxNodes) {
+		return new StepBudget(0, 0, maxNodes);
+	}
+
+	/**
+	 * @return A budget that runs planning all the way to the end.
+	 */
+	public static StepBudget unlimited() {
+		return new StepBudget(0, 0, 0);
+	}
+
+	public long getMaxNanos() {
+		return this.maxNanos;
+	}
+
+	public int getMaxExpansions() {
+		return this.maxExpansions;
+	}
+
+	public int getMaxNodes() {
+		return this.maxNodes;
+	}
+}
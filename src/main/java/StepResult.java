@@ -0,0 +1,37 @@
+package com.gracefulcode.ai;
+
+/**
+ * Why a call to stepStateWithBudget returned.
+ *
+ * @version 0.1
+ * @since 0.1
+ */
+public enum StepResult {
+	/**
+	 * The planner has no more work to do. Get your plan.
+	 */
+	FINISHED,
+
+	/**
+	 * The time limit ran out. Call again later to keep going.
+	 */
+	OUT_OF_TIME,
+
+	/**
+	 * The expansion limit was reached. Call again to keep going.
+	 */
+	OUT_OF_EXPANSIONS,
+
+	/**
+	 * The planner knows about as many world states as it is allowed to. It
+	 * will not make any more progress with this budget.
+	 */
+	OUT_OF_NODES;
+
+	/**
+	 * @return True if calling stepStateWithBudget again could make more progress.
+	 */
+	public boolean hasMoreWork() {
+		return this != FINISHED;
+	}
+}
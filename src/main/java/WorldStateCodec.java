@@ -0,0 +1,39 @@
+package com.gracefulcode.ai;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Turns world states into bytes and back, so that the planner can keep them
+ * outside of the Java heap. See {@link Planner#startOffHeapPlanning}.
+ * <p>
+ * Two world states that are equal must always write exactly the same bytes,
+ * and two that aren't must not. The planner compares world states it has
+ * stored by comparing bytes, and never calls equals on them.
+ *
+ * @version 0.1
+ * @since 0.1
+ */
+public interface WorldStateCodec<WS extends WorldState> {
+	/**
+	 * @param worldState A world state.
+	 * @return Exactly how many bytes write will put for it.
+	 */
+	public int size(WS worldState);
+
+	/**
+	 * Writes a world state at the buffer's position, advancing it by size
+	 * bytes.
+	 *
+	 * @param worldState The world state to write.
+	 * @param buffer Where to write it. There are at least size bytes left.
+	 */
+	public void write(WS worldState, ByteBuffer buffer);
+
+	/**
+	 * Makes a new world state from bytes that write wrote.
+	 *
+	 * @param buffer The bytes, from position to limit.
+	 * @return A new world state, equal to the one that was written.
+	 */
+	public WS read(ByteBuffer buffer);
+}
@@ -1,14 +1,11 @@
 package com.gracefulcode.ai.internal;
 
 import com.gracefulcode.ai.Behavior;
+import com.gracefulcode.ai.FactSource;
 import com.gracefulcode.ai.Goal;
+import com.gracefulcode.ai.HeuristicGoal;
 import com.gracefulcode.ai.WorldState;
 
-import java.util.Comparator;
-import java.util.HashSet;
-import java.util.HashMap;
-import java.util.PriorityQueue;
-
 /**
  * GlobalState is the state of the AI subsystem. These fields are largely
  * public to aid in debugging, but you should probably not fiddle with them in
@@ -23,7 +20,7 @@ public class GlobalState<
 	B extends Behavior<WS>,
 	BP extends Iterable<B>,
 	G extends Goal<WS>
-> implements Comparator<WS> {
+> implements NodeComparator {
 	/**
 	 * The world state that we were in when this planner state started. We
 	 * don't strictly need to store this. It may be removed in the future.
@@ -37,7 +34,11 @@ public class GlobalState<
 	 */
 	public BP behaviorProvider;
 
-	public Node<WS, B> bestSolution;
+	/**
+	 * The node of the cheapest world state found so far that satisfies our
+	 * goal, or NodeStore.NONE.
+	 */
+	public int bestSolution;
 
 	/**
 	 * The goal that we ultimately want to satisfy.
@@ -45,44 +46,400 @@ public class GlobalState<
 	public G goal;
 
 	/**
-	 * The closed set is a list of world states that we have fully
-	 * explored. We know that there's no good path forward from here, so if
-	 * we run into one of these states, we can dismiss it as having any
-	 * valid paths forward.
+	 * Our goal, if it can estimate remaining costs. When this is set we order
+	 * the open set by cost plus estimate, A* style. Otherwise we order by the
+	 * goal's comparator and then by cost.
+	 */
+	public HeuristicGoal<WS> heuristicGoal;
+
+	/**
+	 * Every node we have made, by id. Each one also knows whether it is
+	 * closed: fully explored, with no good path forward that we don't
+	 * already know about. If we run into one of those, we can dismiss it as
+	 * having any valid paths forward.
 	 */
-	public HashSet<WS> closedSet;
+	public NodeStore<WS, B> nodes;
 
 	/**
-	 * The open set is a list of states that we know how to get to from the
-	 * initial state, and might contain the right path forward. We aren't
-	 * sure yet. Initially the initial state is put into here to kick
-	 * things off.
+	 * The open set is the nodes that we know how to get to from the initial
+	 * state, and might contain the right path forward. We aren't sure yet.
+	 * Initially the root node is put into here to kick things off.
 	 */
-	public PriorityQueue<WS> openSet;
+	public OpenSet openSet;
 
 	/**
 	 * The root node is the node where we started our planning.
 	 */
-	public Node<WS, B> rootNode;
+	public int rootNode;
+
+	/**
+	 * For any given world state, which node represents it? There should be
+	 * an entry for every world state that we've discovered in our journey,
+	 * including the root.
+	 */
+	public StateTable<WS, B> stateToNode;
+
+	/**
+	 * Behaviors indexed by their declared preconditions, so that each step
+	 * only visits behaviors that might be runnable. Null when the world state
+	 * is not a FactSource or no behavior declares any preconditions, in which
+	 * case every behavior in behaviorProvider is visited.
+	 */
+	public PreconditionIndex<WS, B> preconditionIndex;
+
+	/**
+	 * When true, every expansion records its successors, so that a search
+	 * restarted with restartFrom can walk known parts of the graph without
+	 * running any behaviors.
+	 */
+	public boolean incremental;
+
+	/**
+	 * The most nodes we want to keep, or 0 for no limit. See prune.
+	 */
+	public int maxNodes;
+
+	/**
+	 * Set when a bounded search finds that maxNodes is too small to hold the
+	 * path it needs. The search stops there.
+	 */
+	public boolean outOfNodes;
+
+	/**
+	 * Set when a bounded search frees a node without backing its estimate up
+	 * into its parent. It may never come back, so we can no longer tell how
+	 * good our best solution is.
+	 */
+	public boolean lossy;
 
 	/**
-	 * For any given world state, how did we get here? There is no entry for
-	 * the root state, but should be one for any other state that we've
-	 * discovered in our journey.
+	 * How much to trust the estimate, when there is one. The open set is
+	 * ordered by cost plus weight times estimate. Above 1 we head for the
+	 * goal faster, but the plan we find may cost up to weight times more
+	 * than the cheapest one.
 	 */
-	public HashMap<WS, Node<WS, B>> stateToNode;
+	public float weight;
+
+	/**
+	 * For anytime planning, how much to lower weight by each time we have a
+	 * plan that is as good as the current weight promises. 0 to keep the
+	 * weight where it is.
+	 */
+	public float weightStep;
+
+	/**
+	 * The smallest weight that bestSolution has been proven under, or the
+	 * tighter bound we worked out when we stopped. Our best solution can't
+	 * cost more than this many times the cheapest plan.
+	 */
+	public float provenWeight;
+
+	/**
+	 * Set for greedy planning. The open set is ordered by the goal's
+	 * comparator alone, costs are never improved once a node exists, and the
+	 * search stops at the first world state that satisfies the goal.
+	 */
+	public boolean greedy;
+
+	/**
+	 * Scratch space for prune, kept so that pruning doesn't allocate once it
+	 * has grown big enough.
+	 */
+	private int[] pruneCandidates = new int[16];
 
 	public GlobalState(WS initialState, BP behaviorProvider, G goal) {
+		this(initialState, behaviorProvider, goal, new HeapNodeStore<WS, B>(16));
+	}
+
+	/**
+	 * @param nodes Where to keep nodes. It should be empty, and belongs to
+	 *        this global state from now on.
+	 */
+	public GlobalState(WS initialState, BP behaviorProvider, G goal, NodeStore<WS, B> nodes) {
+		this.nodes = nodes;
+		this.openSet = new OpenSet(10, this);
+		this.stateToNode = new StateTable<WS, B>(this.nodes, 16);
+		this.preconditionIndex = PreconditionIndex.build(initialState, behaviorProvider);
+		this.start(initialState, behaviorProvider, goal);
+	}
+
+	/**
+	 * Gets this global state ready to plan something new, as if it had just
+	 * been constructed. Every collection is emptied but keeps its capacity,
+	 * so planning again allocates very little once things have warmed up.
+	 * <p>
+	 * The precondition index is kept if the behavior provider still holds the
+	 * same behaviors in the same order.
+	 *
+	 * @param initialState The world state that we start planning from.
+	 * @param behaviorProvider Our list of behaviors that we are allowed to use.
+	 * @param goal The goal that we ultimately want to satisfy.
+	 */
+	public void reset(WS initialState, BP behaviorProvider, G goal) {
+		this.openSet.clear();
+		this.nodes.clear();
+		this.stateToNode.clear();
+		this.incremental = false;
+		this.maxNodes = 0;
+		this.nodes.setTrackChildren(false);
+
+		if (
+			this.preconditionIndex == null ||
+			!(initialState instanceof FactSource) ||
+			!this.preconditionIndex.isFor(behaviorProvider)
+		) {
+			this.preconditionIndex = PreconditionIndex.build(initialState, behaviorProvider);
+		}
+
+		this.start(initialState, behaviorProvider, goal);
+	}
+
+	private void start(WS initialState, BP behaviorProvider, G goal) {
 		this.initialState = initialState;
 		this.behaviorProvider = behaviorProvider;
 		this.goal = goal;
-		this.closedSet = new HashSet<WS>();
-		this.openSet = new PriorityQueue<WS>(10, this);
-		this.rootNode = new Node<WS, B>(initialState);
-		this.stateToNode = new HashMap<WS, Node<WS, B>>();
+		this.bestSolution = NodeStore.NONE;
+		this.outOfNodes = false;
+		this.lossy = false;
+		this.weight = 1.0f;
+		this.weightStep = 0.0f;
+		this.provenWeight = Float.POSITIVE_INFINITY;
+		this.greedy = false;
+		this.heuristicGoal = null;
+		if (goal instanceof HeuristicGoal) {
+			this.heuristicGoal = (HeuristicGoal<WS>)goal;
+		}
+		this.rootNode = this.nodes.addRoot(initialState);
+		this.nodes.setHeuristic(this.rootNode, this.estimateCost(initialState));
 		this.stateToNode.put(this.initialState, this.rootNode);
 	}
 
+	/**
+	 * Throws away the search but keeps the graph. Every node we know about is
+	 * detached and the search starts over from the given world state, which
+	 * may or may not be one that we already know about. Nodes keep their
+	 * world states, estimates, and recorded successors.
+	 * <p>
+	 * The caller is responsible for putting the new root into the open set.
+	 *
+	 * @param initialState The world state to plan from now.
+	 */
+	public void restartFrom(WS initialState) {
+		this.openSet.clear();
+		this.bestSolution = NodeStore.NONE;
+
+		for (int i = 0; i < this.nodes.size(); i++) {
+			if (this.nodes.isFree(i)) continue;
+			this.nodes.detach(i);
+		}
+
+		int root = this.stateToNode.get(initialState);
+		if (root == NodeStore.NONE) {
+			root = this.nodes.addRoot(initialState);
+			this.nodes.setHeuristic(root, this.estimateCost(initialState));
+			this.stateToNode.putAfterMiss(initialState, root);
+		} else {
+			this.nodes.makeRoot(root);
+		}
+
+		this.rootNode = root;
+		this.initialState = this.nodes.getWorldState(root);
+	}
+
+	/**
+	 * Keeps us to maxNodes, SMA* style. Once we have more nodes than that,
+	 * the worst leaves are freed until we're an eighth under, so that we
+	 * aren't doing this on every step. A closed node whose children have all
+	 * been freed is a leaf again, so it can go too.
+	 * <p>
+	 * A freed node isn't lost for good. With a HeuristicGoal its estimated
+	 * total cost is backed up into its parent's estimate, and the parent goes
+	 * back into the open set, so it is expanded again once it's the most
+	 * promising thing left and brings the node back. If the parent is so deep
+	 * that there's no room for its children anyway, we set outOfNodes
+	 * instead. Searching on from there could take exponentially long on a
+	 * graph, so the planner stops.
+	 * <p>
+	 * Without a HeuristicGoal there's no way to rank what was freed against
+	 * what's open, so freed nodes are just dropped, much like a beam search,
+	 * and we set lossy. Either way, we can end up going over maxNodes by one
+	 * expansion's worth of nodes.
+	 *
+	 * @param currentNode The node that was just expanded. We keep it and its
+	 *        children, or when there's little room we could free what it
+	 *        found straight away and expand it again forever.
+	 */
+	public void prune(int currentNode) {
+		if (this.maxNodes <= 0 || this.nodes.getLiveCount() <= this.maxNodes) return;
+
+		int target = this.maxNodes - this.maxNodes / 8;
+		int excess = this.nodes.getLiveCount() - target;
+
+		if (this.pruneCandidates.length < this.nodes.getLiveCount()) {
+			this.pruneCandidates = new int[Math.max(this.nodes.getLiveCount(), this.pruneCandidates.length * 2)];
+		}
+		int[] candidates = this.pruneCandidates;
+		int count = 0;
+		for (int n = 0; n < this.nodes.size(); n++) {
+			if (n == this.rootNode || n == currentNode || n == this.bestSolution) continue;
+			if (this.nodes.isFree(n) || this.nodes.getParent(n) == NodeStore.NONE || !this.nodes.isLeaf(n)) continue;
+			if (this.nodes.getParent(n) == currentNode) continue;
+			candidates[count++] = n;
+		}
+
+		if (excess < count) {
+			this.selectWorst(candidates, count, excess);
+		}
+
+		for (int i = 0; i < count && i < excess; i++) {
+			int n = candidates[i];
+			int parent = this.nodes.getParent(n);
+			float f = this.nodes.getEstimatedTotalCost(n);
+
+			this.openSet.remove(n);
+			this.stateToNode.remove(n);
+			this.nodes.free(n);
+
+			if (this.heuristicGoal != null) {
+				this.backUp(parent, f, target);
+			} else {
+				this.lossy = true;
+			}
+		}
+	}
+
+	/**
+	 * Called once a node has been expanded. In a bounded search with a
+	 * HeuristicGoal, a node that has no children after being expanded only
+	 * leads to world states that are reached more cheaply some other way, or
+	 * that can't beat bestSolution. Its estimate is raised to match, so that
+	 * if it's freed, its parent learns that it's no use instead of expanding
+	 * it again and again without ever getting anywhere.
+	 *
+	 * @param node The node that was just expanded.
+	 */
+	public void settle(int node) {
+		if (this.maxNodes <= 0 || this.heuristicGoal == null || this.bestSolution == NodeStore.NONE) return;
+		if (!this.nodes.isLeaf(node)) return;
+
+		float h = this.nodes.getCost(this.bestSolution) - this.nodes.getCost(node);
+		if (h > this.nodes.getHeuristic(node)) {
+			this.nodes.setHeuristic(node, h);
+		}
+	}
+
+	/**
+	 * Moves the k worst of the first count nodes in a to the front of it, in
+	 * no particular order. This is quickselect, so it takes linear time on
+	 * average, where sorting them all would take n log n.
+	 */
+	private void selectWorst(int[] a, int count, int k) {
+		int lo = 0;
+		int hi = count - 1;
+		while (lo < hi) {
+			int pivot = a[(lo + hi) >>> 1];
+			int i = lo;
+			int j = hi;
+			while (i <= j) {
+				while (this.compare(a[i], pivot) > 0) i++;
+				while (this.compare(a[j], pivot) < 0) j--;
+				if (i <= j) {
+					int tmp = a[i];
+					a[i] = a[j];
+					a[j] = tmp;
+					i++;
+					j--;
+				}
+			}
+
+			// a[lo..j] are no better than the pivot, a[i..hi] no worse, and
+			// anything in between is the pivot's equal.
+			if (k - 1 <= j) {
+				hi = j;
+			} else if (k - 1 >= i) {
+				lo = i;
+			} else {
+				return;
+			}
+		}
+	}
+
+	/**
+	 * The estimate for a node that is about to be made. With a HeuristicGoal
+	 * in a bounded search, a child is never estimated to be cheaper than its
+	 * parent, so that whatever the parent learned from children it forgot
+	 * is passed on when they come back.
+	 *
+	 * @param worldState The child's world state.
+	 * @param parent Its parent.
+	 * @param cost The child's cost.
+	 * @return The child's estimate.
+	 */
+	public float estimateCost(WS worldState, int parent, float cost) {
+		float h = this.estimateCost(worldState);
+		if (this.maxNodes > 0 && this.heuristicGoal != null) {
+			h = Math.max(h, this.nodes.getEstimatedTotalCost(parent) - cost);
+		}
+		return h;
+	}
+
+	/**
+	 * Finds the node that looks closest to the goal, for when a search gives
+	 * up without a solution. With a HeuristicGoal that's the lowest estimate,
+	 * otherwise the goal's comparator decides. Ties go to the cheaper node.
+	 *
+	 * @return The node, or NodeStore.NONE if there are none.
+	 */
+	public int getMostPromisingNode() {
+		int best = NodeStore.NONE;
+		for (int i = 0; i < this.nodes.size(); i++) {
+			if (this.nodes.isFree(i) || this.nodes.getCost(i) == Float.POSITIVE_INFINITY) continue;
+			if (best == NodeStore.NONE) {
+				best = i;
+				continue;
+			}
+
+			int order;
+			if (this.heuristicGoal != null) {
+				order = Float.compare(this.estimateCost(this.nodes.getWorldState(i)), this.estimateCost(this.nodes.getWorldState(best)));
+			} else {
+				order = this.goal.compare(this.nodes.getWorldState(i), this.nodes.getWorldState(best));
+			}
+			if (order < 0 || (order == 0 && this.nodes.getCost(i) < this.nodes.getCost(best))) {
+				best = i;
+			}
+		}
+		return best;
+	}
+
+	private void backUp(int parent, float f, int target) {
+		int depth = 0;
+		for (int n = parent; n != NodeStore.NONE && depth < target; n = this.nodes.getParent(n)) {
+			depth++;
+		}
+		if (depth >= target - 1) {
+			this.outOfNodes = true;
+			this.lossy = true;
+			return;
+		}
+
+		float h = f - this.nodes.getCost(parent);
+		if (this.nodes.hasForgotten(parent)) {
+			h = Math.min(h, this.nodes.getHeuristic(parent));
+		} else {
+			h = Math.max(h, this.nodes.getHeuristic(parent));
+		}
+		this.nodes.setForgotten(parent);
+		this.nodes.setHeuristic(parent, h);
+
+		if (this.openSet.contains(parent)) {
+			this.openSet.update(parent);
+		} else {
+			this.nodes.reopen(parent);
+			this.openSet.add(parent);
+		}
+	}
+
 	/**
 	 * The cost to get from our root node to the provided world state. Should
 	 * only be called for world states that we definitely know about. Since any
@@ -97,27 +454,141 @@ public class GlobalState<
 	 * @return The cumulative cost from the root node to this world state.
 	 */
 	public float getBestKnownCost(WS state) throws Exception {
-		if (!this.stateToNode.containsKey(state)) {
+		int node = this.stateToNode.get(state);
+		if (node == NodeStore.NONE) {
 			throw new Exception("getBestKnownCost for unknown world state!");
 		}
 
-		Node node = this.stateToNode.get(state);
-		return node.getCost();
+		return this.nodes.getCost(node);
+	}
+
+	/**
+	 * The estimated cost from a world state to the goal, or 0 if our goal
+	 * does not estimate.
+	 *
+	 * @param state The world state to estimate from.
+	 *
+	 * @return The estimated remaining cost.
+	 */
+	public float estimateCost(WS state) {
+		if (this.heuristicGoal == null) return 0.0f;
+		return this.heuristicGoal.estimateCost(state);
+	}
+
+	/**
+	 * @param id A node.
+	 * @return Its cost plus weight times its estimate, which is what we sort
+	 *         on when there's an estimate.
+	 */
+	public float getWeightedTotalCost(int id) {
+		return this.nodes.getCost(id) + this.weight * this.nodes.getHeuristic(id);
+	}
+
+	/**
+	 * With an admissible estimate, once nothing in the open set is estimated
+	 * to be cheaper than our best solution, nothing in the open set can lead
+	 * to a cheaper one either, and we're done. With a weight above 1 the same
+	 * test tells us that nothing can lead to one that is more than weight
+	 * times cheaper. Once we're lossy the open set no longer holds everything
+	 * that might be cheaper, so nothing is proven, whatever the weight.
+	 *
+	 * @return True if we know that bestSolution can't be beaten, or can't be
+	 *         beaten by more than a factor of weight.
+	 */
+	public boolean isBestSolutionProven() {
+		if (this.heuristicGoal == null || this.lossy || this.bestSolution == NodeStore.NONE) return false;
+
+		int next = this.openSet.peek();
+		return next == NodeStore.NONE || this.getWeightedTotalCost(next) >= this.nodes.getCost(this.bestSolution);
+	}
+
+	/**
+	 * Moves an anytime search on to a smaller weight, once the plan for the
+	 * current one is proven. Everything we have found so far is kept, and the
+	 * open set is re-sorted for the new weight. Closed nodes that we find a
+	 * cheaper way to later are expanded again as usual.
+	 *
+	 * @return True if the weight went down, false if we were already as low
+	 *         as we go.
+	 */
+	public boolean lowerWeight() {
+		if (this.weightStep <= 0.0f || this.weight <= 1.0f) return false;
+
+		this.weight = Math.max(1.0f, this.weight - this.weightStep);
+		this.openSet.reorder();
+		return true;
+	}
+
+	/**
+	 * How far from the cheapest plan our best solution might be, as a factor.
+	 * This is the smaller of provenWeight and our best cost over the lowest
+	 * cost plus estimate in the open set, since with an admissible estimate
+	 * (or none at all) no plan can be cheaper than that. This walks the open
+	 * set, so don't call it every step.
+	 * <p>
+	 * Once the open set is empty, we either looked at everything and
+	 * bestSolution is the cheapest, or we stopped because it was proven and
+	 * provenWeight has already been set to this bound.
+	 * <p>
+	 * A greedy search never knows, since it doesn't keep costs up to date,
+	 * and neither does a lossy one, since what it dropped might have been
+	 * cheaper.
+	 *
+	 * @return 1 if bestSolution is the cheapest plan, more if it might not
+	 *         be, and infinity if we don't have one yet or can't tell.
+	 */
+	public float getSuboptimalityBound() {
+		if (this.bestSolution == NodeStore.NONE || this.greedy || this.lossy) return Float.POSITIVE_INFINITY;
+		if (this.openSet.size() == 0) {
+			if (this.provenWeight == Float.POSITIVE_INFINITY) return 1.0f;
+			return Math.max(1.0f, this.provenWeight);
+		}
+
+		float best = this.nodes.getCost(this.bestSolution);
+		float lowest = best;
+		for (int i = 0; i < this.openSet.size(); i++) {
+			lowest = Math.min(lowest, this.nodes.getEstimatedTotalCost(this.openSet.get(i)));
+		}
+
+		float bound = this.provenWeight;
+		if (lowest > 0.0f) {
+			bound = Math.min(bound, best / lowest);
+		}
+		return Math.max(1.0f, bound);
 	}
 
+	/**
+	 * Orders the open set. With a HeuristicGoal, the lowest cost plus
+	 * weighted estimate comes first, ties go to the node that has gotten
+	 * further (the higher cost, since its estimate is lower), and then to the
+	 * goal's comparator. Without one, or when greedy, the goal's comparator
+	 * comes first and ties go to the cheaper node.
+	 */
 	@Override
-	public int compare(WS a, WS b) {
-		int tmp = this.goal.compare(a, b);
-		if (tmp != 0) return tmp;
+	public int compare(int a, int b) {
+		NodeStore<WS, B> nodes = this.nodes;
 
-		try {
-			float gA = this.getBestKnownCost(a);
-			float gB = this.getBestKnownCost(b);
+		if (this.heuristicGoal != null && !this.greedy) {
+			float fA = this.getWeightedTotalCost(a);
+			float fB = this.getWeightedTotalCost(b);
+			if (fA < fB) return -1;
+			if (fB < fA) return 1;
 
-			if (gA < gB) return -1;
-			if (gB < gA) return 1;
-		} finally {
-			return 0;
+			float gA = nodes.getCost(a);
+			float gB = nodes.getCost(b);
+			if (gA > gB) return -1;
+			if (gB > gA) return 1;
+
+			return nodes.compareWorldStates(this.goal, a, b);
 		}
+
+		int tmp = nodes.compareWorldStates(this.goal, a, b);
+		if (tmp != 0) return tmp;
+
+		float gA = nodes.getCost(a);
+		float gB = nodes.getCost(b);
+		if (gA < gB) return -1;
+		if (gB < gA) return 1;
+		return 0;
 	}
-}
\ No newline at end of file
+}
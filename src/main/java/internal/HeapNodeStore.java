@@ -0,0 +1,160 @@
+package com.gracefulcode.ai.internal;
+
+import com.gracefulcode.ai.Behavior;
+import com.gracefulcode.ai.WorldState;
+
+import java.util.Arrays;
+
+/**
+ * The usual place to keep nodes: parallel Java arrays indexed by node id.
+ *
+ * @version 0.1
+ * @since 0.1
+ */
+public class HeapNodeStore<WS extends WorldState, B extends Behavior<WS>> extends NodeStore<WS, B> {
+	private Object[] worldStates;
+	private Object[] behaviors;
+	private int[] parents;
+	private float[] costs;
+	private float[] heuristics;
+	private byte[] flags;
+
+	/**
+	 * Only made once somebody wants child links.
+	 */
+	private int[] firstChild;
+	private int[] nextSibling;
+
+	public HeapNodeStore(int initialCapacity) {
+		super(initialCapacity);
+
+		int capacity = Math.max(1, initialCapacity);
+		this.worldStates = new Object[capacity];
+		this.behaviors = new Object[capacity];
+		this.parents = new int[capacity];
+		this.costs = new float[capacity];
+		this.heuristics = new float[capacity];
+		this.flags = new byte[capacity];
+	}
+
+	@Override
+	protected void store(int id, WS worldState, boolean reused) {
+		if (id == this.parents.length) {
+			int capacity = id * 2;
+			this.worldStates = Arrays.copyOf(this.worldStates, capacity);
+			this.behaviors = Arrays.copyOf(this.behaviors, capacity);
+			this.parents = Arrays.copyOf(this.parents, capacity);
+			this.costs = Arrays.copyOf(this.costs, capacity);
+			this.heuristics = Arrays.copyOf(this.heuristics, capacity);
+			this.flags = Arrays.copyOf(this.flags, capacity);
+			if (this.firstChild != null) {
+				this.firstChild = Arrays.copyOf(this.firstChild, capacity);
+				this.nextSibling = Arrays.copyOf(this.nextSibling, capacity);
+			}
+		}
+		this.worldStates[id] = worldState;
+	}
+
+	@Override
+	protected void forget(int id) {
+		this.worldStates[id] = null;
+		this.behaviors[id] = null;
+	}
+
+	@Override
+	protected void release() {
+		Arrays.fill(this.worldStates, 0, this.size, null);
+		Arrays.fill(this.behaviors, 0, this.size, null);
+	}
+
+	@Override
+	@SuppressWarnings("unchecked")
+	public WS getWorldState(int id) {
+		return (WS)this.worldStates[id];
+	}
+
+	@Override
+	public boolean worldStateEquals(int id, WS worldState) {
+		Object key = this.worldStates[id];
+		return key == worldState || key.equals(worldState);
+	}
+
+	@Override
+	@SuppressWarnings("unchecked")
+	public B getBehavior(int id) {
+		return (B)this.behaviors[id];
+	}
+
+	@Override
+	protected void setBehavior(int id, B behavior) {
+		this.behaviors[id] = behavior;
+	}
+
+	@Override
+	public int getParent(int id) {
+		return this.parents[id];
+	}
+
+	@Override
+	protected void setParent(int id, int parent) {
+		this.parents[id] = parent;
+	}
+
+	@Override
+	public float getCost(int id) {
+		return this.costs[id];
+	}
+
+	@Override
+	protected void setCost(int id, float cost) {
+		this.costs[id] = cost;
+	}
+
+	@Override
+	public float getHeuristic(int id) {
+		return this.heuristics[id];
+	}
+
+	@Override
+	public void setHeuristic(int id, float heuristic) {
+		this.heuristics[id] = heuristic;
+	}
+
+	@Override
+	protected int getFlags(int id) {
+		return this.flags[id];
+	}
+
+	@Override
+	protected void setFlags(int id, int flags) {
+		this.flags[id] = (byte)flags;
+	}
+
+	@Override
+	protected int getFirstChild(int id) {
+		return this.firstChild[id];
+	}
+
+	@Override
+	protected void setFirstChild(int id, int child) {
+		if (this.firstChild == null) {
+			this.firstChild = new int[this.parents.length];
+			this.nextSibling = new int[this.parents.length];
+		}
+		this.firstChild[id] = child;
+	}
+
+	@Override
+	protected int getNextSibling(int id) {
+		return this.nextSibling[id];
+	}
+
+	@Override
+	protected void setNextSibling(int id, int sibling) {
+		if (this.nextSibling == null) {
+			this.firstChild = new int[this.parents.length];
+			this.nextSibling = new int[this.parents.length];
+		}
+		this.nextSibling[id] = sibling;
+	}
+}
@@ -0,0 +1,297 @@
+package com.gracefulcode.ai.internal;
+
+import com.gracefulcode.ai.Behavior;
+import com.gracefulcode.ai.FactSource;
+import com.gracefulcode.ai.Goal;
+import com.gracefulcode.ai.HeuristicGoal;
+import com.gracefulcode.ai.WorldState;
+
+import java.util.Arrays;
+
+/**
+ * The working memory of an IDA* search. Where GlobalState remembers every
+ * world state it has ever seen, this only remembers the path it is currently
+ * on, as a stack of frames. Each frame is a world state, the behavior that
+ * got us there, the cost so far, and which behavior to try from it next.
+ * Memory is proportional to the length of the plan, no matter how big the
+ * search gets.
+ * <p>
+ * The catch is that world states are visited again and again: once per
+ * iteration, and once for every path to them within an iteration.
+ * <p>
+ * Like GlobalState, we use a PreconditionIndex when there is one to be had.
+ * Each frame's candidates are found when it's pushed and kept on a stack of
+ * their own, since the index only holds on to one world state's candidates
+ * at a time.
+ *
+ * @version 0.1
+ * @since 0.1
+ */
+public class IterativeDeepeningState<
+	WS extends WorldState,
+	B extends Behavior<WS>,
+	BP extends Iterable<B>,
+	G extends Goal<WS>
+> {
+	public BP behaviorProvider;
+	public G goal;
+	public HeuristicGoal<WS> heuristicGoal;
+
+	/**
+	 * Every behavior in behaviorProvider, so that frames can keep their
+	 * place by index.
+	 */
+	public Behavior<?>[] behaviors;
+	public int behaviorCount;
+
+	/**
+	 * Null if there's nothing to index. See GlobalState.preconditionIndex.
+	 */
+	public PreconditionIndex<WS, B> preconditionIndex;
+
+	/**
+	 * When we have an index, the candidates of every frame, as indexes into
+	 * behaviors. Frame i's are from candidateStart[i] up to
+	 * candidateStart[i + 1], or candidateTop for the top frame.
+	 */
+	public int[] candidates;
+	public int[] candidateStart;
+	public int candidateTop;
+
+	/**
+	 * The frames, from the initial world state at 0 to depth - 1. Slot 0
+	 * has no behavior.
+	 */
+	public Object[] worldStates;
+	public Object[] pathBehaviors;
+	public float[] costs;
+	public int[] nextBehavior;
+	public int depth;
+
+	/**
+	 * Nothing estimated to cost more than this is visited this iteration.
+	 */
+	public float threshold;
+
+	/**
+	 * The cheapest estimate that went over threshold, which is where the
+	 * next iteration goes up to.
+	 */
+	public float nextThreshold;
+
+	public int iterations;
+	public int expansions;
+
+	/**
+	 * True once the top frame satisfies the goal.
+	 */
+	public boolean solved;
+
+	/**
+	 * True when there is no more work to do, solved or not.
+	 */
+	public boolean done;
+
+	public IterativeDeepeningState(WS initialState, BP behaviorProvider, G goal) {
+		this.behaviors = new Behavior<?>[16];
+		this.worldStates = new Object[16];
+		this.pathBehaviors = new Object[16];
+		this.costs = new float[16];
+		this.nextBehavior = new int[16];
+		this.candidates = new int[16];
+		this.candidateStart = new int[16];
+		this.reset(initialState, behaviorProvider, goal);
+	}
+
+	/**
+	 * Starts over on something else, keeping our arrays. If the behavior
+	 * provider still holds the same behaviors as last time our copy of them
+	 * is kept, and the precondition index is kept the same way GlobalState
+	 * keeps it. Both look at what the provider holds rather than which
+	 * provider it is, so adding to or removing from the same list between
+	 * plans is fine.
+	 *
+	 * @param initialState The world state that we start planning from.
+	 * @param behaviorProvider Our list of behaviors that we are allowed to use.
+	 * @param goal The goal that we ultimately want to satisfy.
+	 */
+	public void reset(WS initialState, BP behaviorProvider, G goal) {
+		if (!this.hasBehaviors(behaviorProvider)) {
+			Arrays.fill(this.behaviors, 0, this.behaviorCount, null);
+			this.behaviorCount = 0;
+			for (B b: behaviorProvider) {
+				if (this.behaviorCount == this.behaviors.length) {
+					this.behaviors = Arrays.copyOf(this.behaviors, this.behaviorCount * 2);
+				}
+				this.behaviors[this.behaviorCount++] = b;
+			}
+		}
+
+		if (
+			this.preconditionIndex == null ||
+			!(initialState instanceof FactSource) ||
+			!this.preconditionIndex.isFor(behaviorProvider)
+		) {
+			this.preconditionIndex = PreconditionIndex.build(initialState, behaviorProvider);
+		}
+
+		this.behaviorProvider = behaviorProvider;
+		this.goal = goal;
+		this.heuristicGoal = null;
+		if (goal instanceof HeuristicGoal) {
+			this.heuristicGoal = (HeuristicGoal<WS>)goal;
+		}
+
+		Arrays.fill(this.worldStates, 0, this.depth, null);
+		Arrays.fill(this.pathBehaviors, 0, this.depth, null);
+		this.depth = 0;
+		this.candidateTop = 0;
+		this.push(initialState, null, 0.0f);
+
+		this.threshold = this.estimateCost(initialState);
+		this.nextThreshold = Float.POSITIVE_INFINITY;
+		this.iterations = 1;
+		this.expansions = 0;
+		this.solved = goal.isSatisfied(initialState);
+		this.done = this.solved;
+	}
+
+	/**
+	 * @param behaviorProvider Our list of behaviors that we are allowed to use.
+	 *
+	 * @return True if it holds exactly what our copy of it holds, in order.
+	 */
+	private boolean hasBehaviors(BP behaviorProvider) {
+		int i = 0;
+		for (B b: behaviorProvider) {
+			if (i >= this.behaviorCount || this.behaviors[i] != b) return false;
+			i++;
+		}
+		return i == this.behaviorCount;
+	}
+
+	/**
+	 * Starts the next iteration from the initial world state.
+	 */
+	public void restartIteration() {
+		Arrays.fill(this.worldStates, 1, this.depth, null);
+		Arrays.fill(this.pathBehaviors, 1, this.depth, null);
+		this.depth = 1;
+		this.nextBehavior[0] = 0;
+		if (this.preconditionIndex != null) {
+			this.candidateTop = this.candidateStart[1];
+		}
+
+		this.threshold = this.nextThreshold;
+		this.nextThreshold = Float.POSITIVE_INFINITY;
+		this.iterations++;
+	}
+
+	public void push(WS worldState, B behavior, float cost) {
+		if (this.depth == this.worldStates.length) {
+			int capacity = this.depth * 2;
+			this.worldStates = Arrays.copyOf(this.worldStates, capacity);
+			this.pathBehaviors = Arrays.copyOf(this.pathBehaviors, capacity);
+			this.costs = Arrays.copyOf(this.costs, capacity);
+			this.nextBehavior = Arrays.copyOf(this.nextBehavior, capacity);
+		}
+		if (this.depth + 1 >= this.candidateStart.length) {
+			this.candidateStart = Arrays.copyOf(this.candidateStart, this.candidateStart.length * 2);
+		}
+
+		this.worldStates[this.depth] = worldState;
+		this.pathBehaviors[this.depth] = behavior;
+		this.costs[this.depth] = cost;
+		this.nextBehavior[this.depth] = 0;
+		this.candidateStart[this.depth] = this.candidateTop;
+		this.depth++;
+
+		PreconditionIndex<WS, B> index = this.preconditionIndex;
+		if (index != null) {
+			int count = index.findCandidates((FactSource)worldState);
+			if (this.candidateTop + count > this.candidates.length) {
+				this.candidates = Arrays.copyOf(this.candidates, Math.max(this.candidateTop + count, this.candidates.length * 2));
+			}
+			for (int i = 0; i < count; i++) {
+				this.candidates[this.candidateTop++] = index.getCandidateIndex(i);
+			}
+		}
+		this.candidateStart[this.depth] = this.candidateTop;
+	}
+
+	public void pop() {
+		this.depth--;
+		this.worldStates[this.depth] = null;
+		this.pathBehaviors[this.depth] = null;
+		this.candidateTop = this.candidateStart[this.depth];
+	}
+
+	/**
+	 * Checks whether a world state is already on our path, so that we don't
+	 * go around in circles. A frame holding this very world state is
+	 * skipped, since that means it is being tried out in place.
+	 *
+	 * @param worldState The world state to look for.
+	 * @return True if some frame holds an equal world state.
+	 */
+	public boolean isOnPath(WS worldState) {
+		for (int i = this.depth - 1; i >= 0; i--) {
+			Object frameState = this.worldStates[i];
+			if (frameState != worldState && frameState.equals(worldState)) return true;
+		}
+		return false;
+	}
+
+	/**
+	 * The estimated cost from a world state to the goal, or 0 if our goal
+	 * does not estimate.
+	 *
+	 * @param state The world state to estimate from.
+	 *
+	 * @return The estimated remaining cost.
+	 */
+	public float estimateCost(WS state) {
+		if (this.heuristicGoal == null) return 0.0f;
+		return this.heuristicGoal.estimateCost(state);
+	}
+
+	/**
+	 * @param frame From 0 to depth - 1.
+	 * @return The world state of that frame.
+	 */
+	@SuppressWarnings("unchecked")
+	public WS getWorldState(int frame) {
+		return (WS)this.worldStates[frame];
+	}
+
+	/**
+	 * @param frame From 1 to depth - 1.
+	 * @return The behavior that got us to that frame.
+	 */
+	@SuppressWarnings("unchecked")
+	public B getBehavior(int frame) {
+		return (B)this.pathBehaviors[frame];
+	}
+
+	/**
+	 * @param frame From 0 to depth - 1.
+	 * @return How many behaviors are worth trying from that frame: the ones
+	 *         whose required facts all hold, or every one of them if we
+	 *         don't have an index.
+	 */
+	public int getCandidateCount(int frame) {
+		if (this.preconditionIndex == null) return this.behaviorCount;
+		return this.candidateStart[frame + 1] - this.candidateStart[frame];
+	}
+
+	/**
+	 * @param frame From 0 to depth - 1.
+	 * @param i From 0 to getCandidateCount(frame) - 1.
+	 * @return That candidate, in behavior provider order.
+	 */
+	@SuppressWarnings("unchecked")
+	public B getCandidate(int frame, int i) {
+		if (this.preconditionIndex == null) return (B)this.behaviors[i];
+		return (B)this.behaviors[this.candidates[this.candidateStart[frame] + i]];
+	}
+}
@@ -0,0 +1,18 @@
+package com.gracefulcode.ai.internal;
+
+/**
+ * Compares two nodes by id, the way a Comparator would compare two objects.
+ * Nodes are plain ints, so this saves boxing them.
+ *
+ * @version 0.1
+ * @since 0.1
+ */
+public interface NodeComparator {
+	/**
+	 * @param a The id of the first node.
+	 * @param b The id of the second node.
+	 *
+	 * @return Negative if a comes first, positive if b does, 0 if either.
+	 */
+	public int compare(int a, int b);
+}
@@ -0,0 +1,655 @@
+package com.gracefulcode.ai.internal;
+
+import com.gracefulcode.ai.Behavior;
+import com.gracefulcode.ai.Goal;
+import com.gracefulcode.ai.PrimitiveCostBehavior;
+import com.gracefulcode.ai.WorldState;
+
+import java.util.Arrays;
+
+/**
+ * Every node in a search, indexed by an int id. A node is a step in the tree
+ * of behaviors we are dynamically building, and knows:
+ * <p>
+ * a) The world state that it represents. This never changes and effectively
+ * is the node's identity, along with its id.
+ * <p>
+ * b) The node that we "came from," called the parent. If we find a cheaper
+ * way to get here, this may be updated.
+ * <p>
+ * c) The behavior needed to get from our parent to us. If we find a cheaper
+ * way to get here, this is updated at the same time as our parent.
+ * <p>
+ * d) Optionally, our children, that is, nodes for which we are the parent.
+ * These are kept as first-child and next-sibling links so that pushing a cost
+ * change down the tree doesn't need a list per node. Most searches never
+ * need them, so they are only kept after setTrackChildren(true). Without
+ * them a cost change stops at the node that got cheaper, and it is up to the
+ * planner to expand that node again.
+ * <p>
+ * We also keep the accumulated cost from the root to each node, up to date as
+ * parents change, the estimated cost from the node to the goal, and whether
+ * the node is closed.
+ * <p>
+ * Compared to an object per node, this saves an object header, a children
+ * list and several pointers per node, and keeps the numbers the search looks
+ * at most packed together. Ids are handed out in order starting at 0 and are
+ * only good until the next clear.
+ * <p>
+ * This class holds the tree logic. Where the fields actually live is up to
+ * subclasses: HeapNodeStore keeps them in Java arrays, OffHeapNodeStore in
+ * direct memory.
+ *
+ * @version 0.1
+ * @since 0.1
+ */
+public abstract class NodeStore<WS extends WorldState, B extends Behavior<WS>> {
+	/**
+	 * The id that means "no node."
+	 */
+	public static final int NONE = -1;
+
+	protected static final int CLOSED = 1;
+	protected static final int FREE = 2;
+	protected static final int FORGOTTEN = 4;
+
+	/**
+	 * What expanding each node found, when planning incrementally. Entries
+	 * are made on demand and kept across clears so that they can be reused.
+	 * These always live on the heap.
+	 */
+	private Successors<WS, B>[] successors;
+
+	protected int size;
+	private int closedCount;
+
+	/**
+	 * Ids of freed nodes, to be handed out again before new ones.
+	 */
+	private int[] freeIds;
+	private int freeCount;
+
+	/**
+	 * Whether add and changeParent keep child links up to date.
+	 */
+	private boolean trackChildren;
+
+	/**
+	 * Scratch space for walking subtrees.
+	 */
+	private int[] stack;
+
+	protected NodeStore(int initialCapacity) {
+		this.successors = NodeStore.newSuccessors(Math.max(1, initialCapacity));
+		this.stack = new int[16];
+		this.freeIds = new int[16];
+	}
+
+	/**
+	 * Java can't make an array of a generic type, so this makes one of the
+	 * wildcard type and casts it, which is safe since it starts out empty.
+	 */
+	@SuppressWarnings("unchecked")
+	private static <WS extends WorldState, B extends Behavior<WS>> Successors<WS, B>[] newSuccessors(int length) {
+		return (Successors<WS, B>[])new Successors<?, ?>[length];
+	}
+
+	/**
+	 * Gets the cost of running a single behavior from the given world state,
+	 * checking that it is sane. Behaviors that implement
+	 * PrimitiveCostBehavior are asked without boxing, anything else is
+	 * adapted by unboxing its getCost.
+	 *
+	 * @throws IllegalCostException if your cost ever returns &lt;= 0.0f
+	 *
+	 * @param behavior The behavior that is being run.
+	 * @param worldState The world state the behavior is being run from.
+	 *
+	 * @return The cost of just this one behavior.
+	 */
+	public static <WS extends WorldState> float getStepCost(Behavior<WS> behavior, WS worldState) throws IllegalCostException {
+		float tmpCost;
+		if (behavior instanceof PrimitiveCostBehavior) {
+			tmpCost = ((PrimitiveCostBehavior<WS>)behavior).cost(worldState);
+		} else {
+			tmpCost = behavior.getCost(worldState);
+		}
+
+		if (tmpCost <= 0) {
+			throw new IllegalCostException(behavior, tmpCost);
+		}
+		return tmpCost;
+	}
+
+	/**
+	 * Makes room for one more node and stores its world state. Everything
+	 * else about the node is set by the caller.
+	 *
+	 * @param id The id the node will have.
+	 * @param worldState Its world state.
+	 * @param reused False if id is size, and so brand new. True if it
+	 *        belonged to a node that was freed, so anything still kept for
+	 *        that node can be written over.
+	 */
+	protected abstract void store(int id, WS worldState, boolean reused);
+
+	/**
+	 * Lets go of a freed node's world state and behavior.
+	 *
+	 * @param id The node.
+	 */
+	protected abstract void forget(int id);
+
+	/**
+	 * Lets go of every node's world state and behavior. Called by clear
+	 * before size goes back to 0.
+	 */
+	protected abstract void release();
+
+	/**
+	 * Gets the world state of a node.
+	 *
+	 * @param id The node.
+	 * @return Its world state.
+	 */
+	public abstract WS getWorldState(int id);
+
+	/**
+	 * Orders two nodes' world states with a goal's comparator. The open set
+	 * does this a lot, so stores that have to make world states to hand them
+	 * out can do better than calling getWorldState twice.
+	 *
+	 * @param goal The goal whose comparator to use.
+	 * @param a One node.
+	 * @param b The other.
+	 * @return What goal.compare says about their world states.
+	 */
+	public int compareWorldStates(Goal<WS> goal, int a, int b) {
+		return goal.compare(this.getWorldState(a), this.getWorldState(b));
+	}
+
+	/**
+	 * Checks whether a node's world state equals a given one. Stores that
+	 * don't keep world state objects around can do this without making one.
+	 *
+	 * @param id The node.
+	 * @param worldState The world state to compare to.
+	 * @return True if they are equal.
+	 */
+	public boolean worldStateEquals(int id, WS worldState) {
+		return this.getWorldState(id).equals(worldState);
+	}
+
+	/**
+	 * @param id The node.
+	 * @return The behavior that gets us to id from its parent. Null for roots.
+	 */
+	public abstract B getBehavior(int id);
+	protected abstract void setBehavior(int id, B behavior);
+
+	/**
+	 * @param id The node.
+	 * @return The parent of id, or NONE for roots.
+	 */
+	public abstract int getParent(int id);
+	protected abstract void setParent(int id, int parent);
+
+	/**
+	 * Gets the cost of a node. This is the cost of its behavior plus the cost
+	 * of its parent node, but it is cached rather than walking the tree back
+	 * to the root node, so this is cheap to call.
+	 *
+	 * @param id The node.
+	 * @return The cost of this behavior and every behavior that comes before
+	 *         it.
+	 */
+	public abstract float getCost(int id);
+	protected abstract void setCost(int id, float cost);
+
+	/**
+	 * @param id The node.
+	 * @return The estimated cost from this node to the goal, 0 if unknown.
+	 */
+	public abstract float getHeuristic(int id);
+	public abstract void setHeuristic(int id, float heuristic);
+
+	protected abstract int getFlags(int id);
+	protected abstract void setFlags(int id, int flags);
+	protected abstract int getFirstChild(int id);
+	protected abstract void setFirstChild(int id, int child);
+	protected abstract int getNextSibling(int id);
+	protected abstract void setNextSibling(int id, int sibling);
+
+	/**
+	 * Gives back any memory that the garbage collector won't. The store
+	 * can't be used afterwards. Stores that live on the heap don't need to
+	 * do anything.
+	 */
+	public void close() {
+	}
+
+	/**
+	 * Turns child links on or off. Turning them on links up every node we
+	 * already have, so it can be done at any time.
+	 *
+	 * @param trackChildren Whether to keep child links.
+	 */
+	public void setTrackChildren(boolean trackChildren) {
+		if (trackChildren && !this.trackChildren) {
+			this.deriveChildren();
+		}
+		this.trackChildren = trackChildren;
+	}
+
+	/**
+	 * @return Whether child links are kept, and so whether changeParent
+	 *         pushes cost changes down to every node below.
+	 */
+	public boolean isTrackingChildren() {
+		return this.trackChildren;
+	}
+
+	/**
+	 * Rebuilds every child link from the parents.
+	 */
+	private void deriveChildren() {
+		for (int i = 0; i < this.size; i++) {
+			this.setFirstChild(i, NodeStore.NONE);
+			this.setNextSibling(i, NodeStore.NONE);
+		}
+		for (int i = this.size - 1; i >= 0; i--) {
+			int parent = this.getParent(i);
+			if (parent != NodeStore.NONE && !this.isFree(i)) {
+				this.linkChild(parent, i);
+			}
+		}
+	}
+
+	/**
+	 * @return The number of ids handed out. Ids run from 0 to size() - 1,
+	 *         but some of them may be free.
+	 */
+	public int size() {
+		return this.size;
+	}
+
+	/**
+	 * @return The number of nodes that aren't free.
+	 */
+	public int getLiveCount() {
+		return this.size - this.freeCount;
+	}
+
+	/**
+	 * @return The number of closed nodes.
+	 */
+	public int getClosedCount() {
+		return this.closedCount;
+	}
+
+	/**
+	 * Creates a root node. Root nodes have no behavior, no parent, and cost
+	 * nothing to get to.
+	 *
+	 * @param worldState The world state that we start planning from.
+	 *
+	 * @return The new node's id.
+	 */
+	public int addRoot(WS worldState) {
+		int id = this.allocate(worldState);
+		this.setCost(id, 0.0f);
+		return id;
+	}
+
+	/**
+	 * Creates a node below parent.
+	 *
+	 * @param worldState The world state after running the behavior.
+	 * @param behavior The behavior that gets us here from our parent.
+	 * @param parent The node that we came from.
+	 * @param stepCost What behavior costs from our parent's world state, as
+	 *        returned by getStepCost.
+	 *
+	 * @return The new node's id.
+	 */
+	public int add(WS worldState, B behavior, int parent, float stepCost) {
+		int id = this.allocate(worldState);
+		this.setBehavior(id, behavior);
+		this.setParent(id, parent);
+		this.setCost(id, this.getCost(parent) + stepCost);
+		if (this.trackChildren) {
+			this.linkChild(parent, id);
+		}
+		return id;
+	}
+
+	private int allocate(WS worldState) {
+		int id;
+		if (this.freeCount > 0) {
+			id = this.freeIds[--this.freeCount];
+			this.store(id, worldState, true);
+		} else {
+			id = this.size;
+			if (id == this.successors.length) {
+				this.successors = Arrays.copyOf(this.successors, id * 2);
+			}
+
+			this.store(id, worldState, false);
+			this.size++;
+		}
+
+		this.setBehavior(id, null);
+		this.setParent(id, NodeStore.NONE);
+		this.setHeuristic(id, 0.0f);
+		this.setFlags(id, 0);
+		if (this.trackChildren) {
+			this.setFirstChild(id, NodeStore.NONE);
+			this.setNextSibling(id, NodeStore.NONE);
+		}
+		return id;
+	}
+
+	/**
+	 * Forgets every node. We keep our capacity, and any successor records
+	 * are kept around, emptied, to be reused.
+	 */
+	public void clear() {
+		this.release();
+		for (int i = 0; i < this.size; i++) {
+			if (this.successors[i] != null) {
+				this.successors[i].invalidate();
+			}
+		}
+		this.size = 0;
+		this.closedCount = 0;
+		this.freeCount = 0;
+	}
+
+	/**
+	 * Throws a node away so that its id can be used again. The node must be a
+	 * leaf. Anybody else holding on to its id, such as the open set or a
+	 * StateTable, needs to let go of it first.
+	 *
+	 * @param id The node.
+	 */
+	public void free(int id) {
+		int parent = this.getParent(id);
+		if (this.trackChildren && parent != NodeStore.NONE) {
+			this.unlinkChild(parent, id);
+		}
+		if (this.successors[id] != null) {
+			this.successors[id].invalidate();
+		}
+
+		this.reopen(id);
+		this.forget(id);
+		this.setFlags(id, NodeStore.FREE);
+
+		if (this.freeCount == this.freeIds.length) {
+			this.freeIds = Arrays.copyOf(this.freeIds, this.freeCount * 2);
+		}
+		this.freeIds[this.freeCount++] = id;
+	}
+
+	/**
+	 * @param id Any id below size().
+	 * @return True if the id isn't in use.
+	 */
+	public boolean isFree(int id) {
+		return (this.getFlags(id) & NodeStore.FREE) != 0;
+	}
+
+	/**
+	 * @param id The node.
+	 * @return True if it is a leaf, as far as child links can tell. Always
+	 *         true if we aren't tracking children.
+	 */
+	public boolean isLeaf(int id) {
+		return !this.trackChildren || this.getFirstChild(id) == NodeStore.NONE;
+	}
+
+	/**
+	 * Remembers that some of a node's children were freed, so expanding it
+	 * again may find something new. Cleared when the node is closed.
+	 *
+	 * @param id The node.
+	 */
+	public void setForgotten(int id) {
+		this.setFlags(id, this.getFlags(id) | NodeStore.FORGOTTEN);
+	}
+
+	public boolean hasForgotten(int id) {
+		return (this.getFlags(id) & NodeStore.FORGOTTEN) != 0;
+	}
+
+	/**
+	 * The cost to get here plus the estimated cost to get from here to the
+	 * goal. This is what A* sorts on.
+	 *
+	 * @param id The node.
+	 * @return getCost(id) + getHeuristic(id)
+	 */
+	public float getEstimatedTotalCost(int id) {
+		return this.getCost(id) + this.getHeuristic(id);
+	}
+
+	public boolean isClosed(int id) {
+		return (this.getFlags(id) & NodeStore.CLOSED) != 0;
+	}
+
+	/**
+	 * Marks a node as fully explored.
+	 *
+	 * @param id The node.
+	 */
+	public void close(int id) {
+		int flags = this.getFlags(id);
+		if ((flags & NodeStore.CLOSED) != 0) return;
+
+		this.setFlags(id, (flags | NodeStore.CLOSED) & ~NodeStore.FORGOTTEN);
+		this.closedCount++;
+	}
+
+	/**
+	 * Undoes close, so that the node can be expanded again.
+	 *
+	 * @param id The node.
+	 */
+	public void reopen(int id) {
+		int flags = this.getFlags(id);
+		if ((flags & NodeStore.CLOSED) == 0) return;
+
+		this.setFlags(id, flags & ~NodeStore.CLOSED);
+		this.closedCount--;
+	}
+
+	/**
+	 * When we find a cheaper way to get to a node, we need to update that
+	 * information by setting a new parent and behavior combination. When we
+	 * are tracking children, this updates the child links of both the
+	 * previous and the new parent, and pushes the change in cost down to
+	 * every node below us. Otherwise only this node's cost changes. Any
+	 * nodes that are sitting in the open set get re-sorted.
+	 *
+	 * @param id The node that got cheaper.
+	 * @param newParent Its new parent.
+	 * @param newBehavior Its new behavior.
+	 * @param stepCost What newBehavior costs from newParent's world state, as
+	 *        returned by getStepCost.
+	 * @param openSet The open set that needs to hear about cost changes. May
+	 *        be null.
+	 */
+	public void changeParent(int id, int newParent, B newBehavior, float stepCost, OpenSet openSet) {
+		float newCost = this.getCost(newParent) + stepCost;
+		int oldParent = this.getParent(id);
+
+		// Detached by a restart, so there's nobody to tell and nothing below
+		// us yet. Or we don't know who is below us.
+		if (oldParent == NodeStore.NONE || !this.trackChildren) {
+			this.setParent(id, newParent);
+			this.setBehavior(id, newBehavior);
+			this.setCost(id, newCost);
+			if (this.trackChildren) {
+				this.linkChild(newParent, id);
+			}
+			if (openSet != null) {
+				openSet.update(id);
+			}
+			return;
+		}
+
+		this.unlinkChild(oldParent, id);
+		this.setParent(id, newParent);
+		this.setBehavior(id, newBehavior);
+		this.linkChild(newParent, id);
+
+		// Our children can stay just fine, but they are now cheaper too.
+		this.propagateCost(id, newCost - this.getCost(id), openSet);
+	}
+
+	/**
+	 * Shifts the cost of a node and every node below it. We walk the subtree
+	 * with an explicit stack since plans can get deep.
+	 *
+	 * @param id The top of the subtree.
+	 * @param delta The amount to add to every cost in this subtree.
+	 * @param openSet The open set to re-sort nodes in. May be null.
+	 */
+	private void propagateCost(int id, float delta, OpenSet openSet) {
+		if (delta == 0.0f) return;
+
+		int top = 0;
+		this.stack[top++] = id;
+		while (top > 0) {
+			int n = this.stack[--top];
+			this.setCost(n, this.getCost(n) + delta);
+			if (openSet != null) {
+				openSet.update(n);
+			}
+
+			for (int c = this.getFirstChild(n); c != NodeStore.NONE; c = this.getNextSibling(c)) {
+				if (top == this.stack.length) {
+					this.stack = Arrays.copyOf(this.stack, top * 2);
+				}
+				this.stack[top++] = c;
+			}
+		}
+	}
+
+	private void linkChild(int parent, int child) {
+		this.setNextSibling(child, this.getFirstChild(parent));
+		this.setFirstChild(parent, child);
+	}
+
+	private void unlinkChild(int parent, int child) {
+		int c = this.getFirstChild(parent);
+		if (c == child) {
+			this.setFirstChild(parent, this.getNextSibling(child));
+			this.setNextSibling(child, NodeStore.NONE);
+			return;
+		}
+
+		while (c != NodeStore.NONE) {
+			int next = this.getNextSibling(c);
+			if (next == child) {
+				this.setNextSibling(c, this.getNextSibling(child));
+				this.setNextSibling(child, NodeStore.NONE);
+				return;
+			}
+			c = next;
+		}
+	}
+
+	/**
+	 * Cuts a node loose from the tree so that a new search can find its own
+	 * way there. Until it does, the node is unreachable and infinitely
+	 * expensive, and it is not closed. Successors we recorded are kept.
+	 *
+	 * @param id The node.
+	 */
+	public void detach(int id) {
+		this.setParent(id, NodeStore.NONE);
+		this.setBehavior(id, null);
+		if (this.trackChildren) {
+			this.setFirstChild(id, NodeStore.NONE);
+			this.setNextSibling(id, NodeStore.NONE);
+		}
+		this.setCost(id, Float.POSITIVE_INFINITY);
+		this.reopen(id);
+	}
+
+	/**
+	 * Makes a detached node the root of a new search.
+	 *
+	 * @param id The node.
+	 */
+	public void makeRoot(int id) {
+		this.detach(id);
+		this.setCost(id, 0.0f);
+	}
+
+	/**
+	 * @param id The node.
+	 * @return What expanding it found, or null if we weren't recording.
+	 */
+	public Successors<WS, B> getSuccessors(int id) {
+		return this.successors[id];
+	}
+
+	/**
+	 * @param id The node.
+	 * @return Its successor record, made if it didn't have one.
+	 */
+	public Successors<WS, B> getOrCreateSuccessors(int id) {
+		Successors<WS, B> result = this.successors[id];
+		if (result == null) {
+			result = new Successors<WS, B>();
+			this.successors[id] = result;
+		}
+		return result;
+	}
+
+	/**
+	 * Spits out the path from the root to a node to stdout, deepest first.
+	 *
+	 * @param id The node.
+	 */
+	public void debugParent(int id) {
+		int indent = 0;
+		for (int n = id; n != NodeStore.NONE; n = this.getParent(n)) {
+			for (int i = 0; i < indent; i++) {
+				System.out.print(" ");
+			}
+			System.out.println(this.getBehavior(n) + ":" + this.getCost(n));
+			indent += 2;
+		}
+	}
+
+	/**
+	 * Spits out the tree below a node to stdout. If we aren't tracking
+	 * children, they are worked out from the parents first.
+	 *
+	 * @param id The node.
+	 */
+	public void debug(int id) {
+		if (!this.trackChildren) {
+			this.deriveChildren();
+		}
+
+		System.out.println(this.getBehavior(id));
+		for (int c = this.getFirstChild(id); c != NodeStore.NONE; c = this.getNextSibling(c)) {
+			this.debug(c, 2);
+		}
+	}
+
+	private void debug(int id, int indent) {
+		for (int i = 0; i < indent; i++) {
+			System.out.print(" ");
+		}
+
+		System.out.println(this.getBehavior(id) + ":" + (this.getCost(id) - this.getCost(this.getParent(id))));
+		for (int c = this.getFirstChild(id); c != NodeStore.NONE; c = this.getNextSibling(c)) {
+			this.debug(c, 2 + indent);
+		}
+	}
+}
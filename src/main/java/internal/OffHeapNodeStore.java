@@ -0,0 +1,452 @@
+package com.gracefulcode.ai.internal;
+
+import com.gracefulcode.ai.Behavior;
+import com.gracefulcode.ai.Goal;
+import com.gracefulcode.ai.WorldState;
+import com.gracefulcode.ai.WorldStateCodec;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+
+/**
+ * Keeps nodes in direct memory, for searches big enough that the garbage
+ * collector walking millions of nodes and world states starts to hurt.
+ * <p>
+ * Each node is a fixed size record in a chunk of direct memory. World states
+ * are written with a WorldStateCodec into an append-only arena, also in
+ * direct memory, and read back whenever somebody asks for one. Behaviors are
+ * few, so they stay on the heap and records just hold an index into a list
+ * of them.
+ * <p>
+ * The arena only grows until the next clear. When a freed id is handed out
+ * again, its new world state is written over its old one if it fits.
+ * <p>
+ * Direct memory isn't given back until the garbage collector gets around to
+ * the buffers that hold it, which may be never if the heap is quiet. Call
+ * close when you're done to give it back right away.
+ * <p>
+ * The open set compares world states all the time, and reading them out
+ * every time would make garbage on every comparison. So comparisons go
+ * through a small cache of world states we've read recently, indexed by id.
+ * It's small enough that nearly all world states stay off the heap.
+ *
+ * @version 0.1
+ * @since 0.1
+ */
+public class OffHeapNodeStore<WS extends WorldState, B extends Behavior<WS>> extends NodeStore<WS, B> {
+	private static final int PARENT = 0;
+	private static final int COST = 4;
+	private static final int HEURISTIC = 8;
+	private static final int FIRST_CHILD = 12;
+	private static final int NEXT_SIBLING = 16;
+	private static final int BEHAVIOR = 20;
+	private static final int FLAGS = 24;
+	private static final int STATE_CHUNK = 28;
+	private static final int STATE_POSITION = 32;
+	private static final int STATE_LENGTH = 36;
+	private static final int RECORD_SIZE = 40;
+
+	/**
+	 * Records per chunk, as a shift.
+	 */
+	private static final int RECORD_SHIFT = 12;
+	private static final int RECORD_MASK = (1 << OffHeapNodeStore.RECORD_SHIFT) - 1;
+
+	private static final int ARENA_CHUNK_SIZE = 1 << 20;
+
+	/**
+	 * Slots in the comparison cache. A power of two.
+	 */
+	private static final int DECODED_SIZE = 1024;
+
+	private WorldStateCodec<WS> codec;
+
+	private ByteBuffer[] records;
+	private int recordChunks;
+
+	private ByteBuffer[] arena;
+	private int arenaChunks;
+
+	/**
+	 * The arena chunk and position that the next world state goes at.
+	 */
+	private int arenaChunk;
+	private int arenaPosition;
+
+	private ArrayList<B> behaviorList;
+	private IdentityHashMap<B, Integer> behaviorIds;
+
+	/**
+	 * World states that we are comparing against get written here first.
+	 */
+	private ByteBuffer scratch;
+
+	/**
+	 * World states read for comparisons, and the ids they belong to. An id
+	 * goes in the slot its low bits pick.
+	 */
+	private Object[] decoded;
+	private int[] decodedIds;
+
+	private boolean closed;
+
+	public OffHeapNodeStore(int initialCapacity, WorldStateCodec<WS> codec) {
+		super(initialCapacity);
+
+		this.codec = codec;
+		this.records = new ByteBuffer[4];
+		this.arena = new ByteBuffer[4];
+		this.behaviorList = new ArrayList<B>();
+		this.behaviorIds = new IdentityHashMap<B, Integer>();
+		this.scratch = ByteBuffer.allocate(64);
+		this.decoded = new Object[OffHeapNodeStore.DECODED_SIZE];
+		this.decodedIds = new int[OffHeapNodeStore.DECODED_SIZE];
+		Arrays.fill(this.decodedIds, NodeStore.NONE);
+	}
+
+	private ByteBuffer chunk(int id) {
+		if (this.closed) {
+			throw new IllegalStateException("This node store has been closed.");
+		}
+		return this.records[id >>> OffHeapNodeStore.RECORD_SHIFT];
+	}
+
+	private static int offset(int id) {
+		return (id & OffHeapNodeStore.RECORD_MASK) * OffHeapNodeStore.RECORD_SIZE;
+	}
+
+	@Override
+	protected void store(int id, WS worldState, boolean reused) {
+		int c = id >>> OffHeapNodeStore.RECORD_SHIFT;
+		if (c == this.recordChunks) {
+			if (c == this.records.length) {
+				this.records = Arrays.copyOf(this.records, c * 2);
+			}
+			this.records[c] = ByteBuffer.allocateDirect(OffHeapNodeStore.RECORD_SIZE << OffHeapNodeStore.RECORD_SHIFT).order(ByteOrder.nativeOrder());
+			this.recordChunks++;
+		}
+
+		ByteBuffer record = this.chunk(id);
+		int length = this.codec.size(worldState);
+		int o = OffHeapNodeStore.offset(id);
+
+		int slot = id & (OffHeapNodeStore.DECODED_SIZE - 1);
+		if (this.decodedIds[slot] == id) {
+			this.decodedIds[slot] = NodeStore.NONE;
+			this.decoded[slot] = null;
+		}
+
+		if (reused && length <= record.getInt(o + OffHeapNodeStore.STATE_LENGTH)) {
+			ByteBuffer target = this.arena[record.getInt(o + OffHeapNodeStore.STATE_CHUNK)].duplicate();
+			int position = record.getInt(o + OffHeapNodeStore.STATE_POSITION);
+			target.limit(position + length);
+			target.position(position);
+			this.codec.write(worldState, target);
+			this.checkWritten(target.position() - position, length);
+			record.putInt(o + OffHeapNodeStore.STATE_LENGTH, length);
+			return;
+		}
+
+		ByteBuffer target = this.reserve(length);
+
+		int position = target.position();
+		this.codec.write(worldState, target);
+		this.checkWritten(target.position() - position, length);
+
+		record.putInt(o + OffHeapNodeStore.STATE_CHUNK, this.arenaChunk);
+		record.putInt(o + OffHeapNodeStore.STATE_POSITION, position);
+		record.putInt(o + OffHeapNodeStore.STATE_LENGTH, length);
+		this.arenaPosition += length;
+	}
+
+	private void checkWritten(int written, int length) {
+		if (written != length) {
+			throw new IllegalStateException("WorldStateCodec wrote " + written + " bytes but said it would write " + length + ".");
+		}
+	}
+
+	/**
+	 * Keeps the world state's bytes, so that whatever gets this id next can
+	 * write over them.
+	 */
+	@Override
+	protected void forget(int id) {
+	}
+
+	/**
+	 * Finds room in the arena for length bytes, moving on to the next chunk
+	 * if this one is full. World states never straddle chunks.
+	 *
+	 * @return A view of the current arena chunk, positioned where the bytes
+	 *         go.
+	 */
+	private ByteBuffer reserve(int length) {
+		ByteBuffer current = (this.arenaChunk < this.arenaChunks) ? this.arena[this.arenaChunk] : null;
+		if (current == null || this.arenaPosition + length > current.capacity()) {
+			if (current != null) {
+				this.arenaChunk++;
+			}
+			this.arenaPosition = 0;
+
+			current = (this.arenaChunk < this.arenaChunks) ? this.arena[this.arenaChunk] : null;
+			if (current != null && length > current.capacity()) {
+				// Too big for the chunk we'd reuse, so swap in a bigger one.
+				OffHeapNodeStore.free(current);
+				current = null;
+			}
+			if (current == null) {
+				current = ByteBuffer.allocateDirect(Math.max(OffHeapNodeStore.ARENA_CHUNK_SIZE, length));
+				if (this.arenaChunk == this.arena.length) {
+					this.arena = Arrays.copyOf(this.arena, this.arenaChunk * 2);
+				}
+				this.arena[this.arenaChunk] = current;
+				if (this.arenaChunk == this.arenaChunks) {
+					this.arenaChunks++;
+				}
+			}
+		}
+
+		ByteBuffer target = current.duplicate();
+		target.position(this.arenaPosition);
+		target.limit(this.arenaPosition + length);
+		return target;
+	}
+
+	@Override
+	protected void release() {
+		if (this.closed) {
+			throw new IllegalStateException("This node store has been closed.");
+		}
+
+		// Chunks are kept and written over.
+		this.arenaChunk = 0;
+		this.arenaPosition = 0;
+		this.behaviorList.clear();
+		this.behaviorIds.clear();
+		this.forgetDecoded();
+	}
+
+	private void forgetDecoded() {
+		Arrays.fill(this.decoded, null);
+		Arrays.fill(this.decodedIds, NodeStore.NONE);
+	}
+
+	/**
+	 * Every call reads a new world state out of direct memory.
+	 */
+	@Override
+	public WS getWorldState(int id) {
+		return this.codec.read(this.stateBytes(id));
+	}
+
+	/**
+	 * Compares world states from the cache, only reading the ones that
+	 * aren't in it.
+	 */
+	@Override
+	public int compareWorldStates(Goal<WS> goal, int a, int b) {
+		return goal.compare(this.getDecodedWorldState(a), this.getDecodedWorldState(b));
+	}
+
+	@SuppressWarnings("unchecked")
+	private WS getDecodedWorldState(int id) {
+		int slot = id & (OffHeapNodeStore.DECODED_SIZE - 1);
+		if (this.decodedIds[slot] == id) {
+			return (WS)this.decoded[slot];
+		}
+
+		WS worldState = this.getWorldState(id);
+		this.decoded[slot] = worldState;
+		this.decodedIds[slot] = id;
+		return worldState;
+	}
+
+	private ByteBuffer stateBytes(int id) {
+		ByteBuffer record = this.chunk(id);
+		int o = OffHeapNodeStore.offset(id);
+		int position = record.getInt(o + OffHeapNodeStore.STATE_POSITION);
+
+		ByteBuffer bytes = this.arena[record.getInt(o + OffHeapNodeStore.STATE_CHUNK)].duplicate();
+		bytes.limit(position + record.getInt(o + OffHeapNodeStore.STATE_LENGTH));
+		bytes.position(position);
+		return bytes;
+	}
+
+	@Override
+	public boolean worldStateEquals(int id, WS worldState) {
+		int length = this.codec.size(worldState);
+		if (length > this.scratch.capacity()) {
+			this.scratch = ByteBuffer.allocate(Math.max(length, this.scratch.capacity() * 2));
+		}
+
+		this.scratch.clear();
+		this.scratch.limit(length);
+		this.codec.write(worldState, this.scratch);
+		this.scratch.flip();
+
+		return this.stateBytes(id).equals(this.scratch);
+	}
+
+	@Override
+	public B getBehavior(int id) {
+		int b = this.chunk(id).getInt(OffHeapNodeStore.offset(id) + OffHeapNodeStore.BEHAVIOR);
+		return (b == NodeStore.NONE) ? null : this.behaviorList.get(b);
+	}
+
+	@Override
+	protected void setBehavior(int id, B behavior) {
+		int b = NodeStore.NONE;
+		if (behavior != null) {
+			Integer known = this.behaviorIds.get(behavior);
+			if (known == null) {
+				known = this.behaviorList.size();
+				this.behaviorList.add(behavior);
+				this.behaviorIds.put(behavior, known);
+			}
+			b = known;
+		}
+		this.chunk(id).putInt(OffHeapNodeStore.offset(id) + OffHeapNodeStore.BEHAVIOR, b);
+	}
+
+	@Override
+	public int getParent(int id) {
+		return this.chunk(id).getInt(OffHeapNodeStore.offset(id) + OffHeapNodeStore.PARENT);
+	}
+
+	@Override
+	protected void setParent(int id, int parent) {
+		this.chunk(id).putInt(OffHeapNodeStore.offset(id) + OffHeapNodeStore.PARENT, parent);
+	}
+
+	@Override
+	public float getCost(int id) {
+		return this.chunk(id).getFloat(OffHeapNodeStore.offset(id) + OffHeapNodeStore.COST);
+	}
+
+	@Override
+	protected void setCost(int id, float cost) {
+		this.chunk(id).putFloat(OffHeapNodeStore.offset(id) + OffHeapNodeStore.COST, cost);
+	}
+
+	@Override
+	public float getHeuristic(int id) {
+		return this.chunk(id).getFloat(OffHeapNodeStore.offset(id) + OffHeapNodeStore.HEURISTIC);
+	}
+
+	@Override
+	public void setHeuristic(int id, float heuristic) {
+		this.chunk(id).putFloat(OffHeapNodeStore.offset(id) + OffHeapNodeStore.HEURISTIC, heuristic);
+	}
+
+	@Override
+	protected int getFlags(int id) {
+		return this.chunk(id).getInt(OffHeapNodeStore.offset(id) + OffHeapNodeStore.FLAGS);
+	}
+
+	@Override
+	protected void setFlags(int id, int flags) {
+		this.chunk(id).putInt(OffHeapNodeStore.offset(id) + OffHeapNodeStore.FLAGS, flags);
+	}
+
+	@Override
+	protected int getFirstChild(int id) {
+		return this.chunk(id).getInt(OffHeapNodeStore.offset(id) + OffHeapNodeStore.FIRST_CHILD);
+	}
+
+	@Override
+	protected void setFirstChild(int id, int child) {
+		this.chunk(id).putInt(OffHeapNodeStore.offset(id) + OffHeapNodeStore.FIRST_CHILD, child);
+	}
+
+	@Override
+	protected int getNextSibling(int id) {
+		return this.chunk(id).getInt(OffHeapNodeStore.offset(id) + OffHeapNodeStore.NEXT_SIBLING);
+	}
+
+	@Override
+	protected void setNextSibling(int id, int sibling) {
+		this.chunk(id).putInt(OffHeapNodeStore.offset(id) + OffHeapNodeStore.NEXT_SIBLING, sibling);
+	}
+
+	/**
+	 * @return How many bytes of direct memory we are holding on to.
+	 */
+	public long getReservedBytes() {
+		long total = 0;
+		for (int i = 0; i < this.recordChunks; i++) {
+			total += this.records[i].capacity();
+		}
+		for (int i = 0; i < this.arenaChunks; i++) {
+			total += this.arena[i].capacity();
+		}
+		return total;
+	}
+
+	public boolean isClosed() {
+		return this.closed;
+	}
+
+	/**
+	 * Gives all of our direct memory back. Closing twice is harmless, but
+	 * using the store at all after closing throws IllegalStateException.
+	 */
+	@Override
+	public void close() {
+		if (this.closed) return;
+		this.closed = true;
+
+		for (int i = 0; i < this.recordChunks; i++) {
+			OffHeapNodeStore.free(this.records[i]);
+			this.records[i] = null;
+		}
+		for (int i = 0; i < this.arenaChunks; i++) {
+			OffHeapNodeStore.free(this.arena[i]);
+			this.arena[i] = null;
+		}
+		this.recordChunks = 0;
+		this.arenaChunks = 0;
+		this.behaviorList.clear();
+		this.behaviorIds.clear();
+		this.forgetDecoded();
+	}
+
+	/**
+	 * Frees a direct buffer now rather than whenever it gets collected. There
+	 * is no public way to do this before foreign memory, so we try Unsafe's
+	 * invokeCleaner (Java 9 and up), then the buffer's own cleaner (Java 8
+	 * and below). If neither works, the garbage collector still frees it
+	 * eventually.
+	 */
+	private static void free(ByteBuffer buffer) {
+		if (buffer == null || !buffer.isDirect()) return;
+
+		try {
+			Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+			Method invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+			Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+			theUnsafe.setAccessible(true);
+			invokeCleaner.invoke(theUnsafe.get(null), buffer);
+			return;
+		} catch (Exception e) {
+			// Not Java 9 or up. Try the old way.
+		}
+
+		try {
+			Method cleanerMethod = buffer.getClass().getMethod("cleaner");
+			cleanerMethod.setAccessible(true);
+			Object cleaner = cleanerMethod.invoke(buffer);
+			if (cleaner != null) {
+				Method clean = cleaner.getClass().getMethod("clean");
+				clean.setAccessible(true);
+				clean.invoke(cleaner);
+			}
+		} catch (Exception e) {
+			// Leave it to the garbage collector.
+		}
+	}
+}
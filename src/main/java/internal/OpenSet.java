@@ -0,0 +1,203 @@
+package com.gracefulcode.ai.internal;
+
+import java.util.Arrays;
+
+/**
+ * The open set is a binary heap of node ids, very much like
+ * java.util.PriorityQueue. The difference is that we remember where every
+ * node lives in the heap. That lets us answer "is this node open?" without
+ * scanning, remove an arbitrary node in O(log n), and re-sort a single node
+ * when we find a cheaper way to get to it.
+ *
+ * @version 0.1
+ * @since 0.1
+ */
+public class OpenSet {
+	private int[] heap;
+	private int size;
+	private NodeComparator comparator;
+
+	/**
+	 * Where each node id lives in the heap, or -1 if it is not open. Grows
+	 * as we see bigger ids.
+	 */
+	private int[] positions;
+
+	public OpenSet(int initialCapacity, NodeComparator comparator) {
+		this.heap = new int[Math.max(1, initialCapacity)];
+		this.positions = new int[Math.max(1, initialCapacity)];
+		Arrays.fill(this.positions, -1);
+		this.size = 0;
+		this.comparator = comparator;
+	}
+
+	/**
+	 * @return The number of nodes currently in the open set.
+	 */
+	public int size() {
+		return this.size;
+	}
+
+	/**
+	 * Gets a node by its place in the heap, for walking every node in the
+	 * open set. Only the first is in any particular order.
+	 *
+	 * @param i From 0 to size() - 1.
+	 * @return The node.
+	 */
+	public int get(int i) {
+		return this.heap[i];
+	}
+
+	/**
+	 * Checks whether a node is in this open set. This is a constant time
+	 * operation.
+	 *
+	 * @param node The node to check.
+	 * @return True if the node is in this open set.
+	 */
+	public boolean contains(int node) {
+		return node < this.positions.length && this.positions[node] >= 0;
+	}
+
+	/**
+	 * Adds a node to the open set. Adding a node that is already in the open
+	 * set does nothing.
+	 *
+	 * @param node The node to add.
+	 * @return True if the node was added, false if it was already here.
+	 */
+	public boolean add(int node) {
+		if (node >= this.positions.length) {
+			int oldLength = this.positions.length;
+			this.positions = Arrays.copyOf(this.positions, Math.max(oldLength * 2, node + 1));
+			Arrays.fill(this.positions, oldLength, this.positions.length, -1);
+		}
+		if (this.positions[node] >= 0) return false;
+
+		if (this.size == this.heap.length) {
+			this.heap = Arrays.copyOf(this.heap, this.heap.length * 2);
+		}
+		this.siftUp(this.size++, node);
+		return true;
+	}
+
+	/**
+	 * @return The most promising node, without removing it. NodeStore.NONE
+	 *         if empty.
+	 */
+	public int peek() {
+		if (this.size == 0) return NodeStore.NONE;
+		return this.heap[0];
+	}
+
+	/**
+	 * Removes and returns the most promising node.
+	 *
+	 * @return The most promising node, or NodeStore.NONE if the open set is
+	 *         empty.
+	 */
+	public int poll() {
+		if (this.size == 0) return NodeStore.NONE;
+
+		int result = this.heap[0];
+		this.removeAt(0);
+		return result;
+	}
+
+	/**
+	 * Removes a node from the open set, wherever it is.
+	 *
+	 * @param node The node to remove.
+	 * @return True if the node was in the open set.
+	 */
+	public boolean remove(int node) {
+		if (!this.contains(node)) return false;
+
+		this.removeAt(this.positions[node]);
+		return true;
+	}
+
+	/**
+	 * Call this whenever something that the comparator looks at changes for a
+	 * node, such as when it gets cheaper. Nodes that are not in the open set
+	 * are ignored.
+	 *
+	 * @param node The node whose priority changed.
+	 */
+	public void update(int node) {
+		if (!this.contains(node)) return;
+
+		int i = this.positions[node];
+		this.siftUp(i, node);
+		if (this.heap[i] == node) {
+			this.siftDown(i, node);
+		}
+	}
+
+	/**
+	 * Re-sorts every node. Call this when the comparator itself changes, so
+	 * that every node's priority may have changed at once.
+	 */
+	public void reorder() {
+		for (int i = (this.size >>> 1) - 1; i >= 0; i--) {
+			this.siftDown(i, this.heap[i]);
+		}
+	}
+
+	/**
+	 * Removes every node from the open set. We keep our capacity.
+	 */
+	public void clear() {
+		for (int i = 0; i < this.size; i++) {
+			this.positions[this.heap[i]] = -1;
+		}
+		this.size = 0;
+	}
+
+	private void removeAt(int i) {
+		this.positions[this.heap[i]] = -1;
+
+		int s = --this.size;
+		if (s == i) return;
+
+		int moved = this.heap[s];
+		this.siftDown(i, moved);
+		if (this.heap[i] == moved) {
+			this.siftUp(i, moved);
+		}
+	}
+
+	private void siftUp(int k, int node) {
+		while (k > 0) {
+			int parent = (k - 1) >>> 1;
+			int e = this.heap[parent];
+			if (this.comparator.compare(node, e) >= 0) break;
+			this.place(k, e);
+			k = parent;
+		}
+		this.place(k, node);
+	}
+
+	private void siftDown(int k, int node) {
+		int half = this.size >>> 1;
+		while (k < half) {
+			int child = (k << 1) + 1;
+			int c = this.heap[child];
+			int right = child + 1;
+			if (right < this.size && this.comparator.compare(c, this.heap[right]) > 0) {
+				child = right;
+				c = this.heap[child];
+			}
+			if (this.comparator.compare(node, c) <= 0) break;
+			this.place(k, c);
+			k = child;
+		}
+		this.place(k, node);
+	}
+
+	private void place(int k, int node) {
+		this.heap[k] = node;
+		this.positions[node] = k;
+	}
+}
@@ -0,0 +1,152 @@
+package com.gracefulcode.ai.internal;
+
+import com.gracefulcode.ai.Behavior;
+import com.gracefulcode.ai.Goal;
+import com.gracefulcode.ai.HeuristicGoal;
+import com.gracefulcode.ai.WorldState;
+
+import java.util.ArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Everything the workers of one parallel search share. World states are
+ * split up between shards by hash, and the only things that cross between
+ * workers are inbox messages and what's in here.
+ * <p>
+ * Knowing when to stop is the tricky part, since a worker with nothing to do
+ * may be sent something at any moment. Looking at which workers are idle
+ * can't tell us, because a worker can be sent something right after we
+ * looked at it. Instead every piece of work is counted in pending: each
+ * message before it is sent and each node as it goes into an open set. It is
+ * only counted out once a worker has completely dealt with it, and anything
+ * new that dealing with it made has already been counted in by then. So
+ * pending can't get back up from 0, and once it reaches 0 the search is
+ * over.
+ *
+ * @version 0.1
+ * @since 0.1
+ */
+public class ParallelSearch<WS extends WorldState, B extends Behavior<WS>> {
+	public final SearchShard<WS, B>[] shards;
+	public final Goal<WS> goal;
+	public final HeuristicGoal<WS> heuristicGoal;
+	public final ArrayList<B> behaviors;
+
+	/**
+	 * Messages sent and open nodes, over every shard, that haven't been
+	 * completely dealt with yet.
+	 */
+	public final AtomicInteger pending = new AtomicInteger();
+
+	/**
+	 * Set when the search is over, one way or another.
+	 */
+	public volatile boolean done;
+
+	/**
+	 * The first thing that went wrong in any worker, if anything did.
+	 */
+	public volatile Throwable failure;
+
+	/**
+	 * The cheapest plan found so far: its cost, and where its last node is.
+	 * The cost can be read at any time; all three only change together.
+	 */
+	private volatile float bestCost = Float.POSITIVE_INFINITY;
+	private int bestShard = -1;
+	private int bestNode = NodeStore.NONE;
+
+	@SuppressWarnings("unchecked")
+	public ParallelSearch(int shardCount, Goal<WS> goal, ArrayList<B> behaviors) {
+		this.goal = goal;
+		this.heuristicGoal = goal instanceof HeuristicGoal ? (HeuristicGoal<WS>)goal : null;
+		this.behaviors = behaviors;
+		this.shards = ParallelSearch.newShards(shardCount);
+		for (int i = 0; i < shardCount; i++) {
+			this.shards[i] = new SearchShard<WS, B>(i, goal);
+		}
+	}
+
+	/**
+	 * @return An empty array for the shards. Nothing else ever goes in it.
+	 */
+	@SuppressWarnings("unchecked")
+	private static <WS extends WorldState, B extends Behavior<WS>> SearchShard<WS, B>[] newShards(int length) {
+		return (SearchShard<WS, B>[])new SearchShard<?, ?>[length];
+	}
+
+	/**
+	 * Picks the shard that owns a world state. This mixes the hash
+	 * differently than StateTable does, so that the world states in one
+	 * shard don't all crowd into the same part of its table.
+	 *
+	 * @param worldState The world state.
+	 *
+	 * @return The index of the shard that owns it.
+	 */
+	public int shardFor(WS worldState) {
+		long h = (worldState.hashCode() * 0x9E3779B9) & 0xFFFFFFFFL;
+		return (int)((h * this.shards.length) >>> 32);
+	}
+
+	/**
+	 * @param worldState A world state we just found.
+	 *
+	 * @return The goal's estimate of the cost left, or 0 if it can't.
+	 */
+	public float estimateCost(WS worldState) {
+		if (this.heuristicGoal == null) return 0.0f;
+		return this.heuristicGoal.estimateCost(worldState);
+	}
+
+	public float getBestCost() {
+		return this.bestCost;
+	}
+
+	/**
+	 * Offers a node that satisfies the goal. Kept if it's the cheapest yet.
+	 *
+	 * @param shard The shard the node lives in.
+	 * @param node The node.
+	 * @param cost The cost of getting to it.
+	 */
+	public synchronized void offerSolution(int shard, int node, float cost) {
+		if (cost < this.bestCost) {
+			this.bestShard = shard;
+			this.bestNode = node;
+			this.bestCost = cost;
+		}
+	}
+
+	public synchronized int getBestShard() {
+		return this.bestShard;
+	}
+
+	public synchronized int getBestNode() {
+		return this.bestNode;
+	}
+
+	/**
+	 * Records that something went wrong and stops every worker.
+	 *
+	 * @param t What went wrong. Only the first is kept.
+	 */
+	public synchronized void fail(Throwable t) {
+		if (this.failure == null) {
+			this.failure = t;
+		}
+		this.done = true;
+	}
+
+	/**
+	 * @return The number of nodes expanded over every shard. Only
+	 *         meaningful once the workers have stopped.
+	 */
+	public int getExpansions() {
+		int total = 0;
+		for (SearchShard<WS, B> shard: this.shards) {
+			total += shard.expansions;
+		}
+		return total;
+	}
+}
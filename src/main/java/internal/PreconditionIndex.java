@@ -0,0 +1,218 @@
+package com.gracefulcode.ai.internal;
+
+import com.gracefulcode.ai.Behavior;
+import com.gracefulcode.ai.FactSource;
+import com.gracefulcode.ai.PreconditionBehavior;
+import com.gracefulcode.ai.WorldState;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+
+/**
+ * Indexes behaviors by the facts that they require so that each expansion
+ * only visits behaviors that have a chance of running.
+ * <p>
+ * Every behavior with declared preconditions is filed under its first
+ * required fact, which we call its anchor. To find candidates for a world
+ * state we start with the behaviors that declare nothing, then add in the
+ * behaviors of every anchor that holds. Candidates are kept as a bitset over
+ * the original behavior order, so behaviors are still visited in the order
+ * the behavior provider gave them to us.
+ *
+ * @version 0.1
+ * @since 0.1
+ */
+public class PreconditionIndex<WS extends WorldState, B extends Behavior<WS>> {
+	/**
+	 * Every behavior, in behavior provider order.
+	 */
+	private ArrayList<B> behaviors;
+
+	/**
+	 * The full list of required facts for each behavior. Null for behaviors
+	 * that do not declare any.
+	 */
+	private int[][] requiredFacts;
+
+	/**
+	 * Bits for the behaviors that have no declared preconditions.
+	 */
+	private long[] unconditioned;
+
+	/**
+	 * The distinct anchor facts, and for each the bits of the behaviors
+	 * anchored on it.
+	 */
+	private int[] anchors;
+	private long[][] anchorMasks;
+
+	/**
+	 * Scratch space, reused for every expansion.
+	 */
+	private long[] candidateBits;
+	private int[] candidates;
+
+	private PreconditionIndex(ArrayList<B> behaviors) {
+		this.behaviors = behaviors;
+		int words = (behaviors.size() + 63) >>> 6;
+
+		this.requiredFacts = new int[behaviors.size()][];
+		this.unconditioned = new long[words];
+		this.candidateBits = new long[words];
+		this.candidates = new int[behaviors.size()];
+
+		HashMap<Integer, long[]> masks = new HashMap<Integer, long[]>();
+		ArrayList<Integer> anchorOrder = new ArrayList<Integer>();
+		for (int i = 0; i < behaviors.size(); i++) {
+			B b = behaviors.get(i);
+			int[] required = null;
+			if (b instanceof PreconditionBehavior) {
+				required = ((PreconditionBehavior<?>)b).getRequiredFacts();
+			}
+
+			if (required == null || required.length == 0) {
+				this.unconditioned[i >>> 6] |= 1L << i;
+				continue;
+			}
+
+			this.requiredFacts[i] = required.clone();
+			long[] mask = masks.get(required[0]);
+			if (mask == null) {
+				mask = new long[words];
+				masks.put(required[0], mask);
+				anchorOrder.add(required[0]);
+			}
+			mask[i >>> 6] |= 1L << i;
+		}
+
+		this.anchors = new int[anchorOrder.size()];
+		this.anchorMasks = new long[anchorOrder.size()][];
+		for (int i = 0; i < this.anchors.length; i++) {
+			this.anchors[i] = anchorOrder.get(i);
+			this.anchorMasks[i] = masks.get(this.anchors[i]);
+		}
+	}
+
+	/**
+	 * Builds an index for a set of behaviors, if it would do any good. That
+	 * means that the world states have to be FactSources, and at least one
+	 * behavior has to declare a required fact.
+	 *
+	 * @param initialState A world state, to check that it is a FactSource.
+	 * @param behaviorProvider The behaviors to index.
+	 *
+	 * @return The index, or null if there's nothing to index.
+	 */
+	public static <WS extends WorldState, B extends Behavior<WS>> PreconditionIndex<WS, B> build(WS initialState, Iterable<B> behaviorProvider) {
+		if (!(initialState instanceof FactSource)) return null;
+
+		// Check before building anything, so that asking costs nothing when
+		// there's nothing to index.
+		boolean anyDeclared = false;
+		for (B b: behaviorProvider) {
+			if (b instanceof PreconditionBehavior) {
+				int[] required = ((PreconditionBehavior<?>)b).getRequiredFacts();
+				if (required != null && required.length > 0) {
+					anyDeclared = true;
+					break;
+				}
+			}
+		}
+		if (!anyDeclared) return null;
+
+		ArrayList<B> behaviors = new ArrayList<B>();
+		for (B b: behaviorProvider) {
+			behaviors.add(b);
+		}
+		return new PreconditionIndex<WS, B>(behaviors);
+	}
+
+	/**
+	 * Checks whether this index was built from exactly these behaviors, in
+	 * this order, so that it can be kept when a planning context is reused.
+	 * Required facts are assumed not to change for a given behavior.
+	 *
+	 * @param behaviorProvider The behaviors to check against.
+	 *
+	 * @return True if the index is still good for these behaviors.
+	 */
+	public boolean isFor(Iterable<B> behaviorProvider) {
+		int i = 0;
+		for (B b: behaviorProvider) {
+			if (i >= this.behaviors.size() || this.behaviors.get(i) != b) return false;
+			i++;
+		}
+		return i == this.behaviors.size();
+	}
+
+	/**
+	 * @return The total number of behaviors in this index.
+	 */
+	public int size() {
+		return this.behaviors.size();
+	}
+
+	/**
+	 * Finds every behavior whose required facts all hold in the given world
+	 * state. Afterwards, getCandidate(0) through getCandidate(count - 1) are
+	 * those behaviors in their original order. This reuses internal scratch
+	 * space, so the results are only good until the next call.
+	 *
+	 * @param facts The world state being expanded.
+	 *
+	 * @return The number of candidates found.
+	 */
+	public int findCandidates(FactSource facts) {
+		long[] bits = this.candidateBits;
+		System.arraycopy(this.unconditioned, 0, bits, 0, bits.length);
+
+		for (int i = 0; i < this.anchors.length; i++) {
+			if (!facts.hasFact(this.anchors[i])) continue;
+
+			long[] mask = this.anchorMasks[i];
+			for (int w = 0; w < bits.length; w++) {
+				bits[w] |= mask[w];
+			}
+		}
+
+		int count = 0;
+		for (int w = 0; w < bits.length; w++) {
+			long word = bits[w];
+			while (word != 0) {
+				int i = (w << 6) + Long.numberOfTrailingZeros(word);
+				word &= word - 1;
+
+				if (this.holdsAll(this.requiredFacts[i], facts)) {
+					this.candidates[count++] = i;
+				}
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * @param i Which candidate, from 0 to the count findCandidates returned.
+	 * @return The candidate behavior.
+	 */
+	public B getCandidate(int i) {
+		return this.behaviors.get(this.candidates[i]);
+	}
+
+	/**
+	 * @param i Which candidate, from 0 to the count findCandidates returned.
+	 * @return Where the candidate behavior is in behavior provider order.
+	 */
+	public int getCandidateIndex(int i) {
+		return this.candidates[i];
+	}
+
+	private boolean holdsAll(int[] required, FactSource facts) {
+		if (required == null) return true;
+
+		// The anchor, required[0], is already known to hold.
+		for (int i = 1; i < required.length; i++) {
+			if (!facts.hasFact(required[i])) return false;
+		}
+		return true;
+	}
+}
@@ -0,0 +1,85 @@
+package com.gracefulcode.ai.internal;
+
+import com.gracefulcode.ai.Behavior;
+import com.gracefulcode.ai.Goal;
+import com.gracefulcode.ai.WorldState;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * The part of a parallel search that one worker owns: every world state
+ * whose hash lands in this shard, and the open set of the ones still to be
+ * expanded. Only the owning worker ever touches any of this, except for the
+ * inbox, which is how the other workers hand us world states they found.
+ * <p>
+ * The open set is ordered by cost plus estimate, ties going to the node that
+ * has gotten further and then to the goal's comparator.
+ *
+ * @version 0.1
+ * @since 0.1
+ */
+public class SearchShard<WS extends WorldState, B extends Behavior<WS>> implements NodeComparator {
+	/**
+	 * A world state found by one worker for another to keep.
+	 */
+	public static class Message<WS, B> {
+		public final WS worldState;
+		public final B behavior;
+		public final int parentShard;
+		public final int parent;
+		public final float cost;
+		public final float heuristic;
+
+		public Message(WS worldState, B behavior, int parentShard, int parent, float cost, float heuristic) {
+			this.worldState = worldState;
+			this.behavior = behavior;
+			this.parentShard = parentShard;
+			this.parent = parent;
+			this.cost = cost;
+			this.heuristic = heuristic;
+		}
+	}
+
+	public final int id;
+	public final ShardNodeStore<WS, B> nodes;
+	public final StateTable<WS, B> stateToNode;
+	public final OpenSet openSet;
+	public final ConcurrentLinkedQueue<Message<WS, B>> inbox;
+
+	/**
+	 * Only visits behaviors whose declared facts hold, if there are any.
+	 * Each worker needs its own, since it keeps scratch space.
+	 */
+	public PreconditionIndex<WS, B> preconditionIndex;
+
+	/**
+	 * How many nodes this worker has expanded.
+	 */
+	public int expansions;
+
+	private Goal<WS> goal;
+
+	public SearchShard(int id, Goal<WS> goal) {
+		this.id = id;
+		this.goal = goal;
+		this.nodes = new ShardNodeStore<WS, B>(64);
+		this.stateToNode = new StateTable<WS, B>(this.nodes, 64);
+		this.openSet = new OpenSet(64, this);
+		this.inbox = new ConcurrentLinkedQueue<Message<WS, B>>();
+	}
+
+	@Override
+	public int compare(int a, int b) {
+		float fA = this.nodes.getEstimatedTotalCost(a);
+		float fB = this.nodes.getEstimatedTotalCost(b);
+		if (fA < fB) return -1;
+		if (fB < fA) return 1;
+
+		float gA = this.nodes.getCost(a);
+		float gB = this.nodes.getCost(b);
+		if (gA > gB) return -1;
+		if (gB > gA) return 1;
+
+		return this.goal.compare(this.nodes.getWorldState(a), this.nodes.getWorldState(b));
+	}
+}
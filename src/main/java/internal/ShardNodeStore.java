@@ -0,0 +1,76 @@
+package com.gracefulcode.ai.internal;
+
+import com.gracefulcode.ai.Behavior;
+import com.gracefulcode.ai.WorldState;
+
+import java.util.Arrays;
+
+/**
+ * The nodes that one worker of a parallel search owns. A node's parent can
+ * belong to any worker, so alongside the usual parent id we remember which
+ * shard it lives in. Costs are given to us by whoever found the node rather
+ * than worked out from the parent, since we can't read other shards while
+ * they're searching. Child links are never tracked.
+ *
+ * @version 0.1
+ * @since 0.1
+ */
+public class ShardNodeStore<WS extends WorldState, B extends Behavior<WS>> extends HeapNodeStore<WS, B> {
+	private int[] parentShards;
+
+	public ShardNodeStore(int initialCapacity) {
+		super(initialCapacity);
+		this.parentShards = new int[Math.max(1, initialCapacity)];
+	}
+
+	@Override
+	protected void store(int id, WS worldState, boolean reused) {
+		super.store(id, worldState, reused);
+		if (id >= this.parentShards.length) {
+			this.parentShards = Arrays.copyOf(this.parentShards, Math.max(id + 1, this.parentShards.length * 2));
+		}
+	}
+
+	/**
+	 * Creates a node whose parent may be in another shard.
+	 *
+	 * @param worldState The world state after running the behavior.
+	 * @param behavior The behavior that gets us here from our parent.
+	 * @param parentShard The shard that our parent lives in.
+	 * @param parent Our parent's id within that shard.
+	 * @param cost The total cost of getting here.
+	 *
+	 * @return The new node's id.
+	 */
+	public int add(WS worldState, B behavior, int parentShard, int parent, float cost) {
+		int id = this.addRoot(worldState);
+		this.improve(id, behavior, parentShard, parent, cost);
+		return id;
+	}
+
+	/**
+	 * Gives a node a cheaper way to get to it.
+	 *
+	 * @param id The node.
+	 * @param behavior The behavior that gets us here from our new parent.
+	 * @param parentShard The shard that our new parent lives in.
+	 * @param parent Our new parent's id within that shard.
+	 * @param cost The new total cost of getting here.
+	 */
+	public void improve(int id, B behavior, int parentShard, int parent, float cost) {
+		this.setBehavior(id, behavior);
+		this.setParent(id, parent);
+		this.setCost(id, cost);
+		this.parentShards[id] = parentShard;
+	}
+
+	/**
+	 * @param id The node.
+	 *
+	 * @return The shard that the node's parent lives in. Meaningless for the
+	 *         root.
+	 */
+	public int getParentShard(int id) {
+		return this.parentShards[id];
+	}
+}
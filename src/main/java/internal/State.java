@@ -14,13 +14,18 @@ import com.gracefulcode.ai.WorldState;
  * @version 0.1
  * @since 0.1
  */
-public class State<WS extends WorldState, G extends Goal<WS>, B extends Behavior<WS>, BP extends Iterable<B>> {
+public class State<WS extends WorldState, G extends Goal<WS>, B extends Behavior<WS>, BP extends Iterable<B>> implements AutoCloseable {
 	/**
 	 * That state that this branch of the planner is currently at. This is
 	 * what all behaviors that are running are being ran against.
 	 */
 	private WS currentState;
 
+	/**
+	 * The node for currentState, so that we don't have to look it up.
+	 */
+	private int currentNode;
+
 	/**
 	 * The cost that it has taken to get to this point. Determined by the
 	 * behaviors, this is a "real cost" between here and the start. It has
@@ -35,26 +40,154 @@ public class State<WS extends WorldState, G extends Goal<WS>, B extends Behavior
 	 */
 	private GlobalState<WS, B, BP, G> globalState;
 
+	/**
+	 * Set instead of globalState for States that plan with IDA*.
+	 */
+	private IterativeDeepeningState<WS, B, BP, G> iterative;
+
+	/**
+	 * How many expansions budgeted steps have made since this plan started,
+	 * counted the same way as a StepBudget's expansion limit.
+	 */
+	private int expansions;
+
 	public State(WS initialState, WS currentState, G goal, BP behaviorProvider) {
-		this.globalState = new GlobalState<WS, B, BP, G>(initialState, behaviorProvider, goal);
-		this.currentState = currentState;
-		this.globalState.openSet.add(initialState);
+		this(initialState, currentState, goal, behaviorProvider, new HeapNodeStore<WS, B>(16));
+	}
+
+	/**
+	 * @param nodes Where to keep nodes. It should be empty, and belongs to
+	 *        this State from now on.
+	 */
+	public State(WS initialState, WS currentState, G goal, BP behaviorProvider, NodeStore<WS, B> nodes) {
+		this.globalState = new GlobalState<WS, B, BP, G>(initialState, behaviorProvider, goal, nodes);
+		if (currentState == initialState) {
+			this.setCurrentNode(this.globalState.rootNode);
+		} else {
+			this.setCurrentState(currentState);
+		}
+		this.globalState.openSet.add(this.globalState.rootNode);
+	}
+
+	/**
+	 * Makes a State that plans with IDA*. It has no GlobalState, so
+	 * getGlobalState returns null.
+	 */
+	public State(IterativeDeepeningState<WS, B, BP, G> iterative) {
+		this.iterative = iterative;
+		this.currentNode = NodeStore.NONE;
 	}
 
 	private State(State<WS, G, B, BP> oldState, WS currentWorldState) {
 		this.globalState = oldState.globalState;
-		this.currentState = currentWorldState;
+		this.setCurrentState(currentWorldState);
+	}
+
+	/**
+	 * Gets this State ready to plan something else, reusing everything it
+	 * allocated for the last plan. Anything you got out of this State before
+	 * is no longer valid afterwards.
+	 *
+	 * @param initialState The world state that this AI system begins at.
+	 * @param goal The goal that we are ultimately trying to achieve.
+	 * @param behaviorProvider The behaviors that we are allowed to use.
+	 */
+	public void reset(WS initialState, G goal, BP behaviorProvider) {
+		this.expansions = 0;
+		if (this.iterative != null) {
+			this.iterative.reset(initialState, behaviorProvider, goal);
+			return;
+		}
+
+		this.globalState.reset(initialState, behaviorProvider, goal);
+		this.currentState = initialState;
+		this.currentNode = this.globalState.rootNode;
+		this.currentCost = 0.0f;
+		this.globalState.openSet.add(this.globalState.rootNode);
+	}
+
+	/**
+	 * Starts the search over from a new world state, keeping everything that
+	 * the old search learned about the graph.
+	 *
+	 * @param initialState The world state to plan from now.
+	 */
+	public void restartFrom(WS initialState) {
+		this.expansions = 0;
+		if (this.iterative != null) {
+			this.iterative.reset(initialState, this.iterative.behaviorProvider, this.iterative.goal);
+			return;
+		}
+
+		this.globalState.restartFrom(initialState);
+		this.setCurrentNode(this.globalState.rootNode);
+		this.globalState.openSet.add(this.globalState.rootNode);
+	}
+
+	/**
+	 * Gives back anything this State holds that the garbage collector won't,
+	 * such as the direct memory of an off-heap node store. Only needed for
+	 * States from startOffHeapPlanning, but harmless on any State. The State
+	 * can't be used afterwards.
+	 */
+	@Override
+	public void close() {
+		if (this.globalState == null) return;
+		this.globalState.nodes.close();
 	}
 
 	public void setCurrentState(WS state) {
 		this.currentState = state;
+		this.currentNode = (state == null) ? NodeStore.NONE : this.globalState.stateToNode.get(state);
+	}
+
+	/**
+	 * Moves us to a node we already know about.
+	 *
+	 * @param node The node, or NodeStore.NONE to say there's nothing left.
+	 */
+	public void setCurrentNode(int node) {
+		this.currentNode = node;
+		this.currentState = (node == NodeStore.NONE) ? null : this.globalState.nodes.getWorldState(node);
 	}
 
+	/**
+	 * @return The node for our current world state, or NodeStore.NONE.
+	 */
+	public int getCurrentNode() {
+		return this.currentNode;
+	}
+
+	/**
+	 * @return How many expansions budgeted steps have made since this plan
+	 *         started.
+	 */
+	public int getExpansions() {
+		return this.expansions;
+	}
+
+	public void countExpansion() {
+		this.expansions++;
+	}
+
+	/**
+	 * @return Our GlobalState, or null if we plan with IDA*.
+	 */
 	public GlobalState<WS, B, BP, G> getGlobalState() {
 		return this.globalState;
 	}
 
+	/**
+	 * @return Our IDA* working memory, or null if we plan with A*.
+	 */
+	public IterativeDeepeningState<WS, B, BP, G> getIterativeDeepeningState() {
+		return this.iterative;
+	}
+
 	public String toString() {
+		if (this.iterative != null) {
+			return "State:depth(" + this.iterative.depth + ")";
+		}
 		return "State:openSet(" + this.globalState.openSet.size() + ")";
 	}
 
@@ -68,6 +201,9 @@ public class State<WS extends WorldState, G extends Goal<WS>, B extends Behavior
 	public float getCurrentCost() {
 		// TODO: Make sure that this value is correct even as we find
 		// cheaper paths.
+		if (this.iterative != null) {
+			return this.iterative.costs[this.iterative.depth - 1];
+		}
 		return this.currentCost;
 	}
 
@@ -77,12 +213,18 @@ public class State<WS extends WorldState, G extends Goal<WS>, B extends Behavior
 	 * @return True if the goal is satisfied, false otherwise.
 	 */
 	public boolean isDone() {
+		if (this.iterative != null) {
+			return this.iterative.done;
+		}
 		return this.globalState.openSet.size() == 0 && this.currentState == null;
 	}
 
 	public WS getBestWorldState() {
-		if (this.globalState.bestSolution != null)
-			return this.globalState.bestSolution.getWorldState();
+		if (this.iterative != null) {
+			return this.iterative.getWorldState(this.iterative.depth - 1);
+		}
+		if (this.globalState.bestSolution != NodeStore.NONE)
+			return this.globalState.nodes.getWorldState(this.globalState.bestSolution);
 		return this.currentState;
 	}
 
@@ -93,6 +235,9 @@ public class State<WS extends WorldState, G extends Goal<WS>, B extends Behavior
 	 * @return Our current world state.
 	 */
 	public WS getWorldState() {
+		if (this.iterative != null) {
+			return this.iterative.done ? null : this.iterative.getWorldState(this.iterative.depth - 1);
+		}
 		return this.currentState;
 	}
 
@@ -103,6 +248,9 @@ public class State<WS extends WorldState, G extends Goal<WS>, B extends Behavior
 	 * @return Our goal.
 	 */
 	public G getGoal() {
+		if (this.iterative != null) {
+			return this.iterative.goal;
+		}
 		return this.globalState.goal;
 	}
 
@@ -115,9 +263,13 @@ public class State<WS extends WorldState, G extends Goal<WS>, B extends Behavior
 	 * set is much larger than you expect, you may not have implemented
 	 * WorldState.equals/WorldState.hashCode correctly.
 	 *
-	 * @return The size of the open set.
+	 * @return The size of the open set. Always 0 for IDA*, which doesn't
+	 *         have one.
 	 */
 	public int getOpenSetSize() {
+		if (this.iterative != null) {
+			return 0;
+		}
 		return this.globalState.openSet.size();
 	}
 
@@ -126,10 +278,14 @@ public class State<WS extends WorldState, G extends Goal<WS>, B extends Behavior
 	 * make your logic rely on being able to get this value. The closed set
 	 * is less useful then the open set for debugging performance issues.
 	 *
-	 * @return The size of the closed set.
+	 * @return The size of the closed set. For IDA*, which doesn't have one,
+	 *         the number of expansions so far.
 	 */
 	public int getClosedSetSize() {
-		return this.globalState.closedSet.size();
+		if (this.iterative != null) {
+			return this.iterative.expansions;
+		}
+		return this.globalState.nodes.getClosedCount();
 	}
 
 	/**
@@ -145,7 +301,12 @@ public class State<WS extends WorldState, G extends Goal<WS>, B extends Behavior
 	 * @return The best world state currently.
 	 */
 	public WS getHighestPriority() {
-		return this.globalState.openSet.peek();
+		if (this.iterative != null) {
+			return this.getWorldState();
+		}
+		int node = this.globalState.openSet.peek();
+		if (node == NodeStore.NONE) return null;
+		return this.globalState.nodes.getWorldState(node);
 	}
 }
 
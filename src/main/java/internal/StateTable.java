@@ -0,0 +1,233 @@
+package com.gracefulcode.ai.internal;
+
+import com.gracefulcode.ai.Behavior;
+import com.gracefulcode.ai.WorldState;
+
+import java.util.Arrays;
+
+/**
+ * Finds the node for a world state. This is an open addressing hash table
+ * with linear probing over the nodes in a NodeStore: each slot holds a node
+ * id and the hash of its world state, and the world states themselves stay
+ * in the NodeStore. Nothing is allocated per entry and ids are never boxed.
+ * <p>
+ * The planner looks up every successor it generates, and most of the time it
+ * either finds a node or adds one straight after. Hashes are remembered, so
+ * user hashCode is called once per lookup and never again when the table
+ * grows, and user equals is only called when the hashes already match. A
+ * lookup that misses also remembers where the world state would go, so
+ * putAfterMiss can add it without hashing or probing a second time. Whether
+ * the node is open or closed is then a plain array read by id.
+ * <p>
+ * Removing a single entry shifts the entries after it back, rather than
+ * leaving a marker behind, so lookups never get slower from removals. Only
+ * memory-bounded searches ever do this.
+ *
+ * @version 0.1
+ * @since 0.1
+ */
+public class StateTable<WS extends WorldState, B extends Behavior<WS>> {
+	private NodeStore<WS, B> nodes;
+
+	/**
+	 * Node id plus one, so that 0 means empty.
+	 */
+	private int[] slots;
+	private int[] hashes;
+	private int mask;
+	private int size;
+
+	/**
+	 * Bumped whenever slots move or fill, so that we know when a remembered
+	 * miss has gone stale.
+	 */
+	private int modCount;
+
+	private int missSlot;
+	private int missHash;
+	private int missModCount = -1;
+
+	public StateTable(NodeStore<WS, B> nodes, int initialCapacity) {
+		this.nodes = nodes;
+
+		int capacity = 16;
+		while (capacity < initialCapacity * 2) {
+			capacity <<= 1;
+		}
+		this.slots = new int[capacity];
+		this.hashes = new int[capacity];
+		this.mask = capacity - 1;
+	}
+
+	/**
+	 * @return The number of world states in the table.
+	 */
+	public int size() {
+		return this.size;
+	}
+
+	/**
+	 * @param worldState The world state to look for.
+	 *
+	 * @return Its node id, or NodeStore.NONE if we don't know about it.
+	 */
+	public int get(WS worldState) {
+		int h = StateTable.spread(worldState.hashCode());
+		int i = this.probe(worldState, h);
+		if (this.slots[i] == 0) {
+			this.missSlot = i;
+			this.missHash = h;
+			this.missModCount = this.modCount;
+			return NodeStore.NONE;
+		}
+		return this.slots[i] - 1;
+	}
+
+	/**
+	 * @param worldState The world state to look for.
+	 *
+	 * @return True if we know about it.
+	 */
+	public boolean containsKey(WS worldState) {
+		return this.get(worldState) != NodeStore.NONE;
+	}
+
+	/**
+	 * Maps a world state to a node id, replacing whatever it was mapped to.
+	 *
+	 * @param worldState The world state.
+	 * @param id Its node id.
+	 */
+	public void put(WS worldState, int id) {
+		int h = StateTable.spread(worldState.hashCode());
+		int i = this.probe(worldState, h);
+		if (this.slots[i] != 0) {
+			this.slots[i] = id + 1;
+			return;
+		}
+		this.insert(i, h, id);
+	}
+
+	/**
+	 * Adds a world state that the last call to get just failed to find. If
+	 * nothing has been added since, this goes straight into the slot that
+	 * get found, without hashing again. Otherwise it falls back to put.
+	 *
+	 * @param worldState The world state get was called with, or one equal to
+	 *        it.
+	 * @param id Its node id.
+	 */
+	public void putAfterMiss(WS worldState, int id) {
+		if (this.missModCount != this.modCount) {
+			this.put(worldState, id);
+			return;
+		}
+
+		this.insert(this.missSlot, this.missHash, id);
+	}
+
+	/**
+	 * Finds the slot holding a world state, or the empty slot where it would
+	 * go.
+	 */
+	private int probe(WS worldState, int h) {
+		int i = h & this.mask;
+		while (true) {
+			int slot = this.slots[i];
+			if (slot == 0) return i;
+
+			if (this.hashes[i] == h) {
+				if (this.nodes.worldStateEquals(slot - 1, worldState)) return i;
+			}
+			i = (i + 1) & this.mask;
+		}
+	}
+
+	private void insert(int i, int h, int id) {
+		this.slots[i] = id + 1;
+		this.hashes[i] = h;
+		this.modCount++;
+		if (++this.size * 2 > this.slots.length) {
+			this.grow();
+		}
+	}
+
+	/**
+	 * Forgets the world state of a node. Call this before the node itself is
+	 * freed, since we need its world state to find it.
+	 *
+	 * @param id The node.
+	 * @return True if it was in the table.
+	 */
+	public boolean remove(int id) {
+		int h = StateTable.spread(this.nodes.getWorldState(id).hashCode());
+		int i = h & this.mask;
+		while (this.slots[i] != id + 1) {
+			if (this.slots[i] == 0) return false;
+			i = (i + 1) & this.mask;
+		}
+
+		// Pull back anything after us that would no longer be found past the
+		// hole we leave.
+		int j = i;
+		while (true) {
+			this.slots[i] = 0;
+			while (true) {
+				j = (j + 1) & this.mask;
+				if (this.slots[j] == 0) {
+					this.size--;
+					this.modCount++;
+					return true;
+				}
+
+				int home = this.hashes[j] & this.mask;
+				boolean reachable = (i <= j) ? (i < home && home <= j) : (i < home || home <= j);
+				if (!reachable) break;
+			}
+
+			this.slots[i] = this.slots[j];
+			this.hashes[i] = this.hashes[j];
+			i = j;
+		}
+	}
+
+	/**
+	 * Forgets everything. We keep our capacity.
+	 */
+	public void clear() {
+		Arrays.fill(this.slots, 0);
+		this.size = 0;
+		this.modCount++;
+	}
+
+	private void grow() {
+		int[] oldSlots = this.slots;
+		int[] oldHashes = this.hashes;
+
+		this.slots = new int[oldSlots.length * 2];
+		this.hashes = new int[oldSlots.length * 2];
+		this.mask = this.slots.length - 1;
+		this.modCount++;
+
+		for (int j = 0; j < oldSlots.length; j++) {
+			if (oldSlots[j] == 0) continue;
+
+			int h = oldHashes[j];
+			int i = h & this.mask;
+			while (this.slots[i] != 0) {
+				i = (i + 1) & this.mask;
+			}
+			this.slots[i] = oldSlots[j];
+			this.hashes[i] = h;
+		}
+	}
+
+	/**
+	 * World state hash codes are often small sequential numbers. Mix them up
+	 * so that they don't all land in one run of the table.
+	 */
+	private static int spread(int h) {
+		h *= 0x9E3779B9;
+		return h ^ (h >>> 16);
+	}
+}
@@ -0,0 +1,119 @@
+package com.gracefulcode.ai.internal;
+
+import com.gracefulcode.ai.Behavior;
+import com.gracefulcode.ai.WorldState;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * Everything we learned by expanding a node: for each behavior that could
+ * run, what it cost and which node it led to. Incremental planning keeps
+ * these so that a later search through the same node can skip calling into
+ * the behaviors at all.
+ * <p>
+ * A list is only trustworthy if it is complete. If anything was pruned while
+ * we were recording, we don't know where it would have gone, and the node has
+ * to be expanded for real next time.
+ *
+ * @version 0.1
+ * @since 0.1
+ */
+public class Successors<WS extends WorldState, B extends Behavior<WS>> {
+	private ArrayList<B> behaviors;
+	private int[] nodes;
+	private float[] costs;
+
+	/**
+	 * True while the node is being expanded and successors are still being
+	 * added.
+	 */
+	private boolean recording;
+
+	/**
+	 * False if any successor was pruned during recording.
+	 */
+	private boolean complete;
+
+	public Successors() {
+		this.behaviors = new ArrayList<B>();
+		this.nodes = new int[4];
+		this.costs = new float[4];
+	}
+
+	/**
+	 * Throws away anything we knew and starts recording a new expansion.
+	 */
+	public void startRecording() {
+		this.behaviors.clear();
+		this.recording = true;
+		this.complete = true;
+	}
+
+	public void stopRecording() {
+		this.recording = false;
+	}
+
+	public boolean isRecording() {
+		return this.recording;
+	}
+
+	/**
+	 * @return True if this is a full record of an expansion that finished.
+	 */
+	public boolean isUsable() {
+		return !this.recording && this.complete;
+	}
+
+	/**
+	 * A successor was thrown away without being recorded.
+	 */
+	public void markIncomplete() {
+		this.complete = false;
+	}
+
+	/**
+	 * Forgets everything, so that the next expansion is done for real. The
+	 * lists keep their capacity.
+	 */
+	public void invalidate() {
+		this.behaviors.clear();
+		this.recording = false;
+		this.complete = false;
+	}
+
+	public void add(B behavior, float cost, int node) {
+		int i = this.behaviors.size();
+		if (i == this.costs.length) {
+			this.costs = Arrays.copyOf(this.costs, i * 2);
+			this.nodes = Arrays.copyOf(this.nodes, i * 2);
+		}
+		this.behaviors.add(behavior);
+		this.nodes[i] = node;
+		this.costs[i] = cost;
+	}
+
+	public int size() {
+		return this.behaviors.size();
+	}
+
+	public B getBehavior(int i) {
+		return this.behaviors.get(i);
+	}
+
+	/**
+	 * @param i Which successor.
+	 * @return The id of the node it led to.
+	 */
+	public int getNode(int i) {
+		return this.nodes[i];
+	}
+
+	public float getCost(int i) {
+		return this.costs[i];
+	}
+
+	public void setCost(int i, float cost) {
+		this.costs[i] = cost;
+	}
+}
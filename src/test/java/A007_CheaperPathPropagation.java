@@ -0,0 +1,134 @@
+/**
+ * When the planner finds a cheaper way to reach a world state that it already
+ * knows about, it re-parents that state. Everything that was discovered
+ * through that state has to get cheaper at the same time, or later cost
+ * comparisons are made against stale numbers.
+ *
+ * The goal here deliberately prefers big jumps, so the expensive path is
+ * explored first and the cheap path is only found afterwards.
+ */
+import com.gracefulcode.ai.*;
+import com.gracefulcode.ai.internal.GlobalState;
+import com.gracefulcode.ai.internal.State;
+
+import java.util.ArrayList;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class A007_CheaperPathPropagation {
+	public class PlannerWorldState implements WorldState {
+		public int score = 0;
+
+		@Override
+		public Object clone() {
+			PlannerWorldState tmp = new PlannerWorldState();
+			tmp.score = this.score;
+			return tmp;
+		}
+
+		@Override
+		public String toString() {
+			return "PlannerWorldState[score: " + this.score + "]";
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (o == null) return false;
+			if (!(o instanceof PlannerWorldState)) return false;
+
+			PlannerWorldState pws = (PlannerWorldState)o;
+			if (this.score != pws.score) return false;
+			return true;
+		}
+
+		@Override
+		public int hashCode() {
+			return this.score;
+		}
+	}
+
+	public abstract class PlannerBehavior implements Behavior<PlannerWorldState> {
+		@Override
+		public boolean isRunnable(PlannerWorldState worldState) {
+			return true;
+		}
+	}
+
+	public class PlannerBehaviorStep extends PlannerBehavior {
+		@Override
+		public void modifyState(PlannerWorldState pws) {
+			pws.score += 1;
+		}
+
+		@Override
+		public Float getCost(PlannerWorldState worldState) {
+			return 1.0f;
+		}
+	}
+
+	public class PlannerBehaviorJump extends PlannerBehavior {
+		@Override
+		public void modifyState(PlannerWorldState pws) {
+			pws.score += 3;
+		}
+
+		@Override
+		public Float getCost(PlannerWorldState worldState) {
+			return 10.0f;
+		}
+	}
+
+	public class PlannerGoal implements Goal<PlannerWorldState> {
+		@Override
+		public boolean isSatisfied(PlannerWorldState pws) {
+			return pws.score >= 7;
+		}
+
+		@Override
+		public int compare(PlannerWorldState a, PlannerWorldState b) {
+			if (a.score > b.score) return -1;
+			if (b.score > a.score) return 1;
+			return 0;
+		}
+	}
+
+	@Test
+	public void testDescendantsGetCheaper() throws Exception {
+		PlannerWorldState ws = new PlannerWorldState();
+		PlannerGoal pg = new PlannerGoal();
+
+		ArrayList<PlannerBehavior> pbp = new ArrayList<PlannerBehavior>();
+		pbp.add(new PlannerBehaviorStep());
+		pbp.add(new PlannerBehaviorJump());
+
+		Planner<PlannerWorldState, PlannerGoal, PlannerBehavior, ArrayList<PlannerBehavior>> p = new Planner<>();
+		State<PlannerWorldState, PlannerGoal, PlannerBehavior, ArrayList<PlannerBehavior>> ps = p.startPlanning(ws, pg, pbp);
+
+		int steps = 0;
+		while (p.stepState(ps)) {
+			steps++;
+			assertTrue("Planning should finish in a sane number of steps.", steps < 100);
+		}
+
+		assertEquals(7, ps.getBestWorldState().score);
+
+		ArrayList<PlannerBehavior> plan = p.getPlan(ps);
+		assertEquals("Seven small steps is the cheapest plan: " + plan.toString(), 7, plan.size());
+		for (PlannerBehavior b: plan) {
+			assertEquals(PlannerBehaviorStep.class, b.getClass());
+		}
+
+		/**
+		 * Every score that we discovered on the way should now be reachable
+		 * for exactly its score in small steps, even the ones that were
+		 * first discovered below an expensive jump.
+		 */
+		GlobalState<PlannerWorldState, PlannerBehavior, ArrayList<PlannerBehavior>, PlannerGoal> gs = ps.getGlobalState();
+		for (int i = 0; i <= 7; i++) {
+			PlannerWorldState lookup = new PlannerWorldState();
+			lookup.score = i;
+			assertEquals("Cost to reach " + i, (float)i, gs.getBestKnownCost(lookup), 0.0001f);
+		}
+	}
+}
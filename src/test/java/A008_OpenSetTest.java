@@ -0,0 +1,118 @@
+/**
+ * The open set is the hottest data structure in the planner. These tests poke
+ * at it directly rather than through the Planner, since the interesting parts
+ * (removing from the middle, re-sorting a single node) are hard to force from
+ * the outside.
+ *
+ * The open set only deals in node ids, so here a node is just an index into an
+ * array of values.
+ */
+import com.gracefulcode.ai.internal.NodeComparator;
+import com.gracefulcode.ai.internal.NodeStore;
+import com.gracefulcode.ai.internal.OpenSet;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class A008_OpenSetTest {
+	/**
+	 * Orders nodes by their value, smallest first. A value can be changed
+	 * after a node has been added, which is how we simulate a node getting
+	 * cheaper.
+	 */
+	public class ValueComparator implements NodeComparator {
+		public int[] values;
+
+		public ValueComparator(int count) {
+			this.values = new int[count];
+			for (int i = 0; i < count; i++) {
+				// Scramble the order so that the heap actually has to work.
+				this.values[i] = (i * 37) % count;
+			}
+		}
+
+		@Override
+		public int compare(int a, int b) {
+			if (this.values[a] < this.values[b]) return -1;
+			if (this.values[a] > this.values[b]) return 1;
+			return 0;
+		}
+	}
+
+	@Test
+	public void testPollsInOrder() {
+		ValueComparator values = new ValueComparator(100);
+		OpenSet openSet = new OpenSet(1, values);
+		for (int n = 0; n < 100; n++) {
+			assertTrue(openSet.add(n));
+		}
+		assertFalse("Adding twice should be a no-op.", openSet.add(5));
+		assertEquals(100, openSet.size());
+
+		for (int i = 0; i < 100; i++) {
+			int n = openSet.poll();
+			assertEquals(i, values.values[n]);
+			assertFalse(openSet.contains(n));
+		}
+		assertEquals(NodeStore.NONE, openSet.poll());
+	}
+
+	@Test
+	public void testRemoveFromMiddle() {
+		ValueComparator values = new ValueComparator(100);
+		OpenSet openSet = new OpenSet(10, values);
+		for (int n = 0; n < 100; n++) {
+			openSet.add(n);
+		}
+
+		for (int n = 0; n < 100; n++) {
+			if (values.values[n] % 2 == 0) {
+				assertTrue(openSet.remove(n));
+				assertFalse(openSet.contains(n));
+				assertFalse("Removing twice should be a no-op.", openSet.remove(n));
+			}
+		}
+		assertEquals(50, openSet.size());
+
+		for (int i = 1; i < 100; i += 2) {
+			assertEquals(i, values.values[openSet.poll()]);
+		}
+	}
+
+	@Test
+	public void testUpdateAfterGettingCheaper() {
+		ValueComparator values = new ValueComparator(50);
+		OpenSet openSet = new OpenSet(10, values);
+		for (int n = 0; n < 50; n++) {
+			openSet.add(n);
+		}
+
+		int last = NodeStore.NONE;
+		for (int n = 0; n < 50; n++) {
+			if (values.values[n] == 49) last = n;
+		}
+		values.values[last] = -1;
+		openSet.update(last);
+
+		assertEquals(last, openSet.peek());
+		assertEquals(last, openSet.poll());
+		assertEquals(0, values.values[openSet.poll()]);
+	}
+
+	@Test
+	public void testClearKeepsWorking() {
+		ValueComparator values = new ValueComparator(20);
+		OpenSet openSet = new OpenSet(4, values);
+		for (int n = 0; n < 20; n++) {
+			openSet.add(n);
+		}
+		openSet.clear();
+		assertEquals(0, openSet.size());
+		for (int n = 0; n < 20; n++) {
+			assertFalse(openSet.contains(n));
+		}
+
+		assertTrue(openSet.add(3));
+		assertEquals(3, openSet.poll());
+	}
+}
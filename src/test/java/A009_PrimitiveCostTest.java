@@ -0,0 +1,240 @@
+/**
+ * Behaviors can report their costs as primitive floats by implementing
+ * PrimitiveCostBehavior. The planner should then never touch the boxed
+ * getCost at all, and should come up with exactly the same plans as it does
+ * for plain old Behaviors.
+ *
+ * The last test here is more of a benchmark than a test. It counts the boxes
+ * made on every expansion, which is what decides how much each kind of
+ * behavior allocates, and checks that the primitive path makes none. It also
+ * measures how many bytes the planner allocates with each kind, but only
+ * asserts that the primitive path is not meaningfully worse, since the JIT is
+ * sometimes clever enough to get rid of the boxes on its own.
+ */
+import com.gracefulcode.ai.*;
+import com.gracefulcode.ai.internal.State;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class A009_PrimitiveCostTest {
+	public class PlannerWorldState implements WorldState {
+		public int value = 0;
+
+		@Override
+		public Object clone() {
+			PlannerWorldState tmp = new PlannerWorldState();
+			tmp.value = this.value;
+			return tmp;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (o == null) return false;
+			if (!(o instanceof PlannerWorldState)) return false;
+
+			PlannerWorldState pws = (PlannerWorldState)o;
+			if (this.value != pws.value) return false;
+			return true;
+		}
+
+		@Override
+		public int hashCode() {
+			return this.value;
+		}
+	}
+
+	/**
+	 * A boxed behavior that moves value by some amount.
+	 */
+	public class BoxedBehavior implements Behavior<PlannerWorldState> {
+		private int amount;
+		private float cost;
+		public int boxes = 0;
+
+		public BoxedBehavior(int amount, float cost) {
+			this.amount = amount;
+			this.cost = cost;
+		}
+
+		@Override
+		public boolean isRunnable(PlannerWorldState pws) {
+			return true;
+		}
+
+		@Override
+		public void modifyState(PlannerWorldState pws) {
+			pws.value += this.amount;
+		}
+
+		@Override
+		public Float getCost(PlannerWorldState pws) {
+			this.boxes++;
+			return this.cost;
+		}
+	}
+
+	/**
+	 * The same behavior, but with a primitive cost. getCost is still
+	 * available through the base class, but we count calls to it to make sure
+	 * that the planner never uses it.
+	 */
+	public class PrimitiveBehavior extends AbstractPrimitiveCostBehavior<PlannerWorldState> {
+		private int amount;
+		private float cost;
+		public int boxes = 0;
+
+		public PrimitiveBehavior(int amount, float cost) {
+			this.amount = amount;
+			this.cost = cost;
+		}
+
+		@Override
+		public boolean isRunnable(PlannerWorldState pws) {
+			return true;
+		}
+
+		@Override
+		public void modifyState(PlannerWorldState pws) {
+			pws.value += this.amount;
+		}
+
+		@Override
+		public float cost(PlannerWorldState pws) {
+			return this.cost;
+		}
+
+		@Override
+		public Float getCost(PlannerWorldState pws) {
+			this.boxes++;
+			return super.getCost(pws);
+		}
+	}
+
+	public class PlannerGoal implements Goal<PlannerWorldState> {
+		private int target;
+
+		public PlannerGoal(int target) {
+			this.target = target;
+		}
+
+		@Override
+		public boolean isSatisfied(PlannerWorldState pws) {
+			return pws.value >= this.target;
+		}
+
+		@Override
+		public int compare(PlannerWorldState a, PlannerWorldState b) {
+			if (a.value > b.value) return -1;
+			if (a.value < b.value) return 1;
+			return 0;
+		}
+	}
+
+	private <B extends Behavior<PlannerWorldState>> ArrayList<B> plan(ArrayList<B> behaviors, int target) throws Exception {
+		Planner<PlannerWorldState, PlannerGoal, B, ArrayList<B>> p = new Planner<>();
+		State<PlannerWorldState, PlannerGoal, B, ArrayList<B>> ps = p.startPlanning(new PlannerWorldState(), new PlannerGoal(target), behaviors);
+		while (p.stepState(ps)) {}
+		return p.getPlan(ps);
+	}
+
+	@Test
+	public void testPrimitiveMatchesBoxed() throws Exception {
+		ArrayList<Behavior<PlannerWorldState>> boxed = new ArrayList<Behavior<PlannerWorldState>>();
+		boxed.add(new BoxedBehavior(1, 1.0f));
+		boxed.add(new BoxedBehavior(3, 5.0f));
+		boxed.add(new BoxedBehavior(-1, 1.0f));
+
+		ArrayList<Behavior<PlannerWorldState>> primitive = new ArrayList<Behavior<PlannerWorldState>>();
+		primitive.add(new PrimitiveBehavior(1, 1.0f));
+		primitive.add(new PrimitiveBehavior(3, 5.0f));
+		primitive.add(new PrimitiveBehavior(-1, 1.0f));
+
+		ArrayList<Behavior<PlannerWorldState>> boxedPlan = this.plan(boxed, 12);
+		ArrayList<Behavior<PlannerWorldState>> primitivePlan = this.plan(primitive, 12);
+
+		assertEquals(boxedPlan.size(), primitivePlan.size());
+		for (int i = 0; i < boxedPlan.size(); i++) {
+			assertEquals(boxed.indexOf(boxedPlan.get(i)), primitive.indexOf(primitivePlan.get(i)));
+		}
+
+		assertTrue("The boxed path should have been used.", ((BoxedBehavior)boxed.get(0)).boxes > 0);
+		for (Behavior<PlannerWorldState> b: primitive) {
+			assertEquals("The planner should never box a primitive cost.", 0, ((PrimitiveBehavior)b).boxes);
+		}
+	}
+
+	private long allocatedBytes() {
+		java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+		if (!(bean instanceof com.sun.management.ThreadMXBean)) return -1;
+		return ((com.sun.management.ThreadMXBean)bean).getThreadAllocatedBytes(Thread.currentThread().getId());
+	}
+
+	private <B extends Behavior<PlannerWorldState>> long measure(ArrayList<B> behaviors) throws Exception {
+		// Warm up so that we are measuring the JIT'd code.
+		for (int i = 0; i < 20; i++) {
+			this.plan(behaviors, 200);
+		}
+
+		long before = this.allocatedBytes();
+		for (int i = 0; i < 20; i++) {
+			this.plan(behaviors, 200);
+		}
+		return this.allocatedBytes() - before;
+	}
+
+	@Test
+	public void testAllocationBenchmark() throws Exception {
+		if (this.allocatedBytes() < 0) return;
+
+		ArrayList<BoxedBehavior> boxed = new ArrayList<BoxedBehavior>();
+		ArrayList<PrimitiveBehavior> primitive = new ArrayList<PrimitiveBehavior>();
+		for (int i = 1; i <= 8; i++) {
+			boxed.add(new BoxedBehavior(i, 1.0f + i * 0.5f));
+			primitive.add(new PrimitiveBehavior(i, 1.0f + i * 0.5f));
+		}
+
+		int steps = this.steps(boxed, 200);
+		assertEquals(steps, this.steps(primitive, 200));
+		assertTrue("Boxed costs should box on every expansion.", this.boxes(boxed) >= steps);
+		assertEquals("Primitive costs should never box.", 0, this.primitiveBoxes(primitive));
+
+		long boxedBytes = this.measure(boxed);
+		long primitiveBytes = this.measure(primitive);
+
+		assertTrue("Primitive costs should never allocate meaningfully more than boxed costs: " + primitiveBytes + " vs " + boxedBytes, primitiveBytes <= boxedBytes + boxedBytes / 100);
+	}
+
+	/**
+	 * @return How many times stepState expanded something on the way to the
+	 *         target.
+	 */
+	private <B extends Behavior<PlannerWorldState>> int steps(ArrayList<B> behaviors, int target) throws Exception {
+		Planner<PlannerWorldState, PlannerGoal, B, ArrayList<B>> p = new Planner<>();
+		State<PlannerWorldState, PlannerGoal, B, ArrayList<B>> ps = p.startPlanning(new PlannerWorldState(), new PlannerGoal(target), behaviors);
+		int steps = 0;
+		while (p.stepState(ps)) {
+			steps++;
+		}
+		return steps;
+	}
+
+	private int boxes(ArrayList<BoxedBehavior> behaviors) {
+		int total = 0;
+		for (BoxedBehavior b: behaviors) {
+			total += b.boxes;
+		}
+		return total;
+	}
+
+	private int primitiveBoxes(ArrayList<PrimitiveBehavior> behaviors) {
+		int total = 0;
+		for (PrimitiveBehavior b: behaviors) {
+			total += b.boxes;
+		}
+		return total;
+	}
+}
@@ -0,0 +1,233 @@
+/**
+ * FactWorldState is a WorldState that you don't have to write yourself. You
+ * describe your facts with a FactSchema, and then behaviors and goals work in
+ * terms of slots.
+ *
+ * This is the axe and wood example from A004 again, but without the
+ * hand-written world state. FactWorldState is also a DeltaWorldState, so the
+ * planner derives successors from it rather than cloning.
+ */
+import com.gracefulcode.ai.*;
+import com.gracefulcode.ai.internal.State;
+
+import java.util.ArrayList;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class A010_FactWorldStateTest {
+	/**
+	 * Slots are just ints. Look them up once, keep them around.
+	 */
+	public class WoodFacts {
+		public FactSchema schema = new FactSchema();
+		public int hasAxe = schema.addFlag("hasAxe");
+		public int isTired = schema.addFlag("isTired");
+		public int wood = schema.addNumber("wood");
+	}
+
+	public abstract class PlannerBehavior extends AbstractPrimitiveCostBehavior<FactWorldState> {
+		protected WoodFacts facts;
+
+		public PlannerBehavior(WoodFacts facts) {
+			this.facts = facts;
+		}
+
+		@Override
+		public float cost(FactWorldState worldState) {
+			return 1.0f;
+		}
+	}
+
+	public class PlannerBehaviorChopWood extends PlannerBehavior {
+		public PlannerBehaviorChopWood(WoodFacts facts) {
+			super(facts);
+		}
+
+		@Override
+		public void modifyState(FactWorldState fws) {
+			fws.addNumber(this.facts.wood, 1);
+		}
+
+		@Override
+		public boolean isRunnable(FactWorldState fws) {
+			return fws.getFlag(this.facts.hasAxe);
+		}
+	}
+
+	public class PlannerBehaviorMakeAxe extends PlannerBehavior {
+		public PlannerBehaviorMakeAxe(WoodFacts facts) {
+			super(facts);
+		}
+
+		@Override
+		public void modifyState(FactWorldState fws) {
+			fws.addNumber(this.facts.wood, -2);
+			fws.setFlag(this.facts.hasAxe, true);
+		}
+
+		@Override
+		public boolean isRunnable(FactWorldState fws) {
+			return fws.getNumber(this.facts.wood) >= 2;
+		}
+	}
+
+	public class PlannerGoal implements Goal<FactWorldState> {
+		private WoodFacts facts;
+
+		public PlannerGoal(WoodFacts facts) {
+			this.facts = facts;
+		}
+
+		@Override
+		public boolean isSatisfied(FactWorldState fws) {
+			return fws.getNumber(this.facts.wood) >= 20;
+		}
+
+		@Override
+		public int compare(FactWorldState a, FactWorldState b) {
+			int woodA = a.getNumber(this.facts.wood);
+			int woodB = b.getNumber(this.facts.wood);
+			if (woodA > woodB) return -1;
+			if (woodA < woodB) return 1;
+			return 0;
+		}
+	}
+
+	@Test
+	public void testCloneIsIndependent() {
+		WoodFacts facts = new WoodFacts();
+		FactWorldState a = facts.schema.newWorldState();
+		a.setFlag(facts.hasAxe, true);
+		a.setNumber(facts.wood, 5);
+
+		FactWorldState b = (FactWorldState)a.clone();
+		assertNotSame(a, b);
+		assertEquals(a, b);
+		assertEquals(a.hashCode(), b.hashCode());
+
+		b.setFlag(facts.hasAxe, false);
+		b.addNumber(facts.wood, 1);
+		assertTrue(a.getFlag(facts.hasAxe));
+		assertEquals(5, a.getNumber(facts.wood));
+		assertNotEquals(a, b);
+	}
+
+	@Test
+	public void testHashFollowsValueNotHistory() {
+		WoodFacts facts = new WoodFacts();
+		FactWorldState blank = facts.schema.newWorldState();
+
+		FactWorldState a = facts.schema.newWorldState();
+		a.setNumber(facts.wood, 3);
+		a.setFlag(facts.isTired, true);
+		a.setFlag(facts.hasAxe, true);
+
+		FactWorldState b = facts.schema.newWorldState();
+		b.setFlag(facts.hasAxe, true);
+		b.setNumber(facts.wood, 7);
+		b.setFlag(facts.isTired, true);
+		b.addNumber(facts.wood, -4);
+
+		assertEquals(a, b);
+		assertEquals(a.longHashCode(), b.longHashCode());
+
+		// Undoing everything should land us back on the blank hash.
+		a.setNumber(facts.wood, 0);
+		a.setFlag(facts.isTired, false);
+		a.setFlag(facts.hasAxe, false);
+		assertEquals(blank, a);
+		assertEquals(blank.longHashCode(), a.longHashCode());
+	}
+
+	@Test
+	public void testManyFlags() {
+		FactSchema schema = new FactSchema();
+		int[] slots = new int[200];
+		for (int i = 0; i < slots.length; i++) {
+			slots[i] = schema.addFlag("flag" + i);
+		}
+		assertEquals(4, schema.getFlagWordCount());
+
+		FactWorldState fws = schema.newWorldState();
+		fws.setFlag(slots[150], true);
+		fws.setFlag(slots[63], true);
+		for (int i = 0; i < slots.length; i++) {
+			assertEquals(i == 150 || i == 63, fws.getFlag(slots[i]));
+		}
+	}
+
+	/**
+	 * Derived world states only record what changed, but they must look
+	 * exactly like a clone that had the same changes made to it.
+	 */
+	@Test
+	public void testDeriveMatchesClone() {
+		WoodFacts facts = new WoodFacts();
+		FactWorldState parent = facts.schema.newWorldState();
+		parent.setNumber(facts.wood, 4);
+		parent.setFlag(facts.isTired, true);
+
+		FactWorldState derived = parent.derive();
+		assertTrue(derived.isDerived());
+		assertEquals(parent, derived);
+		assertEquals(parent.longHashCode(), derived.longHashCode());
+
+		derived.setFlag(facts.hasAxe, true);
+		derived.addNumber(facts.wood, -2);
+
+		FactWorldState cloned = (FactWorldState)parent.clone();
+		cloned.setFlag(facts.hasAxe, true);
+		cloned.addNumber(facts.wood, -2);
+
+		assertEquals(cloned, derived);
+		assertEquals(derived, cloned);
+		assertEquals(cloned.longHashCode(), derived.longHashCode());
+
+		// The parent has to be left alone.
+		assertFalse(parent.getFlag(facts.hasAxe));
+		assertEquals(4, parent.getNumber(facts.wood));
+
+		// A derived state of a derived state keeps the changes of both.
+		FactWorldState grandchild = derived.derive();
+		grandchild.setFlag(facts.isTired, false);
+		assertTrue(grandchild.getFlag(facts.hasAxe));
+		assertFalse(grandchild.getFlag(facts.isTired));
+		assertTrue(derived.getFlag(facts.isTired));
+		assertEquals(2, grandchild.getNumber(facts.wood));
+
+		derived.materialize();
+		assertFalse(derived.isDerived());
+		assertEquals(cloned, derived);
+		assertEquals(cloned.longHashCode(), derived.longHashCode());
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void testSchemaLocks() {
+		FactSchema schema = new FactSchema();
+		schema.addFlag("first");
+		schema.newWorldState();
+		schema.addFlag("tooLate");
+	}
+
+	@Test
+	public void testPlanWithFacts() throws Exception {
+		WoodFacts facts = new WoodFacts();
+		FactWorldState ws = facts.schema.newWorldState();
+		ws.setNumber(facts.wood, 2);
+
+		ArrayList<PlannerBehavior> pbp = new ArrayList<PlannerBehavior>();
+		pbp.add(new PlannerBehaviorChopWood(facts));
+		pbp.add(new PlannerBehaviorMakeAxe(facts));
+
+		Planner<FactWorldState, PlannerGoal, PlannerBehavior, ArrayList<PlannerBehavior>> p = new Planner<>();
+		State<FactWorldState, PlannerGoal, PlannerBehavior, ArrayList<PlannerBehavior>> ps = p.startPlanning(ws, new PlannerGoal(facts), pbp);
+		while (p.stepState(ps)) {}
+
+		ArrayList<PlannerBehavior> plan = p.getPlan(ps);
+		assertEquals("Make an axe, then chop 20 wood: " + plan.toString(), 21, plan.size());
+		assertEquals(PlannerBehaviorMakeAxe.class, plan.get(20).getClass());
+		assertEquals(20, ps.getBestWorldState().getNumber(facts.wood));
+		assertFalse("States the planner keeps are materialized.", ps.getBestWorldState().isDerived());
+	}
+}
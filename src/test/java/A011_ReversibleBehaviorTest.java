@@ -0,0 +1,158 @@
+/**
+ * ReversibleBehaviors let the planner try a behavior out on the world state
+ * it is expanding, and only copy the world state when the result is
+ * something new.
+ *
+ * The world state here counts how often it gets cloned. Walking a number line
+ * back and forth produces lots of states that we have already seen, so the
+ * reversible version should clone a lot less while still finding the same
+ * plan.
+ */
+import com.gracefulcode.ai.*;
+import com.gracefulcode.ai.internal.State;
+
+import java.util.ArrayList;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class A011_ReversibleBehaviorTest {
+	public static int clones = 0;
+
+	public class PlannerWorldState implements WorldState {
+		public int value = 0;
+
+		@Override
+		public Object clone() {
+			A011_ReversibleBehaviorTest.clones++;
+			PlannerWorldState tmp = new PlannerWorldState();
+			tmp.value = this.value;
+			return tmp;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (o == null) return false;
+			if (!(o instanceof PlannerWorldState)) return false;
+
+			PlannerWorldState pws = (PlannerWorldState)o;
+			if (this.value != pws.value) return false;
+			return true;
+		}
+
+		@Override
+		public int hashCode() {
+			return this.value;
+		}
+	}
+
+	public class PlannerBehavior implements Behavior<PlannerWorldState> {
+		protected int amount;
+
+		public PlannerBehavior(int amount) {
+			this.amount = amount;
+		}
+
+		@Override
+		public boolean isRunnable(PlannerWorldState pws) {
+			return true;
+		}
+
+		@Override
+		public void modifyState(PlannerWorldState pws) {
+			pws.value += this.amount;
+		}
+
+		@Override
+		public Float getCost(PlannerWorldState pws) {
+			return 1.0f;
+		}
+	}
+
+	/**
+	 * Adding is trivially reversible: undo subtracts again.
+	 */
+	public class PlannerReversibleBehavior extends PlannerBehavior implements ReversibleBehavior<PlannerWorldState> {
+		public PlannerReversibleBehavior(int amount) {
+			super(amount);
+		}
+
+		@Override
+		public void apply(PlannerWorldState pws) {
+			pws.value += this.amount;
+		}
+
+		@Override
+		public void undo(PlannerWorldState pws) {
+			pws.value -= this.amount;
+		}
+	}
+
+	public class PlannerGoal implements Goal<PlannerWorldState> {
+		@Override
+		public boolean isSatisfied(PlannerWorldState pws) {
+			return pws.value >= 10;
+		}
+
+		@Override
+		public int compare(PlannerWorldState a, PlannerWorldState b) {
+			if (a.value > b.value) return -1;
+			if (a.value < b.value) return 1;
+			return 0;
+		}
+	}
+
+	private ArrayList<PlannerBehavior> plan(ArrayList<PlannerBehavior> pbp, PlannerWorldState ws) throws Exception {
+		Planner<PlannerWorldState, PlannerGoal, PlannerBehavior, ArrayList<PlannerBehavior>> p = new Planner<>();
+		State<PlannerWorldState, PlannerGoal, PlannerBehavior, ArrayList<PlannerBehavior>> ps = p.startPlanning(ws, new PlannerGoal(), pbp);
+		while (p.stepState(ps)) {}
+
+		assertEquals("The initial state must be left the way we found it.", 0, ws.value);
+		return p.getPlan(ps);
+	}
+
+	@Test
+	public void testFewerClonesSamePlan() throws Exception {
+		ArrayList<PlannerBehavior> plain = new ArrayList<PlannerBehavior>();
+		plain.add(new PlannerBehavior(1));
+		plain.add(new PlannerBehavior(-1));
+		plain.add(new PlannerBehavior(2));
+
+		ArrayList<PlannerBehavior> reversible = new ArrayList<PlannerBehavior>();
+		reversible.add(new PlannerReversibleBehavior(1));
+		reversible.add(new PlannerReversibleBehavior(-1));
+		reversible.add(new PlannerReversibleBehavior(2));
+
+		A011_ReversibleBehaviorTest.clones = 0;
+		ArrayList<PlannerBehavior> plainPlan = this.plan(plain, new PlannerWorldState());
+		int plainClones = A011_ReversibleBehaviorTest.clones;
+
+		A011_ReversibleBehaviorTest.clones = 0;
+		ArrayList<PlannerBehavior> reversiblePlan = this.plan(reversible, new PlannerWorldState());
+		int reversibleClones = A011_ReversibleBehaviorTest.clones;
+
+		assertEquals(plainPlan.size(), reversiblePlan.size());
+		for (int i = 0; i < plainPlan.size(); i++) {
+			assertEquals(plain.indexOf(plainPlan.get(i)), reversible.indexOf(reversiblePlan.get(i)));
+		}
+
+		assertTrue("Reversible behaviors should clone less: " + reversibleClones + " vs " + plainClones, reversibleClones < plainClones);
+	}
+
+	/**
+	 * A behavior that does nothing lands right back on the state we're
+	 * expanding. The planner can't tell that apart from a hash collision in
+	 * place, so it has to fall back to copying, and must not get confused.
+	 */
+	@Test
+	public void testNoOpBehavior() throws Exception {
+		ArrayList<PlannerBehavior> reversible = new ArrayList<PlannerBehavior>();
+		reversible.add(new PlannerReversibleBehavior(0));
+		reversible.add(new PlannerReversibleBehavior(5));
+
+		ArrayList<PlannerBehavior> plan = this.plan(reversible, new PlannerWorldState());
+		assertEquals(2, plan.size());
+		assertSame(reversible.get(1), plan.get(0));
+		assertSame(reversible.get(1), plan.get(1));
+	}
+}
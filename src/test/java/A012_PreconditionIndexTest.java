@@ -0,0 +1,139 @@
+/**
+ * Behaviors can declare the facts that they need with PreconditionBehavior.
+ * When the world state is a FactSource, the planner indexes behaviors by those
+ * facts and skips the ones that can't possibly run without calling isRunnable
+ * on them.
+ *
+ * We build a "skill tree": learning skill N requires having learned skill
+ * N - 1. Most skills are out of reach from any given state, so most behaviors
+ * should be skipped.
+ */
+import com.gracefulcode.ai.*;
+import com.gracefulcode.ai.internal.State;
+
+import java.util.ArrayList;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class A012_PreconditionIndexTest {
+	public static final int SKILLS = 100;
+
+	public static int isRunnableCalls = 0;
+
+	public class LearnSkill extends AbstractPrimitiveCostBehavior<FactWorldState> implements PreconditionBehavior<FactWorldState> {
+		private int skill;
+		private int previousSkill;
+		private boolean declare;
+
+		public LearnSkill(int skill, int previousSkill, boolean declare) {
+			this.skill = skill;
+			this.previousSkill = previousSkill;
+			this.declare = declare;
+		}
+
+		@Override
+		public int[] getRequiredFacts() {
+			if (!this.declare || this.previousSkill < 0) return new int[0];
+			return new int[] { this.previousSkill };
+		}
+
+		/**
+		 * This still checks everything, so that the behavior is correct even
+		 * when it's not indexed.
+		 */
+		@Override
+		public boolean isRunnable(FactWorldState fws) {
+			A012_PreconditionIndexTest.isRunnableCalls++;
+			if (fws.getFlag(this.skill)) return false;
+			if (this.previousSkill >= 0 && !fws.getFlag(this.previousSkill)) return false;
+			return true;
+		}
+
+		@Override
+		public void modifyState(FactWorldState fws) {
+			fws.setFlag(this.skill, true);
+		}
+
+		@Override
+		public float cost(FactWorldState fws) {
+			return 1.0f;
+		}
+	}
+
+	public class SkillGoal implements Goal<FactWorldState> {
+		private int target;
+
+		public SkillGoal(int target) {
+			this.target = target;
+		}
+
+		@Override
+		public boolean isSatisfied(FactWorldState fws) {
+			return fws.getFlag(this.target);
+		}
+
+		@Override
+		public int compare(FactWorldState a, FactWorldState b) {
+			return 0;
+		}
+	}
+
+	public class CountingDebugger implements PreconditionDebugger<FactWorldState, LearnSkill> {
+		public int evaluated = 0;
+		public int skipped = 0;
+
+		public void didStartStep() {}
+		public void startEvaluateBehavior(LearnSkill behavior) {
+			this.evaluated++;
+		}
+		public void endEvaluateBehavior(LearnSkill behavior) {}
+		public void didEndStep(boolean hasMoreWork) {}
+		public void didAddState(FactWorldState worldState) {}
+		public void didSkipBehaviors(int skipped) {
+			this.skipped += skipped;
+		}
+	}
+
+	private ArrayList<LearnSkill> plan(boolean declare, CountingDebugger debugger) throws Exception {
+		FactSchema schema = new FactSchema();
+		for (int i = 0; i < SKILLS; i++) {
+			schema.addFlag("skill" + i);
+		}
+
+		ArrayList<LearnSkill> behaviors = new ArrayList<LearnSkill>();
+		for (int i = 0; i < SKILLS; i++) {
+			behaviors.add(new LearnSkill(i, i - 1, declare));
+		}
+
+		Planner<FactWorldState, SkillGoal, LearnSkill, ArrayList<LearnSkill>> p = new Planner<>();
+		State<FactWorldState, SkillGoal, LearnSkill, ArrayList<LearnSkill>> ps = p.startPlanning(schema.newWorldState(), new SkillGoal(9), behaviors);
+		while (p.stepState(ps, debugger)) {}
+		return p.getPlan(ps);
+	}
+
+	@Test
+	public void testSkipsUnreachableBehaviors() throws Exception {
+		CountingDebugger plainDebugger = new CountingDebugger();
+		A012_PreconditionIndexTest.isRunnableCalls = 0;
+		ArrayList<LearnSkill> plainPlan = this.plan(false, plainDebugger);
+		int plainCalls = A012_PreconditionIndexTest.isRunnableCalls;
+
+		CountingDebugger indexedDebugger = new CountingDebugger();
+		A012_PreconditionIndexTest.isRunnableCalls = 0;
+		ArrayList<LearnSkill> indexedPlan = this.plan(true, indexedDebugger);
+		int indexedCalls = A012_PreconditionIndexTest.isRunnableCalls;
+
+		assertEquals(10, plainPlan.size());
+		assertEquals(10, indexedPlan.size());
+		for (int i = 0; i < 10; i++) {
+			assertEquals(plainPlan.get(i).skill, indexedPlan.get(i).skill);
+		}
+
+		assertEquals("Without declarations nothing is skipped.", 0, plainDebugger.skipped);
+		assertTrue("The index should skip most behaviors: " + indexedCalls + " vs " + plainCalls, indexedCalls * 10 < plainCalls);
+
+		// Every behavior is either evaluated or counted as skipped.
+		assertEquals(plainDebugger.evaluated, indexedDebugger.evaluated + indexedDebugger.skipped);
+	}
+}
@@ -0,0 +1,173 @@
+/**
+ * A HeuristicGoal can estimate how much it will cost to get from a world
+ * state to the goal. With that, the planner becomes a real A* search: it
+ * still finds the cheapest plan, but it expands far fewer world states
+ * getting there.
+ *
+ * The goal here is to land exactly on 20. Stepping by 1 costs 1, jumping by 5
+ * costs 4, so the cheapest plan is four jumps. Every behavior moves us at
+ * most 5 for a cost of at least 4, so 0.8 per unit of distance is an estimate
+ * that never overshoots.
+ */
+import com.gracefulcode.ai.*;
+import com.gracefulcode.ai.internal.State;
+
+import java.util.ArrayList;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class A013_HeuristicGoalTest {
+	public class PlannerWorldState implements WorldState {
+		public int value = 0;
+
+		@Override
+		public Object clone() {
+			PlannerWorldState tmp = new PlannerWorldState();
+			tmp.value = this.value;
+			return tmp;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (o == null) return false;
+			if (!(o instanceof PlannerWorldState)) return false;
+
+			PlannerWorldState pws = (PlannerWorldState)o;
+			if (this.value != pws.value) return false;
+			return true;
+		}
+
+		@Override
+		public int hashCode() {
+			return this.value;
+		}
+
+		@Override
+		public String toString() {
+			return "PlannerWorldState[value: " + this.value + "]";
+		}
+	}
+
+	public class PlannerBehavior extends AbstractPrimitiveCostBehavior<PlannerWorldState> {
+		private int amount;
+		private float cost;
+
+		public PlannerBehavior(int amount, float cost) {
+			this.amount = amount;
+			this.cost = cost;
+		}
+
+		@Override
+		public boolean isRunnable(PlannerWorldState pws) {
+			// Keep the world finite.
+			return Math.abs(pws.value + this.amount) <= 40;
+		}
+
+		@Override
+		public void modifyState(PlannerWorldState pws) {
+			pws.value += this.amount;
+		}
+
+		@Override
+		public float cost(PlannerWorldState pws) {
+			return this.cost;
+		}
+
+		@Override
+		public String toString() {
+			return "PlannerBehavior[" + this.amount + "]";
+		}
+	}
+
+	/**
+	 * The plain goal: closer to 20 is better.
+	 */
+	public class PlannerGoal implements Goal<PlannerWorldState> {
+		@Override
+		public boolean isSatisfied(PlannerWorldState pws) {
+			return pws.value == 20;
+		}
+
+		@Override
+		public int compare(PlannerWorldState a, PlannerWorldState b) {
+			int distanceA = Math.abs(20 - a.value);
+			int distanceB = Math.abs(20 - b.value);
+			if (distanceA < distanceB) return -1;
+			if (distanceA > distanceB) return 1;
+			return 0;
+		}
+	}
+
+	/**
+	 * The same goal, but it can estimate.
+	 */
+	public class PlannerHeuristicGoal extends PlannerGoal implements HeuristicGoal<PlannerWorldState> {
+		@Override
+		public float estimateCost(PlannerWorldState pws) {
+			return Math.abs(20 - pws.value) * 0.8f;
+		}
+	}
+
+	private ArrayList<PlannerBehavior> behaviors() {
+		ArrayList<PlannerBehavior> pbp = new ArrayList<PlannerBehavior>();
+		pbp.add(new PlannerBehavior(1, 1.0f));
+		pbp.add(new PlannerBehavior(-1, 1.0f));
+		pbp.add(new PlannerBehavior(5, 4.0f));
+		pbp.add(new PlannerBehavior(-5, 4.0f));
+		return pbp;
+	}
+
+	private float planCost(ArrayList<PlannerBehavior> plan) {
+		float total = 0;
+		for (PlannerBehavior b: plan) {
+			total += b.cost;
+		}
+		return total;
+	}
+
+	@Test
+	public void testFindsCheapestPlanWithFewerSteps() throws Exception {
+		ArrayList<PlannerBehavior> pbp = this.behaviors();
+
+		Planner<PlannerWorldState, PlannerGoal, PlannerBehavior, ArrayList<PlannerBehavior>> p = new Planner<>();
+
+		State<PlannerWorldState, PlannerGoal, PlannerBehavior, ArrayList<PlannerBehavior>> plain = p.startPlanning(new PlannerWorldState(), new PlannerGoal(), pbp);
+		int plainSteps = 0;
+		while (p.stepState(plain)) {
+			plainSteps++;
+		}
+
+		State<PlannerWorldState, PlannerGoal, PlannerBehavior, ArrayList<PlannerBehavior>> astar = p.startPlanning(new PlannerWorldState(), new PlannerHeuristicGoal(), pbp);
+		int astarSteps = 0;
+		while (p.stepState(astar)) {
+			astarSteps++;
+		}
+		assertTrue(astar.isDone());
+
+		ArrayList<PlannerBehavior> plan = p.getPlan(astar);
+		assertEquals("Four jumps: " + plan, 4, plan.size());
+		assertEquals(16.0f, this.planCost(plan), 0.0001f);
+		assertEquals(this.planCost(p.getPlan(plain)), this.planCost(plan), 0.0001f);
+
+		assertTrue("A* should expand fewer states: " + astarSteps + " vs " + plainSteps, astarSteps < plainSteps);
+	}
+
+	/**
+	 * A* should never expand anything whose cost plus estimate is more than
+	 * the cheapest plan.
+	 */
+	@Test
+	public void testNeverExpandsPastOptimal() throws Exception {
+		ArrayList<PlannerBehavior> pbp = this.behaviors();
+		PlannerHeuristicGoal goal = new PlannerHeuristicGoal();
+
+		Planner<PlannerWorldState, PlannerGoal, PlannerBehavior, ArrayList<PlannerBehavior>> p = new Planner<>();
+		State<PlannerWorldState, PlannerGoal, PlannerBehavior, ArrayList<PlannerBehavior>> ps = p.startPlanning(new PlannerWorldState(), goal, pbp);
+		do {
+			PlannerWorldState current = ps.getWorldState();
+			float f = ps.getGlobalState().getBestKnownCost(current) + goal.estimateCost(current);
+			assertTrue("Expanded " + current + " with f = " + f, f <= 16.0f + 0.0001f);
+		} while (p.stepState(ps));
+	}
+}
@@ -0,0 +1,162 @@
+/**
+ * Rather than calling stepState once per frame and hoping that's the right
+ * amount of work, you can call stepStateWithBudget with a StepBudget. It keeps
+ * expanding until the budget runs out and tells you which limit it hit.
+ */
+import com.gracefulcode.ai.*;
+import com.gracefulcode.ai.internal.State;
+
+import java.util.ArrayList;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class A014_StepBudgetTest {
+	public class PlannerWorldState implements WorldState {
+		public int value = 0;
+
+		@Override
+		public Object clone() {
+			PlannerWorldState tmp = new PlannerWorldState();
+			tmp.value = this.value;
+			return tmp;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (o == null) return false;
+			if (!(o instanceof PlannerWorldState)) return false;
+
+			PlannerWorldState pws = (PlannerWorldState)o;
+			if (this.value != pws.value) return false;
+			return true;
+		}
+
+		@Override
+		public int hashCode() {
+			return this.value;
+		}
+	}
+
+	public class PlannerBehavior implements Behavior<PlannerWorldState> {
+		private int amount;
+
+		public PlannerBehavior(int amount) {
+			this.amount = amount;
+		}
+
+		@Override
+		public boolean isRunnable(PlannerWorldState pws) {
+			return true;
+		}
+
+		@Override
+		public void modifyState(PlannerWorldState pws) {
+			pws.value += this.amount;
+		}
+
+		@Override
+		public Float getCost(PlannerWorldState pws) {
+			return 1.0f;
+		}
+	}
+
+	public class PlannerGoal implements Goal<PlannerWorldState> {
+		@Override
+		public boolean isSatisfied(PlannerWorldState pws) {
+			return pws.value >= 30;
+		}
+
+		@Override
+		public int compare(PlannerWorldState a, PlannerWorldState b) {
+			if (a.value > b.value) return -1;
+			if (a.value < b.value) return 1;
+			return 0;
+		}
+	}
+
+	private Planner<PlannerWorldState, PlannerGoal, PlannerBehavior, ArrayList<PlannerBehavior>> planner;
+	private ArrayList<PlannerBehavior> behaviors;
+
+	private State<PlannerWorldState, PlannerGoal, PlannerBehavior, ArrayList<PlannerBehavior>> start() {
+		this.planner = new Planner<>();
+		this.behaviors = new ArrayList<PlannerBehavior>();
+		this.behaviors.add(new PlannerBehavior(1));
+		this.behaviors.add(new PlannerBehavior(-1));
+		return this.planner.startPlanning(new PlannerWorldState(), new PlannerGoal(), this.behaviors);
+	}
+
+	@Test
+	public void testExpansionBudget() throws Exception {
+		State<PlannerWorldState, PlannerGoal, PlannerBehavior, ArrayList<PlannerBehavior>> ps = this.start();
+
+		StepResult result = this.planner.stepStateWithBudget(ps, StepBudget.expansions(3));
+		assertEquals(StepResult.OUT_OF_EXPANSIONS, result);
+		assertTrue(result.hasMoreWork());
+		assertEquals(3, ps.getClosedSetSize());
+
+		result = this.planner.stepStateWithBudget(ps, StepBudget.expansions(3));
+		assertEquals(StepResult.OUT_OF_EXPANSIONS, result);
+		assertEquals(6, ps.getClosedSetSize());
+	}
+
+	@Test
+	public void testUnlimitedBudgetFinishes() throws Exception {
+		State<PlannerWorldState, PlannerGoal, PlannerBehavior, ArrayList<PlannerBehavior>> ps = this.start();
+
+		StepResult result = this.planner.stepStateWithBudget(ps, StepBudget.unlimited());
+		assertEquals(StepResult.FINISHED, result);
+		assertFalse(result.hasMoreWork());
+		assertTrue(ps.isDone());
+		assertEquals(30, this.planner.getPlan(ps).size());
+
+		// Stepping a finished state is harmless.
+		assertEquals(StepResult.FINISHED, this.planner.stepStateWithBudget(ps, StepBudget.expansions(1)));
+	}
+
+	/**
+	 * Every expansion counts, including the one that finishes the search.
+	 */
+	@Test
+	public void testCountsEveryExpansion() throws Exception {
+		State<PlannerWorldState, PlannerGoal, PlannerBehavior, ArrayList<PlannerBehavior>> plain = this.start();
+		int steps = 1;
+		while (this.planner.stepState(plain)) {
+			steps++;
+		}
+
+		State<PlannerWorldState, PlannerGoal, PlannerBehavior, ArrayList<PlannerBehavior>> ps = this.start();
+		assertEquals(StepResult.OUT_OF_EXPANSIONS, this.planner.stepStateWithBudget(ps, StepBudget.expansions(3)));
+		assertEquals(3, ps.getExpansions());
+		assertEquals(StepResult.FINISHED, this.planner.stepStateWithBudget(ps, StepBudget.unlimited()));
+		assertEquals(steps, ps.getExpansions());
+	}
+
+	@Test
+	public void testNodeBudget() throws Exception {
+		State<PlannerWorldState, PlannerGoal, PlannerBehavior, ArrayList<PlannerBehavior>> ps = this.start();
+
+		StepResult result = this.planner.stepStateWithBudget(ps, StepBudget.nodes(10));
+		assertEquals(StepResult.OUT_OF_NODES, result);
+		int closed = ps.getClosedSetSize();
+		assertTrue(closed > 0);
+
+		// Once we're out of nodes, we stay out and don't do any more work.
+		assertEquals(StepResult.OUT_OF_NODES, this.planner.stepStateWithBudget(ps, StepBudget.nodes(10)));
+		assertEquals(closed, ps.getClosedSetSize());
+	}
+
+	@Test
+	public void testTinyTimeBudgetStillMakesProgress() throws Exception {
+		State<PlannerWorldState, PlannerGoal, PlannerBehavior, ArrayList<PlannerBehavior>> ps = this.start();
+
+		StepResult result = this.planner.stepStateWithBudget(ps, StepBudget.nanos(1));
+		assertEquals(StepResult.OUT_OF_TIME, result);
+		assertEquals(1, ps.getClosedSetSize());
+
+		// A generous time budget with an expansion limit stops on expansions.
+		result = this.planner.stepStateWithBudget(ps, new StepBudget(60L * 1000 * 1000 * 1000, 5, 0));
+		assertEquals(StepResult.OUT_OF_EXPANSIONS, result);
+		assertEquals(6, ps.getClosedSetSize());
+	}
+}
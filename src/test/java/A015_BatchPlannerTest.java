@@ -0,0 +1,152 @@
+/**
+ * BatchPlanner plans for lots of agents at once on a ForkJoinPool. All of the
+ * agents here share one list of behaviors, which is safe since the planner
+ * only ever reads it.
+ */
+import com.gracefulcode.ai.*;
+import com.gracefulcode.ai.internal.State;
+
+import java.util.ArrayList;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class A015_BatchPlannerTest {
+	public class PlannerWorldState implements WorldState {
+		public int value = 0;
+
+		public PlannerWorldState(int value) {
+			this.value = value;
+		}
+
+		@Override
+		public Object clone() {
+			return new PlannerWorldState(this.value);
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (o == null) return false;
+			if (!(o instanceof PlannerWorldState)) return false;
+
+			PlannerWorldState pws = (PlannerWorldState)o;
+			if (this.value != pws.value) return false;
+			return true;
+		}
+
+		@Override
+		public int hashCode() {
+			return this.value;
+		}
+	}
+
+	public class PlannerBehavior extends AbstractPrimitiveCostBehavior<PlannerWorldState> {
+		private int amount;
+		private float cost;
+
+		public PlannerBehavior(int amount, float cost) {
+			this.amount = amount;
+			this.cost = cost;
+		}
+
+		@Override
+		public boolean isRunnable(PlannerWorldState pws) {
+			return Math.abs(pws.value + this.amount) <= 100;
+		}
+
+		@Override
+		public void modifyState(PlannerWorldState pws) {
+			pws.value += this.amount;
+		}
+
+		@Override
+		public float cost(PlannerWorldState pws) {
+			return this.cost;
+		}
+	}
+
+	public class PlannerGoal implements HeuristicGoal<PlannerWorldState> {
+		private int target;
+
+		public PlannerGoal(int target) {
+			this.target = target;
+		}
+
+		@Override
+		public boolean isSatisfied(PlannerWorldState pws) {
+			return pws.value == this.target;
+		}
+
+		@Override
+		public float estimateCost(PlannerWorldState pws) {
+			return Math.abs(this.target - pws.value) * 0.8f;
+		}
+
+		@Override
+		public int compare(PlannerWorldState a, PlannerWorldState b) {
+			return 0;
+		}
+	}
+
+	private ArrayList<PlannerBehavior> behaviors() {
+		ArrayList<PlannerBehavior> pbp = new ArrayList<PlannerBehavior>();
+		pbp.add(new PlannerBehavior(1, 1.0f));
+		pbp.add(new PlannerBehavior(-1, 1.0f));
+		pbp.add(new PlannerBehavior(5, 4.0f));
+		pbp.add(new PlannerBehavior(-5, 4.0f));
+		return pbp;
+	}
+
+	@Test
+	public void testMatchesSequentialPlansInOrder() throws Exception {
+		ArrayList<PlannerBehavior> pbp = this.behaviors();
+
+		ArrayList<PlanRequest<PlannerWorldState, PlannerGoal, PlannerBehavior, ArrayList<PlannerBehavior>>> requests = new ArrayList<>();
+		for (int i = 0; i < 300; i++) {
+			int start = (i * 7) % 50 - 25;
+			int target = (i * 13) % 60 - 30;
+			requests.add(new PlanRequest<PlannerWorldState, PlannerGoal, PlannerBehavior, ArrayList<PlannerBehavior>>(new PlannerWorldState(start), new PlannerGoal(target), pbp));
+		}
+
+		BatchPlanner<PlannerWorldState, PlannerGoal, PlannerBehavior, ArrayList<PlannerBehavior>> batch = new BatchPlanner<>(new ForkJoinPool(4));
+		ArrayList<Plan<PlannerBehavior>> plans = batch.planAll(requests);
+		batch.shutdown();
+
+		assertEquals(requests.size(), plans.size());
+
+		Planner<PlannerWorldState, PlannerGoal, PlannerBehavior, ArrayList<PlannerBehavior>> p = new Planner<>();
+		for (int i = 0; i < requests.size(); i++) {
+			PlanRequest<PlannerWorldState, PlannerGoal, PlannerBehavior, ArrayList<PlannerBehavior>> request = requests.get(i);
+			State<PlannerWorldState, PlannerGoal, PlannerBehavior, ArrayList<PlannerBehavior>> ps = p.startPlanning(new PlannerWorldState(request.getInitialState().value), request.getGoal(), pbp);
+			while (p.stepState(ps)) {}
+			ArrayList<PlannerBehavior> expected = p.getPlan(ps);
+
+			assertNotNull(plans.get(i));
+			assertEquals("Request " + i, expected, plans.get(i));
+		}
+	}
+
+	/**
+	 * Requests can carry a budget. An agent that runs out of budget still gets
+	 * whatever partial plan the planner got to, but its bound says that it
+	 * doesn't reach the goal.
+	 */
+	@Test
+	public void testBudgetedRequests() throws Exception {
+		ArrayList<PlannerBehavior> pbp = this.behaviors();
+
+		ArrayList<PlanRequest<PlannerWorldState, PlannerGoal, PlannerBehavior, ArrayList<PlannerBehavior>>> requests = new ArrayList<>();
+		requests.add(new PlanRequest<PlannerWorldState, PlannerGoal, PlannerBehavior, ArrayList<PlannerBehavior>>(new PlannerWorldState(0), new PlannerGoal(20), pbp, StepBudget.expansions(1)));
+		requests.add(new PlanRequest<PlannerWorldState, PlannerGoal, PlannerBehavior, ArrayList<PlannerBehavior>>(new PlannerWorldState(0), new PlannerGoal(20), pbp));
+
+		BatchPlanner<PlannerWorldState, PlannerGoal, PlannerBehavior, ArrayList<PlannerBehavior>> batch = new BatchPlanner<>();
+		ArrayList<Plan<PlannerBehavior>> plans = batch.planAll(requests);
+		batch.shutdown();
+
+		assertEquals(1, plans.get(0).size());
+		assertEquals(Float.POSITIVE_INFINITY, plans.get(0).getSuboptimalityBound(), 0.0f);
+		assertEquals(4, plans.get(1).size());
+		assertEquals(1.0f, plans.get(1).getSuboptimalityBound(), 0.0f);
+	}
+}
@@ -0,0 +1,300 @@
+/**
+ * A PlanCache sits in front of the planner. Asking for the same initial world
+ * state and goal twice only plans once.
+ */
+import com.gracefulcode.ai.*;
+
+import java.util.ArrayList;
+import java.util.concurrent.CountDownLatch;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class A016_PlanCacheTest {
+	public static int isRunnableCalls = 0;
+
+	public class PlannerWorldState implements WorldState {
+		public int value = 0;
+
+		public PlannerWorldState(int value) {
+			this.value = value;
+		}
+
+		@Override
+		public Object clone() {
+			return new PlannerWorldState(this.value);
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (o == null) return false;
+			if (!(o instanceof PlannerWorldState)) return false;
+
+			PlannerWorldState pws = (PlannerWorldState)o;
+			if (this.value != pws.value) return false;
+			return true;
+		}
+
+		@Override
+		public int hashCode() {
+			return this.value;
+		}
+	}
+
+	public class PlannerBehavior extends AbstractPrimitiveCostBehavior<PlannerWorldState> {
+		private int amount;
+
+		public PlannerBehavior(int amount) {
+			this.amount = amount;
+		}
+
+		@Override
+		public boolean isRunnable(PlannerWorldState pws) {
+			synchronized (A016_PlanCacheTest.class) {
+				A016_PlanCacheTest.isRunnableCalls++;
+			}
+			return Math.abs(pws.value + this.amount) <= 50;
+		}
+
+		@Override
+		public void modifyState(PlannerWorldState pws) {
+			pws.value += this.amount;
+		}
+
+		@Override
+		public float cost(PlannerWorldState pws) {
+			return 1.0f;
+		}
+	}
+
+	/**
+	 * Holds the first plan it's used in until it's told to go on, so that we
+	 * can do things while that plan is in flight.
+	 */
+	public class BlockingBehavior extends PlannerBehavior {
+		public CountDownLatch started = new CountDownLatch(1);
+		public CountDownLatch release = new CountDownLatch(1);
+
+		public BlockingBehavior(int amount) {
+			super(amount);
+		}
+
+		@Override
+		public boolean isRunnable(PlannerWorldState pws) {
+			this.started.countDown();
+			try {
+				this.release.await();
+			} catch (InterruptedException e) {
+				throw new RuntimeException(e);
+			}
+			return super.isRunnable(pws);
+		}
+	}
+
+	public class PlannerGoal implements Goal<PlannerWorldState> {
+		private int target;
+
+		public PlannerGoal(int target) {
+			this.target = target;
+		}
+
+		@Override
+		public boolean isSatisfied(PlannerWorldState pws) {
+			return pws.value == this.target;
+		}
+
+		@Override
+		public int compare(PlannerWorldState a, PlannerWorldState b) {
+			int distanceA = Math.abs(this.target - a.value);
+			int distanceB = Math.abs(this.target - b.value);
+			if (distanceA < distanceB) return -1;
+			if (distanceA > distanceB) return 1;
+			return 0;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (!(o instanceof PlannerGoal)) return false;
+			return ((PlannerGoal)o).target == this.target;
+		}
+
+		@Override
+		public int hashCode() {
+			return this.target;
+		}
+	}
+
+	private ArrayList<PlannerBehavior> behaviors() {
+		ArrayList<PlannerBehavior> pbp = new ArrayList<PlannerBehavior>();
+		pbp.add(new PlannerBehavior(1));
+		pbp.add(new PlannerBehavior(-1));
+		return pbp;
+	}
+
+	@Test
+	public void testHitsSkipPlanning() throws Exception {
+		ArrayList<PlannerBehavior> pbp = this.behaviors();
+		Planner<PlannerWorldState, PlannerGoal, PlannerBehavior, ArrayList<PlannerBehavior>> p = new Planner<>();
+		PlanCache<PlannerWorldState, PlannerGoal, PlannerBehavior, ArrayList<PlannerBehavior>> cache = new PlanCache<>(10);
+
+		A016_PlanCacheTest.isRunnableCalls = 0;
+		Plan<PlannerBehavior> first = cache.getPlan(p, new PlannerWorldState(0), new PlannerGoal(5), pbp);
+		int calls = A016_PlanCacheTest.isRunnableCalls;
+		assertEquals(5, first.size());
+		assertEquals(1.0f, first.getSuboptimalityBound(), 0.0f);
+		assertEquals(0, cache.getHits());
+		assertEquals(1, cache.getMisses());
+
+		// Equal, but not the same, world state and goal.
+		Plan<PlannerBehavior> second = cache.getPlan(p, new PlannerWorldState(0), new PlannerGoal(5), pbp);
+		assertEquals(calls, A016_PlanCacheTest.isRunnableCalls);
+		assertEquals(first, second);
+		assertEquals(1.0f, second.getSuboptimalityBound(), 0.0f);
+		assertEquals(1, cache.getHits());
+		assertEquals(1, cache.getMisses());
+
+		// Callers get their own copy.
+		second.clear();
+		assertEquals(5, cache.get(new PlannerWorldState(0), new PlannerGoal(5)).size());
+	}
+
+	@Test
+	public void testKeyIsSnapshotted() throws Exception {
+		ArrayList<PlannerBehavior> pbp = this.behaviors();
+		Planner<PlannerWorldState, PlannerGoal, PlannerBehavior, ArrayList<PlannerBehavior>> p = new Planner<>();
+		PlanCache<PlannerWorldState, PlannerGoal, PlannerBehavior, ArrayList<PlannerBehavior>> cache = new PlanCache<>(10);
+
+		PlannerWorldState agent = new PlannerWorldState(0);
+		cache.getPlan(p, agent, new PlannerGoal(5), pbp);
+
+		// The agent moves on. The cached plan is still for 0.
+		agent.value = 3;
+		assertNull(cache.get(agent, new PlannerGoal(5)));
+		assertEquals(5, cache.get(new PlannerWorldState(0), new PlannerGoal(5)).size());
+	}
+
+	@Test
+	public void testLeastRecentlyUsedIsEvicted() throws Exception {
+		ArrayList<PlannerBehavior> pbp = this.behaviors();
+		Planner<PlannerWorldState, PlannerGoal, PlannerBehavior, ArrayList<PlannerBehavior>> p = new Planner<>();
+		PlanCache<PlannerWorldState, PlannerGoal, PlannerBehavior, ArrayList<PlannerBehavior>> cache = new PlanCache<>(2);
+
+		cache.getPlan(p, new PlannerWorldState(0), new PlannerGoal(1), pbp);
+		cache.getPlan(p, new PlannerWorldState(0), new PlannerGoal(2), pbp);
+
+		// Touch the first so that the second is the oldest.
+		assertNotNull(cache.get(new PlannerWorldState(0), new PlannerGoal(1)));
+
+		cache.getPlan(p, new PlannerWorldState(0), new PlannerGoal(3), pbp);
+		assertEquals(2, cache.size());
+		assertEquals(1, cache.getEvictions());
+		assertNotNull(cache.get(new PlannerWorldState(0), new PlannerGoal(1)));
+		assertNull(cache.get(new PlannerWorldState(0), new PlannerGoal(2)));
+		assertNotNull(cache.get(new PlannerWorldState(0), new PlannerGoal(3)));
+	}
+
+	@Test
+	public void testInvalidation() throws Exception {
+		ArrayList<PlannerBehavior> pbp = this.behaviors();
+		Planner<PlannerWorldState, PlannerGoal, PlannerBehavior, ArrayList<PlannerBehavior>> p = new Planner<>();
+		PlanCache<PlannerWorldState, PlannerGoal, PlannerBehavior, ArrayList<PlannerBehavior>> cache = new PlanCache<>(10);
+
+		cache.getPlan(p, new PlannerWorldState(0), new PlannerGoal(5), pbp);
+		cache.getPlan(p, new PlannerWorldState(0), new PlannerGoal(6), pbp);
+
+		cache.invalidate(new PlannerWorldState(0), new PlannerGoal(5));
+		assertEquals(1, cache.size());
+
+		// A new behavior shows up that makes the old plans stale.
+		pbp.add(new PlannerBehavior(3));
+		cache.invalidateAll();
+		assertEquals(0, cache.size());
+
+		assertEquals(2, cache.getPlan(p, new PlannerWorldState(0), new PlannerGoal(6), pbp).size());
+	}
+
+	/**
+	 * A plan that is being made when its entry is invalidated was made with
+	 * whatever made it stale, so it must not end up in the cache.
+	 */
+	@Test
+	public void testInvalidateWhilePlanning() throws Exception {
+		final ArrayList<PlannerBehavior> pbp = this.behaviors();
+		BlockingBehavior blocking = new BlockingBehavior(2);
+		pbp.add(blocking);
+		final PlanCache<PlannerWorldState, PlannerGoal, PlannerBehavior, ArrayList<PlannerBehavior>> cache = new PlanCache<>(10);
+		final Exception[] failure = new Exception[1];
+
+		Thread planning = new Thread() {
+			@Override
+			public void run() {
+				Planner<PlannerWorldState, PlannerGoal, PlannerBehavior, ArrayList<PlannerBehavior>> p = new Planner<>();
+				try {
+					cache.getPlan(p, new PlannerWorldState(0), new PlannerGoal(5), pbp);
+				} catch (Exception e) {
+					failure[0] = e;
+				}
+			}
+		};
+		planning.start();
+
+		blocking.started.await();
+		cache.invalidate(new PlannerWorldState(0), new PlannerGoal(5));
+		blocking.release.countDown();
+		planning.join();
+
+		assertNull(failure[0]);
+		assertEquals(0, cache.size());
+	}
+
+	@Test
+	public void testUnfinishedPlansAreNotCached() throws Exception {
+		ArrayList<PlannerBehavior> pbp = this.behaviors();
+		Planner<PlannerWorldState, PlannerGoal, PlannerBehavior, ArrayList<PlannerBehavior>> p = new Planner<>();
+		PlanCache<PlannerWorldState, PlannerGoal, PlannerBehavior, ArrayList<PlannerBehavior>> cache = new PlanCache<>(10);
+
+		cache.getPlan(p, new PlanRequest<PlannerWorldState, PlannerGoal, PlannerBehavior, ArrayList<PlannerBehavior>>(new PlannerWorldState(0), new PlannerGoal(20), pbp, StepBudget.expansions(1)));
+		assertEquals(0, cache.size());
+	}
+
+	@Test
+	public void testManyThreads() throws Exception {
+		final ArrayList<PlannerBehavior> pbp = this.behaviors();
+		final PlanCache<PlannerWorldState, PlannerGoal, PlannerBehavior, ArrayList<PlannerBehavior>> cache = new PlanCache<>(8);
+		final int[] failures = new int[1];
+
+		Thread[] threads = new Thread[4];
+		for (int t = 0; t < threads.length; t++) {
+			final int offset = t;
+			threads[t] = new Thread() {
+				@Override
+				public void run() {
+					Planner<PlannerWorldState, PlannerGoal, PlannerBehavior, ArrayList<PlannerBehavior>> p = new Planner<>();
+					try {
+						for (int i = 0; i < 200; i++) {
+							int target = (i + offset) % 12;
+							ArrayList<PlannerBehavior> plan = cache.getPlan(p, new PlannerWorldState(0), new PlannerGoal(target), pbp);
+							if (plan.size() != target) {
+								synchronized (failures) {
+									failures[0]++;
+								}
+							}
+						}
+					} catch (Exception e) {
+						synchronized (failures) {
+							failures[0]++;
+						}
+					}
+				}
+			};
+			threads[t].start();
+		}
+		for (Thread thread: threads) {
+			thread.join();
+		}
+
+		assertEquals(0, failures[0]);
+		assertEquals(800, cache.getHits() + cache.getMisses());
+		assertTrue(cache.size() <= 8);
+	}
+}
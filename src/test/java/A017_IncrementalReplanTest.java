@@ -0,0 +1,192 @@
+/**
+ * Incremental planning keeps what a search found so that planning again from
+ * a slightly different place doesn't start from scratch. World states that
+ * were already expanded are walked without calling into any behaviors.
+ *
+ * This is the same world as the heuristic test: land on 20, stepping by 1
+ * costs 1 and jumping by 5 costs 4.
+ */
+import com.gracefulcode.ai.*;
+import com.gracefulcode.ai.internal.State;
+
+import java.util.ArrayList;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class A017_IncrementalReplanTest {
+	public static int isRunnableCalls = 0;
+
+	public class PlannerWorldState implements WorldState {
+		public int value = 0;
+
+		public PlannerWorldState(int value) {
+			this.value = value;
+		}
+
+		@Override
+		public Object clone() {
+			return new PlannerWorldState(this.value);
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (o == null) return false;
+			if (!(o instanceof PlannerWorldState)) return false;
+
+			PlannerWorldState pws = (PlannerWorldState)o;
+			if (this.value != pws.value) return false;
+			return true;
+		}
+
+		@Override
+		public int hashCode() {
+			return this.value;
+		}
+	}
+
+	public class PlannerBehavior extends AbstractPrimitiveCostBehavior<PlannerWorldState> {
+		private int amount;
+		public float cost;
+
+		public PlannerBehavior(int amount, float cost) {
+			this.amount = amount;
+			this.cost = cost;
+		}
+
+		@Override
+		public boolean isRunnable(PlannerWorldState pws) {
+			A017_IncrementalReplanTest.isRunnableCalls++;
+			return Math.abs(pws.value + this.amount) <= 40;
+		}
+
+		@Override
+		public void modifyState(PlannerWorldState pws) {
+			pws.value += this.amount;
+		}
+
+		@Override
+		public float cost(PlannerWorldState pws) {
+			return this.cost;
+		}
+	}
+
+	public class PlannerGoal implements HeuristicGoal<PlannerWorldState> {
+		@Override
+		public boolean isSatisfied(PlannerWorldState pws) {
+			return pws.value == 20;
+		}
+
+		@Override
+		public float estimateCost(PlannerWorldState pws) {
+			return Math.abs(20 - pws.value) * 0.8f;
+		}
+
+		@Override
+		public int compare(PlannerWorldState a, PlannerWorldState b) {
+			return 0;
+		}
+	}
+
+	private ArrayList<PlannerBehavior> behaviors() {
+		ArrayList<PlannerBehavior> pbp = new ArrayList<PlannerBehavior>();
+		pbp.add(new PlannerBehavior(1, 1.0f));
+		pbp.add(new PlannerBehavior(-1, 1.0f));
+		pbp.add(new PlannerBehavior(5, 4.0f));
+		pbp.add(new PlannerBehavior(-5, 4.0f));
+		return pbp;
+	}
+
+	private float planCost(ArrayList<PlannerBehavior> plan) {
+		float total = 0;
+		for (PlannerBehavior b: plan) {
+			total += b.cost;
+		}
+		return total;
+	}
+
+	private ArrayList<PlannerBehavior> coldPlan(int start, ArrayList<PlannerBehavior> pbp) throws Exception {
+		Planner<PlannerWorldState, PlannerGoal, PlannerBehavior, ArrayList<PlannerBehavior>> p = new Planner<>();
+		State<PlannerWorldState, PlannerGoal, PlannerBehavior, ArrayList<PlannerBehavior>> ps = p.startPlanning(new PlannerWorldState(start), new PlannerGoal(), pbp);
+		while (p.stepState(ps)) {}
+		return p.getPlan(ps);
+	}
+
+	@Test
+	public void testReplanFromKnownState() throws Exception {
+		ArrayList<PlannerBehavior> pbp = this.behaviors();
+		Planner<PlannerWorldState, PlannerGoal, PlannerBehavior, ArrayList<PlannerBehavior>> p = new Planner<>();
+
+		State<PlannerWorldState, PlannerGoal, PlannerBehavior, ArrayList<PlannerBehavior>> ps = p.startIncrementalPlanning(new PlannerWorldState(0), new PlannerGoal(), pbp);
+		while (p.stepState(ps)) {}
+		assertEquals(16.0f, this.planCost(p.getPlan(ps)), 0.0001f);
+
+		// The agent made its first jump. Everything from here on was already
+		// expanded by the first search.
+		A017_IncrementalReplanTest.isRunnableCalls = 0;
+		p.replan(ps, new PlannerWorldState(5));
+		while (p.stepState(ps)) {}
+		int replanCalls = A017_IncrementalReplanTest.isRunnableCalls;
+		ArrayList<PlannerBehavior> plan = p.getPlan(ps);
+
+		A017_IncrementalReplanTest.isRunnableCalls = 0;
+		ArrayList<PlannerBehavior> expected = this.coldPlan(5, pbp);
+		int coldCalls = A017_IncrementalReplanTest.isRunnableCalls;
+
+		assertEquals(this.planCost(expected), this.planCost(plan), 0.0001f);
+		assertEquals(expected.size(), plan.size());
+		assertTrue("Replanning should reuse expansions: " + replanCalls + " vs " + coldCalls, replanCalls < coldCalls);
+
+		// The plan really does get from 5 to 20.
+		int value = 5;
+		for (PlannerBehavior b: plan) {
+			value += b.amount;
+		}
+		assertEquals(20, value);
+	}
+
+	/**
+	 * Replanning from somewhere we've never been still works, it just has to
+	 * expand the new parts for real. It may still run into known parts along
+	 * the way.
+	 */
+	@Test
+	public void testReplanFromUnknownState() throws Exception {
+		ArrayList<PlannerBehavior> pbp = this.behaviors();
+		Planner<PlannerWorldState, PlannerGoal, PlannerBehavior, ArrayList<PlannerBehavior>> p = new Planner<>();
+
+		State<PlannerWorldState, PlannerGoal, PlannerBehavior, ArrayList<PlannerBehavior>> ps = p.startIncrementalPlanning(new PlannerWorldState(0), new PlannerGoal(), pbp);
+		while (p.stepState(ps)) {}
+
+		p.replan(ps, new PlannerWorldState(-3));
+		while (p.stepState(ps)) {}
+
+		assertEquals(this.planCost(this.coldPlan(-3, pbp)), this.planCost(p.getPlan(ps)), 0.0001f);
+	}
+
+	@Test
+	public void testReplanAfterCostChange() throws Exception {
+		ArrayList<PlannerBehavior> pbp = this.behaviors();
+		Planner<PlannerWorldState, PlannerGoal, PlannerBehavior, ArrayList<PlannerBehavior>> p = new Planner<>();
+
+		State<PlannerWorldState, PlannerGoal, PlannerBehavior, ArrayList<PlannerBehavior>> ps = p.startIncrementalPlanning(new PlannerWorldState(0), new PlannerGoal(), pbp);
+		while (p.stepState(ps)) {}
+		assertEquals(4, p.getPlan(ps).size());
+
+		// Jumping got expensive, so walking is better now.
+		ArrayList<PlannerBehavior> jumps = new ArrayList<PlannerBehavior>();
+		jumps.add(pbp.get(2));
+		jumps.add(pbp.get(3));
+		for (PlannerBehavior b: jumps) {
+			b.cost = 6.0f;
+		}
+
+		p.replan(ps, new PlannerWorldState(0), jumps);
+		while (p.stepState(ps)) {}
+
+		ArrayList<PlannerBehavior> plan = p.getPlan(ps);
+		assertEquals(20, plan.size());
+		assertEquals(20.0f, this.planCost(plan), 0.0001f);
+		assertEquals(this.planCost(this.coldPlan(0, pbp)), this.planCost(plan), 0.0001f);
+	}
+}
@@ -0,0 +1,189 @@
+/**
+ * An agent that plans over and over can hand its old State back to
+ * startPlanning. The State is reset and its nodes and collections are reused,
+ * which gives the same plans as starting fresh with much less garbage.
+ */
+import com.gracefulcode.ai.*;
+import com.gracefulcode.ai.internal.State;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class A018_ReusedStateTest {
+	public class PlannerWorldState implements WorldState {
+		public int value = 0;
+
+		public PlannerWorldState(int value) {
+			this.value = value;
+		}
+
+		@Override
+		public Object clone() {
+			return new PlannerWorldState(this.value);
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (o == null) return false;
+			if (!(o instanceof PlannerWorldState)) return false;
+
+			PlannerWorldState pws = (PlannerWorldState)o;
+			if (this.value != pws.value) return false;
+			return true;
+		}
+
+		@Override
+		public int hashCode() {
+			return this.value;
+		}
+	}
+
+	public class PlannerBehavior extends AbstractPrimitiveCostBehavior<PlannerWorldState> implements ReversibleBehavior<PlannerWorldState> {
+		private int amount;
+		private float cost;
+
+		public PlannerBehavior(int amount, float cost) {
+			this.amount = amount;
+			this.cost = cost;
+		}
+
+		@Override
+		public boolean isRunnable(PlannerWorldState pws) {
+			return Math.abs(pws.value + this.amount) <= 200;
+		}
+
+		@Override
+		public void modifyState(PlannerWorldState pws) {
+			pws.value += this.amount;
+		}
+
+		@Override
+		public void apply(PlannerWorldState pws) {
+			pws.value += this.amount;
+		}
+
+		@Override
+		public void undo(PlannerWorldState pws) {
+			pws.value -= this.amount;
+		}
+
+		@Override
+		public float cost(PlannerWorldState pws) {
+			return this.cost;
+		}
+	}
+
+	public class PlannerGoal implements HeuristicGoal<PlannerWorldState> {
+		private int target;
+
+		public PlannerGoal(int target) {
+			this.target = target;
+		}
+
+		@Override
+		public boolean isSatisfied(PlannerWorldState pws) {
+			return pws.value == this.target;
+		}
+
+		@Override
+		public float estimateCost(PlannerWorldState pws) {
+			return Math.abs(this.target - pws.value) * 0.5f;
+		}
+
+		@Override
+		public int compare(PlannerWorldState a, PlannerWorldState b) {
+			return 0;
+		}
+	}
+
+	private ArrayList<PlannerBehavior> behaviors() {
+		ArrayList<PlannerBehavior> pbp = new ArrayList<PlannerBehavior>();
+		pbp.add(new PlannerBehavior(1, 1.0f));
+		pbp.add(new PlannerBehavior(-1, 1.0f));
+		pbp.add(new PlannerBehavior(3, 2.0f));
+		pbp.add(new PlannerBehavior(-3, 2.0f));
+		return pbp;
+	}
+
+	private ArrayList<PlannerBehavior> plan(
+		Planner<PlannerWorldState, PlannerGoal, PlannerBehavior, ArrayList<PlannerBehavior>> p,
+		State<PlannerWorldState, PlannerGoal, PlannerBehavior, ArrayList<PlannerBehavior>> ps
+	) throws Exception {
+		while (p.stepState(ps)) {}
+		return p.getPlan(ps);
+	}
+
+	@Test
+	public void testSamePlansAsFreshStates() throws Exception {
+		ArrayList<PlannerBehavior> pbp = this.behaviors();
+		ArrayList<PlannerBehavior> other = this.behaviors();
+		other.remove(3);
+
+		Planner<PlannerWorldState, PlannerGoal, PlannerBehavior, ArrayList<PlannerBehavior>> p = new Planner<>();
+		State<PlannerWorldState, PlannerGoal, PlannerBehavior, ArrayList<PlannerBehavior>> reused = null;
+
+		for (int i = 0; i < 50; i++) {
+			int start = (i * 17) % 40 - 20;
+			int target = (i * 11) % 60 - 30;
+			ArrayList<PlannerBehavior> behaviors = (i % 3 == 0) ? other : pbp;
+
+			reused = p.startPlanning(reused, new PlannerWorldState(start), new PlannerGoal(target), behaviors);
+			ArrayList<PlannerBehavior> reusedPlan = this.plan(p, reused);
+
+			State<PlannerWorldState, PlannerGoal, PlannerBehavior, ArrayList<PlannerBehavior>> fresh = p.startPlanning(new PlannerWorldState(start), new PlannerGoal(target), behaviors);
+			ArrayList<PlannerBehavior> freshPlan = this.plan(p, fresh);
+
+			assertEquals("Plan " + i, freshPlan, reusedPlan);
+			assertEquals("Plan " + i, fresh.getClosedSetSize(), reused.getClosedSetSize());
+		}
+	}
+
+	@Test
+	public void testStartPlanningWithNullIsAFreshState() throws Exception {
+		Planner<PlannerWorldState, PlannerGoal, PlannerBehavior, ArrayList<PlannerBehavior>> p = new Planner<>();
+		State<PlannerWorldState, PlannerGoal, PlannerBehavior, ArrayList<PlannerBehavior>> ps = p.startPlanning(null, new PlannerWorldState(0), new PlannerGoal(4), this.behaviors());
+		assertNotNull(ps);
+		assertEquals(2, this.plan(p, ps).size());
+
+		assertSame(ps, p.startPlanning(ps, new PlannerWorldState(0), new PlannerGoal(5), this.behaviors()));
+		assertEquals(1, ps.getOpenSetSize());
+		assertEquals(0, ps.getClosedSetSize());
+	}
+
+	private long allocatedBytes() {
+		java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+		if (!(bean instanceof com.sun.management.ThreadMXBean)) return -1;
+		return ((com.sun.management.ThreadMXBean)bean).getThreadAllocatedBytes(Thread.currentThread().getId());
+	}
+
+	private long measure(boolean reuse) throws Exception {
+		ArrayList<PlannerBehavior> pbp = this.behaviors();
+		Planner<PlannerWorldState, PlannerGoal, PlannerBehavior, ArrayList<PlannerBehavior>> p = new Planner<>();
+		State<PlannerWorldState, PlannerGoal, PlannerBehavior, ArrayList<PlannerBehavior>> ps = null;
+
+		// Warm up, and let the reused State grow to size.
+		for (int i = 0; i < 20; i++) {
+			ps = p.startPlanning(reuse ? ps : null, new PlannerWorldState(0), new PlannerGoal(150), pbp);
+			this.plan(p, ps);
+		}
+
+		long before = this.allocatedBytes();
+		for (int i = 0; i < 20; i++) {
+			ps = p.startPlanning(reuse ? ps : null, new PlannerWorldState(0), new PlannerGoal(150), pbp);
+			this.plan(p, ps);
+		}
+		return this.allocatedBytes() - before;
+	}
+
+	@Test
+	public void testReuseAllocatesLess() throws Exception {
+		long fresh = this.measure(false);
+		long reused = this.measure(true);
+		if (fresh < 0 || reused < 0) return;
+
+		assertTrue("Reusing a State should allocate less: " + reused + " vs " + fresh, reused < fresh);
+	}
+}
@@ -0,0 +1,122 @@
+/**
+ * Nodes live in a NodeStore as parallel arrays indexed by id. These tests poke
+ * at re-parenting directly, since that is where the child links get
+ * rearranged. Child links are optional, and without them re-parenting only
+ * touches the node itself.
+ */
+import com.gracefulcode.ai.*;
+import com.gracefulcode.ai.internal.HeapNodeStore;
+import com.gracefulcode.ai.internal.NodeStore;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class A019_NodeStoreTest {
+	public class PlannerWorldState implements WorldState {
+		public int value = 0;
+
+		public PlannerWorldState(int value) {
+			this.value = value;
+		}
+
+		@Override
+		public Object clone() {
+			return new PlannerWorldState(this.value);
+		}
+	}
+
+	public abstract class PlannerBehavior implements Behavior<PlannerWorldState> {
+	}
+
+	@Test
+	public void testChangeParentMovesTheWholeSubtree() {
+		NodeStore<PlannerWorldState, PlannerBehavior> nodes = new HeapNodeStore<>(1);
+		nodes.setTrackChildren(true);
+		int root = nodes.addRoot(new PlannerWorldState(0));
+		int expensive = nodes.add(new PlannerWorldState(1), null, root, 10.0f);
+		int cheap = nodes.add(new PlannerWorldState(2), null, root, 1.0f);
+
+		// Three children, so that we unlink one from the middle.
+		int a = nodes.add(new PlannerWorldState(3), null, expensive, 1.0f);
+		int b = nodes.add(new PlannerWorldState(4), null, expensive, 2.0f);
+		int c = nodes.add(new PlannerWorldState(5), null, expensive, 3.0f);
+		int grandchild = nodes.add(new PlannerWorldState(6), null, b, 1.0f);
+
+		assertEquals(7, nodes.size());
+		assertEquals(13.0f, nodes.getCost(grandchild), 0.0001f);
+
+		nodes.changeParent(b, cheap, null, 1.0f, null);
+		assertEquals(cheap, nodes.getParent(b));
+		assertEquals(2.0f, nodes.getCost(b), 0.0001f);
+		assertEquals(3.0f, nodes.getCost(grandchild), 0.0001f);
+
+		// The siblings we left behind are untouched, and still reachable.
+		nodes.changeParent(expensive, cheap, null, 1.0f, null);
+		assertEquals(2.0f, nodes.getCost(expensive), 0.0001f);
+		assertEquals(3.0f, nodes.getCost(a), 0.0001f);
+		assertEquals(5.0f, nodes.getCost(c), 0.0001f);
+		assertEquals(2.0f, nodes.getCost(b), 0.0001f);
+	}
+
+	@Test
+	public void testUntrackedChildren() {
+		NodeStore<PlannerWorldState, PlannerBehavior> nodes = new HeapNodeStore<>(1);
+		assertFalse(nodes.isTrackingChildren());
+
+		int root = nodes.addRoot(new PlannerWorldState(0));
+		int expensive = nodes.add(new PlannerWorldState(1), null, root, 10.0f);
+		int cheap = nodes.add(new PlannerWorldState(2), null, root, 1.0f);
+		int child = nodes.add(new PlannerWorldState(3), null, expensive, 1.0f);
+
+		// Only the node itself gets cheaper.
+		nodes.changeParent(expensive, cheap, null, 1.0f, null);
+		assertEquals(cheap, nodes.getParent(expensive));
+		assertEquals(2.0f, nodes.getCost(expensive), 0.0001f);
+		assertEquals(11.0f, nodes.getCost(child), 0.0001f);
+
+		// Turning tracking on works out the links from the parents, so the
+		// next change reaches the child.
+		nodes.setTrackChildren(true);
+		nodes.changeParent(expensive, root, null, 1.0f, null);
+		assertEquals(1.0f, nodes.getCost(expensive), 0.0001f);
+		assertEquals(10.0f, nodes.getCost(child), 0.0001f);
+	}
+
+	@Test
+	public void testReopen() {
+		NodeStore<PlannerWorldState, PlannerBehavior> nodes = new HeapNodeStore<>(1);
+		int root = nodes.addRoot(new PlannerWorldState(0));
+		nodes.close(root);
+		assertEquals(1, nodes.getClosedCount());
+
+		nodes.reopen(root);
+		nodes.reopen(root);
+		assertFalse(nodes.isClosed(root));
+		assertEquals(0, nodes.getClosedCount());
+	}
+
+	@Test
+	public void testClosingAndClearing() {
+		NodeStore<PlannerWorldState, PlannerBehavior> nodes = new HeapNodeStore<>(2);
+		int root = nodes.addRoot(new PlannerWorldState(0));
+		for (int i = 1; i < 100; i++) {
+			nodes.add(new PlannerWorldState(i), null, i - 1, 1.0f);
+		}
+		assertEquals(99.0f, nodes.getCost(99), 0.0001f);
+
+		nodes.close(root);
+		nodes.close(root);
+		nodes.close(50);
+		assertEquals(2, nodes.getClosedCount());
+		assertTrue(nodes.isClosed(50));
+
+		nodes.clear();
+		assertEquals(0, nodes.size());
+		assertEquals(0, nodes.getClosedCount());
+
+		int again = nodes.addRoot(new PlannerWorldState(7));
+		assertEquals(0, again);
+		assertFalse(nodes.isClosed(again));
+		assertEquals(7, nodes.getWorldState(again).value);
+	}
+}
@@ -0,0 +1,179 @@
+/**
+ * stateToNode is a single open addressing table over the node store. Every
+ * successor the planner generates should cost one call to the world state's
+ * hashCode, no matter whether it turns out to be new or one we've seen.
+ */
+import com.gracefulcode.ai.*;
+import com.gracefulcode.ai.internal.HeapNodeStore;
+import com.gracefulcode.ai.internal.NodeStore;
+import com.gracefulcode.ai.internal.State;
+import com.gracefulcode.ai.internal.StateTable;
+
+import java.util.ArrayList;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class A020_StateTableTest {
+	public static int hashCodeCalls = 0;
+	public static int modifyStateCalls = 0;
+
+	public class PlannerWorldState implements WorldState {
+		public int value = 0;
+
+		public PlannerWorldState(int value) {
+			this.value = value;
+		}
+
+		@Override
+		public Object clone() {
+			return new PlannerWorldState(this.value);
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (o == null) return false;
+			if (!(o instanceof PlannerWorldState)) return false;
+
+			PlannerWorldState pws = (PlannerWorldState)o;
+			if (this.value != pws.value) return false;
+			return true;
+		}
+
+		@Override
+		public int hashCode() {
+			A020_StateTableTest.hashCodeCalls++;
+			return this.value;
+		}
+	}
+
+	/**
+	 * Every world state hashes the same, so every lookup has to probe.
+	 */
+	public class CollidingWorldState extends PlannerWorldState {
+		public CollidingWorldState(int value) {
+			super(value);
+		}
+
+		@Override
+		public int hashCode() {
+			return 7;
+		}
+	}
+
+	public class PlannerBehavior implements Behavior<PlannerWorldState> {
+		private int amount;
+
+		public PlannerBehavior(int amount) {
+			this.amount = amount;
+		}
+
+		@Override
+		public boolean isRunnable(PlannerWorldState pws) {
+			return Math.abs(pws.value + this.amount) <= 30;
+		}
+
+		@Override
+		public void modifyState(PlannerWorldState pws) {
+			A020_StateTableTest.modifyStateCalls++;
+			pws.value += this.amount;
+		}
+
+		@Override
+		public Float getCost(PlannerWorldState pws) {
+			return 1.0f;
+		}
+	}
+
+	public class PlannerGoal implements Goal<PlannerWorldState> {
+		@Override
+		public boolean isSatisfied(PlannerWorldState pws) {
+			return pws.value == 25;
+		}
+
+		@Override
+		public int compare(PlannerWorldState a, PlannerWorldState b) {
+			return 0;
+		}
+	}
+
+	@Test
+	public void testOneHashPerSuccessor() throws Exception {
+		ArrayList<PlannerBehavior> pbp = new ArrayList<PlannerBehavior>();
+		pbp.add(new PlannerBehavior(1));
+		pbp.add(new PlannerBehavior(-1));
+		pbp.add(new PlannerBehavior(3));
+
+		A020_StateTableTest.hashCodeCalls = 0;
+		A020_StateTableTest.modifyStateCalls = 0;
+
+		Planner<PlannerWorldState, PlannerGoal, PlannerBehavior, ArrayList<PlannerBehavior>> p = new Planner<>();
+		State<PlannerWorldState, PlannerGoal, PlannerBehavior, ArrayList<PlannerBehavior>> ps = p.startPlanning(new PlannerWorldState(0), new PlannerGoal(), pbp);
+		while (p.stepState(ps)) {}
+		assertEquals(25, ps.getBestWorldState().value);
+
+		// One more for the initial state.
+		assertTrue(A020_StateTableTest.modifyStateCalls > 50);
+		assertEquals(A020_StateTableTest.modifyStateCalls + 1, A020_StateTableTest.hashCodeCalls);
+	}
+
+	@Test
+	public void testCollisionsAndGrowth() {
+		NodeStore<PlannerWorldState, PlannerBehavior> nodes = new HeapNodeStore<>(1);
+		StateTable<PlannerWorldState, PlannerBehavior> table = new StateTable<>(nodes, 1);
+
+		for (int i = 0; i < 200; i++) {
+			PlannerWorldState ws = (i % 2 == 0) ? new CollidingWorldState(i) : new PlannerWorldState(i);
+			assertEquals(NodeStore.NONE, table.get(ws));
+
+			int id = nodes.addRoot(ws);
+			table.putAfterMiss(ws, id);
+		}
+		assertEquals(200, table.size());
+
+		for (int i = 0; i < 200; i++) {
+			PlannerWorldState ws = (i % 2 == 0) ? new CollidingWorldState(i) : new PlannerWorldState(i);
+			assertEquals(i, table.get(ws));
+		}
+		assertFalse(table.containsKey(new CollidingWorldState(1000)));
+
+		// A stale miss falls back to a normal put.
+		PlannerWorldState late = new PlannerWorldState(500);
+		assertEquals(NodeStore.NONE, table.get(late));
+		PlannerWorldState other = new PlannerWorldState(501);
+		table.put(other, nodes.addRoot(other));
+		table.putAfterMiss(late, nodes.addRoot(late));
+		assertEquals(200, table.get(other));
+		assertEquals(201, table.get(late));
+
+		table.clear();
+		assertEquals(0, table.size());
+		assertEquals(NodeStore.NONE, table.get(new PlannerWorldState(3)));
+	}
+
+	/**
+	 * Removing from the middle of a run of collisions must not lose anything
+	 * after it.
+	 */
+	@Test
+	public void testRemove() {
+		NodeStore<PlannerWorldState, PlannerBehavior> nodes = new HeapNodeStore<>(1);
+		StateTable<PlannerWorldState, PlannerBehavior> table = new StateTable<>(nodes, 1);
+
+		for (int i = 0; i < 100; i++) {
+			PlannerWorldState ws = (i % 3 == 0) ? new CollidingWorldState(i) : new PlannerWorldState(i);
+			table.put(ws, nodes.addRoot(ws));
+		}
+
+		for (int i = 0; i < 100; i += 2) {
+			assertTrue(table.remove(i));
+		}
+		assertFalse(table.remove(0));
+		assertEquals(50, table.size());
+
+		for (int i = 0; i < 100; i++) {
+			PlannerWorldState ws = (i % 3 == 0) ? new CollidingWorldState(i) : new PlannerWorldState(i);
+			assertEquals("World state " + i, (i % 2 == 0) ? NodeStore.NONE : i, table.get(ws));
+		}
+	}
+}
@@ -0,0 +1,248 @@
+/**
+ * startOffHeapPlanning keeps nodes and world states in direct memory. World
+ * states go in and out through a WorldStateCodec, and otherwise planning
+ * should behave exactly the same as on the heap.
+ */
+import com.gracefulcode.ai.*;
+import com.gracefulcode.ai.internal.GlobalState;
+import com.gracefulcode.ai.internal.OffHeapNodeStore;
+import com.gracefulcode.ai.internal.State;
+
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class A021_OffHeapPlanningTest {
+	public class PlannerWorldState implements WorldState {
+		public int value = 0;
+
+		public PlannerWorldState(int value) {
+			this.value = value;
+		}
+
+		@Override
+		public Object clone() {
+			return new PlannerWorldState(this.value);
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (o == null) return false;
+			if (!(o instanceof PlannerWorldState)) return false;
+
+			PlannerWorldState pws = (PlannerWorldState)o;
+			if (this.value != pws.value) return false;
+			return true;
+		}
+
+		@Override
+		public int hashCode() {
+			return this.value;
+		}
+	}
+
+	public class PlannerCodec implements WorldStateCodec<PlannerWorldState> {
+		public int reads = 0;
+
+		@Override
+		public int size(PlannerWorldState pws) {
+			return 4;
+		}
+
+		@Override
+		public void write(PlannerWorldState pws, ByteBuffer buffer) {
+			buffer.putInt(pws.value);
+		}
+
+		@Override
+		public PlannerWorldState read(ByteBuffer buffer) {
+			this.reads++;
+			return new PlannerWorldState(buffer.getInt());
+		}
+	}
+
+	public class PlannerBehavior extends AbstractPrimitiveCostBehavior<PlannerWorldState> {
+		private int amount;
+		private float cost;
+
+		public PlannerBehavior(int amount, float cost) {
+			this.amount = amount;
+			this.cost = cost;
+		}
+
+		@Override
+		public boolean isRunnable(PlannerWorldState pws) {
+			return Math.abs(pws.value + this.amount) <= 100;
+		}
+
+		@Override
+		public void modifyState(PlannerWorldState pws) {
+			pws.value += this.amount;
+		}
+
+		@Override
+		public float cost(PlannerWorldState pws) {
+			return this.cost;
+		}
+	}
+
+	public class PlannerGoal implements HeuristicGoal<PlannerWorldState> {
+		private int target;
+
+		public PlannerGoal(int target) {
+			this.target = target;
+		}
+
+		@Override
+		public boolean isSatisfied(PlannerWorldState pws) {
+			return pws.value == this.target;
+		}
+
+		@Override
+		public float estimateCost(PlannerWorldState pws) {
+			return Math.abs(this.target - pws.value) * 0.8f;
+		}
+
+		@Override
+		public int compare(PlannerWorldState a, PlannerWorldState b) {
+			return 0;
+		}
+	}
+
+	/**
+	 * The same goal without an estimate, so the open set is ordered by
+	 * comparing world states: closer is better.
+	 */
+	public class PlainGoal implements Goal<PlannerWorldState> {
+		private PlannerGoal goal;
+
+		public PlainGoal(int target) {
+			this.goal = new PlannerGoal(target);
+		}
+
+		@Override
+		public boolean isSatisfied(PlannerWorldState pws) {
+			return this.goal.isSatisfied(pws);
+		}
+
+		@Override
+		public int compare(PlannerWorldState a, PlannerWorldState b) {
+			return Float.compare(this.goal.estimateCost(a), this.goal.estimateCost(b));
+		}
+	}
+
+	private ArrayList<PlannerBehavior> behaviors() {
+		ArrayList<PlannerBehavior> pbp = new ArrayList<PlannerBehavior>();
+		pbp.add(new PlannerBehavior(1, 1.0f));
+		pbp.add(new PlannerBehavior(-1, 1.0f));
+		pbp.add(new PlannerBehavior(5, 4.0f));
+		pbp.add(new PlannerBehavior(-5, 4.0f));
+		return pbp;
+	}
+
+	@Test
+	public void testMatchesHeapPlans() throws Exception {
+		ArrayList<PlannerBehavior> pbp = this.behaviors();
+		PlannerCodec codec = new PlannerCodec();
+		Planner<PlannerWorldState, PlannerGoal, PlannerBehavior, ArrayList<PlannerBehavior>> p = new Planner<>();
+
+		State<PlannerWorldState, PlannerGoal, PlannerBehavior, ArrayList<PlannerBehavior>> offHeap = null;
+		for (int target = -60; target <= 60; target += 17) {
+			State<PlannerWorldState, PlannerGoal, PlannerBehavior, ArrayList<PlannerBehavior>> heap = p.startPlanning(new PlannerWorldState(3), new PlannerGoal(target), pbp);
+			while (p.stepState(heap)) {}
+
+			// The first time makes an off-heap State, after that it's reused.
+			if (offHeap == null) {
+				offHeap = p.startOffHeapPlanning(new PlannerWorldState(3), new PlannerGoal(target), pbp, codec);
+			} else {
+				offHeap = p.startPlanning(offHeap, new PlannerWorldState(3), new PlannerGoal(target), pbp);
+			}
+			while (p.stepState(offHeap)) {}
+
+			assertEquals("Target " + target, p.getPlan(heap), p.getPlan(offHeap));
+			assertEquals(heap.getClosedSetSize(), offHeap.getClosedSetSize());
+			assertEquals(target, offHeap.getBestWorldState().value);
+		}
+
+		assertTrue("World states should come out of the codec", codec.reads > 0);
+		offHeap.close();
+	}
+
+	private long allocatedBytes() {
+		java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+		if (!(bean instanceof com.sun.management.ThreadMXBean)) return -1;
+		return ((com.sun.management.ThreadMXBean)bean).getThreadAllocatedBytes(Thread.currentThread().getId());
+	}
+
+	/**
+	 * Comparing world states that were compared recently doesn't read them
+	 * out of direct memory again, so it doesn't make any garbage.
+	 */
+	@Test
+	public void testComparisonsDontAllocate() throws Exception {
+		PlannerCodec codec = new PlannerCodec();
+		Planner<PlannerWorldState, PlainGoal, PlannerBehavior, ArrayList<PlannerBehavior>> p = new Planner<>();
+		State<PlannerWorldState, PlainGoal, PlannerBehavior, ArrayList<PlannerBehavior>> ps = p.startOffHeapPlanning(new PlannerWorldState(0), new PlainGoal(40), this.behaviors(), codec);
+		while (p.stepState(ps)) {}
+		assertEquals(40, ps.getBestWorldState().value);
+
+		GlobalState<PlannerWorldState, PlannerBehavior, ArrayList<PlannerBehavior>, PlainGoal> gs = ps.getGlobalState();
+		int order = 0;
+		for (int i = 0; i < 20000; i++) {
+			order += gs.compare(i % 8, (i + 1) % 8);
+		}
+
+		int reads = codec.reads;
+		long before = this.allocatedBytes();
+		for (int i = 0; i < 20000; i++) {
+			order += gs.compare(i % 8, (i + 1) % 8);
+		}
+		long after = this.allocatedBytes();
+
+		assertEquals(reads, codec.reads);
+		if (before >= 0) {
+			assertTrue("Comparing allocated " + (after - before) + " bytes (" + order + ")", after - before < 20000);
+		}
+		ps.close();
+	}
+
+	@Test
+	public void testClose() throws Exception {
+		ArrayList<PlannerBehavior> pbp = this.behaviors();
+		Planner<PlannerWorldState, PlannerGoal, PlannerBehavior, ArrayList<PlannerBehavior>> p = new Planner<>();
+
+		State<PlannerWorldState, PlannerGoal, PlannerBehavior, ArrayList<PlannerBehavior>> ps = p.startOffHeapPlanning(new PlannerWorldState(0), new PlannerGoal(40), pbp, new PlannerCodec());
+		while (p.stepState(ps)) {}
+		assertEquals(8, p.getPlan(ps).size());
+
+		OffHeapNodeStore<?, ?> nodes = (OffHeapNodeStore<?, ?>)ps.getGlobalState().nodes;
+		assertTrue(nodes.getReservedBytes() > 0);
+
+		ps.close();
+		assertTrue(nodes.isClosed());
+		assertEquals(0, nodes.getReservedBytes());
+
+		// Closing again is fine, using it is not.
+		ps.close();
+		try {
+			nodes.getCost(0);
+			fail("Expected IllegalStateException");
+		} catch (IllegalStateException e) {
+		}
+	}
+
+	/**
+	 * Heap States can be closed too. It does nothing.
+	 */
+	@Test
+	public void testCloseHeapState() throws Exception {
+		Planner<PlannerWorldState, PlannerGoal, PlannerBehavior, ArrayList<PlannerBehavior>> p = new Planner<>();
+		State<PlannerWorldState, PlannerGoal, PlannerBehavior, ArrayList<PlannerBehavior>> ps = p.startPlanning(new PlannerWorldState(0), new PlannerGoal(2), this.behaviors());
+		ps.close();
+		while (p.stepState(ps)) {}
+		assertEquals(2, p.getPlan(ps).size());
+	}
+}
@@ -0,0 +1,308 @@
+/**
+ * startBoundedPlanning caps how many world states the planner keeps. The
+ * least promising ones are forgotten and come back if they're needed, so with
+ * a HeuristicGoal we still get the cheapest plan, just with some extra work.
+ * If there isn't room for a plan at all, we get as close as we could.
+ */
+import com.gracefulcode.ai.*;
+import com.gracefulcode.ai.internal.NodeStore;
+import com.gracefulcode.ai.internal.State;
+
+import java.util.ArrayList;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class A022_BoundedPlanningTest {
+	public class PlannerWorldState implements WorldState {
+		public int x = 0;
+		public int y = 0;
+
+		public PlannerWorldState(int x, int y) {
+			this.x = x;
+			this.y = y;
+		}
+
+		@Override
+		public Object clone() {
+			return new PlannerWorldState(this.x, this.y);
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (o == null) return false;
+			if (!(o instanceof PlannerWorldState)) return false;
+
+			PlannerWorldState pws = (PlannerWorldState)o;
+			return this.x == pws.x && this.y == pws.y;
+		}
+
+		@Override
+		public int hashCode() {
+			return this.x * 31 + this.y;
+		}
+	}
+
+	/**
+	 * A step on a grid. Going right or up is cheaper than going back.
+	 */
+	public class PlannerBehavior extends AbstractPrimitiveCostBehavior<PlannerWorldState> {
+		private int dx;
+		private int dy;
+		private float cost;
+
+		public PlannerBehavior(int dx, int dy, float cost) {
+			this.dx = dx;
+			this.dy = dy;
+			this.cost = cost;
+		}
+
+		@Override
+		public boolean isRunnable(PlannerWorldState pws) {
+			return Math.abs(pws.x + this.dx) <= 30 && Math.abs(pws.y + this.dy) <= 30;
+		}
+
+		@Override
+		public void modifyState(PlannerWorldState pws) {
+			pws.x += this.dx;
+			pws.y += this.dy;
+		}
+
+		@Override
+		public float cost(PlannerWorldState pws) {
+			return this.cost;
+		}
+	}
+
+	public class PlannerGoal implements HeuristicGoal<PlannerWorldState> {
+		private int x;
+		private int y;
+
+		public PlannerGoal(int x, int y) {
+			this.x = x;
+			this.y = y;
+		}
+
+		@Override
+		public boolean isSatisfied(PlannerWorldState pws) {
+			return pws.x == this.x && pws.y == this.y;
+		}
+
+		@Override
+		public float estimateCost(PlannerWorldState pws) {
+			return Math.abs(this.x - pws.x) + Math.abs(this.y - pws.y);
+		}
+
+		@Override
+		public int compare(PlannerWorldState a, PlannerWorldState b) {
+			return 0;
+		}
+	}
+
+	/**
+	 * The same goal without an estimate: closer is better.
+	 */
+	public class PlainGoal implements Goal<PlannerWorldState> {
+		private PlannerGoal goal;
+
+		public PlainGoal(int x, int y) {
+			this.goal = new PlannerGoal(x, y);
+		}
+
+		@Override
+		public boolean isSatisfied(PlannerWorldState pws) {
+			return this.goal.isSatisfied(pws);
+		}
+
+		@Override
+		public int compare(PlannerWorldState a, PlannerWorldState b) {
+			return Float.compare(this.goal.estimateCost(a), this.goal.estimateCost(b));
+		}
+	}
+
+	private ArrayList<PlannerBehavior> behaviors() {
+		ArrayList<PlannerBehavior> pbp = new ArrayList<PlannerBehavior>();
+		pbp.add(new PlannerBehavior(1, 0, 1.0f));
+		pbp.add(new PlannerBehavior(0, 1, 1.0f));
+		pbp.add(new PlannerBehavior(-1, 0, 2.0f));
+		pbp.add(new PlannerBehavior(0, -1, 2.0f));
+		return pbp;
+	}
+
+	private float planCost(ArrayList<PlannerBehavior> plan) {
+		float total = 0;
+		for (PlannerBehavior b: plan) {
+			total += b.cost;
+		}
+		return total;
+	}
+
+	@Test
+	public void testSamePlanCostWithinTheCap() throws Exception {
+		ArrayList<PlannerBehavior> pbp = this.behaviors();
+		Planner<PlannerWorldState, PlannerGoal, PlannerBehavior, ArrayList<PlannerBehavior>> p = new Planner<>();
+
+		State<PlannerWorldState, PlannerGoal, PlannerBehavior, ArrayList<PlannerBehavior>> free = p.startPlanning(new PlannerWorldState(0, 0), new PlannerGoal(12, 9), pbp);
+		while (p.stepState(free)) {}
+		int freeNodes = free.getGlobalState().nodes.getLiveCount();
+
+		int cap = 40;
+		State<PlannerWorldState, PlannerGoal, PlannerBehavior, ArrayList<PlannerBehavior>> bounded = p.startBoundedPlanning(new PlannerWorldState(0, 0), new PlannerGoal(12, 9), pbp, cap);
+		NodeStore<PlannerWorldState, PlannerBehavior> nodes = bounded.getGlobalState().nodes;
+		int steps = 0;
+		while (p.stepState(bounded)) {
+			// Never more than one expansion over.
+			assertTrue("Kept " + nodes.getLiveCount(), nodes.getLiveCount() <= cap + pbp.size());
+			assertTrue("Planning should finish", ++steps < 100000);
+		}
+
+		assertFalse(bounded.getGlobalState().outOfNodes);
+		assertTrue("The cap should matter here: " + freeNodes, freeNodes > cap);
+		assertEquals(21.0f, this.planCost(p.getPlan(free)), 0.0001f);
+		assertEquals(21.0f, this.planCost(p.getPlan(bounded)), 0.0001f);
+		assertEquals(21, p.getPlan(bounded).size());
+	}
+
+	/**
+	 * Too small for the whole plan. We still finish, and get a plan that
+	 * gets us closer.
+	 */
+	@Test
+	public void testTooSmallGivesPartialPlan() throws Exception {
+		ArrayList<PlannerBehavior> pbp = this.behaviors();
+		Planner<PlannerWorldState, PlannerGoal, PlannerBehavior, ArrayList<PlannerBehavior>> p = new Planner<>();
+
+		State<PlannerWorldState, PlannerGoal, PlannerBehavior, ArrayList<PlannerBehavior>> bounded = p.startBoundedPlanning(new PlannerWorldState(0, 0), new PlannerGoal(25, 25), pbp, 16);
+		int steps = 0;
+		while (p.stepState(bounded)) {
+			assertTrue("Planning should finish", ++steps < 100000);
+		}
+
+		assertTrue(bounded.getGlobalState().outOfNodes);
+		ArrayList<PlannerBehavior> plan = p.getPlan(bounded);
+		assertTrue(plan.size() > 0);
+		assertTrue(plan.size() < 50);
+
+		int x = 0;
+		int y = 0;
+		for (PlannerBehavior b: plan) {
+			x += b.dx;
+			y += b.dy;
+		}
+		assertTrue("Should get closer: " + x + ", " + y, Math.abs(25 - x) + Math.abs(25 - y) < 50);
+	}
+
+	/**
+	 * Without an estimate, forgotten world states don't come back, but we
+	 * still stay under the cap and get somewhere.
+	 */
+	@Test
+	public void testWithoutHeuristic() throws Exception {
+		ArrayList<PlannerBehavior> pbp = this.behaviors();
+		Planner<PlannerWorldState, Goal<PlannerWorldState>, PlannerBehavior, ArrayList<PlannerBehavior>> p = new Planner<>();
+
+		int cap = 30;
+		State<PlannerWorldState, Goal<PlannerWorldState>, PlannerBehavior, ArrayList<PlannerBehavior>> bounded = p.startBoundedPlanning(new PlannerWorldState(0, 0), new PlainGoal(12, 9), pbp, cap);
+		int steps = 0;
+		while (p.stepState(bounded)) {
+			assertTrue("Kept " + bounded.getGlobalState().nodes.getLiveCount(), bounded.getGlobalState().nodes.getLiveCount() <= cap + pbp.size());
+			assertTrue("Planning should finish", ++steps < 100000);
+		}
+
+		ArrayList<PlannerBehavior> plan = p.getPlan(bounded);
+		int x = 0;
+		int y = 0;
+		for (PlannerBehavior b: plan) {
+			x += b.dx;
+			y += b.dy;
+		}
+		assertEquals(12, x);
+		assertEquals(9, y);
+	}
+
+	/**
+	 * Here the cheap way is many small steps, and a big jump looks closer but
+	 * costs much more. Without an estimate, the small steps are what gets
+	 * forgotten, and they never come back, so we can't promise anything about
+	 * the plan we end up with.
+	 */
+	@Test
+	public void testForgettingWithoutHeuristicLosesTheBound() throws Exception {
+		ArrayList<PlannerBehavior> pbp = this.behaviors();
+		pbp.add(new PlannerBehavior(3, 3, 10.0f));
+		Planner<PlannerWorldState, Goal<PlannerWorldState>, PlannerBehavior, ArrayList<PlannerBehavior>> p = new Planner<>();
+
+		State<PlannerWorldState, Goal<PlannerWorldState>, PlannerBehavior, ArrayList<PlannerBehavior>> bounded = p.startBoundedPlanning(new PlannerWorldState(0, 0), new PlainGoal(12, 9), pbp, 20);
+		int steps = 0;
+		while (p.stepState(bounded)) {
+			assertTrue("Planning should finish", ++steps < 100000);
+		}
+
+		Plan<PlannerBehavior> plan = p.getPlan(bounded);
+		assertTrue("The cheapest plan costs 21: " + this.planCost(plan), this.planCost(plan) > 21.0f);
+		assertTrue(bounded.getGlobalState().lossy);
+		assertEquals(Float.POSITIVE_INFINITY, plan.getSuboptimalityBound(), 0.0f);
+		assertEquals(Float.POSITIVE_INFINITY, p.getSuboptimalityBound(bounded), 0.0f);
+	}
+
+	/**
+	 * Along a line, with a long jump that is cheaper per step. The estimate
+	 * is a little low, so lots of world states look as good as the cheapest
+	 * plan, and the path to that plan takes up most of the room. Forgetting
+	 * used to throw away whatever a node had just found, over and over,
+	 * without ever getting anywhere.
+	 */
+	public class LineGoal implements HeuristicGoal<PlannerWorldState> {
+		@Override
+		public boolean isSatisfied(PlannerWorldState pws) {
+			return pws.x == 19;
+		}
+
+		@Override
+		public float estimateCost(PlannerWorldState pws) {
+			return Math.abs(19 - pws.x) * 0.8f;
+		}
+
+		@Override
+		public int compare(PlannerWorldState a, PlannerWorldState b) {
+			return 0;
+		}
+	}
+
+	@Test
+	public void testAlwaysFinishes() throws Exception {
+		ArrayList<PlannerBehavior> pbp = new ArrayList<PlannerBehavior>();
+		pbp.add(new PlannerBehavior(1, 0, 1.0f));
+		pbp.add(new PlannerBehavior(-1, 0, 1.0f));
+		pbp.add(new PlannerBehavior(5, 0, 4.0f));
+		pbp.add(new PlannerBehavior(-5, 0, 4.0f));
+		Planner<PlannerWorldState, LineGoal, PlannerBehavior, ArrayList<PlannerBehavior>> p = new Planner<>();
+
+		for (int cap = 2; cap <= 30; cap++) {
+			State<PlannerWorldState, LineGoal, PlannerBehavior, ArrayList<PlannerBehavior>> bounded = p.startBoundedPlanning(new PlannerWorldState(0, 0), new LineGoal(), pbp, cap);
+			int steps = 0;
+			while (p.stepState(bounded)) {
+				assertTrue("Planning should finish with " + cap, ++steps < 10000);
+			}
+
+			if (!bounded.getGlobalState().outOfNodes) {
+				assertEquals("Cap " + cap, 16.0f, this.planCost(p.getPlan(bounded)), 0.0001f);
+			}
+		}
+	}
+
+	@Test
+	public void testBudgetedPartialPlan() throws Exception {
+		Planner<PlannerWorldState, PlannerGoal, PlannerBehavior, ArrayList<PlannerBehavior>> p = new Planner<>();
+		State<PlannerWorldState, PlannerGoal, PlannerBehavior, ArrayList<PlannerBehavior>> bounded = p.startBoundedPlanning(new PlannerWorldState(0, 0), new PlannerGoal(12, 9), this.behaviors(), 40);
+
+		assertEquals(StepResult.OUT_OF_EXPANSIONS, p.stepStateWithBudget(bounded, StepBudget.expansions(5)));
+		assertEquals(5, p.getPlan(bounded).size());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testTinyCap() throws Exception {
+		Planner<PlannerWorldState, PlannerGoal, PlannerBehavior, ArrayList<PlannerBehavior>> p = new Planner<>();
+		p.startBoundedPlanning(new PlannerWorldState(0, 0), new PlannerGoal(12, 9), this.behaviors(), 1);
+	}
+}
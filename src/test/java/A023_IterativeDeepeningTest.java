@@ -0,0 +1,399 @@
+/**
+ * startIterativeDeepeningPlanning plans with IDA*, which only keeps the path
+ * it is looking at instead of every world state it has seen. It goes through
+ * the same Planner API and should find plans that cost the same as A*.
+ */
+import com.gracefulcode.ai.*;
+import com.gracefulcode.ai.internal.IllegalPlanException;
+import com.gracefulcode.ai.internal.IterativeDeepeningState;
+import com.gracefulcode.ai.internal.State;
+
+import java.util.ArrayList;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class A023_IterativeDeepeningTest {
+	public class PlannerWorldState implements WorldState {
+		public int value = 0;
+
+		public PlannerWorldState(int value) {
+			this.value = value;
+		}
+
+		@Override
+		public Object clone() {
+			return new PlannerWorldState(this.value);
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (o == null) return false;
+			if (!(o instanceof PlannerWorldState)) return false;
+
+			PlannerWorldState pws = (PlannerWorldState)o;
+			if (this.value != pws.value) return false;
+			return true;
+		}
+
+		@Override
+		public int hashCode() {
+			return this.value;
+		}
+	}
+
+	public class PlannerBehavior extends AbstractPrimitiveCostBehavior<PlannerWorldState> {
+		protected int amount;
+		protected float cost;
+
+		public PlannerBehavior(int amount, float cost) {
+			this.amount = amount;
+			this.cost = cost;
+		}
+
+		@Override
+		public boolean isRunnable(PlannerWorldState pws) {
+			return Math.abs(pws.value + this.amount) <= 40;
+		}
+
+		@Override
+		public void modifyState(PlannerWorldState pws) {
+			pws.value += this.amount;
+		}
+
+		@Override
+		public float cost(PlannerWorldState pws) {
+			return this.cost;
+		}
+	}
+
+	public class ReversiblePlannerBehavior extends PlannerBehavior implements ReversibleBehavior<PlannerWorldState> {
+		public ReversiblePlannerBehavior(int amount, float cost) {
+			super(amount, cost);
+		}
+
+		@Override
+		public void apply(PlannerWorldState pws) {
+			pws.value += this.amount;
+		}
+
+		@Override
+		public void undo(PlannerWorldState pws) {
+			pws.value -= this.amount;
+		}
+	}
+
+	public class PlannerGoal implements Goal<PlannerWorldState> {
+		protected int target;
+
+		public PlannerGoal(int target) {
+			this.target = target;
+		}
+
+		@Override
+		public boolean isSatisfied(PlannerWorldState pws) {
+			return pws.value == this.target;
+		}
+
+		@Override
+		public int compare(PlannerWorldState a, PlannerWorldState b) {
+			return Integer.compare(Math.abs(this.target - a.value), Math.abs(this.target - b.value));
+		}
+	}
+
+	public class PlannerHeuristicGoal extends PlannerGoal implements HeuristicGoal<PlannerWorldState> {
+		public PlannerHeuristicGoal(int target) {
+			super(target);
+		}
+
+		@Override
+		public float estimateCost(PlannerWorldState pws) {
+			return Math.abs(this.target - pws.value) * 0.8f;
+		}
+	}
+
+	public class CountingDebugger implements PlannerDebugger<PlannerWorldState, PlannerBehavior> {
+		public int steps = 0;
+		public int endedSteps = 0;
+		public int evaluated = 0;
+		public int added = 0;
+		public boolean lastHasMoreWork = true;
+
+		public void didStartStep() {
+			this.steps++;
+		}
+		public void startEvaluateBehavior(PlannerBehavior behavior) {
+			this.evaluated++;
+		}
+		public void endEvaluateBehavior(PlannerBehavior behavior) {}
+		public void didEndStep(boolean hasMoreWork) {
+			this.endedSteps++;
+			this.lastHasMoreWork = hasMoreWork;
+		}
+		public void didAddState(PlannerWorldState worldState) {
+			this.added++;
+		}
+	}
+
+	/**
+	 * Sets a flag, if the flag it requires is set. It only declares what it
+	 * requires, and leaves checking it to the planner.
+	 */
+	public class FlagBehavior extends AbstractPrimitiveCostBehavior<FactWorldState> implements PreconditionBehavior<FactWorldState> {
+		private int requires;
+		private int sets;
+		private float cost;
+
+		/**
+		 * @param requires The flag this needs, or -1 for none.
+		 */
+		public FlagBehavior(int requires, int sets, float cost) {
+			this.requires = requires;
+			this.sets = sets;
+			this.cost = cost;
+		}
+
+		@Override
+		public int[] getRequiredFacts() {
+			if (this.requires < 0) return new int[0];
+			return new int[] { this.requires };
+		}
+
+		@Override
+		public boolean isRunnable(FactWorldState fws) {
+			return !fws.getFlag(this.sets);
+		}
+
+		@Override
+		public void modifyState(FactWorldState fws) {
+			fws.setFlag(this.sets, true);
+		}
+
+		@Override
+		public float cost(FactWorldState fws) {
+			return this.cost;
+		}
+	}
+
+	public class FlagGoal implements Goal<FactWorldState> {
+		private int flag;
+
+		public FlagGoal(int flag) {
+			this.flag = flag;
+		}
+
+		@Override
+		public boolean isSatisfied(FactWorldState fws) {
+			return fws.getFlag(this.flag);
+		}
+
+		@Override
+		public int compare(FactWorldState a, FactWorldState b) {
+			return 0;
+		}
+	}
+
+	private ArrayList<PlannerBehavior> behaviors(boolean reversible) {
+		ArrayList<PlannerBehavior> pbp = new ArrayList<PlannerBehavior>();
+		int[] amounts = { 1, -1, 5, -5 };
+		float[] costs = { 1.0f, 1.0f, 4.0f, 4.0f };
+		for (int i = 0; i < amounts.length; i++) {
+			pbp.add(reversible ? new ReversiblePlannerBehavior(amounts[i], costs[i]) : new PlannerBehavior(amounts[i], costs[i]));
+		}
+		return pbp;
+	}
+
+	private float planCost(ArrayList<PlannerBehavior> plan) {
+		float total = 0;
+		for (PlannerBehavior b: plan) {
+			total += b.cost;
+		}
+		return total;
+	}
+
+	private int planEnd(int start, ArrayList<PlannerBehavior> plan) {
+		for (PlannerBehavior b: plan) {
+			start += b.amount;
+		}
+		return start;
+	}
+
+	@Test
+	public void testMatchesAStar() throws Exception {
+		for (int reversible = 0; reversible < 2; reversible++) {
+			ArrayList<PlannerBehavior> pbp = this.behaviors(reversible == 1);
+			Planner<PlannerWorldState, PlannerGoal, PlannerBehavior, ArrayList<PlannerBehavior>> p = new Planner<>();
+
+			for (int target = -23; target <= 23; target += 7) {
+				State<PlannerWorldState, PlannerGoal, PlannerBehavior, ArrayList<PlannerBehavior>> astar = p.startPlanning(new PlannerWorldState(2), new PlannerHeuristicGoal(target), pbp);
+				while (p.stepState(astar)) {}
+
+				CountingDebugger debugger = new CountingDebugger();
+				State<PlannerWorldState, PlannerGoal, PlannerBehavior, ArrayList<PlannerBehavior>> ida = p.startIterativeDeepeningPlanning(new PlannerWorldState(2), new PlannerHeuristicGoal(target), pbp);
+				assertNull(ida.getGlobalState());
+				while (p.stepState(ida, debugger)) {}
+
+				ArrayList<PlannerBehavior> plan = p.getPlan(ida);
+				assertTrue(ida.isDone());
+				assertEquals("Target " + target, this.planCost(p.getPlan(astar)), this.planCost(plan), 0.0001f);
+				assertEquals(target, this.planEnd(2, plan));
+
+				assertEquals(debugger.steps, debugger.endedSteps);
+				assertFalse(debugger.lastHasMoreWork);
+				assertTrue(debugger.added >= plan.size());
+				assertTrue(debugger.evaluated > 0);
+
+				// Only ever as deep as the plan.
+				IterativeDeepeningState<PlannerWorldState, PlannerBehavior, ArrayList<PlannerBehavior>, PlannerGoal> iterative = ida.getIterativeDeepeningState();
+				assertEquals(plan.size() + 1, iterative.depth);
+				assertTrue(iterative.worldStates.length <= 16);
+			}
+		}
+	}
+
+	/**
+	 * Without an estimate, each iteration allows a little more cost.
+	 */
+	@Test
+	public void testWithoutHeuristic() throws Exception {
+		ArrayList<PlannerBehavior> pbp = this.behaviors(false);
+		Planner<PlannerWorldState, PlannerGoal, PlannerBehavior, ArrayList<PlannerBehavior>> p = new Planner<>();
+
+		State<PlannerWorldState, PlannerGoal, PlannerBehavior, ArrayList<PlannerBehavior>> ida = p.startIterativeDeepeningPlanning(new PlannerWorldState(0), new PlannerGoal(7), pbp);
+		while (p.stepState(ida)) {}
+
+		ArrayList<PlannerBehavior> plan = p.getPlan(ida);
+		assertEquals(6.0f, this.planCost(plan), 0.0001f);
+		assertEquals(7, this.planEnd(0, plan));
+		assertTrue(ida.getIterativeDeepeningState().iterations > 1);
+	}
+
+	/**
+	 * The door needs a key that we don't have yet. Opening it only declares
+	 * that, so IDA* has to go by declared facts just like A* does, or it
+	 * walks straight through a locked door.
+	 */
+	@Test
+	public void testRequiredFacts() throws Exception {
+		FactSchema schema = new FactSchema();
+		int key = schema.addFlag("key");
+		int open = schema.addFlag("open");
+		int inside = schema.addFlag("inside");
+
+		ArrayList<FlagBehavior> behaviors = new ArrayList<FlagBehavior>();
+		behaviors.add(new FlagBehavior(key, open, 1.0f));
+		behaviors.add(new FlagBehavior(open, inside, 1.0f));
+		behaviors.add(new FlagBehavior(-1, key, 3.0f));
+
+		Planner<FactWorldState, FlagGoal, FlagBehavior, ArrayList<FlagBehavior>> p = new Planner<>();
+		State<FactWorldState, FlagGoal, FlagBehavior, ArrayList<FlagBehavior>> ida = p.startIterativeDeepeningPlanning(schema.newWorldState(), new FlagGoal(inside), behaviors);
+		while (p.stepState(ida)) {}
+
+		ArrayList<FlagBehavior> plan = p.getPlan(ida);
+		assertEquals(3, plan.size());
+
+		FactWorldState fws = schema.newWorldState();
+		for (int i = plan.size() - 1; i >= 0; i--) {
+			FlagBehavior b = plan.get(i);
+			for (int fact: b.getRequiredFacts()) {
+				assertTrue(fws.hasFact(fact));
+			}
+			assertTrue(b.isRunnable(fws));
+			b.modifyState(fws);
+		}
+		assertTrue(fws.getFlag(inside));
+	}
+
+	/**
+	 * Reusing a State with the same list after changing what's in it has to
+	 * plan with what's in it now, with or without required facts.
+	 */
+	@Test
+	public void testReuseChangedBehaviors() throws Exception {
+		FactSchema schema = new FactSchema();
+		int key = schema.addFlag("key");
+		int open = schema.addFlag("open");
+		int inside = schema.addFlag("inside");
+
+		ArrayList<FlagBehavior> behaviors = new ArrayList<FlagBehavior>();
+		behaviors.add(new FlagBehavior(key, open, 1.0f));
+		behaviors.add(new FlagBehavior(open, inside, 1.0f));
+
+		Planner<FactWorldState, FlagGoal, FlagBehavior, ArrayList<FlagBehavior>> p = new Planner<>();
+		State<FactWorldState, FlagGoal, FlagBehavior, ArrayList<FlagBehavior>> ida = p.startIterativeDeepeningPlanning(schema.newWorldState(), new FlagGoal(inside), behaviors);
+		while (p.stepState(ida)) {}
+		try {
+			p.getPlan(ida);
+			fail();
+		} catch (IllegalPlanException e) {
+		}
+
+		// In front, so that every behavior moves along one.
+		behaviors.add(0, new FlagBehavior(-1, key, 3.0f));
+		assertSame(ida, p.startPlanning(ida, schema.newWorldState(), new FlagGoal(inside), behaviors));
+		while (p.stepState(ida)) {}
+		assertEquals(3, p.getPlan(ida).size());
+
+		behaviors.remove(0);
+		p.startPlanning(ida, schema.newWorldState(), new FlagGoal(inside), behaviors);
+		while (p.stepState(ida)) {}
+		try {
+			p.getPlan(ida);
+			fail();
+		} catch (IllegalPlanException e) {
+		}
+
+		ArrayList<PlannerBehavior> pbp = new ArrayList<PlannerBehavior>();
+		pbp.add(new PlannerBehavior(5, 4.0f));
+		pbp.add(new PlannerBehavior(-5, 4.0f));
+
+		Planner<PlannerWorldState, PlannerGoal, PlannerBehavior, ArrayList<PlannerBehavior>> q = new Planner<>();
+		State<PlannerWorldState, PlannerGoal, PlannerBehavior, ArrayList<PlannerBehavior>> plain = q.startIterativeDeepeningPlanning(new PlannerWorldState(0), new PlannerHeuristicGoal(10), pbp);
+		while (q.stepState(plain)) {}
+		assertEquals(2, q.getPlan(plain).size());
+
+		pbp.add(new PlannerBehavior(1, 1.0f));
+		q.startPlanning(plain, new PlannerWorldState(0), new PlannerHeuristicGoal(7), pbp);
+		while (q.stepState(plain)) {}
+		assertEquals(7, this.planEnd(0, q.getPlan(plain)));
+	}
+
+	@Test(expected = IllegalPlanException.class)
+	public void testNoPlan() throws Exception {
+		ArrayList<PlannerBehavior> pbp = new ArrayList<PlannerBehavior>();
+		pbp.add(new PlannerBehavior(5, 1.0f));
+		pbp.add(new PlannerBehavior(-5, 1.0f));
+
+		Planner<PlannerWorldState, PlannerGoal, PlannerBehavior, ArrayList<PlannerBehavior>> p = new Planner<>();
+		State<PlannerWorldState, PlannerGoal, PlannerBehavior, ArrayList<PlannerBehavior>> ida = p.startIterativeDeepeningPlanning(new PlannerWorldState(0), new PlannerGoal(3), pbp);
+		int steps = 0;
+		while (p.stepState(ida)) {
+			assertTrue("Planning should finish", ++steps < 1000000);
+		}
+		assertTrue(ida.isDone());
+		p.getPlan(ida);
+	}
+
+	@Test
+	public void testBudgetAndReuse() throws Exception {
+		ArrayList<PlannerBehavior> pbp = this.behaviors(false);
+		Planner<PlannerWorldState, PlannerGoal, PlannerBehavior, ArrayList<PlannerBehavior>> p = new Planner<>();
+
+		State<PlannerWorldState, PlannerGoal, PlannerBehavior, ArrayList<PlannerBehavior>> ida = p.startIterativeDeepeningPlanning(new PlannerWorldState(0), new PlannerHeuristicGoal(12), pbp);
+		assertEquals(StepResult.OUT_OF_EXPANSIONS, p.stepStateWithBudget(ida, StepBudget.expansions(2)));
+		assertEquals(2, p.getPlan(ida).size());
+		assertEquals(StepResult.FINISHED, p.stepStateWithBudget(ida, StepBudget.unlimited()));
+		assertEquals(12, this.planEnd(0, p.getPlan(ida)));
+
+		State<PlannerWorldState, PlannerGoal, PlannerBehavior, ArrayList<PlannerBehavior>> again = p.startPlanning(ida, new PlannerWorldState(0), new PlannerHeuristicGoal(-9), pbp);
+		assertSame(ida, again);
+		assertFalse(again.isDone());
+		assertEquals(StepResult.FINISHED, p.stepStateWithBudget(again, StepBudget.unlimited()));
+		assertEquals(-9, this.planEnd(0, p.getPlan(again)));
+
+		// Already there.
+		again = p.startPlanning(ida, new PlannerWorldState(4), new PlannerHeuristicGoal(4), pbp);
+		assertTrue(again.isDone());
+		assertEquals(0, p.getPlan(again).size());
+	}
+}
@@ -0,0 +1,182 @@
+/**
+ * Anytime planning inflates the heuristic so that the first plan shows up
+ * quickly, then keeps searching with less and less inflation until the plan
+ * is known to be the cheapest. At every point the planner can say how far
+ * from optimal the plan in hand might be.
+ *
+ * This is the same number line as the heuristic goal test. Landing on 19
+ * costs 16 at best (three jumps and four steps), but the inflated search
+ * first finds a plan that costs 17.
+ */
+import com.gracefulcode.ai.*;
+import com.gracefulcode.ai.internal.State;
+
+import java.util.ArrayList;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class A024_AnytimePlanningTest {
+	public class PlannerWorldState implements WorldState {
+		public int value = 0;
+
+		@Override
+		public Object clone() {
+			PlannerWorldState tmp = new PlannerWorldState();
+			tmp.value = this.value;
+			return tmp;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (o == null) return false;
+			if (!(o instanceof PlannerWorldState)) return false;
+
+			PlannerWorldState pws = (PlannerWorldState)o;
+			if (this.value != pws.value) return false;
+			return true;
+		}
+
+		@Override
+		public int hashCode() {
+			return this.value;
+		}
+	}
+
+	public class PlannerBehavior extends AbstractPrimitiveCostBehavior<PlannerWorldState> {
+		private int amount;
+		private float cost;
+
+		public PlannerBehavior(int amount, float cost) {
+			this.amount = amount;
+			this.cost = cost;
+		}
+
+		@Override
+		public boolean isRunnable(PlannerWorldState pws) {
+			return Math.abs(pws.value + this.amount) <= 40;
+		}
+
+		@Override
+		public void modifyState(PlannerWorldState pws) {
+			pws.value += this.amount;
+		}
+
+		@Override
+		public float cost(PlannerWorldState pws) {
+			return this.cost;
+		}
+	}
+
+	public class PlannerGoal implements Goal<PlannerWorldState> {
+		@Override
+		public boolean isSatisfied(PlannerWorldState pws) {
+			return pws.value == 19;
+		}
+
+		@Override
+		public int compare(PlannerWorldState a, PlannerWorldState b) {
+			return 0;
+		}
+	}
+
+	public class PlannerHeuristicGoal extends PlannerGoal implements HeuristicGoal<PlannerWorldState> {
+		@Override
+		public float estimateCost(PlannerWorldState pws) {
+			return Math.abs(19 - pws.value) * 0.8f;
+		}
+	}
+
+	private ArrayList<PlannerBehavior> behaviors() {
+		ArrayList<PlannerBehavior> pbp = new ArrayList<PlannerBehavior>();
+		pbp.add(new PlannerBehavior(1, 1.0f));
+		pbp.add(new PlannerBehavior(-1, 1.0f));
+		pbp.add(new PlannerBehavior(5, 4.0f));
+		pbp.add(new PlannerBehavior(-5, 4.0f));
+		return pbp;
+	}
+
+	private float planCost(ArrayList<PlannerBehavior> plan) {
+		float total = 0;
+		for (PlannerBehavior b: plan) {
+			total += b.cost;
+		}
+		return total;
+	}
+
+	/**
+	 * Plans get better and the bound gets tighter, never the other way
+	 * around, and every plan is within its bound of the cheapest one.
+	 */
+	@Test
+	public void testPlansImprove() throws Exception {
+		Planner<PlannerWorldState, PlannerGoal, PlannerBehavior, ArrayList<PlannerBehavior>> p = new Planner<>();
+		State<PlannerWorldState, PlannerGoal, PlannerBehavior, ArrayList<PlannerBehavior>> ps = p.startAnytimePlanning(new PlannerWorldState(), new PlannerHeuristicGoal(), this.behaviors(), 3.0f, 1.0f);
+
+		assertEquals(Float.POSITIVE_INFINITY, p.getSuboptimalityBound(ps), 0.0f);
+
+		float firstCost = -1;
+		float lastCost = Float.POSITIVE_INFINITY;
+		float lastBound = Float.POSITIVE_INFINITY;
+		do {
+			float bound = p.getSuboptimalityBound(ps);
+			if (bound == Float.POSITIVE_INFINITY) continue;
+
+			float cost = this.planCost(p.getPlan(ps));
+			if (firstCost < 0) firstCost = cost;
+
+			assertTrue(bound >= 1.0f);
+			assertTrue("Bound went up: " + bound + " after " + lastBound, bound <= lastBound);
+			assertTrue("Cost went up: " + cost + " after " + lastCost, cost <= lastCost);
+			assertTrue("Cost " + cost + " is not within " + bound, cost <= bound * 16.0f + 0.0001f);
+
+			lastBound = bound;
+			lastCost = cost;
+		} while (p.stepState(ps));
+
+		assertTrue(ps.isDone());
+		assertEquals(17.0f, firstCost, 0.0001f);
+		assertEquals(16.0f, this.planCost(p.getPlan(ps)), 0.0001f);
+		assertEquals(1.0f, p.getSuboptimalityBound(ps), 0.0f);
+	}
+
+	/**
+	 * The whole point: something usable shows up well before plain A* would
+	 * have finished.
+	 */
+	@Test
+	public void testFirstPlanComesEarly() throws Exception {
+		Planner<PlannerWorldState, PlannerGoal, PlannerBehavior, ArrayList<PlannerBehavior>> p = new Planner<>();
+
+		State<PlannerWorldState, PlannerGoal, PlannerBehavior, ArrayList<PlannerBehavior>> astar = p.startPlanning(new PlannerWorldState(), new PlannerHeuristicGoal(), this.behaviors());
+		int astarSteps = 0;
+		while (p.stepState(astar)) {
+			astarSteps++;
+		}
+
+		State<PlannerWorldState, PlannerGoal, PlannerBehavior, ArrayList<PlannerBehavior>> anytime = p.startAnytimePlanning(new PlannerWorldState(), new PlannerHeuristicGoal(), this.behaviors(), 3.0f, 1.0f);
+		int anytimeSteps = 0;
+		while (p.getSuboptimalityBound(anytime) == Float.POSITIVE_INFINITY && p.stepState(anytime)) {
+			anytimeSteps++;
+		}
+
+		assertTrue("First plan after " + anytimeSteps + " vs " + astarSteps, anytimeSteps < astarSteps);
+	}
+
+	@Test
+	public void testNeedsHeuristic() throws Exception {
+		Planner<PlannerWorldState, PlannerGoal, PlannerBehavior, ArrayList<PlannerBehavior>> p = new Planner<>();
+
+		try {
+			p.startAnytimePlanning(new PlannerWorldState(), new PlannerGoal(), this.behaviors(), 3.0f, 1.0f);
+			fail();
+		} catch (IllegalArgumentException e) {
+		}
+
+		try {
+			p.startAnytimePlanning(new PlannerWorldState(), new PlannerHeuristicGoal(), this.behaviors(), 0.5f, 1.0f);
+			fail();
+		} catch (IllegalArgumentException e) {
+		}
+	}
+}
@@ -0,0 +1,199 @@
+/**
+ * Weighted planning inflates the estimate once and leaves it there. It is
+ * happy with any plan that is within the weight of the cheapest, and stops as
+ * soon as it has one. The Plan that getPlan returns says how close it got.
+ *
+ * This is the same number line as the anytime planning test: landing on 19
+ * costs 16 at best.
+ */
+import com.gracefulcode.ai.*;
+import com.gracefulcode.ai.internal.State;
+
+import java.util.ArrayList;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class A025_WeightedPlanningTest {
+	public class PlannerWorldState implements WorldState {
+		public int value = 0;
+
+		@Override
+		public Object clone() {
+			PlannerWorldState tmp = new PlannerWorldState();
+			tmp.value = this.value;
+			return tmp;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (o == null) return false;
+			if (!(o instanceof PlannerWorldState)) return false;
+
+			PlannerWorldState pws = (PlannerWorldState)o;
+			if (this.value != pws.value) return false;
+			return true;
+		}
+
+		@Override
+		public int hashCode() {
+			return this.value;
+		}
+	}
+
+	public class PlannerBehavior extends AbstractPrimitiveCostBehavior<PlannerWorldState> {
+		private int amount;
+		private float cost;
+
+		public PlannerBehavior(int amount, float cost) {
+			this.amount = amount;
+			this.cost = cost;
+		}
+
+		@Override
+		public boolean isRunnable(PlannerWorldState pws) {
+			return Math.abs(pws.value + this.amount) <= 40;
+		}
+
+		@Override
+		public void modifyState(PlannerWorldState pws) {
+			pws.value += this.amount;
+		}
+
+		@Override
+		public float cost(PlannerWorldState pws) {
+			return this.cost;
+		}
+	}
+
+	public class PlannerGoal implements HeuristicGoal<PlannerWorldState> {
+		@Override
+		public boolean isSatisfied(PlannerWorldState pws) {
+			return pws.value == 19;
+		}
+
+		@Override
+		public float estimateCost(PlannerWorldState pws) {
+			return Math.abs(19 - pws.value) * 0.8f;
+		}
+
+		@Override
+		public int compare(PlannerWorldState a, PlannerWorldState b) {
+			return 0;
+		}
+	}
+
+	private ArrayList<PlannerBehavior> behaviors() {
+		ArrayList<PlannerBehavior> pbp = new ArrayList<PlannerBehavior>();
+		pbp.add(new PlannerBehavior(1, 1.0f));
+		pbp.add(new PlannerBehavior(-1, 1.0f));
+		pbp.add(new PlannerBehavior(5, 4.0f));
+		pbp.add(new PlannerBehavior(-5, 4.0f));
+		return pbp;
+	}
+
+	private float planCost(ArrayList<PlannerBehavior> plan) {
+		float total = 0;
+		for (PlannerBehavior b: plan) {
+			total += b.cost;
+		}
+		return total;
+	}
+
+	@Test
+	public void testWithinBound() throws Exception {
+		Planner<PlannerWorldState, PlannerGoal, PlannerBehavior, ArrayList<PlannerBehavior>> p = new Planner<>();
+
+		State<PlannerWorldState, PlannerGoal, PlannerBehavior, ArrayList<PlannerBehavior>> astar = p.startPlanning(new PlannerWorldState(), new PlannerGoal(), this.behaviors());
+		int astarSteps = 0;
+		while (p.stepState(astar)) {
+			astarSteps++;
+		}
+		Plan<PlannerBehavior> optimal = p.getPlan(astar);
+		assertEquals(16.0f, this.planCost(optimal), 0.0001f);
+		assertEquals(1.0f, optimal.getSuboptimalityBound(), 0.0f);
+
+		State<PlannerWorldState, PlannerGoal, PlannerBehavior, ArrayList<PlannerBehavior>> weighted = p.startWeightedPlanning(new PlannerWorldState(), new PlannerGoal(), this.behaviors(), 3.0f);
+		int weightedSteps = 0;
+		while (p.stepState(weighted)) {
+			weightedSteps++;
+		}
+		Plan<PlannerBehavior> plan = p.getPlan(weighted);
+		float cost = this.planCost(plan);
+
+		assertTrue("Fewer steps: " + weightedSteps + " vs " + astarSteps, weightedSteps < astarSteps);
+		assertEquals(17.0f, cost, 0.0001f);
+
+		// The bound is never worse than the weight, and here it is better.
+		float bound = plan.getSuboptimalityBound();
+		assertTrue(bound > 1.0f);
+		assertTrue(bound < 3.0f);
+		assertTrue("Cost " + cost + " is not within " + bound, cost <= bound * 16.0f + 0.0001f);
+	}
+
+	/**
+	 * A weight of 1 is plain A*.
+	 */
+	@Test
+	public void testWeightOfOne() throws Exception {
+		Planner<PlannerWorldState, PlannerGoal, PlannerBehavior, ArrayList<PlannerBehavior>> p = new Planner<>();
+		State<PlannerWorldState, PlannerGoal, PlannerBehavior, ArrayList<PlannerBehavior>> ps = p.startWeightedPlanning(new PlannerWorldState(), new PlannerGoal(), this.behaviors(), 1.0f);
+		while (p.stepState(ps)) {}
+
+		Plan<PlannerBehavior> plan = p.getPlan(ps);
+		assertEquals(16.0f, this.planCost(plan), 0.0001f);
+		assertEquals(1.0f, plan.getSuboptimalityBound(), 0.0f);
+	}
+
+	/**
+	 * Bounded and weighted at once. With room to spare, forgotten world
+	 * states are backed up and the weight still holds. With too little room
+	 * we lose track of what might be cheaper, even though a plan was found,
+	 * and the weight means nothing any more.
+	 */
+	@Test
+	public void testBoundedAndWeighted() throws Exception {
+		Planner<PlannerWorldState, PlannerGoal, PlannerBehavior, ArrayList<PlannerBehavior>> p = new Planner<>();
+
+		State<PlannerWorldState, PlannerGoal, PlannerBehavior, ArrayList<PlannerBehavior>> roomy = p.startBoundedPlanning(new PlannerWorldState(), new PlannerGoal(), this.behaviors(), 8);
+		roomy.getGlobalState().weight = 3.0f;
+		while (p.stepState(roomy)) {}
+
+		Plan<PlannerBehavior> plan = p.getPlan(roomy);
+		float cost = this.planCost(plan);
+		float bound = plan.getSuboptimalityBound();
+		assertFalse(roomy.getGlobalState().lossy);
+		assertTrue(bound >= 1.0f);
+		assertTrue(bound <= 3.0f);
+		assertTrue("Cost " + cost + " is not within " + bound, cost <= bound * 16.0f + 0.0001f);
+
+		State<PlannerWorldState, PlannerGoal, PlannerBehavior, ArrayList<PlannerBehavior>> cramped = p.startBoundedPlanning(new PlannerWorldState(), new PlannerGoal(), this.behaviors(), 5);
+		cramped.getGlobalState().weight = 3.0f;
+		while (p.stepState(cramped)) {}
+
+		plan = p.getPlan(cramped);
+		assertTrue(cramped.getGlobalState().lossy);
+		int value = 0;
+		for (PlannerBehavior b: plan) {
+			value += b.amount;
+		}
+		assertEquals(19, value);
+		assertEquals(Float.POSITIVE_INFINITY, plan.getSuboptimalityBound(), 0.0f);
+		assertEquals(Float.POSITIVE_INFINITY, p.getSuboptimalityBound(cramped), 0.0f);
+	}
+
+	@Test
+	public void testPartialPlanHasNoBound() throws Exception {
+		Planner<PlannerWorldState, PlannerGoal, PlannerBehavior, ArrayList<PlannerBehavior>> p = new Planner<>();
+		State<PlannerWorldState, PlannerGoal, PlannerBehavior, ArrayList<PlannerBehavior>> ps = p.startWeightedPlanning(new PlannerWorldState(), new PlannerGoal(), this.behaviors(), 1.5f);
+		p.stepState(ps);
+
+		assertEquals(Float.POSITIVE_INFINITY, p.getPlan(ps).getSuboptimalityBound(), 0.0f);
+
+		try {
+			p.startWeightedPlanning(new PlannerWorldState(), new PlannerGoal(), this.behaviors(), 0.9f);
+			fail();
+		} catch (IllegalArgumentException e) {
+		}
+	}
+}
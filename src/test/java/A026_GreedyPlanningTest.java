@@ -0,0 +1,149 @@
+/**
+ * Greedy planning goes wherever the goal's comparator says is closest and
+ * takes the first plan it finds. It's for when any plan will do, as long as
+ * it shows up fast.
+ *
+ * The number line again: stepping by 1 costs 1, jumping by 5 costs 4, and
+ * the goal only knows that closer to the target is better.
+ */
+import com.gracefulcode.ai.*;
+import com.gracefulcode.ai.internal.State;
+
+import java.util.ArrayList;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class A026_GreedyPlanningTest {
+	public class PlannerWorldState implements WorldState {
+		public int value = 0;
+
+		@Override
+		public Object clone() {
+			PlannerWorldState tmp = new PlannerWorldState();
+			tmp.value = this.value;
+			return tmp;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (o == null) return false;
+			if (!(o instanceof PlannerWorldState)) return false;
+
+			PlannerWorldState pws = (PlannerWorldState)o;
+			if (this.value != pws.value) return false;
+			return true;
+		}
+
+		@Override
+		public int hashCode() {
+			return this.value;
+		}
+	}
+
+	public class PlannerBehavior extends AbstractPrimitiveCostBehavior<PlannerWorldState> {
+		private int amount;
+		private float cost;
+
+		public PlannerBehavior(int amount, float cost) {
+			this.amount = amount;
+			this.cost = cost;
+		}
+
+		@Override
+		public boolean isRunnable(PlannerWorldState pws) {
+			return Math.abs(pws.value + this.amount) <= 40;
+		}
+
+		@Override
+		public void modifyState(PlannerWorldState pws) {
+			pws.value += this.amount;
+		}
+
+		@Override
+		public float cost(PlannerWorldState pws) {
+			return this.cost;
+		}
+	}
+
+	public class PlannerGoal implements Goal<PlannerWorldState> {
+		private int target;
+
+		public PlannerGoal(int target) {
+			this.target = target;
+		}
+
+		@Override
+		public boolean isSatisfied(PlannerWorldState pws) {
+			return pws.value == this.target;
+		}
+
+		@Override
+		public int compare(PlannerWorldState a, PlannerWorldState b) {
+			int distanceA = Math.abs(this.target - a.value);
+			int distanceB = Math.abs(this.target - b.value);
+			if (distanceA < distanceB) return -1;
+			if (distanceA > distanceB) return 1;
+			return 0;
+		}
+	}
+
+	private ArrayList<PlannerBehavior> behaviors() {
+		ArrayList<PlannerBehavior> pbp = new ArrayList<PlannerBehavior>();
+		pbp.add(new PlannerBehavior(1, 1.0f));
+		pbp.add(new PlannerBehavior(-1, 1.0f));
+		pbp.add(new PlannerBehavior(5, 4.0f));
+		pbp.add(new PlannerBehavior(-5, 4.0f));
+		return pbp;
+	}
+
+	private int apply(int value, ArrayList<PlannerBehavior> plan) {
+		// Plans come back in reverse order, but adding up doesn't care.
+		for (PlannerBehavior b: plan) {
+			value += b.amount;
+		}
+		return value;
+	}
+
+	@Test
+	public void testStopsAtFirstPlan() throws Exception {
+		Planner<PlannerWorldState, PlannerGoal, PlannerBehavior, ArrayList<PlannerBehavior>> p = new Planner<>();
+
+		State<PlannerWorldState, PlannerGoal, PlannerBehavior, ArrayList<PlannerBehavior>> plain = p.startPlanning(new PlannerWorldState(), new PlannerGoal(23), this.behaviors());
+		int plainSteps = 0;
+		while (p.stepState(plain)) {
+			plainSteps++;
+		}
+
+		State<PlannerWorldState, PlannerGoal, PlannerBehavior, ArrayList<PlannerBehavior>> greedy = p.startGreedyPlanning(new PlannerWorldState(), new PlannerGoal(23), this.behaviors());
+		int greedySteps = 0;
+		while (p.stepState(greedy)) {
+			greedySteps++;
+		}
+		assertTrue(greedy.isDone());
+
+		Plan<PlannerBehavior> plan = p.getPlan(greedy);
+		assertEquals(23, this.apply(0, plan));
+		assertEquals(Float.POSITIVE_INFINITY, plan.getSuboptimalityBound(), 0.0f);
+		assertTrue("Greedy should look at fewer states: " + greedySteps + " vs " + plainSteps, greedySteps < plainSteps);
+	}
+
+	/**
+	 * Greedy states can be reused for normal planning, and don't stay greedy.
+	 */
+	@Test
+	public void testReuse() throws Exception {
+		Planner<PlannerWorldState, PlannerGoal, PlannerBehavior, ArrayList<PlannerBehavior>> p = new Planner<>();
+		ArrayList<PlannerBehavior> pbp = this.behaviors();
+
+		State<PlannerWorldState, PlannerGoal, PlannerBehavior, ArrayList<PlannerBehavior>> ps = p.startGreedyPlanning(new PlannerWorldState(), new PlannerGoal(-12), pbp);
+		while (p.stepState(ps)) {}
+		assertEquals(-12, this.apply(0, p.getPlan(ps)));
+
+		ps = p.startPlanning(ps, new PlannerWorldState(), new PlannerGoal(-12), pbp);
+		while (p.stepState(ps)) {}
+		Plan<PlannerBehavior> plan = p.getPlan(ps);
+		assertEquals(-12, this.apply(0, plan));
+		assertEquals(1.0f, plan.getSuboptimalityBound(), 0.0f);
+	}
+}
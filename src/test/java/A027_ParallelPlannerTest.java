@@ -0,0 +1,237 @@
+/**
+ * ParallelPlanner runs a single search on several threads, each owning the
+ * world states that hash to it. However many threads it uses, it should find
+ * a plan exactly as cheap as the normal planner does.
+ *
+ * The world is a grid with a wall down the middle that has a single gap, and
+ * moving costs between 1 and 3 depending on where you move from.
+ */
+import com.gracefulcode.ai.*;
+import com.gracefulcode.ai.internal.IllegalCostException;
+import com.gracefulcode.ai.internal.IllegalPlanException;
+import com.gracefulcode.ai.internal.State;
+
+import java.util.ArrayList;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class A027_ParallelPlannerTest {
+	public static final int SIZE = 30;
+
+	public class PlannerWorldState implements WorldState {
+		public int x;
+		public int y;
+
+		public PlannerWorldState(int x, int y) {
+			this.x = x;
+			this.y = y;
+		}
+
+		@Override
+		public Object clone() {
+			return new PlannerWorldState(this.x, this.y);
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (o == null) return false;
+			if (!(o instanceof PlannerWorldState)) return false;
+
+			PlannerWorldState pws = (PlannerWorldState)o;
+			if (this.x != pws.x) return false;
+			if (this.y != pws.y) return false;
+			return true;
+		}
+
+		@Override
+		public int hashCode() {
+			return this.x * 31 + this.y;
+		}
+	}
+
+	public static boolean isWall(int x, int y) {
+		return x == SIZE / 2 && y != 3;
+	}
+
+	public class PlannerBehavior extends AbstractPrimitiveCostBehavior<PlannerWorldState> {
+		private int dx;
+		private int dy;
+
+		public PlannerBehavior(int dx, int dy) {
+			this.dx = dx;
+			this.dy = dy;
+		}
+
+		@Override
+		public boolean isRunnable(PlannerWorldState pws) {
+			int x = pws.x + this.dx;
+			int y = pws.y + this.dy;
+			if (x < 0 || y < 0 || x >= SIZE || y >= SIZE) return false;
+			return !A027_ParallelPlannerTest.isWall(x, y);
+		}
+
+		@Override
+		public void modifyState(PlannerWorldState pws) {
+			pws.x += this.dx;
+			pws.y += this.dy;
+		}
+
+		@Override
+		public float cost(PlannerWorldState pws) {
+			return 1 + (pws.x * 7 + pws.y * 3) % 3;
+		}
+	}
+
+	public class PlannerGoal implements HeuristicGoal<PlannerWorldState> {
+		private int x;
+		private int y;
+
+		public PlannerGoal(int x, int y) {
+			this.x = x;
+			this.y = y;
+		}
+
+		@Override
+		public boolean isSatisfied(PlannerWorldState pws) {
+			return pws.x == this.x && pws.y == this.y;
+		}
+
+		@Override
+		public float estimateCost(PlannerWorldState pws) {
+			// Every move costs at least 1.
+			return Math.abs(this.x - pws.x) + Math.abs(this.y - pws.y);
+		}
+
+		@Override
+		public int compare(PlannerWorldState a, PlannerWorldState b) {
+			return 0;
+		}
+	}
+
+	/**
+	 * A move that claims to cost nothing, which isn't allowed.
+	 */
+	public class FreeBehavior extends PlannerBehavior {
+		public FreeBehavior() {
+			super(1, 1);
+		}
+
+		@Override
+		public float cost(PlannerWorldState pws) {
+			return 0.0f;
+		}
+	}
+
+	private ArrayList<PlannerBehavior> behaviors() {
+		ArrayList<PlannerBehavior> pbp = new ArrayList<PlannerBehavior>();
+		pbp.add(new PlannerBehavior(1, 0));
+		pbp.add(new PlannerBehavior(-1, 0));
+		pbp.add(new PlannerBehavior(0, 1));
+		pbp.add(new PlannerBehavior(0, -1));
+		return pbp;
+	}
+
+	/**
+	 * Runs a plan from the start and adds up what it costs, checking that
+	 * every step can actually be taken.
+	 */
+	private float run(PlannerWorldState start, PlannerGoal goal, ArrayList<PlannerBehavior> plan) {
+		PlannerWorldState pws = (PlannerWorldState)start.clone();
+		float total = 0;
+		for (int i = plan.size() - 1; i >= 0; i--) {
+			PlannerBehavior b = plan.get(i);
+			assertTrue(b.isRunnable(pws));
+			total += b.cost(pws);
+			b.modifyState(pws);
+		}
+		assertTrue(goal.isSatisfied(pws));
+		return total;
+	}
+
+	@Test
+	public void testMatchesPlanner() throws Exception {
+		ArrayList<PlannerBehavior> pbp = this.behaviors();
+		int[][] trips = {
+			{ 0, 0, SIZE - 1, SIZE - 1 },
+			{ 2, 20, 25, 1 },
+			{ 10, 10, 11, 12 },
+			{ SIZE - 1, 0, 0, SIZE - 1 },
+		};
+
+		Planner<PlannerWorldState, PlannerGoal, PlannerBehavior, ArrayList<PlannerBehavior>> p = new Planner<>();
+		for (int[] trip: trips) {
+			PlannerWorldState start = new PlannerWorldState(trip[0], trip[1]);
+			PlannerGoal goal = new PlannerGoal(trip[2], trip[3]);
+
+			State<PlannerWorldState, PlannerGoal, PlannerBehavior, ArrayList<PlannerBehavior>> ps = p.startPlanning(new PlannerWorldState(trip[0], trip[1]), goal, pbp);
+			while (p.stepState(ps)) {}
+			float expected = this.run(start, goal, p.getPlan(ps));
+
+			for (int threads = 1; threads <= 8; threads *= 2) {
+				ParallelPlanner<PlannerWorldState, PlannerGoal, PlannerBehavior, ArrayList<PlannerBehavior>> parallel = new ParallelPlanner<>(threads);
+				Plan<PlannerBehavior> plan = parallel.plan(new PlannerWorldState(trip[0], trip[1]), goal, pbp);
+
+				assertEquals(threads + " threads", expected, this.run(start, goal, plan), 0.0001f);
+				assertEquals(1.0f, plan.getSuboptimalityBound(), 0.0f);
+			}
+		}
+	}
+
+	/**
+	 * Stopping too early gives a worse plan or no plan at all, and stopping
+	 * too late never stops. Either only shows up now and then, so plan over
+	 * and over.
+	 */
+	@Test
+	public void testStopsAtTheRightTime() throws Exception {
+		ArrayList<PlannerBehavior> pbp = this.behaviors();
+		PlannerWorldState start = new PlannerWorldState(10, 10);
+		PlannerGoal goal = new PlannerGoal(20, 12);
+
+		Planner<PlannerWorldState, PlannerGoal, PlannerBehavior, ArrayList<PlannerBehavior>> p = new Planner<>();
+		State<PlannerWorldState, PlannerGoal, PlannerBehavior, ArrayList<PlannerBehavior>> ps = p.startPlanning(new PlannerWorldState(10, 10), goal, pbp);
+		while (p.stepState(ps)) {}
+		float expected = this.run(start, goal, p.getPlan(ps));
+
+		for (int i = 0; i < 300; i++) {
+			ParallelPlanner<PlannerWorldState, PlannerGoal, PlannerBehavior, ArrayList<PlannerBehavior>> parallel = new ParallelPlanner<>(2 + i % 7);
+			Plan<PlannerBehavior> plan = parallel.plan(new PlannerWorldState(10, 10), goal, pbp);
+			assertEquals("Run " + i, expected, this.run(start, goal, plan), 0.0001f);
+		}
+	}
+
+	@Test
+	public void testAlreadyThere() throws Exception {
+		ParallelPlanner<PlannerWorldState, PlannerGoal, PlannerBehavior, ArrayList<PlannerBehavior>> parallel = new ParallelPlanner<>(4);
+		assertEquals(0, parallel.plan(new PlannerWorldState(5, 5), new PlannerGoal(5, 5), this.behaviors()).size());
+	}
+
+	@Test
+	public void testNoPlan() throws Exception {
+		ParallelPlanner<PlannerWorldState, PlannerGoal, PlannerBehavior, ArrayList<PlannerBehavior>> parallel = new ParallelPlanner<>(4);
+		try {
+			// Inside the wall.
+			parallel.plan(new PlannerWorldState(0, 0), new PlannerGoal(SIZE / 2, 10), this.behaviors());
+			fail();
+		} catch (IllegalPlanException e) {
+		}
+	}
+
+	/**
+	 * A worker that hits a bad behavior stops the whole search, and the
+	 * problem comes back to the caller.
+	 */
+	@Test
+	public void testErrorsReachCaller() throws Exception {
+		ArrayList<PlannerBehavior> pbp = this.behaviors();
+		pbp.add(new FreeBehavior());
+
+		ParallelPlanner<PlannerWorldState, PlannerGoal, PlannerBehavior, ArrayList<PlannerBehavior>> parallel = new ParallelPlanner<>(4);
+		try {
+			parallel.plan(new PlannerWorldState(0, 0), new PlannerGoal(SIZE - 1, SIZE - 1), pbp);
+			fail();
+		} catch (IllegalCostException e) {
+		}
+	}
+}
@@ -0,0 +1,209 @@
+/**
+ * A planner made with a ForkJoinPool evaluates all of the behaviors for an
+ * expansion at once. That only matters when behaviors are slow, but either
+ * way the plan, and everything the debugger hears, should be exactly the
+ * same as planning one behavior at a time.
+ */
+import com.gracefulcode.ai.*;
+import com.gracefulcode.ai.internal.IllegalCostException;
+import com.gracefulcode.ai.internal.State;
+
+import java.util.ArrayList;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class A028_ParallelEvaluationTest {
+	public static volatile boolean sawOtherThread = false;
+
+	public class PlannerWorldState implements WorldState {
+		public int value = 0;
+
+		public PlannerWorldState(int value) {
+			this.value = value;
+		}
+
+		@Override
+		public Object clone() {
+			return new PlannerWorldState(this.value);
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (o == null) return false;
+			if (!(o instanceof PlannerWorldState)) return false;
+
+			PlannerWorldState pws = (PlannerWorldState)o;
+			if (this.value != pws.value) return false;
+			return true;
+		}
+
+		@Override
+		public int hashCode() {
+			return this.value;
+		}
+
+		@Override
+		public String toString() {
+			return "PlannerWorldState[value: " + this.value + "]";
+		}
+	}
+
+	public class PlannerBehavior extends AbstractPrimitiveCostBehavior<PlannerWorldState> {
+		private int amount;
+		private float cost;
+		private Thread caller;
+
+		public PlannerBehavior(int amount, float cost, Thread caller) {
+			this.amount = amount;
+			this.cost = cost;
+			this.caller = caller;
+		}
+
+		@Override
+		public boolean isRunnable(PlannerWorldState pws) {
+			if (Thread.currentThread() != this.caller) {
+				A028_ParallelEvaluationTest.sawOtherThread = true;
+			}
+			return Math.abs(pws.value + this.amount) <= 60;
+		}
+
+		@Override
+		public void modifyState(PlannerWorldState pws) {
+			pws.value += this.amount;
+		}
+
+		@Override
+		public float cost(PlannerWorldState pws) {
+			return this.cost;
+		}
+
+		@Override
+		public String toString() {
+			return "PlannerBehavior[" + this.amount + "]";
+		}
+	}
+
+	/**
+	 * Costs nothing once you get far enough, which isn't allowed.
+	 */
+	public class BrokenBehavior extends PlannerBehavior {
+		public BrokenBehavior(Thread caller) {
+			super(2, 1.5f, caller);
+		}
+
+		@Override
+		public float cost(PlannerWorldState pws) {
+			return pws.value > 6 ? 0.0f : 1.5f;
+		}
+	}
+
+	public class PlannerGoal implements HeuristicGoal<PlannerWorldState> {
+		private int target;
+
+		public PlannerGoal(int target) {
+			this.target = target;
+		}
+
+		@Override
+		public boolean isSatisfied(PlannerWorldState pws) {
+			return pws.value == this.target;
+		}
+
+		@Override
+		public float estimateCost(PlannerWorldState pws) {
+			return Math.abs(this.target - pws.value) * 0.75f;
+		}
+
+		@Override
+		public int compare(PlannerWorldState a, PlannerWorldState b) {
+			return 0;
+		}
+	}
+
+	/**
+	 * Writes down everything it hears, in order.
+	 */
+	public class RecordingDebugger implements PlannerDebugger<PlannerWorldState, PlannerBehavior> {
+		public ArrayList<String> events = new ArrayList<String>();
+
+		public void didStartStep() {
+			this.events.add("start step");
+		}
+		public void startEvaluateBehavior(PlannerBehavior behavior) {
+			this.events.add("start " + behavior);
+		}
+		public void endEvaluateBehavior(PlannerBehavior behavior) {
+			this.events.add("end " + behavior);
+		}
+		public void didEndStep(boolean hasMoreWork) {
+			this.events.add("end step " + hasMoreWork);
+		}
+		public void didAddState(PlannerWorldState worldState) {
+			this.events.add("add " + worldState);
+		}
+	}
+
+	private ArrayList<PlannerBehavior> behaviors() {
+		Thread caller = Thread.currentThread();
+		ArrayList<PlannerBehavior> pbp = new ArrayList<PlannerBehavior>();
+		pbp.add(new PlannerBehavior(1, 1.0f, caller));
+		pbp.add(new PlannerBehavior(-1, 1.0f, caller));
+		pbp.add(new PlannerBehavior(4, 3.0f, caller));
+		pbp.add(new PlannerBehavior(-4, 3.0f, caller));
+		pbp.add(new PlannerBehavior(7, 5.5f, caller));
+		pbp.add(new PlannerBehavior(-7, 5.5f, caller));
+		return pbp;
+	}
+
+	private RecordingDebugger plan(Planner<PlannerWorldState, PlannerGoal, PlannerBehavior, ArrayList<PlannerBehavior>> p, int target, ArrayList<PlannerBehavior> plan) throws Exception {
+		RecordingDebugger debugger = new RecordingDebugger();
+		State<PlannerWorldState, PlannerGoal, PlannerBehavior, ArrayList<PlannerBehavior>> ps = p.startPlanning(new PlannerWorldState(0), new PlannerGoal(target), this.behaviors());
+		while (p.stepState(ps, debugger)) {}
+		plan.addAll(p.getPlan(ps));
+		return debugger;
+	}
+
+	@Test
+	public void testSameAsSequential() throws Exception {
+		ForkJoinPool pool = new ForkJoinPool(4);
+		try {
+			Planner<PlannerWorldState, PlannerGoal, PlannerBehavior, ArrayList<PlannerBehavior>> sequential = new Planner<>();
+			Planner<PlannerWorldState, PlannerGoal, PlannerBehavior, ArrayList<PlannerBehavior>> parallel = new Planner<>(pool);
+
+			A028_ParallelEvaluationTest.sawOtherThread = false;
+			for (int target = -25; target <= 25; target += 5) {
+				ArrayList<PlannerBehavior> expectedPlan = new ArrayList<PlannerBehavior>();
+				ArrayList<PlannerBehavior> actualPlan = new ArrayList<PlannerBehavior>();
+				RecordingDebugger expected = this.plan(sequential, target, expectedPlan);
+				RecordingDebugger actual = this.plan(parallel, target, actualPlan);
+
+				assertEquals("Target " + target, expectedPlan.toString(), actualPlan.toString());
+				assertEquals("Target " + target, expected.events, actual.events);
+			}
+			assertTrue(A028_ParallelEvaluationTest.sawOtherThread);
+		} finally {
+			pool.shutdown();
+		}
+	}
+
+	@Test
+	public void testErrorsReachCaller() throws Exception {
+		ForkJoinPool pool = new ForkJoinPool(4);
+		try {
+			ArrayList<PlannerBehavior> pbp = this.behaviors();
+			pbp.add(new BrokenBehavior(Thread.currentThread()));
+
+			Planner<PlannerWorldState, PlannerGoal, PlannerBehavior, ArrayList<PlannerBehavior>> p = new Planner<>(pool);
+			State<PlannerWorldState, PlannerGoal, PlannerBehavior, ArrayList<PlannerBehavior>> ps = p.startPlanning(new PlannerWorldState(0), new PlannerGoal(30), pbp);
+			try {
+				while (p.stepState(ps)) {}
+				fail();
+			} catch (IllegalCostException e) {
+			}
+		} finally {
+			pool.shutdown();
+		}
+	}
+}
@@ -0,0 +1,274 @@
+/**
+ * planAsync plans in the background and hands back a CompletableFuture. It
+ * plans in short slices and never blocks, so lots of plans can share a couple
+ * of threads. It can be cancelled, and given a deadline it settles for the
+ * best plan it has.
+ */
+import com.gracefulcode.ai.*;
+import com.gracefulcode.ai.internal.IllegalPlanException;
+import com.gracefulcode.ai.internal.State;
+
+import java.util.ArrayList;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class A029_AsyncPlanningTest {
+	public static final AtomicInteger isRunnableCalls = new AtomicInteger();
+
+	public class PlannerWorldState implements WorldState {
+		public int value = 0;
+
+		public PlannerWorldState(int value) {
+			this.value = value;
+		}
+
+		@Override
+		public Object clone() {
+			return new PlannerWorldState(this.value);
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (o == null) return false;
+			if (!(o instanceof PlannerWorldState)) return false;
+
+			PlannerWorldState pws = (PlannerWorldState)o;
+			if (this.value != pws.value) return false;
+			return true;
+		}
+
+		@Override
+		public int hashCode() {
+			return this.value;
+		}
+	}
+
+	public class PlannerBehavior extends AbstractPrimitiveCostBehavior<PlannerWorldState> {
+		private int amount;
+		private float cost;
+		private int limit;
+
+		/**
+		 * @param limit How far from 0 we may go, or 0 for no limit at all.
+		 */
+		public PlannerBehavior(int amount, float cost, int limit) {
+			this.amount = amount;
+			this.cost = cost;
+			this.limit = limit;
+		}
+
+		@Override
+		public boolean isRunnable(PlannerWorldState pws) {
+			A029_AsyncPlanningTest.isRunnableCalls.incrementAndGet();
+			return this.limit == 0 || Math.abs(pws.value + this.amount) <= this.limit;
+		}
+
+		@Override
+		public void modifyState(PlannerWorldState pws) {
+			pws.value += this.amount;
+		}
+
+		@Override
+		public float cost(PlannerWorldState pws) {
+			return this.cost;
+		}
+	}
+
+	/**
+	 * Cancels the plan it is part of partway through an expansion.
+	 */
+	public class CancellingBehavior extends PlannerBehavior {
+		public CompletableFuture<Plan<PlannerBehavior>> future;
+		public int cancelAt;
+		public int calls = 0;
+
+		public CancellingBehavior(int amount, int cancelAt) {
+			super(amount, 1.0f, 0);
+			this.cancelAt = cancelAt;
+		}
+
+		@Override
+		public boolean isRunnable(PlannerWorldState pws) {
+			if (++this.calls == this.cancelAt) {
+				this.future.cancel(true);
+			}
+			return super.isRunnable(pws);
+		}
+	}
+
+	public class PlannerGoal implements HeuristicGoal<PlannerWorldState> {
+		private int target;
+
+		public PlannerGoal(int target) {
+			this.target = target;
+		}
+
+		@Override
+		public boolean isSatisfied(PlannerWorldState pws) {
+			return pws.value == this.target;
+		}
+
+		@Override
+		public float estimateCost(PlannerWorldState pws) {
+			return Math.abs(this.target - pws.value) * 0.8f;
+		}
+
+		@Override
+		public int compare(PlannerWorldState a, PlannerWorldState b) {
+			return 0;
+		}
+	}
+
+	private ArrayList<PlannerBehavior> behaviors(int limit) {
+		ArrayList<PlannerBehavior> pbp = new ArrayList<PlannerBehavior>();
+		pbp.add(new PlannerBehavior(1, 1.0f, limit));
+		pbp.add(new PlannerBehavior(-1, 1.0f, limit));
+		pbp.add(new PlannerBehavior(5, 4.0f, limit));
+		pbp.add(new PlannerBehavior(-5, 4.0f, limit));
+		return pbp;
+	}
+
+	/**
+	 * Only ever steps by 2, so odd targets can't be reached, and nothing
+	 * stops it from searching forever.
+	 */
+	private ArrayList<PlannerBehavior> endless() {
+		ArrayList<PlannerBehavior> pbp = new ArrayList<PlannerBehavior>();
+		pbp.add(new PlannerBehavior(2, 1.0f, 0));
+		pbp.add(new PlannerBehavior(-2, 1.0f, 0));
+		return pbp;
+	}
+
+	@Test
+	public void testManyInFlight() throws Exception {
+		ExecutorService executor = Executors.newFixedThreadPool(2);
+		try {
+			ArrayList<PlannerBehavior> pbp = this.behaviors(100);
+			Planner<PlannerWorldState, PlannerGoal, PlannerBehavior, ArrayList<PlannerBehavior>> p = new Planner<>();
+
+			ArrayList<CompletableFuture<Plan<PlannerBehavior>>> futures = new ArrayList<CompletableFuture<Plan<PlannerBehavior>>>();
+			for (int i = 0; i < 200; i++) {
+				futures.add(p.planAsync(new PlannerWorldState(i % 50), new PlannerGoal(-(i % 37)), pbp, executor));
+			}
+
+			for (int i = 0; i < futures.size(); i++) {
+				State<PlannerWorldState, PlannerGoal, PlannerBehavior, ArrayList<PlannerBehavior>> ps = p.startPlanning(new PlannerWorldState(i % 50), new PlannerGoal(-(i % 37)), pbp);
+				while (p.stepState(ps)) {}
+
+				Plan<PlannerBehavior> plan = futures.get(i).get(30, TimeUnit.SECONDS);
+				assertEquals("Request " + i, p.getPlan(ps), plan);
+				assertEquals(1.0f, plan.getSuboptimalityBound(), 0.0f);
+			}
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	@Test
+	public void testCancel() throws Exception {
+		ExecutorService executor = Executors.newSingleThreadExecutor();
+		try {
+			Planner<PlannerWorldState, PlannerGoal, PlannerBehavior, ArrayList<PlannerBehavior>> p = new Planner<>();
+			CompletableFuture<Plan<PlannerBehavior>> future = p.planAsync(new PlannerWorldState(0), new PlannerGoal(1), this.endless(), executor);
+
+			Thread.sleep(20);
+			assertFalse(future.isDone());
+			assertTrue(future.cancel(true));
+			assertTrue(future.isCancelled());
+
+			// Give the current slice time to notice, then nothing more should
+			// happen.
+			executor.submit(new Runnable() {
+				public void run() {}
+			}).get(5, TimeUnit.SECONDS);
+			int calls = A029_AsyncPlanningTest.isRunnableCalls.get();
+			Thread.sleep(20);
+			assertEquals(calls, A029_AsyncPlanningTest.isRunnableCalls.get());
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	/**
+	 * Cancelling stops planning at the next expansion, not just at the end
+	 * of the slice.
+	 */
+	@Test
+	public void testCancelBetweenExpansions() throws Exception {
+		ExecutorService executor = Executors.newSingleThreadExecutor();
+		try {
+			final CountDownLatch release = new CountDownLatch(1);
+			executor.execute(new Runnable() {
+				public void run() {
+					try {
+						release.await();
+					} catch (InterruptedException e) {
+					}
+				}
+			});
+
+			CancellingBehavior cancelling = new CancellingBehavior(2, 10);
+			ArrayList<PlannerBehavior> pbp = new ArrayList<PlannerBehavior>();
+			pbp.add(cancelling);
+			pbp.add(new PlannerBehavior(-2, 1.0f, 0));
+
+			Planner<PlannerWorldState, PlannerGoal, PlannerBehavior, ArrayList<PlannerBehavior>> p = new Planner<>();
+			cancelling.future = p.planAsync(new PlannerWorldState(0), new PlannerGoal(1), pbp, executor);
+			release.countDown();
+
+			executor.submit(new Runnable() {
+				public void run() {}
+			}).get(5, TimeUnit.SECONDS);
+			assertTrue(cancelling.future.isCancelled());
+			assertEquals(10, cancelling.calls);
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	@Test
+	public void testDeadline() throws Exception {
+		ExecutorService executor = Executors.newSingleThreadExecutor();
+		try {
+			Planner<PlannerWorldState, PlannerGoal, PlannerBehavior, ArrayList<PlannerBehavior>> p = new Planner<>();
+
+			// Out of time: whatever we were looking at, which can't be a plan.
+			Plan<PlannerBehavior> plan = p.planAsync(new PlannerWorldState(0), new PlannerGoal(1), this.endless(), executor, StepBudget.nanos(20L * 1000 * 1000)).get(5, TimeUnit.SECONDS);
+			assertEquals(Float.POSITIVE_INFINITY, plan.getSuboptimalityBound(), 0.0f);
+
+			// Out of expansions.
+			plan = p.planAsync(new PlannerWorldState(0), new PlannerGoal(20), this.behaviors(100), executor, StepBudget.expansions(1)).get(5, TimeUnit.SECONDS);
+			assertEquals(1, plan.size());
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	@Test
+	public void testNoPlan() throws Exception {
+		ExecutorService executor = Executors.newSingleThreadExecutor();
+		try {
+			Planner<PlannerWorldState, PlannerGoal, PlannerBehavior, ArrayList<PlannerBehavior>> p = new Planner<>();
+			ArrayList<PlannerBehavior> pbp = new ArrayList<PlannerBehavior>();
+			pbp.add(new PlannerBehavior(2, 1.0f, 20));
+			pbp.add(new PlannerBehavior(-2, 1.0f, 20));
+
+			try {
+				p.planAsync(new PlannerWorldState(0), new PlannerGoal(1), pbp, executor).get(5, TimeUnit.SECONDS);
+				fail();
+			} catch (ExecutionException e) {
+				assertTrue(e.getCause() instanceof IllegalPlanException);
+			}
+		} finally {
+			executor.shutdown();
+		}
+	}
+}